@@ -0,0 +1,74 @@
+#!/usr/bin/env bash
+#
+# Time from JVM launch to the first 302, for the regular build and the fast-startup build
+# (AOT + class data sharing), on this machine's JDK. Redis runs in Docker; Kafka and the config
+# server are not needed (training profile). Each build is started RUNS times, medians are printed.
+#
+#   scripts/time-to-first-redirect.sh [RUNS]
+#
+set -euo pipefail
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+REDIS_PORT=${REDIS_PORT:-16379}
+SHORT_URL=ttfr01
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BASELINE=$(mktemp -d)
+# The archive is measured where it was recorded: class data sharing checks the class path it was dumped with
+FAST="$ROOT/target/extracted"
+
+cleanup() {
+    docker rm -f ttfr-redis >/dev/null 2>&1 || true
+    rm -rf "$BASELINE"
+}
+trap cleanup EXIT
+
+build() {
+    (cd "$ROOT" && ./mvnw -q -B -DskipTests "$@" clean package)
+}
+
+# Prints milliseconds from launch until GET /$SHORT_URL answers 302
+measure() {
+    local dir=$1
+    shift
+    local start end pid
+    start=$(date +%s%N)
+    (cd "$dir" && exec java "$@" -Dspring.profiles.active=training -Dserver.port="$PORT" \
+        -Dspring.data.redis.port="$REDIS_PORT" -jar link-shortener-redirect-service-*.jar) >"$dir/run.log" 2>&1 &
+    pid=$!
+    until [[ $(curl -s -o /dev/null -w '%{http_code}' "http://localhost:$PORT/$SHORT_URL" || true) == 302 ]]; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "application exited, see $dir/run.log" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo $(((end - start) / 1000000))
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+docker run -d --name ttfr-redis -p "$REDIS_PORT":6379 redis:8.2.1-alpine >/dev/null
+until docker exec ttfr-redis redis-cli ping >/dev/null 2>&1; do sleep 0.1; done
+docker exec ttfr-redis redis-cli set "link:$SHORT_URL" \
+    '{"longUrl":"https://example.com","isActive":true,"updatedAtMicros":1,"isDeleted":false}' >/dev/null
+
+build
+java -Djarmode=tools -jar "$ROOT"/target/link-shortener-redirect-service-*.jar extract --destination "$BASELINE/app"
+build -Pfast-startup
+
+baseline=()
+fast=()
+for ((i = 0; i < RUNS; i++)); do
+    baseline+=("$(measure "$BASELINE/app")")
+    fast+=("$(measure "$FAST" -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true)")
+done
+
+echo "time to first redirect over $RUNS runs (ms): $(java -version 2>&1 | head -1)"
+echo "  baseline:     median $(printf '%s\n' "${baseline[@]}" | median)  [${baseline[*]}]"
+echo "  fast-startup: median $(printf '%s\n' "${fast[@]}" | median)  [${fast[*]}]"
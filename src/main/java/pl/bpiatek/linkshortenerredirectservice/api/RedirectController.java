@@ -10,10 +10,19 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import pl.bpiatek.linkshortenerredirectservice.bot.BotClickFilter;
+import pl.bpiatek.linkshortenerredirectservice.capture.TrafficCapture;
+import pl.bpiatek.linkshortenerredirectservice.limit.AdaptiveConcurrencyLimiter;
+import pl.bpiatek.linkshortenerredirectservice.limit.ClientRateLimiter;
+import pl.bpiatek.linkshortenerredirectservice.link.CacheUnavailableException;
 import pl.bpiatek.linkshortenerredirectservice.link.ClickEventPublisher;
 import pl.bpiatek.linkshortenerredirectservice.link.ClientIpExtractor;
 import pl.bpiatek.linkshortenerredirectservice.link.RedirectCacheRepository;
 import pl.bpiatek.linkshortenerredirectservice.link.RedirectInfo;
+import pl.bpiatek.linkshortenerredirectservice.link.ShortCode;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
+import pl.bpiatek.linkshortenerredirectservice.stats.LiveClickCounters;
+import pl.bpiatek.linkshortenerredirectservice.warmup.SyntheticRedirects;
 
 import java.net.URI;
 
@@ -24,25 +33,84 @@ class RedirectController {
 
     private final RedirectCacheRepository redirectRepository;
     private final ClickEventPublisher clickEventPublisher;
+    private final TrafficCapture trafficCapture;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ClientRateLimiter rateLimiter;
+    private final ClientIpExtractor clientIpExtractor;
+    private final BotClickFilter botClickFilter;
+    private final LiveClickCounters liveClickCounters;
+    private final SyntheticRedirects syntheticRedirects;
 
     RedirectController(RedirectCacheRepository redirectRepository,
-                       ClickEventPublisher clickEventPublisher) {
+                       ClickEventPublisher clickEventPublisher,
+                       TrafficCapture trafficCapture,
+                       AdaptiveConcurrencyLimiter concurrencyLimiter,
+                       ClientRateLimiter rateLimiter,
+                       ClientIpExtractor clientIpExtractor,
+                       BotClickFilter botClickFilter,
+                       LiveClickCounters liveClickCounters,
+                       SyntheticRedirects syntheticRedirects) {
         this.redirectRepository = redirectRepository;
         this.clickEventPublisher = clickEventPublisher;
+        this.trafficCapture = trafficCapture;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.clientIpExtractor = clientIpExtractor;
+        this.botClickFilter = botClickFilter;
+        this.liveClickCounters = liveClickCounters;
+        this.syntheticRedirects = syntheticRedirects;
     }
 
     @GetMapping("/{shortUrl}")
     public ResponseEntity<Void> redirect(@PathVariable String shortUrl, HttpServletRequest request) {
+        var clientAddress = new IpAddress();
+        var clientIp = clientIpExtractor.extract(request, clientAddress);
+        //  Warm-up traffic exercises the lookup path but must not count, be captured or use up a rate limit
+        var synthetic = syntheticRedirects.matches(request);
+        if (!synthetic) {
+            trafficCapture.record(shortUrl, clientIp, request);
+        }
+        if (!synthetic && !rateLimiter.tryAcquire(clientIp, clientAddress)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, rateLimiter.retryAfterSeconds(clientAddress))
+                    .build();
+        }
+        //  Not a base62 code, so no link can exist: answer as for an unknown one without any lookup
+        if (!ShortCode.isValid(shortUrl)) {
+            return redirectToUi("/404");
+        }
+        //  Local hits cost no remote I/O, so they are never shed by the concurrency limit
+        if (redirectRepository.isCachedLocally(shortUrl)) {
+            return lookup(shortUrl, clientIp, request, synthetic);
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, concurrencyLimiter.retryAfterSeconds())
+                    .build();
+        }
+        var start = System.nanoTime();
+        try {
+            return lookup(shortUrl, clientIp, request, synthetic);
+        } finally {
+            concurrencyLimiter.release(start);
+        }
+    }
+
+    private ResponseEntity<Void> lookup(String shortUrl, String clientIp, HttpServletRequest request, boolean synthetic) {
         try {
             return redirectRepository.findByShortUrl(shortUrl)
-                    .map(info -> handleRedirect(shortUrl, info, request))
+                    .map(info -> handleRedirect(shortUrl, info, clientIp, request, synthetic))
                     .orElseGet(() -> redirectToUi("/404"));
+        } catch (CacheUnavailableException e) {
+            log.warn("Redirect for {} unavailable: {}", shortUrl, e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (IllegalStateException e) {
             return ResponseEntity.internalServerError().build();
         }
     }
 
-    private ResponseEntity<Void> handleRedirect(String shortUrl, RedirectInfo info, HttpServletRequest request) {
+    private ResponseEntity<Void> handleRedirect(String shortUrl, RedirectInfo info, String clientIp,
+                                                HttpServletRequest request, boolean synthetic) {
         if (info.isDeleted()) {
             log.info("Short URL {} is marked as deleted (tombstone).", shortUrl);
             return redirectToUi("/404");
@@ -52,17 +120,29 @@ class RedirectController {
             return redirectToUi("/inactive");
         }
 
-        clickEventPublisher.publishSafe(
-                shortUrl,
-                ClientIpExtractor.extract(request),
-                request.getHeader(HttpHeaders.USER_AGENT)
-        );
+        if (!synthetic) {
+            recordClick(shortUrl, clientIp, request.getHeader(HttpHeaders.USER_AGENT));
+        }
 
         return ResponseEntity.status(HttpStatus.FOUND)
                 .location(URI.create(info.longUrl()))
                 .build();
     }
 
+    private void recordClick(String shortUrl, String clientIp, String userAgent) {
+        switch (botClickFilter.route(userAgent)) {
+            //  Live counters show human clicks only, like the analytics topic without sampled bots
+            case PRIMARY -> {
+                liveClickCounters.record(shortUrl, clientIp, userAgent);
+                clickEventPublisher.publishSafe(shortUrl, clientIp, userAgent);
+            }
+            case SAMPLED -> clickEventPublisher.publishSafe(shortUrl, clientIp, userAgent, botClickFilter.sampleWeight());
+            case BOT_STREAM -> clickEventPublisher.publishSafe(botClickFilter.botTopic(), shortUrl, clientIp, userAgent);
+            case DROP -> {
+            }
+        }
+    }
+
     private ResponseEntity<Void> redirectToUi(String path) {
         return ResponseEntity.status(HttpStatus.FOUND)
                 .location(URI.create(path))
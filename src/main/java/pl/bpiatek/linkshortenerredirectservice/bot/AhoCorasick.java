@@ -0,0 +1,104 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import java.util.Arrays;
+import java.util.List;
+
+//  Case-insensitive multi-substring matcher for ASCII patterns. The trie and its failure links are
+//  folded into a dense DFA over the patterns' own alphabet (every other character is one shared
+//  symbol), so scanning is a table lookup per character with no backtracking, whatever the number of
+//  patterns.
+final class AhoCorasick {
+
+    private static final int OTHER = 0;
+
+    private final byte[] symbols = new byte[128];
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] output;
+
+    AhoCorasick(List<String> patterns) {
+        var nextSymbol = 1;
+        var totalLength = 0;
+        for (var pattern : patterns) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                var c = Character.toLowerCase(pattern.charAt(i));
+                if (c >= 128) {
+                    throw new IllegalArgumentException("Non-ASCII pattern: " + pattern);
+                }
+                if (symbols[c] == OTHER) {
+                    var symbol = (byte) nextSymbol++;
+                    symbols[c] = symbol;
+                    symbols[Character.toUpperCase(c)] = symbol;
+                }
+            }
+            totalLength += pattern.length();
+        }
+        this.alphabetSize = nextSymbol;
+        var maxStates = totalLength + 1;
+        this.transitions = new int[maxStates * alphabetSize];
+        this.output = new int[maxStates];
+        Arrays.fill(transitions, -1);
+        Arrays.fill(output, -1);
+
+        var states = 1;
+        for (int index = 0; index < patterns.size(); index++) {
+            var pattern = patterns.get(index);
+            var state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                var slot = state * alphabetSize + symbols[pattern.charAt(i)];
+                if (transitions[slot] < 0) {
+                    transitions[slot] = states++;
+                }
+                state = transitions[slot];
+            }
+            if (output[state] < 0) {
+                output[state] = index;
+            }
+        }
+
+        //  Breadth-first, so a state's failure target is always complete before the state itself
+        var failure = new int[states];
+        var queue = new int[states];
+        int head = 0, tail = 0;
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            var next = transitions[symbol];
+            if (next < 0) {
+                transitions[symbol] = 0;
+            } else {
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            var state = queue[head++];
+            if (output[state] < 0) {
+                output[state] = output[failure[state]];
+            }
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                var slot = state * alphabetSize + symbol;
+                var fallback = transitions[failure[state] * alphabetSize + symbol];
+                if (transitions[slot] < 0) {
+                    transitions[slot] = fallback;
+                } else {
+                    failure[transitions[slot]] = fallback;
+                    queue[tail++] = transitions[slot];
+                }
+            }
+        }
+    }
+
+    //  Index of the pattern that completes first while scanning left to right, or -1
+    int firstMatch(CharSequence text) {
+        var state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            state = transitions[state * alphabetSize + (c < 128 ? symbols[c] : OTHER)];
+            if (output[state] >= 0) {
+                return output[state];
+            }
+        }
+        return -1;
+    }
+}
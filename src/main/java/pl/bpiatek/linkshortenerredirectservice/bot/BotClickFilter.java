@@ -0,0 +1,98 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+//  Decides, before a LinkClickEvent is built, whether a click goes to the analytics topic, to the
+//  cheaper bot topic or nowhere. Preview unfurls and health probes are noise analytics discards anyway;
+//  crawlers are sampled so their volume stays visible. Sampled clicks go to the analytics topic with a
+//  sample-weight of 1/sample-rate, as ClickSampler does, so weighted counts stay unbiased.
+public class BotClickFilter {
+
+    private static final BotClickFilter DISABLED = new BotClickFilter();
+
+    private final UserAgentClassifier classifier;
+    private final Map<UserAgentClass, Action> actions;
+    private final double sampleRate;
+    private final DoubleSupplier random;
+    private final String botTopic;
+    private final Counter[][] outcomes;
+
+    private BotClickFilter() {
+        this.classifier = null;
+        this.actions = Map.of();
+        this.sampleRate = 1.0;
+        this.random = () -> 0.0;
+        this.botTopic = null;
+        this.outcomes = null;
+    }
+
+    BotClickFilter(UserAgentClassifier classifier, Map<UserAgentClass, Action> actions, double sampleRate,
+                   String botTopic, DoubleSupplier random, MeterRegistry meterRegistry) {
+        this.classifier = classifier;
+        this.actions = new EnumMap<>(actions);
+        this.sampleRate = sampleRate;
+        this.botTopic = botTopic;
+        this.random = random;
+        this.outcomes = new Counter[UserAgentClass.values().length][Route.values().length];
+        for (var uaClass : UserAgentClass.values()) {
+            for (var route : Route.values()) {
+                outcomes[uaClass.ordinal()][route.ordinal()] = Counter.builder("redirect.clicks.classified")
+                        .description("Clicks by User-Agent class and where they were routed")
+                        .tag("class", uaClass.tagValue())
+                        .tag("route", route.tagValue())
+                        .register(meterRegistry);
+            }
+        }
+    }
+
+    public static BotClickFilter disabled() {
+        return DISABLED;
+    }
+
+    public Route route(String userAgent) {
+        if (classifier == null) {
+            return Route.PRIMARY;
+        }
+        var uaClass = classifier.classify(userAgent);
+        var route = switch (actions.getOrDefault(uaClass, Action.PUBLISH)) {
+            case PUBLISH -> Route.PRIMARY;
+            case REROUTE -> Route.BOT_STREAM;
+            case SAMPLE -> random.getAsDouble() < sampleRate ? Route.SAMPLED : Route.DROP;
+            case DROP -> Route.DROP;
+        };
+        outcomes[uaClass.ordinal()][route.ordinal()].increment();
+        return route;
+    }
+
+    public String botTopic() {
+        return botTopic;
+    }
+
+    //  How many clicks one SAMPLED click stands for
+    public double sampleWeight() {
+        return 1.0 / sampleRate;
+    }
+
+    public enum Action {
+        PUBLISH,
+        DROP,
+        SAMPLE,
+        REROUTE
+    }
+
+    public enum Route {
+        PRIMARY,
+        SAMPLED,
+        BOT_STREAM,
+        DROP;
+
+        String tagValue() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+}
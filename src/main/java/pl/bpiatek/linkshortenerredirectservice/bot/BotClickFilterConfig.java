@@ -0,0 +1,55 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Configuration
+@EnableConfigurationProperties(BotClickFilterConfig.BotClickProperties.class)
+class BotClickFilterConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(BotClickFilterConfig.class);
+
+    @Bean
+    BotClickFilter botClickFilter(BotClickProperties properties, MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return BotClickFilter.disabled();
+        }
+
+        var signatures = new EnumMap<>(UserAgentClassifier.DEFAULT_SIGNATURES);
+        signatures.putAll(properties.signatures());
+        var actions = new EnumMap<UserAgentClass, BotClickFilter.Action>(Map.of(
+                UserAgentClass.PREVIEW, BotClickFilter.Action.DROP,
+                UserAgentClass.MONITOR, BotClickFilter.Action.DROP,
+                UserAgentClass.CRAWLER, BotClickFilter.Action.SAMPLE));
+        actions.putAll(properties.actions());
+        if (actions.containsValue(BotClickFilter.Action.REROUTE) && properties.topic().isBlank()) {
+            throw new IllegalStateException("redirect.bots.topic is required when a class is rerouted");
+        }
+
+        log.info("Bot click filtering enabled: {}", actions);
+        var classifier = new UserAgentClassifier(signatures, properties.cacheSize(), meterRegistry);
+        return new BotClickFilter(classifier, actions, properties.sampleRate(), properties.topic(),
+                () -> ThreadLocalRandom.current().nextDouble(), meterRegistry);
+    }
+
+    //  signatures.<class> replaces the built-in list for that class; actions.<class> is publish|drop|sample|reroute
+    @ConfigurationProperties(prefix = "redirect.bots")
+    record BotClickProperties(@DefaultValue("false") boolean enabled,
+                              @DefaultValue("4096") int cacheSize,
+                              @DefaultValue("0.01") double sampleRate,
+                              @DefaultValue("") String topic,
+                              @DefaultValue Map<UserAgentClass, BotClickFilter.Action> actions,
+                              @DefaultValue Map<UserAgentClass, List<String>> signatures) {
+    }
+}
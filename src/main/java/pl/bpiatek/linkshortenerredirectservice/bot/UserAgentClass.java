@@ -0,0 +1,14 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+public enum UserAgentClass {
+    HUMAN,
+    //  Link unfurlers (Slack, X, Facebook, ...) fetching the target to render a preview
+    PREVIEW,
+    CRAWLER,
+    MONITOR,
+    MISSING;
+
+    String tagValue() {
+        return name().toLowerCase();
+    }
+}
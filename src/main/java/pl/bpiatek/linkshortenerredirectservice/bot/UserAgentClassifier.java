@@ -0,0 +1,93 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//  Classifies User-Agent headers by substring signatures, all matched in one AhoCorasick pass. A
+//  direct-mapped cache of recent headers sits in front: the same few browser builds and bots make up
+//  most traffic, and comparing against a cached string is cheaper than scanning it. Collisions simply
+//  overwrite, so the cache never grows or needs locking.
+public class UserAgentClassifier {
+
+    public static final Map<UserAgentClass, List<String>> DEFAULT_SIGNATURES = Map.of(
+            UserAgentClass.PREVIEW, List.of("slackbot", "slack-imgproxy", "twitterbot", "facebookexternalhit",
+                    "facebookcatalog", "linkedinbot", "discordbot", "telegrambot", "whatsapp", "skypeuripreview",
+                    "pinterestbot", "redditbot", "embedly", "iframely", "mastodon", "vkshare", "viber"),
+            UserAgentClass.CRAWLER, List.of("googlebot", "bingbot", "yandexbot", "baiduspider", "duckduckbot",
+                    "applebot", "ahrefsbot", "semrushbot", "mj12bot", "petalbot", "dotbot", "gptbot", "ccbot",
+                    "bytespider", "crawler", "spider"),
+            UserAgentClass.MONITOR, List.of("uptimerobot", "pingdom", "statuscake", "site24x7", "newrelicpinger",
+                    "datadog", "kube-probe", "elb-healthchecker", "googlehc", "betteruptime", "checkly"));
+
+    //  Longer headers are scanned every time rather than pinned in the cache
+    private static final int MAX_CACHED_LENGTH = 512;
+
+    private final AhoCorasick matcher;
+    private final UserAgentClass[] classOfPattern;
+    private final AtomicReferenceArray<Classified> cache;
+    private final int cacheMask;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    UserAgentClassifier(Map<UserAgentClass, List<String>> signatures, int cacheSize, MeterRegistry meterRegistry) {
+        if (cacheSize < 1 || Integer.bitCount(cacheSize) != 1) {
+            throw new IllegalArgumentException("Cache size must be a power of two: " + cacheSize);
+        }
+        var patterns = new ArrayList<String>();
+        var classes = new ArrayList<UserAgentClass>();
+        new EnumMap<>(signatures).forEach((uaClass, list) -> list.forEach(signature -> {
+            patterns.add(signature);
+            classes.add(uaClass);
+        }));
+        this.matcher = new AhoCorasick(patterns);
+        this.classOfPattern = classes.toArray(UserAgentClass[]::new);
+        this.cache = new AtomicReferenceArray<>(cacheSize);
+        this.cacheMask = cacheSize - 1;
+        this.cacheHits = Counter.builder("redirect.useragent.cache")
+                .description("User-Agent classifications served from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.cacheMisses = Counter.builder("redirect.useragent.cache")
+                .description("User-Agent classifications served from the cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public static UserAgentClassifier defaults(int cacheSize, MeterRegistry meterRegistry) {
+        return new UserAgentClassifier(DEFAULT_SIGNATURES, cacheSize, meterRegistry);
+    }
+
+    public UserAgentClass classify(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return UserAgentClass.MISSING;
+        }
+        if (userAgent.length() > MAX_CACHED_LENGTH) {
+            return scan(userAgent);
+        }
+        var hash = userAgent.hashCode();
+        var slot = (hash ^ (hash >>> 16)) & cacheMask;
+        var cached = cache.get(slot);
+        if (cached != null && cached.userAgent.equals(userAgent)) {
+            cacheHits.increment();
+            return cached.uaClass;
+        }
+        cacheMisses.increment();
+        var uaClass = scan(userAgent);
+        cache.set(slot, new Classified(userAgent, uaClass));
+        return uaClass;
+    }
+
+    private UserAgentClass scan(String userAgent) {
+        var pattern = matcher.firstMatch(userAgent);
+        return pattern < 0 ? UserAgentClass.HUMAN : classOfPattern[pattern];
+    }
+
+    private record Classified(String userAgent, UserAgentClass uaClass) {
+    }
+}
@@ -0,0 +1,87 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+public final class CaptureReader {
+
+    private CaptureReader() {
+    }
+
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().matches("capture-\\d{13}-\\d{6}\\.bin"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    //  Streams every record of every segment in capture order, mapping one segment at a time
+    public static Iterator<CaptureRecord> iterator(Path directory) throws IOException {
+        var segments = segments(directory).iterator();
+        return new Iterator<>() {
+            private ByteBuffer buffer;
+            private CaptureRecord next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (buffer != null && (next = CaptureRecord.readFrom(buffer)) != null) {
+                        return true;
+                    }
+                    if (!segments.hasNext()) {
+                        return false;
+                    }
+                    buffer = open(segments.next());
+                }
+                return true;
+            }
+
+            @Override
+            public CaptureRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var record = next;
+                next = null;
+                return record;
+            }
+        };
+    }
+
+    public static long forEach(Path directory, Consumer<CaptureRecord> consumer) throws IOException {
+        long count = 0;
+        for (var records = iterator(directory); records.hasNext(); count++) {
+            consumer.accept(records.next());
+        }
+        return count;
+    }
+
+    private static ByteBuffer open(Path segment) {
+        try (var channel = FileChannel.open(segment, READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < RollingCaptureLog.HEADER_SIZE
+                    || buffer.getInt() != RollingCaptureLog.MAGIC
+                    || buffer.getShort() != RollingCaptureLog.VERSION) {
+                throw new IllegalStateException("Not a version " + RollingCaptureLog.VERSION + " capture segment: " + segment);
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read capture segment " + segment, e);
+        }
+    }
+}
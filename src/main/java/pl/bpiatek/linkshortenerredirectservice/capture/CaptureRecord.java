@@ -0,0 +1,74 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  One sampled redirect. Client IP and User-Agent are kept only as keyed hashes so a capture can
+//  leave the cluster; the header shape keeps which forwarding headers were present and how many hops.
+public record CaptureRecord(long epochMicros,
+                            String shortUrl,
+                            int headerShape,
+                            int forwardedHops,
+                            int clientIpHash,
+                            long userAgentHash) {
+
+    public static final int FORWARDED_FOR = 1;
+    public static final int CF_CONNECTING_IP = 1 << 1;
+    public static final int IPV6 = 1 << 2;
+    public static final int USER_AGENT = 1 << 3;
+
+    //  u16 frame length, i64 micros, u8 shape, u8 hops, i32 ip hash, i64 ua hash, u8 code length, code
+    private static final int FIXED_SIZE = 8 + 1 + 1 + 4 + 8 + 1;
+    static final int MAX_SHORT_URL_BYTES = 255;
+
+    public boolean has(int flag) {
+        return (headerShape & flag) != 0;
+    }
+
+    int frameSize(byte[] shortUrlBytes) {
+        return Short.BYTES + FIXED_SIZE + shortUrlBytes.length;
+    }
+
+    byte[] shortUrlBytes() {
+        var bytes = shortUrl.getBytes(UTF_8);
+        if (bytes.length > MAX_SHORT_URL_BYTES) {
+            throw new IllegalArgumentException("Short URL too long to capture: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    void writeTo(ByteBuffer buffer, byte[] shortUrlBytes) {
+        buffer.putShort((short) (FIXED_SIZE + shortUrlBytes.length));
+        buffer.putLong(epochMicros);
+        buffer.put((byte) headerShape);
+        buffer.put((byte) Math.min(forwardedHops, 255));
+        buffer.putInt(clientIpHash);
+        buffer.putLong(userAgentHash);
+        buffer.put((byte) shortUrlBytes.length);
+        buffer.put(shortUrlBytes);
+    }
+
+    //  Returns null at the zero-filled tail of a segment
+    static CaptureRecord readFrom(ByteBuffer buffer) {
+        if (buffer.remaining() < Short.BYTES) {
+            return null;
+        }
+        var length = Short.toUnsignedInt(buffer.getShort());
+        if (length == 0) {
+            return null;
+        }
+        if (length < FIXED_SIZE || length > buffer.remaining()) {
+            throw new IllegalStateException("Corrupted capture frame of length " + length + " at " + buffer.position());
+        }
+        var epochMicros = buffer.getLong();
+        var shape = Byte.toUnsignedInt(buffer.get());
+        var hops = Byte.toUnsignedInt(buffer.get());
+        var ipHash = buffer.getInt();
+        var uaHash = buffer.getLong();
+        var codeLength = Byte.toUnsignedInt(buffer.get());
+        var code = new byte[codeLength];
+        buffer.get(code);
+        return new CaptureRecord(epochMicros, new String(code, UTF_8), shape, hops, ipHash, uaHash);
+    }
+}
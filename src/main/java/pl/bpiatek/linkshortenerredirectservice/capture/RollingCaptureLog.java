@@ -0,0 +1,146 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+//  Appends frames to fixed-size memory-mapped segment files and keeps at most maxSegments of them,
+//  deleting the oldest. Segments are zero-filled by the mapping, so an unfinished one simply ends
+//  at the first zero-length frame.
+//
+//  Appends run on redirect threads, so a roll only swaps in a spare segment that a background thread
+//  created (header included) ahead of time; that thread also deletes the segments beyond the limit.
+//  Only when segments fill faster than it can prepare them does a roll create one itself. Segments
+//  are never forced to disk: capture is diagnostics, and the OS writes the mapped pages back anyway.
+final class RollingCaptureLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RollingCaptureLog.class);
+
+    static final int MAGIC = 0x52444350;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxSegments;
+    private final Deque<Path> segments = new ConcurrentLinkedDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService roller = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("capture-roller").factory());
+    private final AtomicReference<Segment> spare = new AtomicReference<>();
+
+    private MappedByteBuffer current;
+
+    RollingCaptureLog(Path directory, long segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size out of range: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSegments, 1);
+        this.segments.addAll(CaptureReader.segments(directory));
+        roller.execute(this::prepareSpare);
+    }
+
+    void append(CaptureRecord record) {
+        var shortUrlBytes = record.shortUrlBytes();
+        var frameSize = record.frameSize(shortUrlBytes);
+        lock.lock();
+        try {
+            if (current == null || current.remaining() < frameSize + Short.BYTES) {
+                roll();
+            }
+            record.writeTo(current, shortUrlBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void roll() {
+        var next = spare.getAndSet(null);
+        if (next == null) {
+            next = newSegment();
+        }
+        current = next.buffer();
+        segments.addLast(next.path());
+        roller.execute(() -> {
+            deleteOldest();
+            prepareSpare();
+        });
+    }
+
+    private void prepareSpare() {
+        if (spare.get() != null) {
+            return;
+        }
+        try {
+            spare.set(newSegment());
+        } catch (UncheckedIOException e) {
+            log.warn("Cannot prepare the next capture segment: {}", e.getMessage());
+        }
+    }
+
+    private void deleteOldest() {
+        while (segments.size() > maxSegments) {
+            var oldest = segments.pollFirst();
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (IOException e) {
+                log.warn("Cannot delete capture segment {}: {}", oldest, e.getMessage());
+            }
+        }
+    }
+
+    private Segment newSegment() {
+        var path = directory.resolve("capture-%013d-%06d.bin".formatted(System.currentTimeMillis(), sequence.getAndIncrement()));
+        try (var channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            return new Segment(path, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create capture segment " + path, e);
+        }
+    }
+
+    //  Waits for pending deletions and removes the unused spare, so only written segments remain
+    @Override
+    public void close() {
+        roller.close();
+        var unused = spare.getAndSet(null);
+        if (unused != null) {
+            try {
+                Files.deleteIfExists(unused.path());
+            } catch (IOException e) {
+                log.warn("Cannot delete unused capture segment {}: {}", unused.path(), e.getMessage());
+            }
+        }
+        lock.lock();
+        try {
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record Segment(Path path, MappedByteBuffer buffer) {
+    }
+}
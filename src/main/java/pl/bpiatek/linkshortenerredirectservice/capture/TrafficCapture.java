@@ -0,0 +1,118 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class TrafficCapture implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TrafficCapture.class);
+    private static final String HMAC = "HmacSHA256";
+    private static final int SECRET_BYTES = 32;
+
+    private final RollingCaptureLog captureLog;
+    private final double sampleRate;
+    private final Clock clock;
+    private final Mac hmac;
+
+    TrafficCapture(RollingCaptureLog captureLog, double sampleRate, Clock clock) {
+        this.captureLog = captureLog;
+        this.sampleRate = sampleRate;
+        this.clock = clock;
+        this.hmac = captureLog != null ? newHmac() : null;
+    }
+
+    public static TrafficCapture disabled() {
+        return new TrafficCapture(null, 0.0, Clock.systemUTC());
+    }
+
+    public void record(String shortUrl, String clientIp, HttpServletRequest request) {
+        if (captureLog == null || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        //  Capture is diagnostics only and must never fail a redirect
+        try {
+            captureLog.append(toRecord(shortUrl, clientIp, request));
+        } catch (RuntimeException e) {
+            log.warn("Failed to capture redirect for {}: {}", shortUrl, e.getMessage());
+        }
+    }
+
+    private CaptureRecord toRecord(String shortUrl, String clientIp, HttpServletRequest request) {
+        var now = clock.instant();
+        var forwardedFor = request.getHeader("X-Forwarded-For");
+        var userAgent = request.getHeader(HttpHeaders.USER_AGENT);
+
+        var shape = 0;
+        var hops = 0;
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            shape |= CaptureRecord.FORWARDED_FOR;
+            hops = 1;
+            for (int i = 0; i < forwardedFor.length(); i++) {
+                if (forwardedFor.charAt(i) == ',') {
+                    hops++;
+                }
+            }
+        }
+        if (request.getHeader("CF-Connecting-IP") != null) {
+            shape |= CaptureRecord.CF_CONNECTING_IP;
+        }
+        if (clientIp != null && clientIp.indexOf(':') >= 0) {
+            shape |= CaptureRecord.IPV6;
+        }
+        if (userAgent != null) {
+            shape |= CaptureRecord.USER_AGENT;
+        }
+
+        return new CaptureRecord(
+                now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000,
+                shortUrl,
+                shape,
+                hops,
+                (int) (hash(clientIp) >>> 32),
+                userAgent != null ? hash(userAgent) : 0L);
+    }
+
+    //  Truncated HMAC-SHA256 under a secret drawn per capture and never written out, so hashes stay
+    //  consistent within one capture (replay can tell clients apart) but cannot be reversed by
+    //  hashing candidate IPs, nor joined across captures
+    private long hash(String value) {
+        try {
+            var mac = (Mac) hmac.clone();
+            return ByteBuffer.wrap(mac.doFinal((value != null ? value : "").getBytes(UTF_8))).getLong();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Mac newHmac() {
+        var secret = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(secret);
+        try {
+            var mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + HMAC + " for traffic capture", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (captureLog != null) {
+            captureLog.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+
+@Configuration
+@EnableConfigurationProperties(TrafficCaptureConfig.TrafficCaptureProperties.class)
+class TrafficCaptureConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(TrafficCaptureConfig.class);
+
+    @Bean(destroyMethod = "close")
+    TrafficCapture trafficCapture(TrafficCaptureProperties properties, Clock clock) throws IOException {
+        if (!properties.enabled()) {
+            return TrafficCapture.disabled();
+        }
+
+        log.info("Traffic capture enabled: sampling {} of redirects into {}", properties.sampleRate(), properties.directory());
+        var captureLog = new RollingCaptureLog(
+                properties.directory(),
+                properties.segmentSize().toBytes(),
+                properties.maxSegments());
+        return new TrafficCapture(captureLog, properties.sampleRate(), clock);
+    }
+
+    @ConfigurationProperties(prefix = "redirect.capture")
+    record TrafficCaptureProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("0.01") double sampleRate,
+                                    @DefaultValue("/tmp/redirect-capture") Path directory,
+                                    @DefaultValue("64MB") DataSize segmentSize,
+                                    @DefaultValue("8") int maxSegments) {
+    }
+}
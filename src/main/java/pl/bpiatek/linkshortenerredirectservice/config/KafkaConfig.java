@@ -13,10 +13,12 @@ import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
@@ -26,6 +28,8 @@ import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
 import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
 import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkLifecycleEvent;
 
@@ -43,7 +47,9 @@ class KafkaConfig {
         this.kafkaProperties = kafkaProperties;
     }
 
+    //  Only the health indicator uses it; created on the first health check rather than during startup
     @Bean
+    @Lazy
     AdminClient kafkaAdminClient(KafkaAdmin kafkaAdmin) {
         return AdminClient.create(kafkaAdmin.getConfigurationProperties());
     }
@@ -96,6 +102,27 @@ class KafkaConfig {
         return factory;
     }
 
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, LinkLifecycleEvent> linkLifecycleEventsBatchContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<String, LinkLifecycleEvent> linkLifecycleEventConsumerFactory,
+            ObjectProvider<ConsumerAwareRebalanceListener> rebalanceListener) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, LinkLifecycleEvent>();
+
+        configurer.configure(
+                (ConcurrentKafkaListenerContainerFactory) factory,
+                (ConsumerFactory) linkLifecycleEventConsumerFactory
+        );
+
+        //  The key-ordered listener commits offsets itself, once every earlier record of the partition is applied
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(1000L);
+        rebalanceListener.ifAvailable(factory.getContainerProperties()::setConsumerRebalanceListener);
+
+        return factory;
+    }
+
     private void putSchemaRegistryUrl(Map<String, Object> props) {
         var registryUrl = kafkaProperties.getProperties().get("schema.registry.url");
         if (registryUrl != null) {
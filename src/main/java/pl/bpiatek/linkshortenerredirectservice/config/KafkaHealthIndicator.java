@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.TimeUnit;
@@ -16,7 +17,7 @@ class KafkaHealthIndicator implements HealthIndicator {
     private static final Logger log = LoggerFactory.getLogger(KafkaHealthIndicator.class);
     private final AdminClient adminClient;
 
-    KafkaHealthIndicator(AdminClient adminClient) {
+    KafkaHealthIndicator(@Lazy AdminClient adminClient) {
         this.adminClient = adminClient;
     }
 
@@ -2,6 +2,7 @@ package pl.bpiatek.linkshortenerredirectservice.config;
 
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 
@@ -9,7 +10,7 @@ import org.springframework.web.client.RestClient;
 class VaultHealthIndicator implements HealthIndicator {
     private final RestClient vaultRestClient;
 
-    VaultHealthIndicator(RestClient vaultRestClient) {
+    VaultHealthIndicator(@Lazy RestClient vaultRestClient) {
         this.vaultRestClient = vaultRestClient;
     }
 
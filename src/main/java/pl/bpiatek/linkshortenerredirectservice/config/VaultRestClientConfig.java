@@ -3,6 +3,7 @@ package pl.bpiatek.linkshortenerredirectservice.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
@@ -14,6 +15,7 @@ import java.time.Duration;
 class VaultRestClientConfig {
 
     @Bean
+    @Lazy
     RestClient vaultRestClient(RestClient.Builder builder,
                                @Value("${vault.address:http://vault.vault.svc.cluster.local:8200}") String vaultAddress) {
         var httpClient = HttpClient.newBuilder()
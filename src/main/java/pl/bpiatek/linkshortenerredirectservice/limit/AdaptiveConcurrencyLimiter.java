@@ -0,0 +1,73 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Admits at most `limit` concurrent redirects that need remote I/O, with the limit learned from
+//  observed latency by Gradient2Limit. Rejections are immediate so that overload turns into cheap 503s
+//  instead of queueing on Redis and Kafka.
+public class AdaptiveConcurrencyLimiter {
+
+    private static final AdaptiveConcurrencyLimiter DISABLED = new AdaptiveConcurrencyLimiter();
+
+    private final Gradient2Limit algorithm;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final String retryAfterSeconds;
+    private final Counter rejected;
+    private volatile int limit;
+
+    private AdaptiveConcurrencyLimiter() {
+        this.algorithm = null;
+        this.retryAfterSeconds = null;
+        this.rejected = null;
+        this.limit = Integer.MAX_VALUE;
+    }
+
+    AdaptiveConcurrencyLimiter(Gradient2Limit algorithm, Duration retryAfter, MeterRegistry meterRegistry) {
+        this.algorithm = algorithm;
+        this.limit = algorithm.limit();
+        this.retryAfterSeconds = String.valueOf(Math.max(1, retryAfter.toSeconds()));
+        this.rejected = Counter.builder("redirect.concurrency.rejected")
+                .description("Redirects rejected with 503 because the concurrency limit was reached")
+                .register(meterRegistry);
+        Gauge.builder("redirect.concurrency.limit", this, limiter -> limiter.limit).register(meterRegistry);
+        Gauge.builder("redirect.concurrency.in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    public static AdaptiveConcurrencyLimiter disabled() {
+        return DISABLED;
+    }
+
+    public boolean tryAcquire() {
+        if (algorithm == null) {
+            return true;
+        }
+        while (true) {
+            var current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    //  startNanos is the System.nanoTime() taken right after a successful tryAcquire()
+    public void release(long startNanos) {
+        if (algorithm == null) {
+            return;
+        }
+        var current = inFlight.getAndDecrement();
+        limit = algorithm.onSample(System.nanoTime() - startNanos, current);
+    }
+
+    public String retryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
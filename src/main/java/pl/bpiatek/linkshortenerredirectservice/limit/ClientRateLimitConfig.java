@@ -0,0 +1,50 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+
+import java.time.Clock;
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(ClientRateLimitConfig.ClientRateLimitProperties.class)
+class ClientRateLimitConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientRateLimitConfig.class);
+
+    @Bean
+    ClientRateLimiter clientRateLimiter(ClientRateLimitProperties properties, Clock clock, MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return ClientRateLimiter.disabled();
+        }
+
+        var rules = properties.rules().stream()
+                .map(rule -> new ClientRateLimiter.Rule(CidrBlock.parse(rule.cidr()),
+                        new ClientRateLimiter.Limit(rule.rate(), rule.burst())))
+                .toList();
+        log.info("Client rate limit enabled: {}/s burst {} by default, {} CIDR rules, {} slots per rule",
+                properties.rate(), properties.burst(), rules.size(), properties.tableWidth() * 2);
+        return new ClientRateLimiter(new ClientRateLimiter.Limit(properties.rate(), properties.burst()), rules,
+                properties.tableWidth(), properties.topClients(), clock::millis, meterRegistry);
+    }
+
+    //  redirect.ratelimit.rules[0].cidr=10.0.0.0/8 with rate=0 exempts a block; table-width must be a power of two
+    @ConfigurationProperties(prefix = "redirect.ratelimit")
+    record ClientRateLimitProperties(@DefaultValue("false") boolean enabled,
+                                     @DefaultValue("20") double rate,
+                                     @DefaultValue("40") int burst,
+                                     @DefaultValue("65536") int tableWidth,
+                                     @DefaultValue("50") int topClients,
+                                     @DefaultValue List<RuleProperties> rules) {
+
+        record RuleProperties(String cidr, double rate, @DefaultValue("40") int burst) {
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//  GET lists the most throttled client IPs (approximate, see ThrottledClients)
+@Component
+@Endpoint(id = "ratelimit")
+class ClientRateLimitEndpoint {
+
+    private final ClientRateLimiter rateLimiter;
+
+    ClientRateLimitEndpoint(ClientRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @ReadOperation
+    public List<ClientRateLimiter.ThrottledClient> topThrottled(@Nullable Integer limit) {
+        return rateLimiter.topThrottled(limit == null ? 20 : limit);
+    }
+}
@@ -0,0 +1,133 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrTrie;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+//  Per-client token buckets keyed by the address ClientIpExtractor resolved. The decision is pure
+//  memory work on a fixed-size TokenBucketTable per rule, so a throttled client costs a 429 and
+//  nothing else. Rules are matched by longest prefix in a CidrTrie, and a rule with a non-positive rate exempts its
+//  block (health checkers, internal callers).
+public class ClientRateLimiter {
+
+    private static final ClientRateLimiter DISABLED = new ClientRateLimiter();
+    private static final int DEPTH = 2;
+
+    private final CidrTrie<Tier> tiers;
+    private final Tier defaultTier;
+    private final ThrottledClients throttledClients;
+
+    private ClientRateLimiter() {
+        this.tiers = null;
+        this.defaultTier = null;
+        this.throttledClients = null;
+    }
+
+    public ClientRateLimiter(Limit defaultLimit, List<Rule> rules, int tableWidth, int topClients,
+                             LongSupplier millis, MeterRegistry meterRegistry) {
+        this.defaultTier = new Tier("default", defaultLimit, tableWidth, millis, meterRegistry);
+        var tiersByBlock = new LinkedHashMap<CidrBlock, Tier>();
+        rules.forEach(rule -> tiersByBlock.put(rule.block(),
+                new Tier(rule.block().toString(), rule.limit(), tableWidth, millis, meterRegistry)));
+        this.tiers = CidrTrie.of(tiersByBlock);
+        this.throttledClients = new ThrottledClients(topClients);
+    }
+
+    public static ClientRateLimiter disabled() {
+        return DISABLED;
+    }
+
+    public boolean tryAcquire(String clientIp) {
+        if (defaultTier == null) {
+            return true;
+        }
+        var address = new IpAddress();
+        address.parse(clientIp);
+        return tryAcquire(clientIp, address);
+    }
+
+    //  address is clientIp already parsed, as ClientIpExtractor leaves it; an invalid one falls back to
+    //  the default rule keyed by the string
+    public boolean tryAcquire(String clientIp, IpAddress address) {
+        if (defaultTier == null) {
+            return true;
+        }
+        var parsed = address.isValid();
+        var tier = parsed ? tierFor(address) : defaultTier;
+        if (tier.table == null) {
+            return true;
+        }
+        var keyHash = parsed ? address.high() * 0x9e37_79b9_7f4a_7c15L ^ address.low() : clientIp.hashCode();
+        if (tier.table.tryAcquire(keyHash)) {
+            return true;
+        }
+        tier.throttled.increment();
+        throttledClients.record(clientIp, tier.name);
+        return false;
+    }
+
+    public String retryAfterSeconds(String clientIp) {
+        var address = new IpAddress();
+        address.parse(clientIp);
+        return retryAfterSeconds(address);
+    }
+
+    //  Time until the rule that applies to the client, which is the one that rejected it, grants a token
+    public String retryAfterSeconds(IpAddress address) {
+        if (defaultTier == null) {
+            return null;
+        }
+        var tier = address.isValid() ? tierFor(address) : defaultTier;
+        return tier.retryAfterSeconds != null ? tier.retryAfterSeconds : defaultTier.retryAfterSeconds;
+    }
+
+    public List<ThrottledClient> topThrottled(int limit) {
+        return throttledClients == null ? List.of() : throttledClients.top(limit);
+    }
+
+    private Tier tierFor(IpAddress address) {
+        var tier = tiers.longestMatch(address);
+        return tier != null ? tier : defaultTier;
+    }
+
+    public record Limit(double ratePerSecond, int burst) {
+
+        boolean unlimited() {
+            return ratePerSecond <= 0;
+        }
+    }
+
+    public record Rule(CidrBlock block, Limit limit) {
+    }
+
+    //  count includes up to `error` throttles that belonged to clients evicted from the top list
+    public record ThrottledClient(String clientIp, String rule, long count, long error) {
+    }
+
+    private static final class Tier {
+        private final String name;
+        private final TokenBucketTable table;
+        private final String retryAfterSeconds;
+        private final Counter throttled;
+
+        private Tier(String name, Limit limit, int tableWidth, LongSupplier millis, MeterRegistry meterRegistry) {
+            this.name = name;
+            this.table = limit.unlimited()
+                    ? null
+                    : new TokenBucketTable(tableWidth, DEPTH, limit.ratePerSecond(), limit.burst(), millis);
+            this.retryAfterSeconds = limit.unlimited()
+                    ? null
+                    : String.valueOf(Math.max(1, (long) Math.ceil(1 / limit.ratePerSecond())));
+            this.throttled = Counter.builder("redirect.ratelimit.throttled")
+                    .description("Redirects rejected with 429 by the per-client rate limit")
+                    .tag("rule", name)
+                    .register(meterRegistry);
+        }
+    }
+}
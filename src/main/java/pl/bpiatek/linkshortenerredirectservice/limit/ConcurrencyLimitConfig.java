@@ -0,0 +1,28 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+class ConcurrencyLimitConfig {
+
+    @Bean
+    AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                                          @Value("${redirect.concurrency.enabled:false}") boolean enabled,
+                                                          @Value("${redirect.concurrency.initial-limit:100}") int initialLimit,
+                                                          @Value("${redirect.concurrency.min-limit:20}") int minLimit,
+                                                          @Value("${redirect.concurrency.max-limit:2000}") int maxLimit,
+                                                          @Value("${redirect.concurrency.smoothing:0.2}") double smoothing,
+                                                          @Value("${redirect.concurrency.tolerance:1.5}") double tolerance,
+                                                          @Value("${redirect.concurrency.retry-after:1s}") Duration retryAfter) {
+        if (!enabled) {
+            return AdaptiveConcurrencyLimiter.disabled();
+        }
+        return new AdaptiveConcurrencyLimiter(new Gradient2Limit(initialLimit, minLimit, maxLimit, smoothing, tolerance),
+                retryAfter, meterRegistry);
+    }
+}
@@ -0,0 +1,66 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+//  Gradient-based concurrency limit: compares a short-term latency average with a long-term one. While
+//  they agree the limit grows by roughly sqrt(limit) per sample; once short-term latency rises above
+//  tolerance times the baseline, the limit shrinks proportionally (at most halving per step).
+final class Gradient2Limit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final ExponentialAverage shortRtt = new ExponentialAverage(10);
+    private final ExponentialAverage longRtt = new ExponentialAverage(600);
+    private double estimatedLimit;
+
+    Gradient2Limit(int initialLimit, int minLimit, int maxLimit, double smoothing, double tolerance) {
+        this.estimatedLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+    }
+
+    synchronized int onSample(long rttNanos, int inFlight) {
+        var shortAverage = shortRtt.add(rttNanos);
+        var longAverage = longRtt.add(rttNanos);
+
+        //  After a sustained latency drop, pull the baseline down quickly instead of waiting 600 samples
+        if (longAverage / shortAverage > 2) {
+            longRtt.scale(0.95);
+        }
+        //  Nothing to learn while the application does not use the limit it has
+        if (inFlight < estimatedLimit / 2) {
+            return (int) estimatedLimit;
+        }
+
+        var gradient = Math.max(0.5, Math.min(1.0, tolerance * longAverage / shortAverage));
+        var newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        return (int) estimatedLimit;
+    }
+
+    synchronized int limit() {
+        return (int) estimatedLimit;
+    }
+
+    private static final class ExponentialAverage {
+
+        private final double alpha;
+        private double value = Double.NaN;
+
+        private ExponentialAverage(int window) {
+            this.alpha = 2.0 / (window + 1);
+        }
+
+        private double add(double sample) {
+            value = Double.isNaN(value) ? sample : value + alpha * (sample - value);
+            return value;
+        }
+
+        private void scale(double factor) {
+            value *= factor;
+        }
+    }
+}
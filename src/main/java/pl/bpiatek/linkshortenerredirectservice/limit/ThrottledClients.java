@@ -0,0 +1,66 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//  Space-Saving heavy hitters over throttled client IPs: `capacity` counters, and a new client evicts
+//  the smallest one and inherits its count (reported as `error`). Any client throttled more than
+//  total / capacity times is guaranteed to be listed. Only rejected requests reach this, so the
+//  monitor lock is off the admitted path.
+final class ThrottledClients {
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+
+    ThrottledClients(int capacity) {
+        this.capacity = capacity;
+        this.entries = new HashMap<>(capacity * 2);
+    }
+
+    synchronized void record(String clientIp, String rule) {
+        var entry = entries.get(clientIp);
+        if (entry != null) {
+            entry.count++;
+            entry.rule = rule;
+            return;
+        }
+        if (entries.size() < capacity) {
+            entries.put(clientIp, new Entry(clientIp, rule, 1, 0));
+            return;
+        }
+        Entry smallest = null;
+        for (var candidate : entries.values()) {
+            if (smallest == null || candidate.count < smallest.count) {
+                smallest = candidate;
+            }
+        }
+        entries.remove(smallest.clientIp);
+        entries.put(clientIp, new Entry(clientIp, rule, smallest.count + 1, smallest.count));
+    }
+
+    synchronized List<ClientRateLimiter.ThrottledClient> top(int limit) {
+        var sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong((Entry entry) -> entry.count).reversed());
+        return sorted.stream()
+                .limit(limit)
+                .map(entry -> new ClientRateLimiter.ThrottledClient(entry.clientIp, entry.rule, entry.count, entry.error))
+                .toList();
+    }
+
+    private static final class Entry {
+        private final String clientIp;
+        private String rule;
+        private long count;
+        private final long error;
+
+        private Entry(String clientIp, String rule, long count, long error) {
+            this.clientIp = clientIp;
+            this.rule = rule;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
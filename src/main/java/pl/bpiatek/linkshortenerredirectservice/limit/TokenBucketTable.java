@@ -0,0 +1,79 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+//  Fixed-size table of token buckets shared by every client, indexed like a count-min sketch: each
+//  key maps to one slot in each of `depth` rows and its balance is the best of those slots. Colliding
+//  clients can only make each other look busier, never less busy, and a client is only wrongly
+//  throttled if it collides with heavy hitters in every row.
+//
+//  A slot packs the bucket's debt in milli-tokens (high 32 bits) with the low 32 bits of the last
+//  update time in millis. Debt drains at `rate` per second, so an all-zero slot is a full bucket and
+//  the table never needs initialising or sweeping; memory is width * depth * 8 bytes regardless of
+//  how many clients show up.
+final class TokenBucketTable {
+
+    private static final long TOKEN = 1000;
+
+    private final AtomicLongArray slots;
+    private final int depth;
+    private final int mask;
+    private final double milliTokensPerMilli;
+    private final long capacity;
+    private final LongSupplier millis;
+
+    TokenBucketTable(int width, int depth, double ratePerSecond, int burst, LongSupplier millis) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("Table width must be a power of two: " + width);
+        }
+        if (depth < 1 || ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Depth, rate and burst must be positive");
+        }
+        this.slots = new AtomicLongArray(width * depth);
+        this.depth = depth;
+        this.mask = width - 1;
+        this.milliTokensPerMilli = ratePerSecond;
+        this.capacity = (long) burst * TOKEN;
+        this.millis = millis;
+    }
+
+    boolean tryAcquire(long keyHash) {
+        var now = millis.getAsLong();
+        var lowestDebt = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            lowestDebt = Math.min(lowestDebt, drained(slots.get(index(keyHash, row)), now));
+        }
+        if (lowestDebt + TOKEN > capacity) {
+            return false;
+        }
+        for (int row = 0; row < depth; row++) {
+            var index = index(keyHash, row);
+            while (true) {
+                var packed = slots.get(index);
+                var debt = Math.min(drained(packed, now) + TOKEN, capacity);
+                if (slots.compareAndSet(index, packed, (debt << 32) | (now & 0xffff_ffffL))) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long drained(long packed, long now) {
+        var debt = packed >>> 32;
+        if (debt == 0) {
+            return 0;
+        }
+        //  Unsigned 32-bit difference survives the timestamp wrapping every ~49 days
+        var elapsed = (now - packed) & 0xffff_ffffL;
+        return Math.max(0, debt - (long) (elapsed * milliTokensPerMilli));
+    }
+
+    private int index(long keyHash, int row) {
+        var h = keyHash + row * 0x9e37_79b9_7f4a_7c15L;
+        h = (h ^ (h >>> 33)) * 0xff51_afd7_ed55_8ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ce_b9fe_1a85_ec53L;
+        return row * (mask + 1) + (int) ((h ^ (h >>> 33)) & mask);
+    }
+}
@@ -0,0 +1,163 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+//  Bounds how long a redirect waits for Redis. Every successful read refreshes a last-known-good copy;
+//  when the budget runs out, the read fails or the breaker is open, that copy is served as stale and a
+//  background read refreshes it. Links with no retained copy fail with CacheUnavailableException.
+public class BudgetedCacheReader implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BudgetedCacheReader.class);
+    private static final BudgetedCacheReader DISABLED = new BudgetedCacheReader();
+
+    private final long budgetNanos;
+    private final CircuitBreaker breaker;
+    private final LocalRedirectCache lastKnownGood;
+    private final ExecutorService executor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final Counter overruns;
+    private final Counter staleServed;
+    private final Counter unavailable;
+
+    private BudgetedCacheReader() {
+        this.budgetNanos = 0;
+        this.breaker = null;
+        this.lastKnownGood = null;
+        this.executor = null;
+        this.overruns = null;
+        this.staleServed = null;
+        this.unavailable = null;
+    }
+
+    BudgetedCacheReader(Duration budget, CircuitBreaker breaker, int maxRetained, MeterRegistry meterRegistry) {
+        this.budgetNanos = budget.toNanos();
+        this.breaker = breaker;
+        this.lastKnownGood = new LocalRedirectCache(maxRetained);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("budgeted-read-", 0).factory());
+        this.overruns = Counter.builder("redirect.cache.budget.overruns")
+                .description("Cache reads that did not answer within the latency budget")
+                .register(meterRegistry);
+        this.staleServed = Counter.builder("redirect.cache.stale.served")
+                .description("Redirects served from the last-known-good copy")
+                .register(meterRegistry);
+        this.unavailable = Counter.builder("redirect.cache.unavailable")
+                .description("Redirects failed because Redis was unavailable and no copy was retained")
+                .register(meterRegistry);
+        Gauge.builder("redirect.cache.breaker.state", breaker, b -> b.state().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+        Gauge.builder("redirect.cache.stale.retained", lastKnownGood, LocalRedirectCache::size).register(meterRegistry);
+    }
+
+    public static BudgetedCacheReader disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return executor != null;
+    }
+
+    Optional<RedirectInfo> read(String shortUrl, Function<String, Optional<RedirectInfo>> loader) {
+        if (!breaker.tryAcquire()) {
+            return serveStale(shortUrl, loader, true);
+        }
+
+        var future = CompletableFuture.supplyAsync(() -> loader.apply(shortUrl), executor);
+        try {
+            var result = future.get(budgetNanos, TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+            remember(shortUrl, result);
+            return result;
+        } catch (TimeoutException e) {
+            overruns.increment();
+            breaker.onFailure();
+            //  The read keeps going and refreshes the retained copy when it eventually answers
+            future.whenComplete((result, error) -> {
+                if (error == null) {
+                    remember(shortUrl, result);
+                }
+            });
+            return serveStale(shortUrl, loader, false);
+        } catch (ExecutionException e) {
+            //  CacheUnavailableException is an IllegalStateException too, but it means Redis did not answer
+            if (e.getCause() instanceof IllegalStateException corrupted
+                    && !(corrupted instanceof CacheUnavailableException)) {
+                //  Redis answered; the value itself is bad, which no stale copy should paper over
+                breaker.onSuccess();
+                throw corrupted;
+            }
+            breaker.onFailure();
+            log.warn("Cache read failed for {}: {}", shortUrl, e.getCause().toString());
+            return serveStale(shortUrl, loader, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CacheUnavailableException("Interrupted while reading " + shortUrl);
+        }
+    }
+
+    private Optional<RedirectInfo> serveStale(String shortUrl, Function<String, Optional<RedirectInfo>> loader, boolean refresh) {
+        var retained = lastKnownGood.get(shortUrl);
+        if (retained == null) {
+            unavailable.increment();
+            throw new CacheUnavailableException("Redis unavailable and no retained copy of " + shortUrl);
+        }
+        staleServed.increment();
+        log.debug("Serving stale copy of {}", shortUrl);
+        if (refresh) {
+            refreshInBackground(shortUrl, loader);
+        }
+        return Optional.of(retained.info());
+    }
+
+    private void refreshInBackground(String shortUrl, Function<String, Optional<RedirectInfo>> loader) {
+        if (!refreshing.add(shortUrl)) {
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            refreshing.remove(shortUrl);
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                remember(shortUrl, loader.apply(shortUrl));
+                breaker.onSuccess();
+            } catch (RuntimeException e) {
+                breaker.onFailure();
+            } finally {
+                refreshing.remove(shortUrl);
+            }
+        });
+    }
+
+    private void remember(String shortUrl, Optional<RedirectInfo> result) {
+        if (result.isPresent()) {
+            lastKnownGood.put(shortUrl, result.get());
+        } else {
+            lastKnownGood.invalidate(shortUrl);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
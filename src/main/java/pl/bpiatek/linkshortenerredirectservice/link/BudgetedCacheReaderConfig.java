@@ -0,0 +1,27 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+//  A positive link.cache.read.budget turns on budgeted reads; zero keeps reads unbounded
+@Configuration
+class BudgetedCacheReaderConfig {
+
+    @Bean(destroyMethod = "close")
+    BudgetedCacheReader budgetedCacheReader(MeterRegistry meterRegistry,
+                                            @Value("${link.cache.read.budget:0ms}") Duration budget,
+                                            @Value("${link.cache.read.breaker.window:100}") int window,
+                                            @Value("${link.cache.read.breaker.failure-rate:0.5}") double failureRate,
+                                            @Value("${link.cache.read.breaker.open-duration:5s}") Duration openDuration,
+                                            @Value("${link.cache.read.stale.max-entries:100000}") int maxRetained) {
+        if (budget.isZero() || budget.isNegative()) {
+            return BudgetedCacheReader.disabled();
+        }
+        return new BudgetedCacheReader(budget, new CircuitBreaker(window, failureRate, openDuration, System::nanoTime),
+                maxRetained, meterRegistry);
+    }
+}
@@ -0,0 +1,120 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.warmup.WarmUp;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+//  Warm-up phase that finds the hottest links and, with the tracking local cache on, loads them with
+//  batched MGETs. The list is the one the previous generation of pods stored on shutdown (HOT_LINKS_KEY,
+//  written by close()); the first deployment falls back to a SCAN sample of link keys.
+class CachePreloadPhase implements WarmUp.Phase, AutoCloseable {
+
+    static final String HOT_LINKS_KEY = "warmup:hot-links";
+
+    private static final Logger log = LoggerFactory.getLogger(CachePreloadPhase.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final TrackingRedirectCache trackingCache;
+    private final LinkKeyLayout keyLayout;
+    private final ObjectMapper objectMapper;
+    private final int links;
+    private final int batchSize;
+    private final Duration timeout;
+    private final boolean storeOnShutdown;
+
+    CachePreloadPhase(StringRedisTemplate redisTemplate, TrackingRedirectCache trackingCache, LinkKeyLayout keyLayout,
+                      ObjectMapper objectMapper, int links, int batchSize, Duration timeout, boolean storeOnShutdown) {
+        this.redisTemplate = redisTemplate;
+        this.trackingCache = trackingCache;
+        this.keyLayout = keyLayout;
+        this.objectMapper = objectMapper;
+        this.links = links;
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        this.storeOnShutdown = storeOnShutdown;
+    }
+
+    @Override
+    public String name() {
+        return "preload";
+    }
+
+    @Override
+    public Duration timeout() {
+        return timeout;
+    }
+
+    @Override
+    public void run(WarmUp.Progress progress) {
+        var stored = redisTemplate.opsForList().range(HOT_LINKS_KEY, 0, links - 1);
+        var hotLinks = stored != null && !stored.isEmpty() ? stored : scanSample(progress);
+        progress.hotLinks(hotLinks);
+        if (!trackingCache.enabled()) {
+            progress.report(hotLinks.size() + " hot links found, no local cache to load them into");
+            return;
+        }
+
+        var loaded = 0;
+        for (int from = 0; from < hotLinks.size() && !Thread.currentThread().isInterrupted(); from += batchSize) {
+            var batch = new ArrayList<LocalRedirectCache.CachedLink>(batchSize);
+            for (var shortUrl : hotLinks.subList(from, Math.min(hotLinks.size(), from + batchSize))) {
+                batch.add(new LocalRedirectCache.CachedLink(shortUrl, null));
+            }
+            loaded += trackingCache.warm(batch, this::parse, batchSize);
+            progress.report(loaded + " of " + hotLinks.size() + " hot links loaded");
+        }
+    }
+
+    //  Only flat keys map one-to-one to links; bucketed layouts get no sample
+    private List<String> scanSample(WarmUp.Progress progress) {
+        if (!(keyLayout instanceof FlatKeyLayout)) {
+            return List.of();
+        }
+        progress.report("sampling link keys");
+        var sample = new LinkedHashSet<String>();
+        var options = ScanOptions.scanOptions().match(FlatKeyLayout.KEY_PREFIX + "*").count(1000).build();
+        try (var cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext() && sample.size() < links && !Thread.currentThread().isInterrupted()) {
+                sample.add(cursor.next().substring(FlatKeyLayout.KEY_PREFIX.length()));
+            }
+        }
+        return List.copyOf(sample);
+    }
+
+    private RedirectInfo parse(String json) {
+        try {
+            return objectMapper.readValue(json, RedirectInfo.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot parse cached redirect", e);
+        }
+    }
+
+    //  Leaves this pod's hottest links for the pods that replace it; with several pods stopping, the last one wins
+    @Override
+    public void close() {
+        if (!storeOnShutdown || !trackingCache.enabled()) {
+            return;
+        }
+        var hottest = trackingCache.hottest(links);
+        if (hottest.isEmpty()) {
+            return;
+        }
+        try {
+            var staging = HOT_LINKS_KEY + ":" + ProcessHandle.current().pid() + ":" + System.nanoTime();
+            redisTemplate.opsForList().rightPushAll(staging, hottest.stream().map(LocalRedirectCache.CachedLink::shortUrl).toList());
+            redisTemplate.rename(staging, HOT_LINKS_KEY);
+            log.info("Stored {} hot links for the next warm-up", hottest.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not store hot links for the next warm-up: {}", e.getMessage());
+        }
+    }
+}
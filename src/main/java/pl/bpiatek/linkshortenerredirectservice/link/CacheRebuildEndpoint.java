@@ -0,0 +1,35 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+//  GET reports progress, POST starts a rebuild (no-op while one is running), DELETE cancels it
+@Component
+@Endpoint(id = "cacherebuild")
+class CacheRebuildEndpoint {
+
+    private final CacheRebuildJob rebuildJob;
+
+    CacheRebuildEndpoint(CacheRebuildJob rebuildJob) {
+        this.rebuildJob = rebuildJob;
+    }
+
+    @ReadOperation
+    public CacheRebuildStatus status() {
+        return rebuildJob.status();
+    }
+
+    @WriteOperation
+    public CacheRebuildStatus start() {
+        return rebuildJob.start();
+    }
+
+    @DeleteOperation
+    public CacheRebuildStatus cancel() {
+        rebuildJob.cancel();
+        return rebuildJob.status();
+    }
+}
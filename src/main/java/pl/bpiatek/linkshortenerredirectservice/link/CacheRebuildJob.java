@@ -0,0 +1,419 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkLifecycleEvent;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Rebuilds the link cache from the lifecycle topic after Redis data loss, without replaying one EVAL
+//  per event: the topic is read from the beginning, collapsed to the latest state per short URL, bulk
+//  written into a staging database with pipelined writes and swapped in with SWAPDB. Events that arrive
+//  while the rebuild runs are then replayed through the regular version-checked upsert. Keys that are
+//  not links (such as the warm-up hot set) are copied into staging right before the swap so they survive it,
+//  and the swap is announced so tracking local caches drop what they read from the old database.
+@Component
+class CacheRebuildJob {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheRebuildJob.class);
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(500);
+
+    private final ConsumerFactory<String, LinkLifecycleEvent> consumerFactory;
+    private final RedisConnectionFactory connectionFactory;
+    private final LinkLifecycleConsumer lifecycleConsumer;
+    private final LinkKeyLayout keyLayout;
+    private final RedisShardRouter shardRouter;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final String topicName;
+    private final String groupId;
+    private final int stagingDatabase;
+    private final int chunkSize;
+    private final double maxKeysPerSecond;
+    private final int maxInMemoryKeys;
+    private final Path spillDirectory;
+
+    private volatile Progress progress;
+    private volatile boolean cancelRequested;
+
+    CacheRebuildJob(ConsumerFactory<String, LinkLifecycleEvent> consumerFactory,
+                    RedisConnectionFactory connectionFactory,
+                    LinkLifecycleConsumer lifecycleConsumer,
+                    LinkKeyLayout keyLayout,
+                    RedisShardRouter shardRouter,
+                    ObjectMapper objectMapper,
+                    Clock clock,
+                    @Value("${topic.link.lifecycle}") String topicName,
+                    @Value("${spring.kafka.consumer.group-id}") String groupId,
+                    @Value("${link.cache.rebuild.staging-database:1}") int stagingDatabase,
+                    @Value("${link.cache.rebuild.chunk-size:1000}") int chunkSize,
+                    @Value("${link.cache.rebuild.max-keys-per-second:50000}") double maxKeysPerSecond,
+                    @Value("${link.cache.rebuild.max-in-memory-keys:1000000}") int maxInMemoryKeys,
+                    @Value("${link.cache.rebuild.spill-directory:${java.io.tmpdir}}") Path spillDirectory) {
+        this.consumerFactory = consumerFactory;
+        this.connectionFactory = connectionFactory;
+        this.lifecycleConsumer = lifecycleConsumer;
+        this.keyLayout = keyLayout;
+        this.shardRouter = shardRouter;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.topicName = topicName;
+        this.groupId = groupId;
+        this.stagingDatabase = stagingDatabase;
+        this.chunkSize = chunkSize;
+        this.maxKeysPerSecond = maxKeysPerSecond;
+        this.maxInMemoryKeys = maxInMemoryKeys;
+        this.spillDirectory = spillDirectory;
+    }
+
+    synchronized CacheRebuildStatus start() {
+        if (progress != null && progress.phase.isRunning()) {
+            return status();
+        }
+        if (shardRouter.isSharded()) {
+            //  Staging and SWAPDB are per node; a sharded rebuild would need a coordinated swap on every shard
+            throw new IllegalStateException("Cache rebuild is not supported while link.cache.shards.nodes is set");
+        }
+        cancelRequested = false;
+        progress = new Progress(clock.instant());
+        Thread.ofVirtual().name("cache-rebuild").start(this::run);
+        return status();
+    }
+
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    CacheRebuildStatus status() {
+        var current = progress;
+        return current == null ? CacheRebuildStatus.idle() : current.toStatus(clock.instant());
+    }
+
+    private void run() {
+        var current = progress;
+        log.info("Cache rebuild started from topic {} into staging database {}", topicName, stagingDatabase);
+        try (var consumer = consumerFactory.createConsumer(groupId + "-rebuild", null, "-rebuild");
+             var collector = new LatestStateCollector(maxInMemoryKeys, spillDirectory)) {
+            var snapshotEnd = read(consumer, collector, current);
+
+            var staging = stagingConnectionFactory();
+            try {
+                var stagingTemplate = new StringRedisTemplate(staging);
+                write(stagingTemplate, collector, current);
+
+                current.enter(CacheRebuildStatus.Phase.CUTOVER, 0);
+                checkCancelled();
+                copyNonLinkKeys();
+                var liveDatabase = ((LettuceConnectionFactory) connectionFactory).getDatabase();
+                stagingTemplate.execute((RedisCallback<Object>) connection -> connection.execute("SWAPDB",
+                        String.valueOf(liveDatabase).getBytes(UTF_8),
+                        String.valueOf(stagingDatabase).getBytes(UTF_8)));
+                log.info("Swapped rebuilt database {} in as live database {}", stagingDatabase, liveDatabase);
+                lifecycleConsumer.forgetVersions();
+                //  SWAPDB sends no tracking invalidations, so every instance's local cache is told to flush
+                stagingTemplate.convertAndSend(TrackingRedirectCache.FLUSH_CHANNEL, liveDatabase + "<-" + stagingDatabase);
+            } finally {
+                staging.destroy();
+            }
+
+            catchUp(consumer, snapshotEnd, current);
+            current.finish(CacheRebuildStatus.Phase.COMPLETED, null, clock.instant());
+            log.info("Cache rebuild completed: {}", status());
+        } catch (CancelledException e) {
+            current.finish(CacheRebuildStatus.Phase.CANCELLED, null, clock.instant());
+            log.warn("Cache rebuild cancelled in phase {}", current.phase);
+        } catch (Exception e) {
+            current.finish(CacheRebuildStatus.Phase.FAILED, e.getMessage(), clock.instant());
+            log.error("Cache rebuild failed", e);
+        }
+    }
+
+    private Map<TopicPartition, Long> read(Consumer<String, LinkLifecycleEvent> consumer,
+                                           LatestStateCollector collector,
+                                           Progress current) {
+        var partitions = consumer.partitionsFor(topicName).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+        consumer.assign(partitions);
+        consumer.seekToBeginning(partitions);
+
+        var beginning = consumer.beginningOffsets(partitions);
+        var end = consumer.endOffsets(partitions);
+        var total = partitions.stream().mapToLong(partition -> end.get(partition) - beginning.get(partition)).sum();
+        current.enter(CacheRebuildStatus.Phase.READING, total);
+
+        while (!reached(consumer, end)) {
+            checkCancelled();
+            for (var record : consumer.poll(POLL_TIMEOUT)) {
+                var partition = new TopicPartition(record.topic(), record.partition());
+                if (record.offset() >= end.get(partition)) {
+                    continue;
+                }
+                var state = record.value() != null ? LinkLifecycleConsumer.stateOf(record.value()) : null;
+                if (state != null) {
+                    collector.accept(LinkLifecycleConsumer.shortUrlOf(record.value()), state);
+                }
+                current.eventsRead.incrementAndGet();
+                current.done.incrementAndGet();
+            }
+            current.spilledRuns = collector.spilledRuns();
+        }
+        //  Anything past the snapshot end that was already fetched is replayed by catchUp
+        end.forEach(consumer::seek);
+        return end;
+    }
+
+    private void write(StringRedisTemplate stagingTemplate, LatestStateCollector collector, Progress current) throws Exception {
+        stagingTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+        current.keysTotal = collector.estimatedKeys();
+        current.enter(CacheRebuildStatus.Phase.WRITING, current.keysTotal);
+
+        var limiter = new RebuildRateLimiter(maxKeysPerSecond);
+        var now = clock.instant();
+        var chunk = new ArrayList<StagedKey>(chunkSize);
+        try {
+            collector.forEachLatest((shortUrl, state) -> {
+                var staged = stage(shortUrl, state, now);
+                if (staged == null) {
+                    current.done.incrementAndGet();
+                    return;
+                }
+                chunk.add(staged);
+                if (chunk.size() >= chunkSize) {
+                    flush(stagingTemplate, chunk, limiter, current);
+                }
+            });
+            flush(stagingTemplate, chunk, limiter, current);
+        } catch (WrappedException e) {
+            throw e.getCause();
+        }
+    }
+
+    private StagedKey stage(String shortUrl, RedirectInfo state, Instant now) {
+        long ttlSeconds = 0;
+        if (state.isDeleted()) {
+            //  Tombstones keep the expiry they would have had if written live
+            var deletedAt = Instant.EPOCH.plusNanos(state.updatedAtMicros() * 1_000L);
+            ttlSeconds = Duration.between(now, deletedAt.plus(LinkLifecycleConsumer.TOMBSTONE_TTL)).toSeconds();
+            if (ttlSeconds <= 0) {
+                return null;
+            }
+        }
+        try {
+            return new StagedKey(
+                    shortUrl,
+                    objectMapper.writeValueAsBytes(state),
+                    ttlSeconds);
+        } catch (JsonProcessingException e) {
+            throw new WrappedException(e);
+        }
+    }
+
+    private void flush(StringRedisTemplate stagingTemplate, List<StagedKey> chunk,
+                       RebuildRateLimiter limiter, Progress current) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            checkCancelled();
+            limiter.acquire(chunk.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancelledException();
+        }
+        stagingTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (var staged : chunk) {
+                keyLayout.stage(connection, staged.shortUrl, staged.value, staged.ttlSeconds);
+            }
+            return null;
+        });
+        current.keysWritten.addAndGet(chunk.size());
+        current.done.addAndGet(chunk.size());
+        chunk.clear();
+    }
+
+    private void catchUp(Consumer<String, LinkLifecycleEvent> consumer, Map<TopicPartition, Long> snapshotEnd,
+                         Progress current) {
+        var end = consumer.endOffsets(snapshotEnd.keySet());
+        var total = end.entrySet().stream().mapToLong(entry -> entry.getValue() - snapshotEnd.get(entry.getKey())).sum();
+        current.enter(CacheRebuildStatus.Phase.CATCHING_UP, total);
+
+        while (!reached(consumer, end)) {
+            checkCancelled();
+            for (var record : consumer.poll(POLL_TIMEOUT)) {
+                if (record.value() != null) {
+                    lifecycleConsumer.apply(record.value());
+                }
+                current.eventsRead.incrementAndGet();
+                current.done.incrementAndGet();
+            }
+        }
+    }
+
+    //  COPY ... DB keeps type and TTL; anything written to these keys between the copy and the swap is lost
+    private void copyNonLinkKeys() {
+        var live = new StringRedisTemplate(connectionFactory);
+        var options = ScanOptions.scanOptions().count(chunkSize).build();
+        var batch = new ArrayList<String>(chunkSize);
+        var copied = 0;
+        try (var cursor = live.scan(options)) {
+            while (cursor.hasNext()) {
+                var key = cursor.next();
+                if (key.startsWith(FlatKeyLayout.KEY_PREFIX) || key.startsWith(HashBucketKeyLayout.KEY_PREFIX)) {
+                    continue;
+                }
+                batch.add(key);
+                if (batch.size() >= chunkSize) {
+                    copied += copy(live, batch);
+                }
+            }
+            copied += copy(live, batch);
+        }
+        log.info("Copied {} non-link keys into staging database {}", copied, stagingDatabase);
+    }
+
+    private int copy(StringRedisTemplate live, List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        var database = String.valueOf(stagingDatabase).getBytes(UTF_8);
+        live.executePipelined((RedisCallback<Object>) connection -> {
+            for (var key : keys) {
+                var rawKey = key.getBytes(UTF_8);
+                connection.execute("COPY", rawKey, rawKey, "DB".getBytes(UTF_8), database, "REPLACE".getBytes(UTF_8));
+            }
+            return null;
+        });
+        var count = keys.size();
+        keys.clear();
+        return count;
+    }
+
+    private static boolean reached(Consumer<?, ?> consumer, Map<TopicPartition, Long> end) {
+        for (var entry : end.entrySet()) {
+            if (consumer.position(entry.getKey()) < entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //  SWAPDB needs a second logical database on the same server, so a dedicated factory is derived from the live one
+    private LettuceConnectionFactory stagingConnectionFactory() {
+        if (!(connectionFactory instanceof LettuceConnectionFactory live) || live.isClusterAware() || live.isRedisSentinelAware()) {
+            throw new IllegalStateException("Cache rebuild requires a standalone Lettuce Redis connection");
+        }
+        if (live.getDatabase() == stagingDatabase) {
+            throw new IllegalStateException("Staging database must differ from the live database " + stagingDatabase);
+        }
+        var liveConfiguration = live.getStandaloneConfiguration();
+        var stagingConfiguration = new RedisStandaloneConfiguration(liveConfiguration.getHostName(), liveConfiguration.getPort());
+        stagingConfiguration.setUsername(liveConfiguration.getUsername());
+        stagingConfiguration.setPassword(liveConfiguration.getPassword());
+        stagingConfiguration.setDatabase(stagingDatabase);
+
+        var staging = new LettuceConnectionFactory(stagingConfiguration, live.getClientConfiguration());
+        staging.afterPropertiesSet();
+        staging.start();
+        return staging;
+    }
+
+    private void checkCancelled() {
+        if (cancelRequested) {
+            throw new CancelledException();
+        }
+    }
+
+    private record StagedKey(String shortUrl, byte[] value, long ttlSeconds) {
+    }
+
+    private static final class CancelledException extends RuntimeException {
+    }
+
+    private static final class WrappedException extends RuntimeException {
+
+        private WrappedException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+
+    private static final class Progress {
+
+        private final Instant startedAt;
+        private final AtomicLong eventsRead = new AtomicLong();
+        private final AtomicLong keysWritten = new AtomicLong();
+        private final AtomicLong done = new AtomicLong();
+        private volatile CacheRebuildStatus.Phase phase = CacheRebuildStatus.Phase.READING;
+        private volatile long phaseTotal;
+        private volatile long phaseStartedNanos = System.nanoTime();
+        private volatile long eventsTotal;
+        private volatile long keysTotal;
+        private volatile int spilledRuns;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private Progress(Instant startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        private void enter(CacheRebuildStatus.Phase next, long total) {
+            phase = next;
+            phaseTotal = total;
+            phaseStartedNanos = System.nanoTime();
+            done.set(0);
+            if (next == CacheRebuildStatus.Phase.READING) {
+                eventsTotal = total;
+            } else if (next == CacheRebuildStatus.Phase.CATCHING_UP) {
+                eventsTotal += total;
+            }
+        }
+
+        private void finish(CacheRebuildStatus.Phase outcome, String failure, Instant now) {
+            error = failure;
+            finishedAt = now;
+            phase = outcome;
+        }
+
+        private CacheRebuildStatus toStatus(Instant now) {
+            var elapsedSeconds = (System.nanoTime() - phaseStartedNanos) / 1e9;
+            var completed = done.get();
+            var rate = elapsedSeconds > 0 ? completed / elapsedSeconds : 0.0;
+            Long eta = null;
+            if (phase.isRunning() && rate > 0) {
+                eta = (long) Math.ceil(Math.max(phaseTotal - completed, 0) / rate);
+            }
+            return new CacheRebuildStatus(phase, startedAt, finishedAt, eventsRead.get(), eventsTotal,
+                    keysWritten.get(), keysTotal, spilledRuns, rate, eta, error);
+        }
+    }
+}
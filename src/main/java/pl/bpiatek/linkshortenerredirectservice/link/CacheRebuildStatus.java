@@ -0,0 +1,28 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.time.Instant;
+
+public record CacheRebuildStatus(Phase phase,
+                                 Instant startedAt,
+                                 Instant finishedAt,
+                                 long eventsRead,
+                                 long eventsTotal,
+                                 long keysWritten,
+                                 long keysTotal,
+                                 int spilledRuns,
+                                 double phaseRatePerSecond,
+                                 Long phaseEtaSeconds,
+                                 String error) {
+
+    public enum Phase {
+        IDLE, READING, WRITING, CUTOVER, CATCHING_UP, COMPLETED, CANCELLED, FAILED;
+
+        boolean isRunning() {
+            return this == READING || this == WRITING || this == CUTOVER || this == CATCHING_UP;
+        }
+    }
+
+    static CacheRebuildStatus idle() {
+        return new CacheRebuildStatus(Phase.IDLE, null, null, 0, 0, 0, 0, 0, 0.0, null, null);
+    }
+}
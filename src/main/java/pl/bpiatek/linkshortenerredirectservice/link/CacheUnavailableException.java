@@ -0,0 +1,8 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+public class CacheUnavailableException extends IllegalStateException {
+
+    public CacheUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,176 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//  Recognises repeats of the same (short URL, client IP, User-Agent) within `window` using a
+//  RotatingBloomFilter. SUPPRESS drops repeats. COLLAPSE also drops them but counts them per key
+//  hash, and the next click of that key published after the window reports the count. When the key
+//  leaves the filter without clicking again, the count is handed to the expired-repeats listener on
+//  the next rotation instead, so it is published rather than lost (or later pinned on another key
+//  sharing the slot). Counts still pending at shutdown are lost. False positives of the filter mean a
+//  small share of distinct clicks is treated as a repeat.
+public class ClickDeduplicator implements AutoCloseable {
+
+    public static final int DUPLICATE = -1;
+
+    private static final ClickDeduplicator DISABLED = new ClickDeduplicator();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final RotatingBloomFilter filter;
+    private final Mode mode;
+    private final AtomicIntegerArray repeats;
+    private final AtomicReferenceArray<RepeatedClick> repeatedClicks;
+    private final ScheduledExecutorService scheduler;
+    private final Counter duplicates;
+    private volatile ExpiredRepeats expiredRepeats;
+
+    private ClickDeduplicator() {
+        this.filter = null;
+        this.mode = Mode.SUPPRESS;
+        this.repeats = null;
+        this.repeatedClicks = null;
+        this.scheduler = null;
+        this.duplicates = null;
+    }
+
+    ClickDeduplicator(RotatingBloomFilter filter, int generations, Duration window, Mode mode, int repeatSlots,
+                      MeterRegistry meterRegistry) {
+        this.filter = filter;
+        this.mode = mode;
+        this.repeats = mode == Mode.COLLAPSE ? new AtomicIntegerArray(repeatSlots) : null;
+        this.repeatedClicks = mode == Mode.COLLAPSE ? new AtomicReferenceArray<>(repeatSlots) : null;
+        this.duplicates = Counter.builder("redirect.clicks.duplicates")
+                .description("Clicks recognised as repeats within the dedup window and not published")
+                .register(meterRegistry);
+        Gauge.builder("redirect.clicks.dedup.fill", filter, RotatingBloomFilter::fill)
+                .description("Share of bits set in the current filter generation")
+                .register(meterRegistry);
+        var rotation = window.toMillis() / (generations - 1);
+        if (rotation == 0) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("click-dedup").factory());
+            this.scheduler.scheduleAtFixedRate(this::rotate, rotation, rotation, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static ClickDeduplicator disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return filter != null;
+    }
+
+    //  Only COLLAPSE counts repeats; elsewhere (including the shared disabled instance) this is a no-op
+    public void onExpiredRepeats(ExpiredRepeats listener) {
+        if (repeats != null) {
+            this.expiredRepeats = listener;
+        }
+    }
+
+    public int admit(String shortUrl, String ipAddress, String userAgent) {
+        return admit(null, shortUrl, ipAddress, userAgent);
+    }
+
+    //  DUPLICATE when the click should not be published, otherwise the number of collapsed repeats to
+    //  report with it (always 0 in SUPPRESS mode). The topic is only handed back to the listener.
+    public int admit(String topic, String shortUrl, String ipAddress, String userAgent) {
+        if (filter == null) {
+            return 0;
+        }
+        var hash = hash(hash(hash(FNV_OFFSET_BASIS, shortUrl), ipAddress), userAgent);
+        hash = mix(hash);
+        if (filter.addIfAbsent(hash)) {
+            return repeats == null ? 0 : repeats.getAndSet(slot(hash), 0);
+        }
+        duplicates.increment();
+        if (repeats != null) {
+            var slot = slot(hash);
+            if (repeats.incrementAndGet(slot) == 1) {
+                repeatedClicks.set(slot, new RepeatedClick(hash, topic, shortUrl, ipAddress, userAgent));
+            }
+        }
+        return DUPLICATE;
+    }
+
+    void rotate() {
+        filter.rotate();
+        var listener = expiredRepeats;
+        if (repeats == null || listener == null) {
+            return;
+        }
+        for (int slot = 0; slot < repeats.length(); slot++) {
+            if (repeats.get(slot) == 0) {
+                continue;
+            }
+            var click = repeatedClicks.get(slot);
+            if (click == null || filter.contains(click.hash)) {
+                continue;
+            }
+            //  getAndSet races with admit(): whichever takes the count reports it
+            var count = repeats.getAndSet(slot, 0);
+            if (count > 0) {
+                listener.flush(click.topic, click.shortUrl, click.ipAddress, click.userAgent, count);
+            }
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private int slot(long hash) {
+        return (int) ((hash >>> 1) % repeats.length());
+    }
+
+    //  A separator after each field keeps ("ab", "c") and ("a", "bc") apart
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= FNV_PRIME;
+            }
+        }
+        hash ^= 0x1f;
+        return hash * FNV_PRIME;
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51_afd7_ed55_8ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ce_b9fe_1a85_ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    //  The key's first repeat, which stands for every repeat counted in its slot
+    private record RepeatedClick(long hash, String topic, String shortUrl, String ipAddress, String userAgent) {
+    }
+
+    @FunctionalInterface
+    public interface ExpiredRepeats {
+
+        void flush(String topic, String shortUrl, String ipAddress, String userAgent, int repeats);
+    }
+
+    public enum Mode {
+        SUPPRESS,
+        COLLAPSE
+    }
+}
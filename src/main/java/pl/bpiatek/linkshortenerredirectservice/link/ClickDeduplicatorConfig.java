@@ -0,0 +1,44 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableConfigurationProperties(ClickDeduplicatorConfig.ClickDedupProperties.class)
+class ClickDeduplicatorConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickDeduplicatorConfig.class);
+
+    @Bean(destroyMethod = "close")
+    ClickDeduplicator clickDeduplicator(ClickDedupProperties properties, MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return ClickDeduplicator.disabled();
+        }
+
+        var filter = RotatingBloomFilter.sized(properties.generations(), properties.expectedClicks(),
+                properties.falsePositiveRate());
+        log.info("Click dedup enabled: {} window, {} generations, {} hashes, {} KiB",
+                properties.window(), properties.generations(), filter.hashes(), filter.memoryBytes() / 1024);
+        return new ClickDeduplicator(filter, properties.generations(), properties.window(), properties.mode(),
+                properties.repeatSlots(), meterRegistry);
+    }
+
+    //  expected-clicks is the number of distinct clicks one generation (window / (generations - 1)) must hold
+    @ConfigurationProperties(prefix = "link.clicks.dedup")
+    record ClickDedupProperties(@DefaultValue("false") boolean enabled,
+                                @DefaultValue("10s") Duration window,
+                                @DefaultValue("3") int generations,
+                                @DefaultValue("200000") long expectedClicks,
+                                @DefaultValue("0.001") double falsePositiveRate,
+                                @DefaultValue("suppress") ClickDeduplicator.Mode mode,
+                                @DefaultValue("65536") int repeatSlots) {
+    }
+}
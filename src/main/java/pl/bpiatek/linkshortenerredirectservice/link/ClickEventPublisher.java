@@ -5,14 +5,17 @@ import io.micrometer.context.ContextSnapshotFactory;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
 
 import java.time.Clock;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -25,34 +28,79 @@ public class ClickEventPublisher {
     private static final Logger log = getLogger(ClickEventPublisher.class);
     private static final ContextSnapshotFactory snapshotFactory = ContextSnapshotFactory.builder().build();
     private static final String SOURCE_HEADER_VALUE = "redirect-service";
+    static final String SAMPLE_WEIGHT_HEADER = "sample-weight";
+    static final String COLLAPSED_REPEATS_HEADER = "collapsed-repeats";
 
     private final KafkaTemplate<String, LinkClickEvent> kafkaTemplate;
     private final String topicName;
     private final Clock clock;
+    private final ClickSampler sampler;
+    private final ClickDeduplicator deduplicator;
 
     private final ExecutorService analyticsExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
-    ClickEventPublisher(KafkaTemplate<String, LinkClickEvent> kafkaTemplate,
-                        @Value("${topic.link.clicks}") String topicName,
-                        Clock clock) {
+    public ClickEventPublisher(KafkaTemplate<String, LinkClickEvent> kafkaTemplate, String topicName, Clock clock) {
+        this(kafkaTemplate, topicName, clock, ClickSampler.disabled(), ClickDeduplicator.disabled());
+    }
+
+    @Autowired
+    public ClickEventPublisher(KafkaTemplate<String, LinkClickEvent> kafkaTemplate,
+                               @Value("${topic.link.clicks}") String topicName,
+                               Clock clock,
+                               ClickSampler sampler,
+                               ClickDeduplicator deduplicator) {
         this.kafkaTemplate = kafkaTemplate;
         this.topicName = topicName;
         this.clock = clock;
+        this.sampler = sampler;
+        this.deduplicator = deduplicator;
+        deduplicator.onExpiredRepeats(this::publishExpiredRepeats);
     }
 
     public void publishSafe(String shortUrl, String ipAddress, String userAgent) {
+        publishSafe(topicName, shortUrl, ipAddress, userAgent);
+    }
+
+    public void publishSafe(String topic, String shortUrl, String ipAddress, String userAgent) {
+        publishSafe(topic, shortUrl, ipAddress, userAgent, 1.0);
+    }
+
+    //  sampleWeight is how many clicks this one already stands for when the caller sampled it
+    public void publishSafe(String shortUrl, String ipAddress, String userAgent, double sampleWeight) {
+        publishSafe(topicName, shortUrl, ipAddress, userAgent, sampleWeight);
+    }
+
+    private void publishSafe(String topic, String shortUrl, String ipAddress, String userAgent, double sampleWeight) {
+        //  Dedup and shed before capturing context or starting a thread, so both cost as little as possible
+        var repeats = deduplicator.admit(topic, shortUrl, ipAddress, userAgent);
+        if (repeats == ClickDeduplicator.DUPLICATE) {
+            return;
+        }
+        var sampled = sampler.sample(shortUrl);
+        if (sampled == 0) {
+            return;
+        }
+        var weight = sampled * sampleWeight;
+
         //  Capture the trace/MDC context from the Tomcat/Web thread
         var snapshot = snapshotFactory.captureAll();
 
         //  Offload to a Virtual Thread to prevent Kafka metadata timeouts from blocking the 302 redirect
         analyticsExecutor.submit(() -> {
             try (var scope = snapshot.setThreadLocals()) {
-                doSendClickEvent(shortUrl, ipAddress, userAgent);
+                doSendClickEvent(topic, shortUrl, ipAddress, userAgent, weight, repeats);
             }
         });
     }
 
-    void doSendClickEvent(String shortUrl, String ipAddress, String userAgent) {
+    //  Repeats whose key left the dedup window without another click: one record stands for all of them.
+    //  They were already admitted as clicks, so the sampler is not consulted again.
+    private void publishExpiredRepeats(String topic, String shortUrl, String ipAddress, String userAgent, int repeats) {
+        analyticsExecutor.submit(() -> doSendClickEvent(topic, shortUrl, ipAddress, userAgent, 1.0, repeats - 1));
+    }
+
+    void doSendClickEvent(String topic, String shortUrl, String ipAddress, String userAgent,
+                          double weight, int collapsedRepeats) {
         var now = clock.instant();
         var eventId = UUID.randomUUID().toString();
 
@@ -66,12 +114,29 @@ public class ClickEventPublisher {
                         .build())
                 .build();
 
-        var producerRecord = new ProducerRecord<>(topicName, shortUrl, event);
+        var producerRecord = new ProducerRecord<>(topic, shortUrl, event);
         producerRecord.headers().add(new RecordHeader("source", SOURCE_HEADER_VALUE.getBytes(UTF_8)));
         producerRecord.headers().add(new RecordHeader("event-id", eventId.getBytes(UTF_8)));
+        if (sampler.enabled() || weight != 1.0) {
+            //  Consumers count sum(sample-weight) rather than records; absent means 1
+            producerRecord.headers().add(new RecordHeader(SAMPLE_WEIGHT_HEADER, Double.toString(weight).getBytes(UTF_8)));
+        }
+        if (collapsedRepeats > 0) {
+            //  The record stands for itself plus this many suppressed repeats: weight * (1 + repeats) clicks
+            producerRecord.headers().add(new RecordHeader(COLLAPSED_REPEATS_HEADER, Integer.toString(collapsedRepeats).getBytes(UTF_8)));
+        }
 
-
-        kafkaTemplate.send(producerRecord).whenComplete((result, ex) -> {
+        sampler.onSendStarted();
+        var start = System.nanoTime();
+        CompletableFuture<SendResult<String, LinkClickEvent>> sent;
+        try {
+            sent = kafkaTemplate.send(producerRecord);
+        } catch (RuntimeException e) {
+            sampler.onSendCompleted(System.nanoTime() - start);
+            throw e;
+        }
+        sent.whenComplete((result, ex) -> {
+            sampler.onSendCompleted(System.nanoTime() - start);
             if (ex == null) {
                 log.info("Successfully published LinkClickEvent for shortCode: {} with eventId: {}", shortUrl, eventId);
             } else {
@@ -0,0 +1,181 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+//  Keeps each click with probability `rate` and gives kept clicks a weight of 1 / rate, so summing
+//  weights downstream is an unbiased estimate of the real click count however much was shed. The
+//  rate follows producer backpressure with AIMD: it is cut multiplicatively while the producer buffer,
+//  send latency or in-flight sends exceed their targets, and recovers additively once all are clear.
+public class ClickSampler implements AutoCloseable {
+
+    private static final ClickSampler DISABLED = new ClickSampler();
+    private static final double DECREASE_FACTOR = 0.7;
+    private static final double INCREASE_STEP = 0.05;
+    private static final double RECOVERY_HEADROOM = 0.8;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final double minRate;
+    private final DoubleSupplier bufferUsage;
+    private final double targetBufferUsage;
+    private final long targetLatencyNanos;
+    private final int maxInFlight;
+    private final Set<String> alwaysSampled;
+    private final Map<String, EffectiveWeight> trackedLinks;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private final Counter kept;
+    private final Counter dropped;
+    private volatile double rate = 1.0;
+    private volatile double latencyEwmaNanos;
+
+    private ClickSampler() {
+        this.minRate = 1.0;
+        this.bufferUsage = () -> 0.0;
+        this.targetBufferUsage = 1.0;
+        this.targetLatencyNanos = Long.MAX_VALUE;
+        this.maxInFlight = Integer.MAX_VALUE;
+        this.alwaysSampled = Set.of();
+        this.trackedLinks = Map.of();
+        this.scheduler = null;
+        this.kept = null;
+        this.dropped = null;
+    }
+
+    ClickSampler(double minRate, DoubleSupplier bufferUsage, double targetBufferUsage, Duration targetLatency,
+                 int maxInFlight, Collection<String> alwaysSampled, Collection<String> trackedLinks,
+                 Duration adjustInterval, MeterRegistry meterRegistry) {
+        this.minRate = minRate;
+        this.bufferUsage = bufferUsage;
+        this.targetBufferUsage = targetBufferUsage;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.maxInFlight = maxInFlight;
+        this.alwaysSampled = Set.copyOf(alwaysSampled);
+        var weights = new HashMap<String, EffectiveWeight>();
+        for (var shortUrl : trackedLinks) {
+            var weight = new EffectiveWeight();
+            weights.put(shortUrl, weight);
+            Gauge.builder("redirect.clicks.sampling.effective.weight", weight, EffectiveWeight::value)
+                    .description("Clicks represented per published record for this link")
+                    .tag("link", shortUrl)
+                    .register(meterRegistry);
+        }
+        this.trackedLinks = Map.copyOf(weights);
+        this.kept = Counter.builder("redirect.clicks.sampled")
+                .description("Click events by sampling outcome")
+                .tag("outcome", "kept")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("redirect.clicks.sampled")
+                .description("Click events by sampling outcome")
+                .tag("outcome", "dropped")
+                .register(meterRegistry);
+        Gauge.builder("redirect.clicks.sampling.rate", this, ClickSampler::rate)
+                .description("Share of clicks currently published")
+                .register(meterRegistry);
+        Gauge.builder("redirect.clicks.in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        if (adjustInterval.isZero()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("click-sampler").factory());
+            this.scheduler.scheduleAtFixedRate(this::adjust, adjustInterval.toMillis(), adjustInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static ClickSampler disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return kept != null;
+    }
+
+    //  Weight to attach to the published record, or 0 when the click is shed
+    public double sample(String shortUrl) {
+        if (!enabled()) {
+            return 1.0;
+        }
+        var current = alwaysSampled.contains(shortUrl) ? 1.0 : rate;
+        var weight = 0.0;
+        if (current >= 1.0 || ThreadLocalRandom.current().nextDouble() < current) {
+            weight = 1.0 / current;
+            kept.increment();
+        } else {
+            dropped.increment();
+        }
+        var tracked = trackedLinks.get(shortUrl);
+        if (tracked != null) {
+            tracked.record(weight);
+        }
+        return weight;
+    }
+
+    public void onSendStarted() {
+        if (!enabled()) {
+            return;
+        }
+        inFlight.incrementAndGet();
+    }
+
+    public void onSendCompleted(long latencyNanos) {
+        if (!enabled()) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        //  Racing callbacks can lose an update, which only makes the average slightly less smooth
+        latencyEwmaNanos += LATENCY_SMOOTHING * (latencyNanos - latencyEwmaNanos);
+    }
+
+    public double rate() {
+        return rate;
+    }
+
+    void adjust() {
+        var pressure = Math.max(bufferUsage.getAsDouble() / targetBufferUsage,
+                Math.max(latencyEwmaNanos / targetLatencyNanos, (double) inFlight.get() / maxInFlight));
+        if (pressure > 1.0) {
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        } else if (pressure < RECOVERY_HEADROOM) {
+            rate = Math.min(1.0, rate + INCREASE_STEP);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static final class EffectiveWeight {
+        private final DoubleAdder represented = new DoubleAdder();
+        private final LongAdder published = new LongAdder();
+
+        private void record(double weight) {
+            if (weight > 0) {
+                represented.add(weight);
+                published.increment();
+            }
+        }
+
+        private double value() {
+            var records = published.sum();
+            return records == 0 ? 1.0 : represented.sum() / records;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.KafkaTemplate;
+import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(ClickSamplerConfig.ClickSamplingProperties.class)
+class ClickSamplerConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ClickSamplerConfig.class);
+
+    @Bean(destroyMethod = "close")
+    ClickSampler clickSampler(ClickSamplingProperties properties,
+                              KafkaTemplate<String, LinkClickEvent> kafkaTemplate,
+                              MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return ClickSampler.disabled();
+        }
+
+        log.info("Adaptive click sampling enabled: rate floor {}, {} links always kept",
+                properties.minRate(), properties.alwaysSampled().size());
+        return new ClickSampler(properties.minRate(), () -> bufferUsage(kafkaTemplate.metrics()),
+                properties.targetBufferUsage(), properties.targetSendLatency(), properties.maxInFlight(),
+                properties.alwaysSampled(), properties.trackedLinks(), properties.adjustInterval(), meterRegistry);
+    }
+
+    //  Share of buffer.memory holding unsent records; 0 until the producer has been created
+    private static double bufferUsage(Map<MetricName, ? extends Metric> metrics) {
+        double total = 0, available = 0;
+        for (var entry : metrics.entrySet()) {
+            if (!"producer-metrics".equals(entry.getKey().group())) {
+                continue;
+            }
+            switch (entry.getKey().name()) {
+                case "buffer-total-bytes" -> total = ((Number) entry.getValue().metricValue()).doubleValue();
+                case "buffer-available-bytes" -> available = ((Number) entry.getValue().metricValue()).doubleValue();
+                default -> {
+                }
+            }
+        }
+        return total > 0 ? 1.0 - available / total : 0.0;
+    }
+
+    @ConfigurationProperties(prefix = "link.clicks.sampling")
+    record ClickSamplingProperties(@DefaultValue("false") boolean enabled,
+                                   @DefaultValue("0.01") double minRate,
+                                   @DefaultValue("250ms") Duration adjustInterval,
+                                   @DefaultValue("0.5") double targetBufferUsage,
+                                   @DefaultValue("250ms") Duration targetSendLatency,
+                                   @DefaultValue("10000") int maxInFlight,
+                                   @DefaultValue List<String> alwaysSampled,
+                                   @DefaultValue List<String> trackedLinks) {
+    }
+}
@@ -1,27 +1,114 @@
 package pl.bpiatek.linkshortenerredirectservice.link;
 
 import jakarta.servlet.http.HttpServletRequest;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrTrie;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
 
+import java.util.List;
+
+//  Only hops appended by trusted proxies are believed. Starting from the TCP peer, X-Forwarded-For is
+//  walked right to left and the first address outside trustedProxies is the client; anything further
+//  left may have been sent by that client. CF-Connecting-IP is used only when every hop is trusted,
+//  which is the case when Cloudflare's edge ranges are listed and the edge sent no XFF.
 public final class ClientIpExtractor {
 
-    private ClientIpExtractor() {
+    private static final List<String> DEFAULT_TRUSTED_PROXIES = List.of(
+            "127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1/128", "fc00::/7");
+
+    private static final String UNKNOWN = "UNKNOWN";
+    private static final long NO_HOP = -1;
+    private static final ClientIpExtractor DEFAULTS = new ClientIpExtractor(
+            CidrTrie.of(DEFAULT_TRUSTED_PROXIES.stream().map(CidrBlock::parse).toList()));
+
+    private final CidrTrie<Boolean> trustedProxies;
+
+    public ClientIpExtractor(CidrTrie<Boolean> trustedProxies) {
+        this.trustedProxies = trustedProxies;
     }
 
-    public static String extract(HttpServletRequest request) {
+    //  Trusts loopback and private ranges, i.e. an ingress or sidecar in the same cluster
+    public static ClientIpExtractor defaults() {
+        return DEFAULTS;
+    }
+
+    public String extract(HttpServletRequest request) {
+        return extract(request, new IpAddress());
+    }
+
+    //  Also leaves the returned client's parsed form in `client` (invalid when it is not an address), so
+    //  the caller can key on it without parsing the string again
+    public String extract(HttpServletRequest request, IpAddress client) {
+        client.clear();
         if (request == null) {
-            return "UNKNOWN";
+            return UNKNOWN;
+        }
+
+        var remoteAddr = request.getRemoteAddr();
+        if (remoteAddr == null || remoteAddr.isEmpty()) {
+            return UNKNOWN;
+        }
+        if (!isTrusted(client, remoteAddr, host(remoteAddr, 0, remoteAddr.length()))) {
+            return remoteAddr;
         }
 
-        var xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader != null && !xfHeader.isEmpty()) {
-            return xfHeader.split(",")[0].trim();
+        var forwardedFor = request.getHeader("X-Forwarded-For");
+        var leftmost = NO_HOP;
+        if (forwardedFor != null) {
+            var end = forwardedFor.length();
+            while (end > 0) {
+                var comma = forwardedFor.lastIndexOf(',', end - 1);
+                var from = comma + 1;
+                var to = end;
+                while (from < to && forwardedFor.charAt(from) <= ' ') {
+                    from++;
+                }
+                while (to > from && forwardedFor.charAt(to - 1) <= ' ') {
+                    to--;
+                }
+                if (from < to) {
+                    var host = host(forwardedFor, from, to);
+                    if (!isTrusted(client, forwardedFor, host)) {
+                        return substring(forwardedFor, host);
+                    }
+                    leftmost = host;
+                }
+                end = Math.max(comma, 0);
+            }
         }
 
         var cfHeader = request.getHeader("CF-Connecting-IP");
         if (cfHeader != null && !cfHeader.isEmpty()) {
+            client.parse(cfHeader);
             return cfHeader;
         }
+        //  The last hop parsed was the leftmost one, or the peer when there were none
+        return leftmost == NO_HOP ? remoteAddr : substring(forwardedFor, leftmost);
+    }
+
+    private boolean isTrusted(IpAddress address, String text, long host) {
+        return address.parse(text, (int) (host >>> 32), (int) host) && trustedProxies.contains(address);
+    }
+
+    //  Bounds of the address within a hop, packed as from << 32 | to: drops "[...]" around IPv6 and an
+    //  IPv4 ":port" suffix, which some load balancers append
+    private static long host(String text, int from, int to) {
+        if (text.charAt(from) == '[') {
+            var close = text.indexOf(']', from);
+            if (close > from && close < to) {
+                return ((long) (from + 1) << 32) | close;
+            }
+        }
+        var colon = text.indexOf(':', from);
+        if (colon > from && colon < to && text.lastIndexOf(':', to - 1) == colon) {
+            return ((long) from << 32) | colon;
+        }
+        return ((long) from << 32) | to;
+    }
 
-        return request.getRemoteAddr();
+    private static String substring(String text, long host) {
+        var from = (int) (host >>> 32);
+        var to = (int) host;
+        return from == 0 && to == text.length() ? text : text.substring(from, to);
     }
 }
@@ -0,0 +1,33 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrTrie;
+
+import java.util.List;
+
+@Configuration
+@EnableConfigurationProperties(ClientIpExtractorConfig.ClientIpProperties.class)
+class ClientIpExtractorConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ClientIpExtractorConfig.class);
+
+    @Bean
+    ClientIpExtractor clientIpExtractor(ClientIpProperties properties) {
+        var blocks = properties.trustedProxies().stream().map(CidrBlock::parse).toList();
+        log.info("Resolving client IPs through {} trusted proxy ranges", blocks.size());
+        return new ClientIpExtractor(CidrTrie.of(blocks));
+    }
+
+    //  Behind Cloudflare, add its published edge ranges here, otherwise the edge is reported as the client
+    @ConfigurationProperties(prefix = "redirect.client-ip")
+    record ClientIpProperties(@DefaultValue({"127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1/128", "fc00::/7"})
+                              List<String> trustedProxies) {
+    }
+}
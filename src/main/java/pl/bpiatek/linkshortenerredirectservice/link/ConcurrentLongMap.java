@@ -0,0 +1,288 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+//  Concurrent open-addressing map from long keys to non-null values: keys and values live in parallel
+//  arrays probed linearly, so there are no boxed keys and no per-entry nodes. Keys are spread over
+//  segments, each guarded by a StampedLock. Reads are optimistic and only retry under the read lock
+//  when a write to the same segment overlapped them. Removal shifts the rest of the probe chain back
+//  instead of leaving tombstones, so chains do not grow with churn. Conditional replace and remove
+//  compare values by identity.
+final class ConcurrentLongMap<V> {
+
+    private static final int SEGMENT_BITS = 5;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+    private final AtomicInteger size = new AtomicInteger();
+
+    ConcurrentLongMap(int expectedSize) {
+        var perSegment = Math.max(8, (int) (expectedSize / LOAD_FACTOR) >> SEGMENT_BITS);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(Integer.highestOneBit(perSegment - 1) << 1, size);
+        }
+    }
+
+    V get(long key) {
+        var hash = hash(key);
+        return cast(segment(hash).get(key, hash));
+    }
+
+    V put(long key, V value) {
+        var hash = hash(key);
+        return cast(segment(hash).put(key, hash, value, true));
+    }
+
+    V putIfAbsent(long key, V value) {
+        var hash = hash(key);
+        return cast(segment(hash).put(key, hash, value, false));
+    }
+
+    //  The function runs under the segment's write lock, so it must be cheap and must not touch this map
+    V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        var hash = hash(key);
+        return cast(segment(hash).computeIfAbsent(key, hash, function));
+    }
+
+    boolean replace(long key, V expected, V value) {
+        var hash = hash(key);
+        return segment(hash).replace(key, hash, expected, value);
+    }
+
+    V remove(long key) {
+        var hash = hash(key);
+        return cast(segment(hash).remove(key, hash, null));
+    }
+
+    boolean remove(long key, V expected) {
+        var hash = hash(key);
+        return segment(hash).remove(key, hash, expected) != null;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    //  Weakly consistent: each segment is copied under its read lock and visited outside it, so the
+    //  visitor may modify the map
+    void forEach(Visitor<? super V> visitor) {
+        for (var segment : segments) {
+            Table copy;
+            var stamp = segment.lock.readLock();
+            try {
+                copy = segment.table.copy();
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+            for (int i = 0; i < copy.values.length; i++) {
+                if (copy.values[i] != null) {
+                    visitor.accept(copy.keys[i], cast(copy.values[i]));
+                }
+            }
+        }
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    private static long hash(long key) {
+        var h = key;
+        h = (h ^ (h >>> 33)) * 0xff51_afd7_ed55_8ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ce_b9fe_1a85_ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    interface Visitor<V> {
+        void accept(long key, V value);
+    }
+
+    //  Swapped as a whole on resize, so a reader always sees keys and values of the same length
+    private static final class Table {
+
+        private final long[] keys;
+        private final Object[] values;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private Table copy() {
+            var copy = new Table(keys.length);
+            System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+            System.arraycopy(values, 0, copy.values, 0, values.length);
+            return copy;
+        }
+
+        //  Slot holding key, or the empty slot ending its probe chain; -1 only if a racing writer made
+        //  the table look full to an optimistic reader
+        private int slot(long key, long hash) {
+            var index = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (values[index] == null || keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+
+        private final StampedLock lock = new StampedLock();
+        private final AtomicInteger size;
+        private Table table;
+        private int count;
+
+        private Segment(int capacity, AtomicInteger size) {
+            this.table = new Table(capacity);
+            this.size = size;
+        }
+
+        private Object get(long key, long hash) {
+            var stamp = lock.tryOptimisticRead();
+            var value = find(table, key, hash);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+            stamp = lock.readLock();
+            try {
+                return find(table, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static Object find(Table table, long key, long hash) {
+            var slot = table.slot(key, hash);
+            return slot < 0 ? null : table.values[slot];
+        }
+
+        private Object put(long key, long hash, Object value, boolean overwrite) {
+            if (value == null) {
+                throw new NullPointerException("Null values are not supported");
+            }
+            var stamp = lock.writeLock();
+            try {
+                var slot = table.slot(key, hash);
+                var previous = table.values[slot];
+                if (previous == null) {
+                    insert(slot, key, value);
+                } else if (overwrite) {
+                    table.values[slot] = value;
+                }
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Object computeIfAbsent(long key, long hash, LongFunction<?> function) {
+            var stamp = lock.writeLock();
+            try {
+                var slot = table.slot(key, hash);
+                if (table.values[slot] != null) {
+                    return table.values[slot];
+                }
+                var value = function.apply(key);
+                if (value != null) {
+                    insert(slot, key, value);
+                }
+                return value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private boolean replace(long key, long hash, Object expected, Object value) {
+            if (value == null) {
+                throw new NullPointerException("Null values are not supported");
+            }
+            var stamp = lock.writeLock();
+            try {
+                var slot = table.slot(key, hash);
+                if (table.values[slot] == null || table.values[slot] != expected) {
+                    return false;
+                }
+                table.values[slot] = value;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        //  expected == null removes whatever is mapped
+        private Object remove(long key, long hash, Object expected) {
+            var stamp = lock.writeLock();
+            try {
+                var slot = table.slot(key, hash);
+                var previous = table.values[slot];
+                if (previous == null || (expected != null && previous != expected)) {
+                    return null;
+                }
+                delete(slot);
+                count--;
+                size.decrementAndGet();
+                return previous;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void insert(int slot, long key, Object value) {
+            table.keys[slot] = key;
+            table.values[slot] = value;
+            count++;
+            size.incrementAndGet();
+            if (count > table.values.length * LOAD_FACTOR) {
+                resize();
+            }
+        }
+
+        private void resize() {
+            var grown = new Table(table.values.length << 1);
+            for (int i = 0; i < table.values.length; i++) {
+                if (table.values[i] != null) {
+                    var slot = grown.slot(table.keys[i], hash(table.keys[i]));
+                    grown.keys[slot] = table.keys[i];
+                    grown.values[slot] = table.values[i];
+                }
+            }
+            table = grown;
+        }
+
+        //  Backward-shift deletion: later entries of the chain that may live at the freed slot move into it
+        private void delete(int slot) {
+            var keys = table.keys;
+            var values = table.values;
+            var mask = table.mask;
+            var free = slot;
+            var next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                if (values[next] == null) {
+                    break;
+                }
+                var home = (int) hash(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    free = next;
+                }
+            }
+            keys[free] = 0;
+            values[free] = null;
+        }
+    }
+}
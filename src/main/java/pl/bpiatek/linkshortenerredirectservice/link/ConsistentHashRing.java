@@ -0,0 +1,65 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+//  Each node owns virtualNodes points on a 64-bit ring and a key belongs to the first point at or after
+//  its hash. Adding or removing a node only moves the keys between its points and their predecessors,
+//  roughly 1/N of the keyspace.
+final class ConsistentHashRing<N> {
+
+    private final long[] points;
+    private final Object[] owners;
+    private final List<N> nodes;
+
+    ConsistentHashRing(List<N> nodes, Function<N, String> nameOf, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        this.nodes = List.copyOf(nodes);
+        var entries = new long[nodes.size() * virtualNodes][];
+        int index = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            var name = nameOf.apply(nodes.get(node));
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                entries[index++] = new long[]{hash(name + "#" + replica), node};
+            }
+        }
+        Arrays.sort(entries, (left, right) -> Long.compare(left[0], right[0]));
+        points = new long[entries.length];
+        owners = new Object[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = nodes.get((int) entries[i][1]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    N nodeFor(String key) {
+        var index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return (N) owners[index == points.length ? 0 : index];
+    }
+
+    List<N> nodes() {
+        return nodes;
+    }
+
+    //  FNV-1a 64 followed by the murmur3 finalizer, which spreads similar keys like "node#1", "node#2"
+    static long hash(String key) {
+        var hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
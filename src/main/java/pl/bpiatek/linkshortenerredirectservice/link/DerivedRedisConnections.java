@@ -0,0 +1,103 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.SocketOptions;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.time.Duration;
+
+//  Connections the service opens next to the spring.data.redis one (shards, isolated workloads, the
+//  hedge replica, the tracking connection, the live counters database). They all take credentials, SSL,
+//  timeouts and the client name from spring.data.redis, so a node only differs in what it overrides.
+public final class DerivedRedisConnections {
+
+    private static final Duration LETTUCE_DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+    private DerivedRedisConnections() {
+    }
+
+    //  node is host:port; the database is spring.data.redis.database
+    static LettuceConnectionFactory connectionFactory(String node, RedisProperties redisProperties, Workload workload) {
+        var separator = node.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalStateException("Redis node must be given as host:port, got " + node);
+        }
+        return connectionFactory(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)),
+                redisProperties.getDatabase(), redisProperties, workload);
+    }
+
+    public static LettuceConnectionFactory connectionFactory(String host, int port, int database,
+                                                             RedisProperties redisProperties, Workload workload) {
+        var configuration = new RedisStandaloneConfiguration(host, port);
+        configuration.setDatabase(database);
+        configuration.setUsername(redisProperties.getUsername());
+        if (redisProperties.getPassword() != null) {
+            configuration.setPassword(redisProperties.getPassword());
+        }
+
+        var clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(workload.commandTimeout())
+                .clientOptions(clientOptions(redisProperties).build());
+        if (redisProperties.getSsl().isEnabled()) {
+            clientConfiguration.useSsl();
+        }
+        if (redisProperties.getClientName() != null) {
+            clientConfiguration.clientName(redisProperties.getClientName());
+        }
+        var shutdownTimeout = redisProperties.getLettuce().getShutdownTimeout();
+        if (shutdownTimeout != null) {
+            clientConfiguration.shutdownTimeout(shutdownTimeout);
+        }
+
+        var connectionFactory = new LettuceConnectionFactory(configuration, clientConfiguration.build());
+        connectionFactory.setPipeliningFlushPolicy(workload.pipelineFlushAfter() > 1
+                ? LettuceConnection.PipeliningFlushPolicy.buffered(workload.pipelineFlushAfter())
+                : LettuceConnection.PipeliningFlushPolicy.flushEachCommand());
+        connectionFactory.afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    //  For connections that need the raw Lettuce client rather than a Spring connection factory
+    static RedisURI.Builder redisUri(RedisProperties redisProperties) {
+        var uri = RedisURI.builder()
+                .withHost(redisProperties.getHost())
+                .withPort(redisProperties.getPort())
+                .withDatabase(redisProperties.getDatabase())
+                .withSsl(redisProperties.getSsl().isEnabled())
+                .withTimeout(Workload.of(redisProperties).commandTimeout());
+        if (redisProperties.getPassword() != null) {
+            if (redisProperties.getUsername() != null) {
+                uri.withAuthentication(redisProperties.getUsername(), redisProperties.getPassword());
+            } else {
+                uri.withPassword(redisProperties.getPassword().toCharArray());
+            }
+        }
+        if (redisProperties.getClientName() != null) {
+            uri.withClientName(redisProperties.getClientName());
+        }
+        return uri;
+    }
+
+    static ClientOptions.Builder clientOptions(RedisProperties redisProperties) {
+        var options = ClientOptions.builder();
+        if (redisProperties.getConnectTimeout() != null) {
+            options.socketOptions(SocketOptions.builder().connectTimeout(redisProperties.getConnectTimeout()).build());
+        }
+        return options;
+    }
+
+    //  pipeline-flush-after: commands buffered per flush inside executePipelined, 1 to flush each one
+    public record Workload(Duration commandTimeout, int pipelineFlushAfter) {
+
+        //  spring.data.redis.timeout (Lettuce's 60s when unset), flushing each pipelined command
+        public static Workload of(RedisProperties redisProperties) {
+            var timeout = redisProperties.getTimeout();
+            return new Workload(timeout != null ? timeout : LETTUCE_DEFAULT_TIMEOUT, 1);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Destination URLs of locally cached links, each distinct URL stored once and front-coded as UTF-8:
+//  the front (everything up to the query string, or up to the last '/' without one) is shared by all
+//  URLs that have it, and each URL keeps only the rest. Campaign links that differ only in their
+//  utm_* parameters end up sharing one front and many links to one URL share one Destination.
+//
+//  Both levels are reference counted by the cache entries holding them and dropped with the last
+//  one, so updated or evicted links free what no other link uses. Counts only change inside the
+//  maps' compute, which serialises them per key.
+final class DestinationDictionary {
+
+    private static final Front NO_FRONT = new Front(new byte[0]);
+
+    private final ConcurrentHashMap<Front, Front> fronts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Destination, Destination> destinations = new ConcurrentHashMap<>();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    //  Every acquire must be paired with one release of the returned Destination
+    Destination acquire(String url) {
+        var bytes = url.getBytes(UTF_8);
+        var split = frontLength(bytes);
+        var front = split == 0 ? NO_FRONT : acquireFront(Arrays.copyOf(bytes, split));
+        var candidate = new Destination(front, Arrays.copyOfRange(bytes, split, bytes.length));
+        var shared = destinations.compute(candidate, (key, existing) -> {
+            if (existing == null) {
+                storedBytes.addAndGet(candidate.rest.length);
+                existing = candidate;
+            }
+            existing.references++;
+            return existing;
+        });
+        if (shared != candidate) {
+            releaseFront(front);
+        }
+        return shared;
+    }
+
+    void release(Destination destination) {
+        destinations.computeIfPresent(destination, (key, existing) -> {
+            if (--existing.references > 0) {
+                return existing;
+            }
+            storedBytes.addAndGet(-existing.rest.length);
+            releaseFront(existing.front);
+            return null;
+        });
+    }
+
+    int size() {
+        return destinations.size();
+    }
+
+    //  UTF-8 bytes held for fronts and rests, not counting object and map overhead
+    long storedBytes() {
+        return storedBytes.get();
+    }
+
+    private Front acquireFront(byte[] bytes) {
+        var candidate = new Front(bytes);
+        return fronts.compute(candidate, (key, existing) -> {
+            if (existing == null) {
+                storedBytes.addAndGet(bytes.length);
+                existing = candidate;
+            }
+            existing.references++;
+            return existing;
+        });
+    }
+
+    private void releaseFront(Front front) {
+        if (front == NO_FRONT) {
+            return;
+        }
+        fronts.computeIfPresent(front, (key, existing) -> {
+            if (--existing.references > 0) {
+                return existing;
+            }
+            storedBytes.addAndGet(-existing.bytes.length);
+            return null;
+        });
+    }
+
+    //  '?' and '/' never occur inside a multi-byte UTF-8 sequence, so splitting on them keeps both halves valid
+    private static int frontLength(byte[] url) {
+        var lastSlash = -1;
+        for (int i = 0; i < url.length; i++) {
+            if (url[i] == '?') {
+                return i + 1;
+            }
+            if (url[i] == '/') {
+                lastSlash = i;
+            }
+        }
+        return lastSlash + 1;
+    }
+
+    static final class Destination {
+
+        private final Front front;
+        private final byte[] rest;
+        private final int hash;
+        private int references;
+
+        private Destination(Front front, byte[] rest) {
+            this.front = front;
+            this.rest = rest;
+            this.hash = 31 * System.identityHashCode(front) + Arrays.hashCode(rest);
+        }
+
+        String url() {
+            var bytes = Arrays.copyOf(front.bytes, front.bytes.length + rest.length);
+            System.arraycopy(rest, 0, bytes, front.bytes.length, rest.length);
+            return new String(bytes, UTF_8);
+        }
+
+        //  Fronts are canonical, so identity is enough for them
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Destination destination
+                    && front == destination.front && Arrays.equals(rest, destination.rest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Front {
+
+        private final byte[] bytes;
+        private final int hash;
+        private int references;
+
+        private Front(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Front front && Arrays.equals(bytes, front.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  One top-level string key per link: link:<shortUrl> -> JSON
+final class FlatKeyLayout implements LinkKeyLayout {
+
+    static final String KEY_PREFIX = "link:";
+    private static final RedisScript<Long> UPSERT_SCRIPT = new DefaultRedisScript<>("""
+            local existing = redis.call('get', KEYS[1])
+            if existing then
+                local existingData = cjson.decode(existing)
+                if tonumber(ARGV[2]) <= tonumber(existingData.updatedAtMicros) then
+                    return 0 -- Status: Stale
+                end
+            end
+            redis.call('set', KEYS[1], ARGV[1])
+            return 1 -- Status: Updated
+            """, Long.class);
+
+    @Override
+    public String redisKey(String shortUrl) {
+        return KEY_PREFIX + shortUrl;
+    }
+
+    @Override
+    public String read(StringRedisTemplate redisTemplate, String shortUrl) {
+        return redisTemplate.opsForValue().get(redisKey(shortUrl));
+    }
+
+    @Override
+    public boolean upsert(StringRedisTemplate redisTemplate, String shortUrl, String json, long updatedAtMicros) {
+        var result = redisTemplate.execute(UPSERT_SCRIPT, List.of(redisKey(shortUrl)), json, String.valueOf(updatedAtMicros));
+        return Long.valueOf(1).equals(result);
+    }
+
+    @Override
+    public void writeTombstone(StringRedisTemplate redisTemplate, String shortUrl, String json, Duration ttl) {
+        redisTemplate.opsForValue().set(redisKey(shortUrl), json, ttl);
+    }
+
+    @Override
+    public void stage(RedisConnection connection, String shortUrl, byte[] json, long ttlSeconds) {
+        var key = redisKey(shortUrl).getBytes(UTF_8);
+        if (ttlSeconds > 0) {
+            connection.stringCommands().setEx(key, ttlSeconds, json);
+        } else {
+            connection.stringCommands().set(key, json);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Links grouped into hashes, linkb:<bucket> -> { shortUrl -> JSON }, so that small buckets use Redis'
+//  listpack encoding instead of paying per-key overhead. Size buckets to roughly 100 links each, and
+//  raise hash-max-listpack-entries (e.g. 256) and hash-max-listpack-value (e.g. 1024) above the
+//  largest bucket and JSON size, otherwise Redis converts the bucket to a hashtable and most of the
+//  saving is lost. Tombstones rely on hash field expiration (HEXPIRE), which needs Redis 7.4+.
+final class HashBucketKeyLayout implements LinkKeyLayout {
+
+    static final String KEY_PREFIX = "linkb:";
+    private static final RedisScript<Long> UPSERT_SCRIPT = new DefaultRedisScript<>("""
+            local existing = redis.call('hget', KEYS[1], ARGV[1])
+            if existing then
+                local existingData = cjson.decode(existing)
+                if tonumber(ARGV[3]) <= tonumber(existingData.updatedAtMicros) then
+                    return 0 -- Status: Stale
+                end
+            end
+            redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            return 1 -- Status: Updated
+            """, Long.class);
+    private static final RedisScript<Long> TOMBSTONE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('hexpire', KEYS[1], ARGV[3], 'FIELDS', 1, ARGV[1])
+            return 1
+            """, Long.class);
+
+    private final int buckets;
+
+    HashBucketKeyLayout(int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Bucket count must be positive, got " + buckets);
+        }
+        this.buckets = buckets;
+    }
+
+    //  FNV-1a over the UTF-16 code units: stable across JVMs and allocation-free
+    int bucketOf(String shortUrl) {
+        var hash = 0x811c9dc5;
+        for (int i = 0; i < shortUrl.length(); i++) {
+            hash ^= shortUrl.charAt(i);
+            hash *= 0x01000193;
+        }
+        return Integer.remainderUnsigned(hash, buckets);
+    }
+
+    @Override
+    public String toString() {
+        return "hash-buckets(" + buckets + ")";
+    }
+
+    @Override
+    public String redisKey(String shortUrl) {
+        return KEY_PREFIX + bucketOf(shortUrl);
+    }
+
+    @Override
+    public String read(StringRedisTemplate redisTemplate, String shortUrl) {
+        return (String) redisTemplate.opsForHash().get(redisKey(shortUrl), shortUrl);
+    }
+
+    @Override
+    public boolean upsert(StringRedisTemplate redisTemplate, String shortUrl, String json, long updatedAtMicros) {
+        var result = redisTemplate.execute(UPSERT_SCRIPT, List.of(redisKey(shortUrl)),
+                shortUrl, json, String.valueOf(updatedAtMicros));
+        return Long.valueOf(1).equals(result);
+    }
+
+    @Override
+    public void writeTombstone(StringRedisTemplate redisTemplate, String shortUrl, String json, Duration ttl) {
+        redisTemplate.execute(TOMBSTONE_SCRIPT, List.of(redisKey(shortUrl)),
+                shortUrl, json, String.valueOf(Math.max(ttl.toSeconds(), 1)));
+    }
+
+    @Override
+    public void stage(RedisConnection connection, String shortUrl, byte[] json, long ttlSeconds) {
+        var key = redisKey(shortUrl).getBytes(UTF_8);
+        var field = shortUrl.getBytes(UTF_8);
+        connection.hashCommands().hSet(key, field, json);
+        if (ttlSeconds > 0) {
+            connection.execute("HEXPIRE", key, String.valueOf(ttlSeconds).getBytes(UTF_8),
+                    "FIELDS".getBytes(UTF_8), "1".getBytes(UTF_8), field);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//  Token bucket refilled by traffic rather than time: every read deposits maxExtraLoad of a token and
+//  a hedge spends a whole one, so hedges never exceed that share of reads beyond a small burst.
+final class HedgeBudget {
+
+    private static final long SCALE = 1_000_000L;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance = new AtomicLong();
+
+    HedgeBudget(double maxExtraLoad, int burst) {
+        this.deposit = (long) (maxExtraLoad * SCALE);
+        this.capacity = burst * SCALE;
+    }
+
+    void onRead() {
+        balance.accumulateAndGet(deposit, (current, amount) -> Math.min(current + amount, capacity));
+    }
+
+    boolean tryHedge() {
+        while (true) {
+            var current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Reads from the primary and, when it has not answered within the tracked latency percentile, sends
+//  the same read to a replica; whichever answers first wins. Hedges are capped by HedgeBudget so a
+//  slow primary cannot double the load on the replica.
+public class HedgedCacheReader implements AutoCloseable {
+
+    private static final HedgedCacheReader DISABLED = new HedgedCacheReader();
+
+    private final StringRedisTemplate primary;
+    private final StringRedisTemplate replica;
+    private final LinkKeyLayout keyLayout;
+    private final LatencyTracker primaryLatency;
+    private final HedgeBudget budget;
+    private final ExecutorService executor;
+    private final DisposableBean replicaConnection;
+    private final Counter reads;
+    private final Counter hedges;
+    private final Counter budgetExhausted;
+    private final Counter primaryWins;
+    private final Counter replicaWins;
+
+    private HedgedCacheReader() {
+        this.primary = null;
+        this.replica = null;
+        this.keyLayout = null;
+        this.primaryLatency = null;
+        this.budget = null;
+        this.executor = null;
+        this.replicaConnection = null;
+        this.reads = null;
+        this.hedges = null;
+        this.budgetExhausted = null;
+        this.primaryWins = null;
+        this.replicaWins = null;
+    }
+
+    HedgedCacheReader(StringRedisTemplate primary, StringRedisTemplate replica, LinkKeyLayout keyLayout,
+                      LatencyTracker primaryLatency, HedgeBudget budget, DisposableBean replicaConnection,
+                      MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.keyLayout = keyLayout;
+        this.primaryLatency = primaryLatency;
+        this.budget = budget;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hedged-read-", 0).factory());
+        this.replicaConnection = replicaConnection;
+        this.reads = Counter.builder("redirect.cache.hedge.reads").register(meterRegistry);
+        this.hedges = Counter.builder("redirect.cache.hedge.sent")
+                .description("Reads duplicated to the replica because the primary was slow")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("redirect.cache.hedge.budget.exhausted")
+                .description("Slow reads that were not hedged because the extra-load budget was spent")
+                .register(meterRegistry);
+        this.primaryWins = Counter.builder("redirect.cache.hedge.wins").tag("winner", "primary").register(meterRegistry);
+        this.replicaWins = Counter.builder("redirect.cache.hedge.wins").tag("winner", "replica").register(meterRegistry);
+        Gauge.builder("redirect.cache.hedge.delay", primaryLatency, HedgedCacheReader::thresholdSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public static HedgedCacheReader disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return executor != null;
+    }
+
+    String read(String shortUrl) {
+        reads.increment();
+        budget.onRead();
+        var start = System.nanoTime();
+        var primaryRead = CompletableFuture.supplyAsync(() -> keyLayout.read(primary, shortUrl), executor);
+        primaryRead.whenComplete((result, error) -> primaryLatency.record(System.nanoTime() - start));
+
+        try {
+            return primaryRead.get(primaryLatency.thresholdNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (!budget.tryHedge()) {
+                budgetExhausted.increment();
+                return join(primaryRead);
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheUnavailableException("Interrupted while reading " + shortUrl);
+        }
+
+        hedges.increment();
+        var replicaRead = CompletableFuture.supplyAsync(() -> keyLayout.read(replica, shortUrl), executor);
+        return join(firstSuccessful(primaryRead, replicaRead));
+    }
+
+    private CompletableFuture<String> firstSuccessful(CompletableFuture<String> primaryRead, CompletableFuture<String> replicaRead) {
+        var winner = new CompletableFuture<String>();
+        var failures = new AtomicInteger();
+        primaryRead.whenComplete((result, error) -> settle(winner, failures, result, error, primaryWins));
+        replicaRead.whenComplete((result, error) -> settle(winner, failures, result, error, replicaWins));
+        return winner;
+    }
+
+    private static void settle(CompletableFuture<String> winner, AtomicInteger failures, String result, Throwable error, Counter wins) {
+        if (error == null) {
+            if (winner.complete(result)) {
+                wins.increment();
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private static String join(CompletableFuture<String> read) {
+        try {
+            return read.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CacheUnavailableException("Interrupted while waiting for a cache read");
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        var cause = e.getCause() instanceof CompletionException completion ? completion.getCause() : e.getCause();
+        return cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+    }
+
+    private static double thresholdSeconds(LatencyTracker tracker) {
+        var nanos = tracker.thresholdNanos();
+        return nanos == Long.MAX_VALUE ? Double.NaN : nanos / 1e9;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (replicaConnection != null) {
+            replicaConnection.destroy();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+//  link.cache.hedge.replica=host:port turns on hedged reads against that replica of the single node
+@Configuration
+class HedgedCacheReaderConfig {
+
+    @Bean(destroyMethod = "close")
+    HedgedCacheReader hedgedCacheReader(RedisProperties redisProperties,
+                                        RedisShardRouter shardRouter,
+                                        TrackingRedirectCache trackingCache,
+                                        LinkKeyLayout keyLayout,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${link.cache.hedge.replica:}") String replica,
+                                        @Value("${link.cache.hedge.percentile:0.95}") double percentile,
+                                        @Value("${link.cache.hedge.min-delay:1ms}") Duration minDelay,
+                                        @Value("${link.cache.hedge.max-extra-load:0.05}") double maxExtraLoad) {
+        if (replica.isBlank()) {
+            return HedgedCacheReader.disabled();
+        }
+        if (shardRouter.isSharded() || trackingCache.enabled()) {
+            throw new IllegalStateException("link.cache.hedge.replica cannot be combined with sharding or tracking mode");
+        }
+
+        var replicaConnectionFactory = DerivedRedisConnections.connectionFactory(replica, redisProperties,
+                DerivedRedisConnections.Workload.of(redisProperties));
+
+        //  The single shard's read connection, which is the spring.data.redis one unless workloads are isolated
+        var primary = shardRouter.shards().getFirst().redisTemplate();
+        return new HedgedCacheReader(primary, new StringRedisTemplate(replicaConnectionFactory), keyLayout,
+                new LatencyTracker(1024, percentile, minDelay.toNanos()), new HedgeBudget(maxExtraLoad, 10),
+                replicaConnectionFactory, meterRegistry);
+    }
+}
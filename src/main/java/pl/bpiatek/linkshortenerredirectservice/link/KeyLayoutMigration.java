@@ -0,0 +1,171 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Copies flat link:<shortUrl> keys into a hash-bucketed layout. Upserts stay version-checked, so the
+//  migration can run while pods still use the flat layout, again after switching link.cache.layout.type
+//  to pick up keys written in between, and finally with deleteSource to drop the flat keys.
+@Component
+class KeyLayoutMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyLayoutMigration.class);
+
+    private final RedisShardRouter shardRouter;
+    private final LinkKeyLayout configuredLayout;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final int batchSize;
+
+    private volatile Progress progress;
+
+    KeyLayoutMigration(RedisShardRouter shardRouter,
+                       LinkKeyLayout configuredLayout,
+                       ObjectMapper objectMapper,
+                       Clock clock,
+                       @Value("${link.cache.layout.migration.batch-size:500}") int batchSize) {
+        this.shardRouter = shardRouter;
+        this.configuredLayout = configuredLayout;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.batchSize = batchSize;
+    }
+
+    //  buckets may be null once pods run with the bucketed layout, in which case that layout is the target
+    synchronized Status start(Integer buckets, boolean deleteSource) {
+        if (progress != null && progress.finishedAt == null) {
+            return status();
+        }
+        var targetLayout = buckets != null ? LinkKeyLayout.hashBuckets(buckets) : configuredLayout;
+        if (targetLayout instanceof FlatKeyLayout) {
+            throw new IllegalStateException("Target bucket count is required while link.cache.layout.type is flat");
+        }
+        progress = new Progress(clock.instant(), targetLayout, deleteSource);
+        Thread.ofVirtual().name("key-layout-migration").start(this::run);
+        return status();
+    }
+
+    Status status() {
+        var current = progress;
+        if (current == null) {
+            return new Status(null, false, null, null, 0, 0, 0, 0, null);
+        }
+        return new Status(current.targetLayout.toString(), current.finishedAt == null,
+                current.startedAt, current.finishedAt, current.scanned.get(), current.migrated.get(),
+                current.skipped.get(), current.deleted.get(), current.error);
+    }
+
+    private void run() {
+        var current = progress;
+        log.info("Migrating flat link keys into {} (deleteSource={})", current.targetLayout, current.deleteSource);
+        try {
+            for (var shard : shardRouter.shards()) {
+                migrate(shard.ingest().redisTemplate(), current);
+            }
+            log.info("Key layout migration completed: {}", status());
+        } catch (Exception e) {
+            current.error = e.getMessage();
+            log.error("Key layout migration failed", e);
+        } finally {
+            current.finishedAt = clock.instant();
+        }
+    }
+
+    private void migrate(StringRedisTemplate source, Progress current) throws Exception {
+        var options = ScanOptions.scanOptions().match(FlatKeyLayout.KEY_PREFIX + "*").count(batchSize).build();
+        try (var cursor = source.scan(options)) {
+            var batch = new ArrayList<String>(batchSize);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    migrate(source, batch, current);
+                    batch.clear();
+                }
+            }
+            migrate(source, batch, current);
+        }
+    }
+
+    private void migrate(StringRedisTemplate source, List<String> keys, Progress current) throws Exception {
+        if (keys.isEmpty()) {
+            return;
+        }
+        var targetLayout = current.targetLayout;
+        var values = source.executePipelined((RedisCallback<Object>) connection -> {
+            for (var key : keys) {
+                var rawKey = key.getBytes(UTF_8);
+                connection.stringCommands().get(rawKey);
+                connection.keyCommands().pTtl(rawKey);
+            }
+            return null;
+        });
+
+        for (int i = 0; i < keys.size(); i++) {
+            var json = (String) values.get(2 * i);
+            var ttlMillis = (Long) values.get(2 * i + 1);
+            current.scanned.incrementAndGet();
+            if (json == null || (ttlMillis != null && ttlMillis == -2)) {
+                current.skipped.incrementAndGet();
+                continue;
+            }
+            var shortUrl = keys.get(i).substring(FlatKeyLayout.KEY_PREFIX.length());
+            var targetKey = targetLayout.redisKey(shortUrl);
+            if (ttlMillis != null && ttlMillis > 0) {
+                shardRouter.executeIngest(targetKey, template -> {
+                    targetLayout.writeTombstone(template, shortUrl, json, Duration.ofMillis(ttlMillis));
+                    return null;
+                });
+                current.migrated.incrementAndGet();
+            } else {
+                var version = objectMapper.readValue(json, RedirectInfo.class).updatedAtMicros();
+                if (shardRouter.executeIngest(targetKey, template -> targetLayout.upsert(template, shortUrl, json, version))) {
+                    current.migrated.incrementAndGet();
+                } else {
+                    current.skipped.incrementAndGet();
+                }
+            }
+        }
+
+        if (current.deleteSource) {
+            var deleted = source.delete(keys);
+            current.deleted.addAndGet(deleted == null ? 0 : deleted);
+        }
+    }
+
+    public record Status(String targetLayout, boolean running, Instant startedAt, Instant finishedAt,
+                  long scanned, long migrated, long skipped, long deleted, String error) {
+    }
+
+    private static final class Progress {
+        private final Instant startedAt;
+        private final LinkKeyLayout targetLayout;
+        private final boolean deleteSource;
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong migrated = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong deleted = new AtomicLong();
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private Progress(Instant startedAt, LinkKeyLayout targetLayout, boolean deleteSource) {
+            this.startedAt = startedAt;
+            this.targetLayout = targetLayout;
+            this.deleteSource = deleteSource;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+//  GET reports progress, POST copies flat keys into hash buckets (deleteSource=true drops them afterwards)
+@Component
+@Endpoint(id = "cachelayout")
+class KeyLayoutMigrationEndpoint {
+
+    private final KeyLayoutMigration migration;
+
+    KeyLayoutMigrationEndpoint(KeyLayoutMigration migration) {
+        this.migration = migration;
+    }
+
+    @ReadOperation
+    public KeyLayoutMigration.Status status() {
+        return migration.status();
+    }
+
+    @WriteOperation
+    public KeyLayoutMigration.Status migrate(@Nullable Integer buckets, @Nullable Boolean deleteSource) {
+        return migration.start(buckets, Boolean.TRUE.equals(deleteSource));
+    }
+}
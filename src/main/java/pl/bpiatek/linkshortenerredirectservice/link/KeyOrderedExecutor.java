@@ -0,0 +1,80 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Tasks with the same key always land on the same single-threaded lane, so they run in submission
+//  order while different keys proceed in parallel. The semaphore bounds the total in-flight work.
+class KeyOrderedExecutor implements AutoCloseable {
+
+    private final ExecutorService[] lanes;
+    private final AtomicInteger[] laneDepths;
+    private final Semaphore inFlightPermits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer queueWait;
+
+    KeyOrderedExecutor(String name, int laneCount, int maxInFlight, MeterRegistry meterRegistry) {
+        lanes = new ExecutorService[laneCount];
+        laneDepths = new AtomicInteger[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            lanes[lane] = Executors.newSingleThreadExecutor(Thread.ofVirtual().name(name + "-lane-" + lane).factory());
+            laneDepths[lane] = new AtomicInteger();
+            Gauge.builder(name + ".lane.depth", laneDepths[lane], AtomicInteger::get)
+                    .tag("lane", String.valueOf(lane))
+                    .register(meterRegistry);
+        }
+        inFlightPermits = new Semaphore(maxInFlight);
+        Gauge.builder(name + ".in.flight", inFlight, AtomicInteger::get).register(meterRegistry);
+        queueWait = Timer.builder(name + ".queue.wait")
+                .description("Time a task waited behind earlier tasks for keys on the same lane")
+                .register(meterRegistry);
+    }
+
+    void submit(String key, Runnable task) throws InterruptedException {
+        inFlightPermits.acquire();
+        var lane = Math.floorMod(key.hashCode(), lanes.length);
+        var submittedAt = System.nanoTime();
+        inFlight.incrementAndGet();
+        laneDepths[lane].incrementAndGet();
+
+        lanes[lane].execute(() -> {
+            queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            try {
+                task.run();
+            } finally {
+                laneDepths[lane].decrementAndGet();
+                inFlight.decrementAndGet();
+                inFlightPermits.release();
+            }
+        });
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void close() {
+        for (var lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    boolean awaitTermination(Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        for (var lane : lanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
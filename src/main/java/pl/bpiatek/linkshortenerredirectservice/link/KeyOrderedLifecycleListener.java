@@ -0,0 +1,186 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkLifecycleEvent;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//  Parallel alternative to LinkLifecycleConsumer's listener: each polled batch is fanned out to lanes
+//  keyed by short URL, so events for one link stay ordered while unrelated links are applied
+//  concurrently. Offsets are committed manually, only up to the highest contiguous completed record.
+//
+//  Records below a partition's end offset at assignment are the backlog a restart or rebalance
+//  replays, so for those batches the stored versions are read first (one pipeline) and the version
+//  index drops the stale ones before they reach a lane.
+@Component
+@ConditionalOnProperty(name = "link.lifecycle.parallel.enabled", havingValue = "true")
+class KeyOrderedLifecycleListener implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyOrderedLifecycleListener.class);
+    static final String LISTENER_ID = "lifecycle-parallel";
+
+    private final LinkLifecycleConsumer lifecycleConsumer;
+    private final KeyOrderedExecutor executor;
+    private final Duration drainTimeout;
+    private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> backlogEnds = new ConcurrentHashMap<>();
+
+    KeyOrderedLifecycleListener(LinkLifecycleConsumer lifecycleConsumer,
+                                MeterRegistry meterRegistry,
+                                @Value("${link.lifecycle.parallel.lanes:16}") int lanes,
+                                @Value("${link.lifecycle.parallel.max-in-flight:1000}") int maxInFlight,
+                                @Value("${link.lifecycle.parallel.drain-timeout:10s}") Duration drainTimeout) {
+        this.lifecycleConsumer = lifecycleConsumer;
+        this.executor = new KeyOrderedExecutor("lifecycle.parallel", lanes, maxInFlight, meterRegistry);
+        this.drainTimeout = drainTimeout;
+    }
+
+    @KafkaListener(
+            id = LISTENER_ID,
+            idIsGroup = false,
+            topics = "${topic.link.lifecycle}",
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "linkLifecycleEventsBatchContainerFactory"
+    )
+    public void consumeLinkLifecycleEvents(List<ConsumerRecord<String, LinkLifecycleEvent>> records,
+                                           Consumer<?, ?> consumer) throws InterruptedException {
+        seedBacklogVersions(records);
+        for (var record : records) {
+            var partition = new TopicPartition(record.topic(), record.partition());
+            var tracker = trackers.computeIfAbsent(partition, p -> new PartitionOffsetTracker());
+            var offset = record.offset();
+            var event = record.value();
+
+            tracker.dispatched(offset);
+            executor.submit(LinkLifecycleConsumer.shortUrlOf(event), () -> {
+                try {
+                    lifecycleConsumer.apply(event);
+                } catch (RuntimeException e) {
+                    log.error("Failed to apply lifecycle event from {} at offset {}", partition, offset, e);
+                } finally {
+                    tracker.completed(offset);
+                }
+            });
+        }
+        commitCompleted(consumer, trackers.keySet());
+    }
+
+    //  Idle events are published on the consumer thread, which makes it safe to commit the tail of
+    //  the last batch once the lanes have drained it
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    void onIdle(ListenerContainerIdleEvent event) {
+        var consumer = event.getConsumer();
+        if (consumer != null) {
+            commitCompleted(consumer, event.getTopicPartitions() != null ? event.getTopicPartitions() : trackers.keySet());
+        }
+    }
+
+    private void seedBacklogVersions(List<ConsumerRecord<String, LinkLifecycleEvent>> records) {
+        if (backlogEnds.isEmpty()) {
+            return;
+        }
+        var backlog = new HashSet<String>();
+        for (var record : records) {
+            var partition = new TopicPartition(record.topic(), record.partition());
+            var end = backlogEnds.get(partition);
+            if (end == null) {
+                continue;
+            }
+            if (record.offset() >= end) {
+                backlogEnds.remove(partition);
+            } else if (record.value() != null && !LinkLifecycleConsumer.shortUrlOf(record.value()).isEmpty()) {
+                backlog.add(LinkLifecycleConsumer.shortUrlOf(record.value()));
+            }
+        }
+        if (!backlog.isEmpty()) {
+            lifecycleConsumer.seedVersions(backlog);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!lifecycleConsumer.tracksVersions()) {
+            return;
+        }
+        try {
+            consumer.endOffsets(partitions).forEach(backlogEnds::put);
+        } catch (RuntimeException e) {
+            log.warn("Could not read end offsets of {}, backlog will not be pre-checked: {}", partitions, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        var deadline = System.nanoTime() + drainTimeout.toNanos();
+        for (var partition : partitions) {
+            var tracker = trackers.get(partition);
+            while (tracker != null && tracker.pending() > 0 && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        commitCompleted(consumer, partitions);
+        partitions.forEach(trackers::remove);
+        partitions.forEach(backlogEnds::remove);
+    }
+
+    private void commitCompleted(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        var offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+        for (var partition : partitions) {
+            var tracker = trackers.get(partition);
+            var committable = tracker != null ? tracker.committable() : -1;
+            if (committable >= 0) {
+                offsets.put(partition, new OffsetAndMetadata(committable));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        try {
+            consumer.commitSync(offsets);
+            offsets.forEach((partition, offset) -> {
+                var tracker = trackers.get(partition);
+                if (tracker != null) {
+                    tracker.committed(offset.offset());
+                }
+            });
+            log.debug("Committed lifecycle offsets {}", offsets);
+        } catch (RuntimeException e) {
+            //  Retried on the next batch or idle event; redelivery is safe because upserts are version-checked
+            log.warn("Failed to commit lifecycle offsets {}: {}", offsets, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.close();
+        if (!executor.awaitTermination(drainTimeout)) {
+            log.warn("Lifecycle lanes did not drain within {}; {} events left in flight", drainTimeout, executor.inFlight());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  Percentile over the most recent samples, recomputed every RECOMPUTE_EVERY records by the thread
+//  that crosses the boundary. Writes into the ring are deliberately unsynchronized: an occasional
+//  torn or overwritten sample does not move a percentile.
+final class LatencyTracker {
+
+    private static final int RECOMPUTE_EVERY = 128;
+
+    private final long[] samples;
+    private final int mask;
+    private final double percentile;
+    private final long floorNanos;
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile long thresholdNanos = Long.MAX_VALUE;
+
+    LatencyTracker(int capacity, double percentile, long floorNanos) {
+        if (Integer.bitCount(capacity) != 1 || capacity < RECOMPUTE_EVERY) {
+            throw new IllegalArgumentException("Capacity must be a power of two of at least " + RECOMPUTE_EVERY);
+        }
+        this.samples = new long[capacity];
+        this.mask = capacity - 1;
+        this.percentile = percentile;
+        this.floorNanos = floorNanos;
+    }
+
+    void record(long nanos) {
+        var index = recorded.getAndIncrement();
+        samples[(int) (index & mask)] = nanos;
+        if ((index + 1) % RECOMPUTE_EVERY == 0) {
+            recompute((int) Math.min(index + 1, samples.length));
+        }
+    }
+
+    //  Long.MAX_VALUE until the first RECOMPUTE_EVERY samples have been seen
+    long thresholdNanos() {
+        return thresholdNanos;
+    }
+
+    private void recompute(int count) {
+        var copy = Arrays.copyOf(samples, count);
+        Arrays.sort(copy);
+        var rank = (int) Math.ceil(percentile * count) - 1;
+        thresholdNanos = Math.max(copy[Math.max(rank, 0)], floorNanos);
+    }
+}
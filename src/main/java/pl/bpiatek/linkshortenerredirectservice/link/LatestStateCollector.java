@@ -0,0 +1,196 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Collapses a replayed lifecycle log to the final state per short URL. Keys are held in memory up to
+//  a limit, then spilled as sorted runs and k-way merged at the end; runs are merged in log order so
+//  the result matches what LinkLifecycleConsumer would have left in Redis.
+class LatestStateCollector implements AutoCloseable {
+
+    private final int maxInMemoryKeys;
+    private final Path spillDirectory;
+    private final List<Path> runs = new ArrayList<>();
+    private Map<String, RedirectInfo> current = new HashMap<>();
+    private long spilledKeys;
+
+    LatestStateCollector(int maxInMemoryKeys, Path spillDirectory) {
+        this.maxInMemoryKeys = maxInMemoryKeys;
+        this.spillDirectory = spillDirectory;
+    }
+
+    void accept(String shortUrl, RedirectInfo state) {
+        current.merge(shortUrl, state, LatestStateCollector::resolve);
+        if (current.size() >= maxInMemoryKeys) {
+            spill();
+        }
+    }
+
+    //  Same rule as the consumer: tombstones overwrite unconditionally, upserts only when strictly newer
+    static RedirectInfo resolve(RedirectInfo existing, RedirectInfo incoming) {
+        if (incoming.isDeleted()) {
+            return incoming;
+        }
+        return incoming.updatedAtMicros() > existing.updatedAtMicros() ? incoming : existing;
+    }
+
+    //  Upper bound until merged: a key spilled in several runs is counted once per run
+    long estimatedKeys() {
+        return spilledKeys + current.size();
+    }
+
+    int spilledRuns() {
+        return runs.size();
+    }
+
+    void forEachLatest(BiConsumer<String, RedirectInfo> consumer) {
+        if (runs.isEmpty()) {
+            current.forEach(consumer);
+            return;
+        }
+        if (!current.isEmpty()) {
+            spill();
+        }
+        merge(consumer);
+    }
+
+    private void spill() {
+        try {
+            Files.createDirectories(spillDirectory);
+            var run = Files.createTempFile(spillDirectory, "rebuild-run-", ".bin");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+                for (var entry : new TreeMap<>(current).entrySet()) {
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                }
+                out.writeBoolean(false);
+            }
+            runs.add(run);
+            spilledKeys += current.size();
+            current = new HashMap<>();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill rebuild state to " + spillDirectory, e);
+        }
+    }
+
+    private void merge(BiConsumer<String, RedirectInfo> consumer) {
+        var readers = new ArrayList<RunReader>(runs.size());
+        try {
+            var heads = new PriorityQueue<RunReader>(Comparator
+                    .comparing((RunReader reader) -> reader.key)
+                    .thenComparingInt(reader -> reader.runIndex));
+            for (int i = 0; i < runs.size(); i++) {
+                var reader = new RunReader(i, runs.get(i));
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+
+            while (!heads.isEmpty()) {
+                var key = heads.peek().key;
+                RedirectInfo state = null;
+                while (!heads.isEmpty() && heads.peek().key.equals(key)) {
+                    var reader = heads.poll();
+                    state = state == null ? reader.state : resolve(state, reader.state);
+                    if (reader.advance()) {
+                        heads.add(reader);
+                    }
+                }
+                consumer.accept(key, state);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot merge rebuild runs", e);
+        } finally {
+            readers.forEach(RunReader::closeQuietly);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, String shortUrl, RedirectInfo state) throws IOException {
+        out.writeBoolean(true);
+        writeString(out, shortUrl);
+        out.writeBoolean(state.longUrl() != null);
+        if (state.longUrl() != null) {
+            writeString(out, state.longUrl());
+        }
+        out.writeBoolean(state.isActive());
+        out.writeLong(state.updatedAtMicros());
+        out.writeBoolean(state.isDeleted());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    @Override
+    public void close() {
+        for (var run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ignored) {
+                // best effort, the files live in a temporary directory
+            }
+        }
+        runs.clear();
+        current = new HashMap<>();
+    }
+
+    private static final class RunReader {
+
+        private final int runIndex;
+        private final DataInputStream in;
+        private String key;
+        private RedirectInfo state;
+
+        private RunReader(int runIndex, Path run) throws IOException {
+            this.runIndex = runIndex;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                if (!in.readBoolean()) {
+                    return false;
+                }
+            } catch (EOFException e) {
+                return false;
+            }
+            key = readString(in);
+            var longUrl = in.readBoolean() ? readString(in) : null;
+            state = new RedirectInfo(longUrl, in.readBoolean(), in.readLong(), in.readBoolean());
+            return true;
+        }
+
+        private void closeQuietly() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // read-only stream
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import pl.bpiatek.linkshortenerredirectservice.warmup.WarmUp;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+
+//  Warm-up phase that waits until the lifecycle listener has partitions assigned and is within maxLag
+//  records of their end, so a new pod does not serve links the rest of the fleet has already updated.
+//  Lag is read from the consumer's own records-lag metrics rather than an extra AdminClient round trip.
+class LifecycleCatchUpPhase implements WarmUp.Phase {
+
+    private static final String FETCH_METRICS = "consumer-fetch-manager-metrics";
+    private static final long POLL_MILLIS = 200;
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final String topic;
+    private final long maxLag;
+    private final Duration timeout;
+
+    LifecycleCatchUpPhase(KafkaListenerEndpointRegistry registry, String topic, long maxLag, Duration timeout) {
+        this.registry = registry;
+        this.topic = topic;
+        this.maxLag = maxLag;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String name() {
+        return "catch-up";
+    }
+
+    @Override
+    public Duration timeout() {
+        return timeout;
+    }
+
+    @Override
+    public void run(WarmUp.Progress progress) throws InterruptedException {
+        while (true) {
+            var containers = lifecycleContainers();
+            if (containers.isEmpty()) {
+                progress.report("no lifecycle consumer running");
+                return;
+            }
+            var lag = lag(containers);
+            if (lag.isPresent() && lag.getAsLong() <= maxLag) {
+                progress.report("lag " + lag.getAsLong());
+                return;
+            }
+            progress.report(lag.isPresent() ? "lag " + lag.getAsLong() : "waiting for partition assignment");
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private List<MessageListenerContainer> lifecycleContainers() {
+        return registry.getListenerContainers().stream()
+                .filter(MessageListenerContainer::isRunning)
+                .filter(container -> {
+                    var topics = container.getContainerProperties().getTopics();
+                    return topics != null && Arrays.asList(topics).contains(topic);
+                })
+                .toList();
+    }
+
+    //  Empty until every assigned partition has reported a lag from at least one fetch
+    private OptionalLong lag(List<MessageListenerContainer> containers) {
+        var assigned = new HashSet<TopicPartition>();
+        for (var container : containers) {
+            var partitions = container.getAssignedPartitions();
+            if (partitions == null || partitions.isEmpty()) {
+                return OptionalLong.empty();
+            }
+            assigned.addAll(partitions);
+        }
+
+        var max = 0L;
+        var reported = new HashSet<TopicPartition>();
+        for (var container : containers) {
+            for (var clientMetrics : container.metrics().values()) {
+                max = Math.max(max, recordsLag(clientMetrics, assigned, reported));
+            }
+        }
+        return reported.containsAll(assigned) ? OptionalLong.of(max) : OptionalLong.empty();
+    }
+
+    private static long recordsLag(Map<MetricName, ? extends Metric> metrics, Set<TopicPartition> assigned,
+                                   Set<TopicPartition> reported) {
+        var max = 0L;
+        for (var entry : metrics.entrySet()) {
+            var name = entry.getKey();
+            if (!FETCH_METRICS.equals(name.group()) || !"records-lag".equals(name.name())) {
+                continue;
+            }
+            var topic = name.tags().get("topic");
+            var partition = name.tags().get("partition");
+            if (topic == null || partition == null
+                    || !(entry.getValue().metricValue() instanceof Double value) || value.isNaN()) {
+                continue;
+            }
+            var topicPartition = new TopicPartition(topic, Integer.parseInt(partition));
+            if (assigned.contains(topicPartition)) {
+                reported.add(topicPartition);
+                max = Math.max(max, value.longValue());
+            }
+        }
+        return max;
+    }
+}
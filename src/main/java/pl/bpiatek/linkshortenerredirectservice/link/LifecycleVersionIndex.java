@@ -0,0 +1,226 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.event.connection.ReconnectAttemptEvent;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+
+//  What the lifecycle consumer last knew Redis to hold per link, so replayed events the version-checked
+//  upsert would reject anyway are dropped without an EVAL. A fixed, direct-mapped table of packed
+//  short code -> version (updatedAtMicros << 1 | deleted): colliding links overwrite each other and
+//  codes that do not pack are never indexed, and in both cases the event simply goes to Redis. A hit
+//  is only ever a lower bound of the Redis version (versions there only grow), so a skip is always
+//  one Redis would have made too, until Redis loses the key. Hence an entry is only trusted for maxAge
+//  after it was recorded (the tombstone TTL, after which a deleted link's key is gone), and the index
+//  is cleared when the rebuild job swaps the data and whenever a Redis connection starts reconnecting,
+//  since the node it reaches may be a restarted or newly promoted one.
+//
+//  Each slot's code, version and recording time are written together under one of a fixed set of
+//  striped locks and read optimistically, so a reader never pairs one link's code with another's version.
+final class LifecycleVersionIndex implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LifecycleVersionIndex.class);
+    private static final LifecycleVersionIndex DISABLED = new LifecycleVersionIndex();
+    private static final int STRIPES = 64;
+
+    private final long[] codes;
+    private final long[] versions;
+    private final long[] recordedAt;
+    private final StampedLock[] locks;
+    private final int mask;
+    private final long maxAgeMillis;
+    private final Clock clock;
+    private final Counter skipped;
+    private final Counter sent;
+    private final List<Disposable> reconnectSubscriptions = new CopyOnWriteArrayList<>();
+
+    private LifecycleVersionIndex() {
+        this.codes = null;
+        this.versions = null;
+        this.recordedAt = null;
+        this.locks = null;
+        this.mask = 0;
+        this.maxAgeMillis = 0;
+        this.clock = null;
+        this.skipped = null;
+        this.sent = null;
+    }
+
+    LifecycleVersionIndex(int slots, Duration maxAge, Clock clock, MeterRegistry meterRegistry) {
+        if (slots < STRIPES || Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two of at least " + STRIPES + ": " + slots);
+        }
+        this.codes = new long[slots];
+        this.versions = new long[slots];
+        this.recordedAt = new long[slots];
+        this.locks = new StampedLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new StampedLock();
+        }
+        this.mask = slots - 1;
+        this.maxAgeMillis = maxAge.toMillis();
+        this.clock = clock;
+        this.skipped = Counter.builder("redirect.lifecycle.version.index")
+                .description("Lifecycle events checked against the local version index")
+                .tag("result", "skipped")
+                .register(meterRegistry);
+        this.sent = Counter.builder("redirect.lifecycle.version.index")
+                .description("Lifecycle events checked against the local version index")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        Gauge.builder("redirect.lifecycle.version.index.skip.ratio", this, LifecycleVersionIndex::skipRatio)
+                .description("Share of checked lifecycle events dropped locally as stale")
+                .register(meterRegistry);
+    }
+
+    static LifecycleVersionIndex disabled() {
+        return DISABLED;
+    }
+
+    boolean enabled() {
+        return codes != null;
+    }
+
+    //  Clears the index on every reconnect attempt of the clients sharing these resources
+    void forgetOnReconnect(ClientResources resources) {
+        if (codes == null) {
+            return;
+        }
+        reconnectSubscriptions.add(resources.eventBus().get()
+                .ofType(ReconnectAttemptEvent.class)
+                .subscribe(event -> {
+                    clear();
+                    if (event.getAttempt() == 1) {
+                        log.info("Redis connection to {} lost, lifecycle version index cleared", event.remoteAddress());
+                    }
+                }));
+    }
+
+    //  The Lua upsert rejects any version at or below the stored one, tombstone or not
+    boolean skipUpsert(String shortUrl, long updatedAtMicros) {
+        if (codes == null) {
+            return false;
+        }
+        var known = lookup(ShortCode.pack(shortUrl));
+        return count(known >= 0 && (known >>> 1) >= updatedAtMicros);
+    }
+
+    //  Tombstones are written unconditionally, so only a repeat of a known deletion is skipped
+    boolean skipDelete(String shortUrl, long deletedAtMicros) {
+        if (codes == null) {
+            return false;
+        }
+        var known = lookup(ShortCode.pack(shortUrl));
+        return count(known >= 0 && (known & 1) == 1 && (known >>> 1) >= deletedAtMicros);
+    }
+
+    boolean knows(String shortUrl) {
+        return codes != null && lookup(ShortCode.pack(shortUrl)) >= 0;
+    }
+
+    //  Redis now holds exactly this version
+    void applied(String shortUrl, long updatedAtMicros, boolean deleted) {
+        store(shortUrl, updatedAtMicros, deleted, false);
+    }
+
+    //  Redis holds this version or a newer one (a rejected upsert, or a value read back from Redis)
+    void observed(String shortUrl, long updatedAtMicros, boolean deleted) {
+        store(shortUrl, updatedAtMicros, deleted, true);
+    }
+
+    void clear() {
+        if (codes == null) {
+            return;
+        }
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            var stamp = locks[stripe].writeLock();
+            try {
+                for (int slot = stripe; slot <= mask; slot += STRIPES) {
+                    codes[slot] = 0;
+                    versions[slot] = 0;
+                    recordedAt[slot] = 0;
+                }
+            } finally {
+                locks[stripe].unlockWrite(stamp);
+            }
+        }
+    }
+
+    private long lookup(long code) {
+        if (code <= 0) {
+            return -1;
+        }
+        var slot = slot(code);
+        var lock = locks[slot & (STRIPES - 1)];
+        var stamp = lock.tryOptimisticRead();
+        var storedCode = codes[slot];
+        var version = versions[slot];
+        var recorded = recordedAt[slot];
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                storedCode = codes[slot];
+                version = versions[slot];
+                recorded = recordedAt[slot];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return storedCode == code && clock.millis() - recorded <= maxAgeMillis ? version : -1;
+    }
+
+    private void store(String shortUrl, long micros, boolean deleted, boolean onlyIfNewer) {
+        var code = ShortCode.pack(shortUrl);
+        if (codes == null || code <= 0 || micros < 0) {
+            return;
+        }
+        var version = micros << 1 | (deleted ? 1 : 0);
+        var now = clock.millis();
+        var slot = slot(code);
+        var lock = locks[slot & (STRIPES - 1)];
+        var stamp = lock.writeLock();
+        try {
+            if (onlyIfNewer && codes[slot] == code && (versions[slot] >>> 1) >= micros
+                    && now - recordedAt[slot] <= maxAgeMillis) {
+                return;
+            }
+            codes[slot] = code;
+            versions[slot] = version;
+            recordedAt[slot] = now;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean count(boolean skip) {
+        (skip ? skipped : sent).increment();
+        return skip;
+    }
+
+    private double skipRatio() {
+        var total = skipped.count() + sent.count();
+        return total == 0 ? 0 : skipped.count() / total;
+    }
+
+    @Override
+    public void close() {
+        reconnectSubscriptions.forEach(Disposable::dispose);
+    }
+
+    private int slot(long code) {
+        var h = code;
+        h = (h ^ (h >>> 33)) * 0xff51_afd7_ed55_8ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ce_b9fe_1a85_ec53L;
+        return (int) (h ^ (h >>> 33)) & mask;
+    }
+}
@@ -0,0 +1,39 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+//  Each slot costs 24 bytes; the default 262144 slots (6 MiB) remember that many recently applied links.
+//  The index forgets everything when any Redis connection the lifecycle writes may use starts reconnecting:
+//  the spring.data.redis one (clientResources) and those the shard router opened itself.
+@Configuration
+@EnableConfigurationProperties(LifecycleVersionIndexConfig.VersionIndexProperties.class)
+class LifecycleVersionIndexConfig {
+
+    @Bean(destroyMethod = "close")
+    LifecycleVersionIndex lifecycleVersionIndex(VersionIndexProperties properties,
+                                                RedisShardRouter shardRouter,
+                                                ClientResources clientResources,
+                                                Clock clock,
+                                                MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return LifecycleVersionIndex.disabled();
+        }
+        var index = new LifecycleVersionIndex(properties.slots(), LinkLifecycleConsumer.TOMBSTONE_TTL, clock, meterRegistry);
+        index.forgetOnReconnect(clientResources);
+        shardRouter.clientResources().forEach(index::forgetOnReconnect);
+        return index;
+    }
+
+    @ConfigurationProperties(prefix = "link.lifecycle.version-index")
+    record VersionIndexProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue("262144") int slots) {
+    }
+}
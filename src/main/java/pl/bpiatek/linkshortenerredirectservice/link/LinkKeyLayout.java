@@ -0,0 +1,32 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+//  Where and how a link's cached JSON lives in Redis. Implementations are stateless; the template is
+//  passed per call so the same layout works against any Redis node.
+public interface LinkKeyLayout {
+
+    static LinkKeyLayout flat() {
+        return new FlatKeyLayout();
+    }
+
+    static LinkKeyLayout hashBuckets(int buckets) {
+        return new HashBucketKeyLayout(buckets);
+    }
+
+    //  Top-level Redis key holding the link (shared by every link of a bucket in bucketed layouts)
+    String redisKey(String shortUrl);
+
+    String read(StringRedisTemplate redisTemplate, String shortUrl);
+
+    //  Version-checked write; returns false when Redis already holds the same or a newer version
+    boolean upsert(StringRedisTemplate redisTemplate, String shortUrl, String json, long updatedAtMicros);
+
+    void writeTombstone(StringRedisTemplate redisTemplate, String shortUrl, String json, Duration ttl);
+
+    //  Unconditional write for bulk loads, issued on a (usually pipelined) raw connection
+    void stage(RedisConnection connection, String shortUrl, byte[] json, long ttlSeconds);
+}
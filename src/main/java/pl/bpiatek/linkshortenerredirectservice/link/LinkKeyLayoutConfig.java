@@ -0,0 +1,26 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+class LinkKeyLayoutConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkKeyLayoutConfig.class);
+
+    @Bean
+    LinkKeyLayout linkKeyLayout(@Value("${link.cache.layout.type:flat}") String type,
+                                @Value("${link.cache.layout.buckets:65536}") int buckets) {
+        return switch (type) {
+            case "flat" -> LinkKeyLayout.flat();
+            case "hash-buckets" -> {
+                log.info("Using hash-bucketed link cache layout with {} buckets", buckets);
+                yield LinkKeyLayout.hashBuckets(buckets);
+            }
+            default -> throw new IllegalStateException("Unknown link.cache.layout.type: " + type);
+        };
+    }
+}
@@ -4,8 +4,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
@@ -13,42 +13,45 @@ import org.springframework.stereotype.Component;
 import pl.bpiatek.contracts.link.LinkLifecycleEventProto;
 
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 @Component
 class LinkLifecycleConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(LinkLifecycleConsumer.class);
-    private static final String REDIS_KEY_PREFIX = "link:";
-    private static final String LUA_UPSERT_SCRIPT = """
-            local existing = redis.call('get', KEYS[1])
-            if existing then
-                local existingData = cjson.decode(existing)
-                if tonumber(ARGV[2]) <= tonumber(existingData.updatedAtMicros) then
-                    return 0 -- Status: Stale
-                end
-            end
-            redis.call('set', KEYS[1], ARGV[1])
-            return 1 -- Status: Updated
-            """;
+    static final Duration TOMBSTONE_TTL = Duration.ofHours(24);
 
     private final ObjectMapper objectMapper;
-    private final StringRedisTemplate redisTemplate;
+    private final RedisShardRouter shardRouter;
+    private final LinkKeyLayout keyLayout;
+    private final LifecycleVersionIndex versionIndex;
 
-    LinkLifecycleConsumer(ObjectMapper objectMapper, StringRedisTemplate redisTemplate) {
+    LinkLifecycleConsumer(ObjectMapper objectMapper, RedisShardRouter shardRouter, LinkKeyLayout keyLayout,
+                          LifecycleVersionIndex versionIndex) {
         this.objectMapper = objectMapper;
-        this.redisTemplate = redisTemplate;
+        this.shardRouter = shardRouter;
+        this.keyLayout = keyLayout;
+        this.versionIndex = versionIndex;
     }
 
     @KafkaListener(
             topics = "${topic.link.lifecycle}",
             groupId = "${spring.kafka.consumer.group-id}",
-            containerFactory = "linkLifecycleEventsContainerFactory"
+            containerFactory = "linkLifecycleEventsContainerFactory",
+            //  An explicit autoStartup wins over spring.kafka.listener.auto-startup, so honour that as well
+            autoStartup = "#{!${link.lifecycle.parallel.enabled:false} && ${spring.kafka.listener.auto-startup:true}}"
     )
     public void consumeLinkLifecycleEvent(LinkLifecycleEventProto.LinkLifecycleEvent event,
                                           @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
                                           @Header(KafkaHeaders.OFFSET) long offset) {
         log.info("Processing event from partition {} at offset {}", partition, offset);
+        apply(event);
+    }
+
+    void apply(LinkLifecycleEventProto.LinkLifecycleEvent event) {
         var payloadCase = event.getEventPayloadCase();
 
         switch (payloadCase) {
@@ -67,22 +70,21 @@ class LinkLifecycleConsumer {
     }
 
     private void handleUpsert(String shortUrl, String longUrl, boolean isActive, long eventMicros) {
-        var redisKey = buildRedisKey(shortUrl);
+        if (versionIndex.skipUpsert(shortUrl, eventMicros)) {
+            log.debug("Skipped stale update for: {}. Newer version already known locally.", shortUrl);
+            return;
+        }
         var info = new RedirectInfo(longUrl, isActive, eventMicros, false);
 
         try {
             var jsonPayload = objectMapper.writeValueAsString(info);
-            var redisScript = new DefaultRedisScript<>(LUA_UPSERT_SCRIPT, Long.class);
-            var result = redisTemplate.execute(
-                    redisScript,
-                    Collections.singletonList(redisKey),
-                    jsonPayload,
-                    String.valueOf(eventMicros)
-            );
-
-            if (Long.valueOf(1).equals(result)) {
+            var updated = shardRouter.executeIngest(keyLayout.redisKey(shortUrl),
+                    template -> keyLayout.upsert(template, shortUrl, jsonPayload, eventMicros));
+            if (updated) {
+                versionIndex.applied(shortUrl, eventMicros, false);
                 log.info("Atomic cache update successful for: {} (version: {})", shortUrl, eventMicros);
             } else {
+                versionIndex.observed(shortUrl, eventMicros, false);
                 log.debug("Skipped stale update for: {}. Newer version already exists in Redis.", shortUrl);
             }
         } catch (JsonProcessingException e) {
@@ -93,26 +95,101 @@ class LinkLifecycleConsumer {
     }
 
     private void handleLinkDeleted(LinkLifecycleEventProto.LinkDeleted payload) {
-        var redisKey = buildRedisKey(payload.getShortUrl());
+        var redisKey = keyLayout.redisKey(payload.getShortUrl());
         long deletedAtMicros = convertToMicros(payload.getDeletedAt());
+        if (versionIndex.skipDelete(payload.getShortUrl(), deletedAtMicros)) {
+            log.debug("Skipped repeated deletion of: {}", payload.getShortUrl());
+            return;
+        }
 
         log.info("Received LinkDeleted event. Deleting cache key: {}", redisKey);
         var tombstone = new RedirectInfo(null, false, deletedAtMicros, true);
 
         try {
             var jsonValue = objectMapper.writeValueAsString(tombstone);
-            redisTemplate.opsForValue().set(redisKey, jsonValue, Duration.ofHours(24));
+            shardRouter.executeIngest(redisKey, template -> {
+                keyLayout.writeTombstone(template, payload.getShortUrl(), jsonValue, TOMBSTONE_TTL);
+                return null;
+            });
+            versionIndex.applied(payload.getShortUrl(), deletedAtMicros, true);
             log.info("Tombstone set for: {} at {}", redisKey, tombstone);
         } catch (JsonProcessingException e) {
             log.error("Failed to serialize tombstone", e);
         }
     }
 
-    private long convertToMicros(com.google.protobuf.Timestamp protoTimestamp) {
-        return (protoTimestamp.getSeconds() * 1_000_000L) + (protoTimestamp.getNanos() / 1_000);
+    boolean tracksVersions() {
+        return versionIndex.enabled();
+    }
+
+    //  Reads the stored versions of links the version index does not know yet, one pipeline per shard,
+    //  so that a batch of possibly replayed events can be checked without an EVAL each
+    void seedVersions(Collection<String> shortUrls) {
+        if (!versionIndex.enabled()) {
+            return;
+        }
+        var byShard = new HashMap<RedisShardRouter.Shard, List<String>>();
+        for (var shortUrl : shortUrls) {
+            if (!versionIndex.knows(shortUrl)) {
+                byShard.computeIfAbsent(shardRouter.ownerOf(keyLayout.redisKey(shortUrl)), shard -> new ArrayList<>())
+                        .add(shortUrl);
+            }
+        }
+        byShard.forEach((shard, links) -> {
+            try {
+                //  Calls on the template inside the session go through its bound, pipelined connection
+                var stored = shard.ingest().execute(template -> template.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        for (var link : links) {
+                            keyLayout.read(template, link);
+                        }
+                        return null;
+                    }
+                }));
+                for (int i = 0; i < links.size(); i++) {
+                    if (stored.get(i) instanceof String json) {
+                        var info = objectMapper.readValue(json, RedirectInfo.class);
+                        versionIndex.observed(links.get(i), info.updatedAtMicros(), info.isDeleted());
+                    }
+                }
+            } catch (JsonProcessingException | RuntimeException e) {
+                log.warn("Could not seed lifecycle versions from shard {}: {}", shard.name(), e.getMessage());
+            }
+        });
+    }
+
+    //  After Redis lost data (rebuild job), what the index remembers may be newer than what Redis holds
+    void forgetVersions() {
+        versionIndex.clear();
+    }
+
+    //  Cache state an event leads to, with the same tombstone shape handleLinkDeleted writes; null when empty
+    static RedirectInfo stateOf(LinkLifecycleEventProto.LinkLifecycleEvent event) {
+        return switch (event.getEventPayloadCase()) {
+            case LINK_CREATED -> new RedirectInfo(event.getLinkCreated().getLongUrl(),
+                    event.getLinkCreated().getIsActive(),
+                    convertToMicros(event.getLinkCreated().getCreatedAt()),
+                    false);
+            case LINK_UPDATED -> new RedirectInfo(event.getLinkUpdated().getLongUrl(),
+                    event.getLinkUpdated().getIsActive(),
+                    convertToMicros(event.getLinkUpdated().getUpdatedAt()),
+                    false);
+            case LINK_DELETED -> new RedirectInfo(null, false, convertToMicros(event.getLinkDeleted().getDeletedAt()), true);
+            default -> null;
+        };
     }
 
-    private String buildRedisKey(String shortUrl) {
-        return REDIS_KEY_PREFIX + shortUrl;
+    static String shortUrlOf(LinkLifecycleEventProto.LinkLifecycleEvent event) {
+        return switch (event.getEventPayloadCase()) {
+            case LINK_CREATED -> event.getLinkCreated().getShortUrl();
+            case LINK_UPDATED -> event.getLinkUpdated().getShortUrl();
+            case LINK_DELETED -> event.getLinkDeleted().getShortUrl();
+            default -> "";
+        };
+    }
+
+    private static long convertToMicros(com.google.protobuf.Timestamp protoTimestamp) {
+        return (protoTimestamp.getSeconds() * 1_000_000L) + (protoTimestamp.getNanos() / 1_000);
     }
 }
\ No newline at end of file
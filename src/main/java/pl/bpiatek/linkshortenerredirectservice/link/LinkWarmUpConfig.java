@@ -0,0 +1,39 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import pl.bpiatek.linkshortenerredirectservice.warmup.WarmUp;
+
+import java.time.Duration;
+
+//  The link package's warm-up phases; they only run when redirect.warmup.enabled=true
+@Configuration
+class LinkWarmUpConfig {
+
+    @Bean(destroyMethod = "close")
+    @Order(1)
+    CachePreloadPhase cachePreloadPhase(StringRedisTemplate redisTemplate,
+                                        TrackingRedirectCache trackingCache,
+                                        LinkKeyLayout keyLayout,
+                                        ObjectMapper objectMapper,
+                                        @Value("${redirect.warmup.enabled:false}") boolean enabled,
+                                        @Value("${redirect.warmup.preload.links:5000}") int links,
+                                        @Value("${redirect.warmup.preload.batch-size:500}") int batchSize,
+                                        @Value("${redirect.warmup.preload.timeout:30s}") Duration timeout) {
+        return new CachePreloadPhase(redisTemplate, trackingCache, keyLayout, objectMapper, links, batchSize, timeout, enabled);
+    }
+
+    @Bean
+    @Order(2)
+    WarmUp.Phase lifecycleCatchUpPhase(KafkaListenerEndpointRegistry registry,
+                                       @Value("${topic.link.lifecycle}") String topic,
+                                       @Value("${redirect.warmup.catch-up.max-lag:1000}") long maxLag,
+                                       @Value("${redirect.warmup.catch-up.timeout:60s}") Duration timeout) {
+        return new LifecycleCatchUpPhase(registry, topic, maxLag, timeout);
+    }
+}
@@ -0,0 +1,223 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Bounded in-process copy of cached redirects, evicted with the CLOCK (second chance) policy. Known
+//  misses are stored too (info == null) so repeated lookups of unknown codes stay local.
+//
+//  Fills are two-phase: reserve() parks a placeholder before the Redis read and complete() swaps in
+//  the value only if the placeholder survived, so an invalidation racing with the read wins.
+//
+//  Each entry keeps an approximate hit count, halved whenever the clock hand passes it, so hottest()
+//  can hand the most requested links to a starting peer.
+//
+//  Destination URLs are kept in a DestinationDictionary rather than as one String per entry; an entry
+//  holds its reference from creation until it leaves the map, and info() decodes the URL on demand.
+//  Entries with at least DECODED_MIN_HITS hits also keep the decoded RedirectInfo, so hot links skip the
+//  byte copy and allocations on each hit; that costs a second copy of the URL per hot entry, released
+//  once the clock hand has halved its hits below the threshold again.
+//  Entries are keyed through a ShortCodeMap, so lookups of base62 codes hash a packed long.
+final class LocalRedirectCache {
+
+    static final int DECODED_MIN_HITS = 8;
+
+    private final int maxEntries;
+    private final ShortCodeMap<Object> entries;
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final DestinationDictionary destinations = new DestinationDictionary();
+
+    LocalRedirectCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new ShortCodeMap<>(Math.min(maxEntries, 1 << 16));
+    }
+
+    Entry get(String shortUrl) {
+        if (entries.get(shortUrl) instanceof Entry entry) {
+            entry.referenced = true;
+            entry.hits++;
+            return entry;
+        }
+        return null;
+    }
+
+    //  Unlike get(), not a read: neither counts a hit nor spares the entry from eviction
+    boolean contains(String shortUrl) {
+        return entries.get(shortUrl) instanceof Entry;
+    }
+
+    //  Returns a token for complete(), or null when another fill for the same link is in flight
+    Object reserve(String shortUrl) {
+        var token = new Object();
+        return entries.putIfAbsent(shortUrl, token) == null ? token : null;
+    }
+
+    boolean complete(String shortUrl, Object token, RedirectInfo info) {
+        var entry = newEntry(shortUrl, info);
+        if (!entries.replace(shortUrl, token, entry)) {
+            discard(entry);
+            return false;
+        }
+        clock.offer(entry);
+        queued.incrementAndGet();
+        evictIfNeeded();
+        return true;
+    }
+
+    //  Unconditional store for callers that do not race with invalidations
+    void put(String shortUrl, RedirectInfo info) {
+        var entry = newEntry(shortUrl, info);
+        if (entries.put(shortUrl, entry) instanceof Entry previous) {
+            discard(previous);
+        }
+        clock.offer(entry);
+        queued.incrementAndGet();
+        evictIfNeeded();
+    }
+
+    void release(String shortUrl, Object token) {
+        entries.remove(shortUrl, token);
+    }
+
+    //  Returns the dropped entry, or null when the link was not cached
+    Entry invalidate(String shortUrl) {
+        if (entries.remove(shortUrl) instanceof Entry previous) {
+            discard(previous);
+            return previous;
+        }
+        return null;
+    }
+
+    //  Entry by entry rather than clear(), so each one's destination is released exactly once
+    void invalidateAll() {
+        entries.forEach((shortUrl, value) -> {
+            if (entries.remove(shortUrl, value) && value instanceof Entry previous) {
+                discard(previous);
+            }
+        });
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int destinations() {
+        return destinations.size();
+    }
+
+    long destinationBytes() {
+        return destinations.storedBytes();
+    }
+
+    //  Most requested cached links, hottest first; known misses are left out
+    List<CachedLink> hottest(int limit) {
+        //  Hit counts keep moving, so rank on a snapshot of each
+        record Ranked(Entry entry, int hits) {
+        }
+        var heap = new PriorityQueue<Ranked>(Comparator.comparingInt(Ranked::hits));
+        entries.forEach((shortUrl, value) -> {
+            if (value instanceof Entry entry && entry.known) {
+                heap.offer(new Ranked(entry, entry.hits));
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        });
+        var hottest = new ArrayList<CachedLink>(heap.size());
+        while (!heap.isEmpty()) {
+            var entry = heap.poll().entry();
+            hottest.add(new CachedLink(entry.shortUrl, entry.info()));
+        }
+        return hottest.reversed();
+    }
+
+    private void evictIfNeeded() {
+        //  Invalidated entries stay queued until the hand reaches them, hence the second bound
+        var budget = queued.get();
+        while (budget-- > 0 && (entries.size() > maxEntries || queued.get() > 2 * maxEntries)) {
+            var entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.get(entry.shortUrl) != entry) {
+                continue;
+            }
+            if (entries.size() > maxEntries && !entry.referenced) {
+                if (entries.remove(entry.shortUrl, entry)) {
+                    discard(entry);
+                }
+                continue;
+            }
+            entry.referenced = false;
+            entry.hits >>>= 1;
+            if (entry.hits < DECODED_MIN_HITS) {
+                entry.decoded = null;
+            }
+            clock.offer(entry);
+            queued.incrementAndGet();
+        }
+    }
+
+    private Entry newEntry(String shortUrl, RedirectInfo info) {
+        var destination = info == null || info.longUrl() == null ? null : destinations.acquire(info.longUrl());
+        return new Entry(shortUrl, info, destination);
+    }
+
+    private void discard(Entry entry) {
+        if (entry.destination != null) {
+            destinations.release(entry.destination);
+        }
+    }
+
+    static final class Entry {
+
+        private final String shortUrl;
+        private final DestinationDictionary.Destination destination;
+        private final long updatedAtMicros;
+        private final boolean known;
+        private final boolean active;
+        private final boolean deleted;
+        private volatile boolean referenced;
+        //  Racy on purpose: lost increments only blur the ranking
+        private int hits;
+        private volatile RedirectInfo decoded;
+
+        private Entry(String shortUrl, RedirectInfo info, DestinationDictionary.Destination destination) {
+            this.shortUrl = shortUrl;
+            this.destination = destination;
+            this.known = info != null;
+            this.updatedAtMicros = known ? info.updatedAtMicros() : 0;
+            this.active = known && info.isActive();
+            this.deleted = known && info.isDeleted();
+        }
+
+        //  Approximate, and halved whenever the clock hand passes the entry
+        int hits() {
+            return hits;
+        }
+
+        //  Null for a known miss
+        RedirectInfo info() {
+            if (!known) {
+                return null;
+            }
+            var info = decoded;
+            if (info == null) {
+                info = new RedirectInfo(destination == null ? null : destination.url(), active, updatedAtMicros, deleted);
+                if (hits >= DECODED_MIN_HITS) {
+                    decoded = info;
+                }
+            }
+            return info;
+        }
+    }
+
+    record CachedLink(String shortUrl, RedirectInfo info) {
+    }
+}
@@ -0,0 +1,39 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.TreeSet;
+
+//  Records complete out of order when fanned out across lanes; only the offset below which every
+//  dispatched record has completed may be committed.
+class PartitionOffsetTracker {
+
+    private final TreeSet<Long> pending = new TreeSet<>();
+    private long nextToDispatch = -1;
+    private long committed = -1;
+
+    synchronized void dispatched(long offset) {
+        //  The first record's offset is where the consumer resumed, so committing it would change nothing
+        if (committed < 0) {
+            committed = offset;
+        }
+        pending.add(offset);
+        nextToDispatch = Math.max(nextToDispatch, offset + 1);
+    }
+
+    synchronized void completed(long offset) {
+        pending.remove(offset);
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    //  Next offset to commit (Kafka semantics), or -1 when nothing new has completed since the last commit
+    synchronized long committable() {
+        var committable = pending.isEmpty() ? nextToDispatch : pending.first();
+        return committable > committed ? committable : -1;
+    }
+
+    synchronized void committed(long offset) {
+        committed = Math.max(committed, offset);
+    }
+}
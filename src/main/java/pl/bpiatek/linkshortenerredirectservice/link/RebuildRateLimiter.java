@@ -0,0 +1,26 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.concurrent.TimeUnit;
+
+//  Paces a single writer to a sustained rate; a non-positive rate disables limiting
+final class RebuildRateLimiter {
+
+    private final double nanosPerPermit;
+    private long nextFreeNanos = System.nanoTime();
+
+    RebuildRateLimiter(double permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+    }
+
+    void acquire(int permits) throws InterruptedException {
+        if (nanosPerPermit == 0) {
+            return;
+        }
+        var now = System.nanoTime();
+        var wait = nextFreeNanos - now;
+        nextFreeNanos = Math.max(nextFreeNanos, now) + (long) (permits * nanosPerPermit);
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
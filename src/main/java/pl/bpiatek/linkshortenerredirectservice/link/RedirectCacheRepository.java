@@ -4,34 +4,72 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
+import java.util.function.Function;
 
 @Repository
 public class RedirectCacheRepository {
 
     private static final Logger log = LoggerFactory.getLogger(RedirectCacheRepository.class);
-    private static final String REDIS_KEY_PREFIX = "link:";
 
-    private final StringRedisTemplate redisTemplate;
+    private final RedisShardRouter shardRouter;
     private final ObjectMapper objectMapper;
+    private final LinkKeyLayout keyLayout;
+    private final TrackingRedirectCache trackingCache;
+    private final BudgetedCacheReader budgetedReader;
+    private final HedgedCacheReader hedgedReader;
+    private final Function<String, Optional<RedirectInfo>> loader = this::load;
 
-    public RedirectCacheRepository(StringRedisTemplate redisTemplate, ObjectMapper objectMapper) {
-        this.redisTemplate = redisTemplate;
+    public RedirectCacheRepository(RedisShardRouter shardRouter, ObjectMapper objectMapper, LinkKeyLayout keyLayout,
+                                   TrackingRedirectCache trackingCache, BudgetedCacheReader budgetedReader,
+                                   HedgedCacheReader hedgedReader) {
+        this.shardRouter = shardRouter;
         this.objectMapper = objectMapper;
+        this.keyLayout = keyLayout;
+        this.trackingCache = trackingCache;
+        this.budgetedReader = budgetedReader;
+        this.hedgedReader = hedgedReader;
     }
 
+    //  True when findByShortUrl will answer from process memory without any remote I/O
+    public boolean isCachedLocally(String shortUrl) {
+        return trackingCache.enabled() && trackingCache.isCached(shortUrl);
+    }
+
+    //  Throws CacheUnavailableException when Redis cannot answer in time and no retained copy exists
     public Optional<RedirectInfo> findByShortUrl(String shortUrl) {
-        var jsonValue = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + shortUrl);
+        if (budgetedReader.enabled()) {
+            return budgetedReader.read(shortUrl, loader);
+        }
+        return load(shortUrl);
+    }
+
+    private Optional<RedirectInfo> load(String shortUrl) {
+        var redisKey = keyLayout.redisKey(shortUrl);
+        if (trackingCache.enabled()) {
+            return trackingCache.find(shortUrl, redisKey, json -> parse(shortUrl, json));
+        }
+
+        if (hedgedReader.enabled()) {
+            return Optional.ofNullable(hedgedReader.read(shortUrl)).map(json -> parse(shortUrl, json));
+        }
+
+        var jsonValue = shardRouter.execute(redisKey, template -> keyLayout.read(template, shortUrl));
+        if (jsonValue == null) {
+            jsonValue = shardRouter.executeOnPreviousOwner(redisKey, template -> keyLayout.read(template, shortUrl));
+        }
 
         if (jsonValue == null) {
             return Optional.empty();
         }
+        return Optional.of(parse(shortUrl, jsonValue));
+    }
 
+    private RedirectInfo parse(String shortUrl, String jsonValue) {
         try {
-            return Optional.of(objectMapper.readValue(jsonValue, RedirectInfo.class));
+            return objectMapper.readValue(jsonValue, RedirectInfo.class);
         } catch (JsonProcessingException e) {
             log.error("Redis data corruption for key: {}", shortUrl, e);
             throw new IllegalStateException("Corrupted data in Redis for shortUrl: " + shortUrl, e);
@@ -0,0 +1,90 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.link.DerivedRedisConnections.Workload;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static pl.bpiatek.linkshortenerredirectservice.link.DerivedRedisConnections.connectionFactory;
+
+//  Without link.cache.shards.nodes every key goes to the regular spring.data.redis connection. With a
+//  list of host:port nodes, keys are spread over them by consistent hashing; listing the old topology
+//  in link.cache.shards.previous-nodes makes ShardRebalancer move keys whose owner changed.
+//
+//  link.cache.redis.isolation.enabled gives every node two dedicated connections of its own: one for
+//  redirect reads and one for lifecycle, migration and rebalance writes, each with its own command
+//  timeout, pipeline flushing and redis.workload.* metrics. Each is a separate Lettuce client with its
+//  own event loop, and the spring.data.redis connection is left to the health check and the jobs.
+@Configuration
+class RedisShardConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisShardConfig.class);
+
+    @Bean(destroyMethod = "close")
+    RedisShardRouter redisShardRouter(StringRedisTemplate redisTemplate,
+                                      RedisProperties redisProperties,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${link.cache.shards.nodes:}") List<String> nodes,
+                                      @Value("${link.cache.shards.previous-nodes:}") List<String> previousNodes,
+                                      @Value("${link.cache.shards.virtual-nodes:160}") int virtualNodes,
+                                      @Value("${link.cache.redis.isolation.enabled:false}") boolean isolated,
+                                      @Value("${link.cache.redis.read.command-timeout:250ms}") Duration readTimeout,
+                                      @Value("${link.cache.redis.read.pipeline-flush-after:1}") int readFlushAfter,
+                                      @Value("${link.cache.redis.ingest.command-timeout:5s}") Duration ingestTimeout,
+                                      @Value("${link.cache.redis.ingest.pipeline-flush-after:64}") int ingestFlushAfter) {
+        var read = new Workload(readTimeout, readFlushAfter);
+        var ingest = new Workload(ingestTimeout, ingestFlushAfter);
+        var shared = Workload.of(redisProperties);
+        if (nodes.isEmpty()) {
+            if (!isolated) {
+                return RedisShardRouter.single(redisTemplate);
+            }
+            var node = redisProperties.getHost() + ":" + redisProperties.getPort();
+            var readFactory = connectionFactory(node, redisProperties, read);
+            var ingestFactory = connectionFactory(node, redisProperties, ingest);
+            var shard = RedisShardRouter.Shard.isolated("default", new StringRedisTemplate(readFactory),
+                    new StringRedisTemplate(ingestFactory), meterRegistry);
+            log.info("Isolated Redis workloads: reads ({}) and ingest ({}) on dedicated connections", read, ingest);
+            return new RedisShardRouter(List.of(shard), List.of(), 1, List.of(readFactory, ingestFactory));
+        }
+
+        var connections = new ArrayList<LettuceConnectionFactory>();
+        var shardsByName = new HashMap<String, RedisShardRouter.Shard>();
+        var allNodes = new LinkedHashSet<String>();
+        nodes.forEach(node -> allNodes.add(node.trim()));
+        previousNodes.forEach(node -> allNodes.add(node.trim()));
+        for (var node : allNodes) {
+            if (isolated) {
+                var readFactory = connectionFactory(node, redisProperties, read);
+                var ingestFactory = connectionFactory(node, redisProperties, ingest);
+                connections.add(readFactory);
+                connections.add(ingestFactory);
+                shardsByName.put(node, RedisShardRouter.Shard.isolated(node, new StringRedisTemplate(readFactory),
+                        new StringRedisTemplate(ingestFactory), meterRegistry));
+            } else {
+                var connectionFactory = connectionFactory(node, redisProperties, shared);
+                connections.add(connectionFactory);
+                shardsByName.put(node, RedisShardRouter.Shard.metered(node, new StringRedisTemplate(connectionFactory), meterRegistry));
+            }
+        }
+        log.info("Sharding link cache across {} (previous topology: {}, {} virtual nodes each)", nodes, previousNodes, virtualNodes);
+        return new RedisShardRouter(shards(nodes, shardsByName), shards(previousNodes, shardsByName), virtualNodes, connections);
+    }
+
+    private static List<RedisShardRouter.Shard> shards(List<String> nodes, Map<String, RedisShardRouter.Shard> shardsByName) {
+        return nodes.stream().map(node -> shardsByName.get(node.trim())).toList();
+    }
+}
@@ -0,0 +1,198 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+//  Routes every cache operation to the Redis node owning its key. The single-node router is a plain
+//  pass-through; the sharded router keeps the current ring plus, while a topology change is being
+//  migrated, the previous ring so that reads can fall back to a key's old owner.
+//
+//  Lifecycle and migration writes go through executeIngest. With isolated workloads every shard reaches
+//  its node over two connections, so a burst of bulk EVALs never queues in front of redirect reads;
+//  otherwise both share the shard's one connection.
+public class RedisShardRouter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisShardRouter.class);
+
+    private final ConsistentHashRing<Shard> ring;
+    private final ConsistentHashRing<Shard> previousRing;
+    private final List<? extends DisposableBean> ownedConnections;
+    private volatile boolean migrating;
+
+    public static RedisShardRouter single(StringRedisTemplate redisTemplate) {
+        return new RedisShardRouter(List.of(new Shard("default", redisTemplate, null, null)), List.of(), 1, List.of());
+    }
+
+    RedisShardRouter(List<Shard> shards, List<Shard> previousShards, int virtualNodes,
+                     List<? extends DisposableBean> ownedConnections) {
+        this.ownedConnections = ownedConnections;
+        this.ring = new ConsistentHashRing<>(shards, Shard::name, virtualNodes);
+        this.previousRing = previousShards.isEmpty() ? null : new ConsistentHashRing<>(previousShards, Shard::name, virtualNodes);
+        this.migrating = previousRing != null;
+    }
+
+    public <T> T execute(String redisKey, Function<StringRedisTemplate, T> operation) {
+        return ring.nodeFor(redisKey).execute(operation);
+    }
+
+    public <T> T executeIngest(String redisKey, Function<StringRedisTemplate, T> operation) {
+        return ring.nodeFor(redisKey).ingest().execute(operation);
+    }
+
+    //  Runs the operation against the key's owner in the previous topology, or returns null when no
+    //  migration is in progress or the key did not move
+    public <T> T executeOnPreviousOwner(String redisKey, Function<StringRedisTemplate, T> operation) {
+        if (!migrating) {
+            return null;
+        }
+        var previous = previousRing.nodeFor(redisKey);
+        if (previous.name().equals(ring.nodeFor(redisKey).name())) {
+            return null;
+        }
+        return previous.execute(operation);
+    }
+
+    boolean isSharded() {
+        return ring.nodes().size() > 1 || previousRing != null;
+    }
+
+    boolean isMigrating() {
+        return migrating;
+    }
+
+    void migrationCompleted() {
+        migrating = false;
+    }
+
+    List<Shard> shards() {
+        return ring.nodes();
+    }
+
+    List<Shard> previousShards() {
+        return previousRing == null ? List.of() : previousRing.nodes();
+    }
+
+    Shard ownerOf(String redisKey) {
+        return ring.nodeFor(redisKey);
+    }
+
+    //  Lettuce resources of the connections this router opened itself; the spring.data.redis one is not among them
+    List<ClientResources> clientResources() {
+        var resources = new ArrayList<ClientResources>();
+        for (var connection : ownedConnections) {
+            if (connection instanceof LettuceConnectionFactory connectionFactory) {
+                resources.add(connectionFactory.getRequiredNativeClient().getResources());
+            }
+        }
+        return resources;
+    }
+
+    @Override
+    public void close() {
+        for (var connection : ownedConnections) {
+            try {
+                connection.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to close Redis shard connection", e);
+            }
+        }
+    }
+
+    static final class Shard {
+
+        private final String name;
+        private final StringRedisTemplate redisTemplate;
+        private final Timer latency;
+        private final Counter errors;
+        private final Shard ingest;
+
+        Shard(String name, StringRedisTemplate redisTemplate, Timer latency, Counter errors) {
+            this(name, redisTemplate, latency, errors, null);
+        }
+
+        private Shard(String name, StringRedisTemplate redisTemplate, Timer latency, Counter errors, Shard ingest) {
+            this.name = name;
+            this.redisTemplate = redisTemplate;
+            this.latency = latency;
+            this.errors = errors;
+            this.ingest = ingest == null ? this : ingest;
+        }
+
+        //  One node reached over a read and an ingest connection, metered per workload
+        static Shard isolated(String name, StringRedisTemplate readTemplate, StringRedisTemplate ingestTemplate,
+                              MeterRegistry meterRegistry) {
+            var ingest = new Shard(name, ingestTemplate, workloadLatency(name, "ingest", meterRegistry),
+                    workloadErrors(name, "ingest", meterRegistry));
+            return new Shard(name, readTemplate, workloadLatency(name, "read", meterRegistry),
+                    workloadErrors(name, "read", meterRegistry), ingest);
+        }
+
+        static Shard metered(String name, StringRedisTemplate redisTemplate, MeterRegistry meterRegistry) {
+            return new Shard(name, redisTemplate,
+                    Timer.builder("redis.shard.latency")
+                            .description("Latency of link cache operations per Redis shard")
+                            .tag("shard", name)
+                            .register(meterRegistry),
+                    Counter.builder("redis.shard.errors")
+                            .description("Failed link cache operations per Redis shard")
+                            .tag("shard", name)
+                            .register(meterRegistry));
+        }
+
+        private static Timer workloadLatency(String name, String workload, MeterRegistry meterRegistry) {
+            return Timer.builder("redis.workload.latency")
+                    .description("Latency of link cache operations per Redis shard and workload connection")
+                    .tag("shard", name)
+                    .tag("workload", workload)
+                    .register(meterRegistry);
+        }
+
+        private static Counter workloadErrors(String name, String workload, MeterRegistry meterRegistry) {
+            return Counter.builder("redis.workload.errors")
+                    .description("Failed link cache operations per Redis shard and workload connection")
+                    .tag("shard", name)
+                    .tag("workload", workload)
+                    .register(meterRegistry);
+        }
+
+        String name() {
+            return name;
+        }
+
+        //  This shard itself unless workloads are isolated
+        Shard ingest() {
+            return ingest;
+        }
+
+        StringRedisTemplate redisTemplate() {
+            return redisTemplate;
+        }
+
+        <T> T execute(Function<StringRedisTemplate, T> operation) {
+            if (latency == null) {
+                return operation.apply(redisTemplate);
+            }
+            var start = System.nanoTime();
+            try {
+                return operation.apply(redisTemplate);
+            } catch (RuntimeException e) {
+                errors.increment();
+                throw e;
+            } finally {
+                latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.time.Clock;
+
+//  Token bucket for refresh-ahead reads: refills at keysPerSecond up to burst keys. Unlike the rebuild
+//  job's RebuildRateLimiter it never waits, because a refresh that arrives late is worth no more than
+//  the next request filling the link; keys beyond what is left are simply not refreshed. A non-positive
+//  rate means no limit. Used by the single refresh-ahead worker only, so it is not thread-safe.
+final class RefreshAheadBudget {
+
+    private final double keysPerMilli;
+    private final double burst;
+    private final Clock clock;
+    private double available;
+    private long refilledAt;
+
+    RefreshAheadBudget(double keysPerSecond, int burst, Clock clock) {
+        this.keysPerMilli = keysPerSecond > 0 ? keysPerSecond / 1000 : 0;
+        this.burst = burst;
+        this.clock = clock;
+        this.available = burst;
+        this.refilledAt = clock.millis();
+    }
+
+    //  Takes up to the requested number of keys and returns how many were granted
+    int tryAcquire(int keys) {
+        if (keysPerMilli == 0) {
+            return keys;
+        }
+        var now = clock.millis();
+        available = Math.min(burst, available + Math.max(0, now - refilledAt) * keysPerMilli);
+        refilledAt = now;
+        var granted = (int) Math.min(keys, available);
+        available -= granted;
+        return granted;
+    }
+}
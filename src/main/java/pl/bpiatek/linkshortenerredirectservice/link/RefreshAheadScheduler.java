@@ -0,0 +1,161 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//  Reloads hot links into the tracking local cache as soon as Redis invalidates them, so the next
+//  redirect for a popular link finds it cached instead of paying (and piling up behind) a synchronous
+//  GET. The local cache has no TTL, so an invalidation is the only way an entry goes stale.
+//
+//  An invalidated link is hot when it had at least minHits local hits (one per request, halved on every
+//  clock pass). Hot links wait in a bounded queue, each at most once, and a single virtual thread drains
+//  them in MGETs of up to batchSize keys. Bursts of invalidations batch themselves while an MGET is in
+//  flight. A RefreshAheadBudget of its own caps the keys read per second; links beyond it or beyond
+//  the queue bound are left to be filled by their next request as before. A refreshed entry starts
+//  with no hits, so links nobody reads any more stop being refreshed.
+final class RefreshAheadScheduler implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshAheadScheduler.class);
+    private static final RefreshAheadScheduler DISABLED = new RefreshAheadScheduler();
+
+    private final TrackingRedirectCache trackingCache;
+    private final ObjectMapper objectMapper;
+    private final RefreshAheadBudget budget;
+    private final int minHits;
+    private final int batchSize;
+    private final LinkedBlockingQueue<String> queue;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Counter loaded;
+    private final Counter skipped;
+    private final Counter dropped;
+    private final Counter throttled;
+    private final Counter failed;
+    private final Timer latency;
+    private final Thread worker;
+
+    private RefreshAheadScheduler() {
+        this.trackingCache = null;
+        this.objectMapper = null;
+        this.budget = null;
+        this.minHits = 0;
+        this.batchSize = 0;
+        this.queue = null;
+        this.loaded = null;
+        this.skipped = null;
+        this.dropped = null;
+        this.throttled = null;
+        this.failed = null;
+        this.latency = null;
+        this.worker = null;
+    }
+
+    RefreshAheadScheduler(TrackingRedirectCache trackingCache, ObjectMapper objectMapper, int minHits, int batchSize,
+                          double keysPerSecond, int maxPending, Clock clock, MeterRegistry meterRegistry) {
+        this.trackingCache = trackingCache;
+        this.objectMapper = objectMapper;
+        //  A second's worth of keys may go at once, and at least one full batch
+        this.budget = new RefreshAheadBudget(keysPerSecond, Math.max(batchSize, (int) keysPerSecond), clock);
+        this.minHits = minHits;
+        this.batchSize = batchSize;
+        this.queue = new LinkedBlockingQueue<>(maxPending);
+        this.loaded = refreshes("loaded", meterRegistry);
+        this.skipped = refreshes("skipped", meterRegistry);
+        this.dropped = refreshes("dropped", meterRegistry);
+        this.throttled = refreshes("throttled", meterRegistry);
+        this.failed = refreshes("failed", meterRegistry);
+        this.latency = Timer.builder("redirect.local.cache.refresh.latency")
+                .description("Duration of one refresh-ahead MGET batch")
+                .register(meterRegistry);
+        this.worker = Thread.ofVirtual().name("refresh-ahead").start(this::run);
+        trackingCache.onInvalidation(this::invalidated);
+    }
+
+    static RefreshAheadScheduler disabled() {
+        return DISABLED;
+    }
+
+    boolean enabled() {
+        return worker != null;
+    }
+
+    //  Called on the tracking connection's event loop: never blocks
+    void invalidated(String shortUrl, int hits) {
+        if (hits < minHits || !pending.add(shortUrl)) {
+            return;
+        }
+        if (!queue.offer(shortUrl)) {
+            pending.remove(shortUrl);
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        var batch = new ArrayList<String>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                //  Off the pending set before the read, so an invalidation racing with it queues the link again
+                batch.forEach(pending::remove);
+                var granted = budget.tryAcquire(batch.size());
+                throttled.increment(batch.size() - granted);
+                if (granted > 0) {
+                    refresh(batch.subList(0, granted));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void refresh(List<String> batch) {
+        var start = System.nanoTime();
+        try {
+            var count = trackingCache.refresh(batch, this::parse);
+            loaded.increment(count);
+            skipped.increment(batch.size() - count);
+        } catch (RuntimeException e) {
+            failed.increment(batch.size());
+            log.warn("Refresh-ahead of {} links failed: {}", batch.size(), e.getMessage());
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private RedirectInfo parse(String json) {
+        try {
+            return objectMapper.readValue(json, RedirectInfo.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot parse cached redirect", e);
+        }
+    }
+
+    private static Counter refreshes(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("redirect.local.cache.refreshes")
+                .description("Hot links re-read into the local cache after an invalidation")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void close() {
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+}
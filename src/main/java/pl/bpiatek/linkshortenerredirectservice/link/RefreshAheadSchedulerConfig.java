@@ -0,0 +1,42 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+@Configuration
+@EnableConfigurationProperties(RefreshAheadSchedulerConfig.RefreshAheadProperties.class)
+class RefreshAheadSchedulerConfig {
+
+    @Bean(destroyMethod = "close")
+    RefreshAheadScheduler refreshAheadScheduler(RefreshAheadProperties properties,
+                                                TrackingRedirectCache trackingCache,
+                                                ObjectMapper objectMapper,
+                                                Clock clock,
+                                                MeterRegistry meterRegistry) {
+        if (!properties.enabled()) {
+            return RefreshAheadScheduler.disabled();
+        }
+        if (!trackingCache.enabled()) {
+            throw new IllegalStateException("link.cache.local.refresh-ahead requires link.cache.local.mode=tracking");
+        }
+        return new RefreshAheadScheduler(trackingCache, objectMapper, properties.minHits(), properties.batchSize(),
+                properties.keysPerSecond(), properties.maxPending(), clock, meterRegistry);
+    }
+
+    //  min-hits is the local hit count (one per request, halved on every clock pass) that makes an
+    //  invalidated link hot; keys-per-second is refresh-ahead's own Redis read budget, zero or less for none
+    @ConfigurationProperties(prefix = "link.cache.local.refresh-ahead")
+    record RefreshAheadProperties(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue("2") int minHits,
+                                  @DefaultValue("100") int batchSize,
+                                  @DefaultValue("2000") double keysPerSecond,
+                                  @DefaultValue("10000") int maxPending) {
+    }
+}
@@ -0,0 +1,107 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+//  Time-windowed set membership in fixed memory: `generations` Bloom filters of which one takes
+//  inserts, the others are only read. rotate() wipes the oldest and makes it current, so with a
+//  rotation every window / (generations - 1) a key is remembered for at least `window` after it was
+//  added. Bits are set with an atomic OR, so concurrent callers never block each other.
+final class RotatingBloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[][] generations;
+    private final long bitMask;
+    private final int hashes;
+    private volatile int current;
+
+    RotatingBloomFilter(int generations, long bitsPerGeneration, int hashes) {
+        if (generations < 2) {
+            throw new IllegalArgumentException("At least two generations are needed, got " + generations);
+        }
+        if (bitsPerGeneration < 64 || Long.bitCount(bitsPerGeneration) != 1) {
+            throw new IllegalArgumentException("Bits per generation must be a power of two >= 64: " + bitsPerGeneration);
+        }
+        this.generations = new long[generations][(int) (bitsPerGeneration >>> 6)];
+        this.bitMask = bitsPerGeneration - 1;
+        this.hashes = hashes;
+    }
+
+    //  Sizes a generation for `expectedKeys` insertions at the given false-positive rate
+    static RotatingBloomFilter sized(int generations, long expectedKeys, double falsePositiveRate) {
+        var optimalBits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        var bits = Math.max(64, Long.highestOneBit((long) Math.ceil(optimalBits) - 1) << 1);
+        var hashes = (int) Math.max(1, Math.round((double) bits / expectedKeys * Math.log(2)));
+        return new RotatingBloomFilter(generations, bits, Math.min(hashes, 16));
+    }
+
+    //  True when the key was not seen in any live generation, in which case it is now recorded
+    boolean addIfAbsent(long keyHash) {
+        var active = current;
+        for (int generation = 0; generation < generations.length; generation++) {
+            if (generation != active && mightContain(generations[generation], keyHash)) {
+                return false;
+            }
+        }
+        var words = generations[active];
+        var h1 = keyHash;
+        var h2 = (keyHash >>> 32) | 1;
+        var added = false;
+        for (int i = 0; i < hashes; i++) {
+            var bit = (h1 + i * h2) & bitMask;
+            var mask = 1L << bit;
+            var previous = (long) WORDS.getAndBitwiseOr(words, (int) (bit >>> 6), mask);
+            added |= (previous & mask) == 0;
+        }
+        return added;
+    }
+
+    //  True when any live generation might hold the key; never records it
+    boolean contains(long keyHash) {
+        for (var words : generations) {
+            if (mightContain(words, keyHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void rotate() {
+        var next = (current + 1) % generations.length;
+        var words = generations[next];
+        for (int i = 0; i < words.length; i++) {
+            WORDS.setOpaque(words, i, 0L);
+        }
+        current = next;
+    }
+
+    long memoryBytes() {
+        return (long) generations.length * generations[0].length * Long.BYTES;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    //  Share of bits set in the current generation; the false-positive rate is roughly fill ^ hashes
+    double fill() {
+        var words = generations[current];
+        long set = 0;
+        for (var word : words) {
+            set += Long.bitCount(word);
+        }
+        return (double) set / ((long) words.length * 64);
+    }
+
+    private boolean mightContain(long[] words, long keyHash) {
+        var h2 = (keyHash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            var bit = (keyHash + i * h2) & bitMask;
+            if (((long) WORDS.getOpaque(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,174 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  After a topology change, walks every node of the previous topology and moves the keys whose owner
+//  changed. Writes on the new owner are version-checked, so a value the consumer already wrote there
+//  since the switch is never replaced by an older one, and tombstones keep their remaining TTL.
+@Component
+class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final RedisScript<Long> MOVE_VALUE_SCRIPT = new DefaultRedisScript<>("""
+            local existing = redis.call('get', KEYS[1])
+            if existing and tonumber(ARGV[3]) <= tonumber(cjson.decode(existing).updatedAtMicros) then
+                return 0
+            end
+            redis.call('set', KEYS[1], ARGV[1])
+            if tonumber(ARGV[2]) > 0 then
+                redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 1
+            """, Long.class);
+    private static final RedisScript<Long> MOVE_FIELD_SCRIPT = new DefaultRedisScript<>("""
+            local existing = redis.call('hget', KEYS[1], ARGV[1])
+            if existing and tonumber(ARGV[4]) <= tonumber(cjson.decode(existing).updatedAtMicros) then
+                return 0
+            end
+            redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            if tonumber(ARGV[3]) > 0 then
+                redis.call('hpexpire', KEYS[1], ARGV[3], 'FIELDS', 1, ARGV[1])
+            end
+            return 1
+            """, Long.class);
+
+    private final RedisShardRouter router;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int scanCount;
+    private final Counter moved;
+    private final Counter skipped;
+
+    ShardRebalancer(RedisShardRouter router,
+                    ObjectMapper objectMapper,
+                    MeterRegistry meterRegistry,
+                    @Value("${link.cache.shards.rebalance-on-startup:true}") boolean enabled,
+                    @Value("${link.cache.shards.rebalance-scan-count:500}") int scanCount) {
+        this.router = router;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.scanCount = scanCount;
+        this.moved = Counter.builder("redis.shard.rebalance.links")
+                .description("Links moved to their new owner after a shard topology change")
+                .tag("outcome", "moved")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("redis.shard.rebalance.links")
+                .description("Links moved to their new owner after a shard topology change")
+                .tag("outcome", "superseded")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onReady() {
+        if (enabled && router.isMigrating()) {
+            Thread.ofVirtual().name("shard-rebalancer").start(this::rebalance);
+        }
+    }
+
+    void rebalance() {
+        try {
+            for (var source : router.previousShards()) {
+                rebalance(source);
+            }
+            router.migrationCompleted();
+            log.info("Shard rebalance completed: {} links moved, {} superseded by newer values", (long) moved.count(), (long) skipped.count());
+        } catch (Exception e) {
+            log.error("Shard rebalance failed, reads keep falling back to the previous topology", e);
+        }
+    }
+
+    private void rebalance(RedisShardRouter.Shard source) throws IOException {
+        var sourceTemplate = source.ingest().redisTemplate();
+        var options = ScanOptions.scanOptions().match("link*").count(scanCount).build();
+        long scanned = 0;
+        try (var cursor = sourceTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                var key = cursor.next();
+                scanned++;
+                var target = router.ownerOf(key);
+                if (target.name().equals(source.name())) {
+                    continue;
+                }
+                var type = sourceTemplate.type(key);
+                if (type == DataType.STRING) {
+                    moveValue(sourceTemplate, target, key);
+                } else if (type == DataType.HASH) {
+                    moveFields(sourceTemplate, target, key);
+                }
+                sourceTemplate.delete(key);
+            }
+        }
+        log.info("Rebalanced shard {}: {} keys scanned", source.name(), scanned);
+    }
+
+    private void moveValue(StringRedisTemplate sourceTemplate, RedisShardRouter.Shard target, String key) throws IOException {
+        var json = sourceTemplate.opsForValue().get(key);
+        var ttlMillis = sourceTemplate.execute((RedisCallback<Long>) connection -> connection.keyCommands().pTtl(key.getBytes(UTF_8)));
+        if (json == null || ttlMillis == null || ttlMillis == -2) {
+            return;
+        }
+        var version = objectMapper.readValue(json, RedirectInfo.class).updatedAtMicros();
+        count(target.ingest().execute(template -> template.execute(MOVE_VALUE_SCRIPT, List.of(key),
+                json, String.valueOf(Math.max(ttlMillis, 0)), String.valueOf(version))));
+    }
+
+    private void moveFields(StringRedisTemplate sourceTemplate, RedisShardRouter.Shard target, String key) throws IOException {
+        var entries = sourceTemplate.<String, String>opsForHash().entries(key);
+        if (entries.isEmpty()) {
+            return;
+        }
+        var fields = new ArrayList<>(entries.keySet());
+        var ttls = fieldTtls(sourceTemplate, key, fields);
+        for (int i = 0; i < fields.size(); i++) {
+            var json = entries.get(fields.get(i));
+            var ttlMillis = ttls.get(i);
+            if (ttlMillis == -2) {
+                continue;
+            }
+            var version = objectMapper.readValue(json, RedirectInfo.class).updatedAtMicros();
+            var field = fields.get(i);
+            count(target.ingest().execute(template -> template.execute(MOVE_FIELD_SCRIPT, List.of(key),
+                    field, json, String.valueOf(Math.max(ttlMillis, 0)), String.valueOf(version))));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> fieldTtls(StringRedisTemplate sourceTemplate, String key, List<String> fields) {
+        var args = new byte[fields.size() + 3][];
+        args[0] = key.getBytes(UTF_8);
+        args[1] = "FIELDS".getBytes(UTF_8);
+        args[2] = String.valueOf(fields.size()).getBytes(UTF_8);
+        for (int i = 0; i < fields.size(); i++) {
+            args[i + 3] = fields.get(i).getBytes(UTF_8);
+        }
+        return (List<Long>) sourceTemplate.execute((RedisCallback<Object>) connection -> connection.execute("HPTTL", args));
+    }
+
+    private void count(Long result) {
+        if (Long.valueOf(1).equals(result)) {
+            moved.increment();
+        } else {
+            skipped.increment();
+        }
+    }
+}
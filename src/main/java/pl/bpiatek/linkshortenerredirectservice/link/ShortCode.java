@@ -0,0 +1,64 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.Arrays;
+
+//  Short codes are base62 ([0-9A-Za-z]). Codes of up to MAX_PACKED_LENGTH characters pack into a
+//  non-negative long in bijective base 62 (digits 1..62, so "0" and "00" stay distinct), which lets
+//  local lookup structures key on a primitive instead of hashing and comparing Strings. Longer valid
+//  codes report UNPACKED and are kept by their String; anything else is INVALID.
+public final class ShortCode {
+
+    public static final int MAX_LENGTH = 64;
+    public static final int MAX_PACKED_LENGTH = 10;
+    public static final long INVALID = -1;
+    public static final long UNPACKED = -2;
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DIGITS[ALPHABET[i]] = (byte) (i + 1);
+        }
+    }
+
+    private ShortCode() {
+    }
+
+    //  Allocation-free: a packed code, UNPACKED for a valid code too long to pack, or INVALID
+    public static long pack(CharSequence code) {
+        var length = code.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return INVALID;
+        }
+        var packed = 0L;
+        for (int i = 0; i < length; i++) {
+            var c = code.charAt(i);
+            if (c >= DIGITS.length || DIGITS[c] < 0) {
+                return INVALID;
+            }
+            //  62^10 + ... + 62 < 2^63, so ten digits never overflow
+            packed = packed * ALPHABET.length + DIGITS[c];
+        }
+        return length <= MAX_PACKED_LENGTH ? packed : UNPACKED;
+    }
+
+    public static boolean isValid(CharSequence code) {
+        return pack(code) != INVALID;
+    }
+
+    public static String unpack(long packed) {
+        if (packed <= 0) {
+            throw new IllegalArgumentException("Not a packed short code: " + packed);
+        }
+        var chars = new char[MAX_PACKED_LENGTH];
+        var start = chars.length;
+        while (packed > 0) {
+            packed--;
+            chars[--start] = ALPHABET[(int) (packed % ALPHABET.length)];
+            packed /= ALPHABET.length;
+        }
+        return new String(chars, start, chars.length - start);
+    }
+}
@@ -0,0 +1,66 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+//  Concurrent map keyed by short code. Codes that pack into a long (ShortCode.pack) are looked up in a
+//  ConcurrentLongMap without hashing or comparing the String; longer codes and keys that are not
+//  short codes at all (e.g. ones read back from Redis) go to an ordinary ConcurrentHashMap.
+public final class ShortCodeMap<V> {
+
+    private final ConcurrentLongMap<V> packed;
+    private final ConcurrentHashMap<String, V> unpacked = new ConcurrentHashMap<>();
+
+    public ShortCodeMap(int expectedSize) {
+        this.packed = new ConcurrentLongMap<>(expectedSize);
+    }
+
+    public V get(String shortCode) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.get(code) : unpacked.get(shortCode);
+    }
+
+    public V put(String shortCode, V value) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.put(code, value) : unpacked.put(shortCode, value);
+    }
+
+    public V putIfAbsent(String shortCode, V value) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.putIfAbsent(code, value) : unpacked.putIfAbsent(shortCode, value);
+    }
+
+    //  As ConcurrentLongMap.computeIfAbsent: the function must be cheap and must not touch this map
+    public V computeIfAbsent(String shortCode, Function<String, ? extends V> function) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0
+                ? packed.computeIfAbsent(code, key -> function.apply(shortCode))
+                : unpacked.computeIfAbsent(shortCode, function);
+    }
+
+    public boolean replace(String shortCode, V expected, V value) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.replace(code, expected, value) : unpacked.replace(shortCode, expected, value);
+    }
+
+    public V remove(String shortCode) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.remove(code) : unpacked.remove(shortCode);
+    }
+
+    public boolean remove(String shortCode, V expected) {
+        var code = ShortCode.pack(shortCode);
+        return code >= 0 ? packed.remove(code, expected) : unpacked.remove(shortCode, expected);
+    }
+
+    public int size() {
+        return packed.size() + unpacked.size();
+    }
+
+    //  Weakly consistent, and unpacks every packed key: meant for sweeps, not the request path
+    public void forEach(BiConsumer<String, ? super V> action) {
+        packed.forEach((code, value) -> action.accept(ShortCode.unpack(code), value));
+        unpacked.forEach(action);
+    }
+}
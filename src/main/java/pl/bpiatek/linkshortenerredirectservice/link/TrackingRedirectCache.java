@@ -0,0 +1,283 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+
+//  Local redirect cache kept coherent by Redis client-side caching: reads go over a dedicated RESP3
+//  connection with CLIENT TRACKING on, and Redis pushes an invalidation for every key this connection
+//  read once any client rewrites it. Losing the connection loses the tracking state, so the local
+//  copy is dropped and nothing new is cached until tracking is re-enabled on the new connection.
+//  SWAPDB replaces every key without an invalidation push, so the rebuild job announces the swap on
+//  FLUSH_CHANNEL and each instance drops its whole local copy when it hears it.
+public class TrackingRedirectCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(TrackingRedirectCache.class);
+    private static final TrackingRedirectCache DISABLED = new TrackingRedirectCache();
+    static final String FLUSH_CHANNEL = "link:cache:local:flush";
+
+    private final RedisClient client;
+    private final StatefulRedisConnection<String, String> connection;
+    private final StatefulRedisPubSubConnection<String, String> flushSignals;
+    private final LocalRedirectCache localCache;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter keyInvalidations;
+    private final Counter flushes;
+    private volatile boolean tracking;
+    private volatile ObjIntConsumer<String> invalidations = (shortUrl, hits) -> { };
+
+    private TrackingRedirectCache() {
+        this.client = null;
+        this.connection = null;
+        this.flushSignals = null;
+        this.localCache = null;
+        this.hits = null;
+        this.misses = null;
+        this.keyInvalidations = null;
+        this.flushes = null;
+    }
+
+    TrackingRedirectCache(RedisClient client, int maxEntries, MeterRegistry meterRegistry) {
+        this.client = client;
+        this.localCache = new LocalRedirectCache(maxEntries);
+        this.hits = Counter.builder("redirect.local.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("redirect.local.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.keyInvalidations = Counter.builder("redirect.local.cache.invalidations")
+                .description("Links dropped from the local cache because Redis reported a change")
+                .tag("reason", "key")
+                .register(meterRegistry);
+        this.flushes = Counter.builder("redirect.local.cache.invalidations")
+                .description("Links dropped from the local cache because Redis reported a change")
+                .tag("reason", "flush")
+                .register(meterRegistry);
+        Gauge.builder("redirect.local.cache.size", localCache, LocalRedirectCache::size).register(meterRegistry);
+        Gauge.builder("redirect.local.cache.destinations", localCache, LocalRedirectCache::destinations)
+                .description("Distinct destination URLs held by the local cache")
+                .register(meterRegistry);
+        Gauge.builder("redirect.local.cache.destination.bytes", localCache, LocalRedirectCache::destinationBytes)
+                .description("Front-coded UTF-8 bytes of the local cache's destination URLs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("redirect.local.cache.served.locally.ratio", this, TrackingRedirectCache::servedLocallyRatio)
+                .description("Share of redirect lookups answered from the local cache, without a Redis round trip")
+                .register(meterRegistry);
+
+        client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+                if (handler == flushSignals) {
+                    //  A signal published while the subscription was down is lost
+                    flush("flush channel reconnected");
+                } else if (handler == connection) {
+                    reEnableTracking();
+                }
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                if (handler == connection) {
+                    tracking = false;
+                    flush("connection lost");
+                }
+            }
+        });
+        this.connection = client.connect();
+        this.connection.addListener(this::onPush);
+        this.connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+        this.flushSignals = client.connectPubSub();
+        this.flushSignals.addListener(new RedisPubSubAdapter<>() {
+            @Override
+            public void message(String channel, String message) {
+                flush("database swapped");
+            }
+        });
+        this.flushSignals.sync().subscribe(FLUSH_CHANNEL);
+        this.tracking = true;
+    }
+
+    public static TrackingRedirectCache disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return connection != null;
+    }
+
+    //  The controller asks before find(), so this must not count as a second hit
+    boolean isCached(String shortUrl) {
+        return localCache.contains(shortUrl);
+    }
+
+    //  The parser may throw for corrupted values; those are never cached
+    Optional<RedirectInfo> find(String shortUrl, String redisKey, Function<String, RedirectInfo> parser) {
+        var cached = localCache.get(shortUrl);
+        if (cached != null) {
+            hits.increment();
+            return Optional.ofNullable(cached.info());
+        }
+        misses.increment();
+
+        var token = tracking ? localCache.reserve(shortUrl) : null;
+        try {
+            var json = connection.sync().get(redisKey);
+            var info = json == null ? null : parser.apply(json);
+            if (token != null) {
+                localCache.complete(shortUrl, token, info);
+            }
+            return Optional.ofNullable(info);
+        } catch (RuntimeException e) {
+            if (token != null) {
+                localCache.release(shortUrl, token);
+            }
+            throw e;
+        }
+    }
+
+    //  Links dropped by an invalidation are handed to the listener with their local hit count, on the
+    //  connection's event loop, so it must not block
+    void onInvalidation(ObjIntConsumer<String> listener) {
+        invalidations = listener;
+    }
+
+    //  Re-reads invalidated links in one MGET; see warm()
+    int refresh(List<String> shortUrls, Function<String, RedirectInfo> parser) {
+        var links = shortUrls.stream().map(shortUrl -> new LocalRedirectCache.CachedLink(shortUrl, null)).toList();
+        return warm(links, parser, Math.max(1, links.size()));
+    }
+
+    List<LocalRedirectCache.CachedLink> hottest(int limit) {
+        return localCache == null ? List.of() : localCache.hottest(limit);
+    }
+
+    //  Loads links handed over by a peer, or preloaded by warm-up (info == null). Each batch is re-read with
+    //  one MGET on the tracking connection, which both registers the keys for invalidation and supplies the
+    //  current Redis value; a peer's copy is reconciled with it by the lifecycle consumer's rule. Links
+    //  Redis no longer has are not cached.
+    int warm(List<LocalRedirectCache.CachedLink> links, Function<String, RedirectInfo> parser, int batchSize) {
+        if (!tracking) {
+            return 0;
+        }
+        var loaded = 0;
+        for (int from = 0; from < links.size(); from += batchSize) {
+            var batch = links.subList(from, Math.min(links.size(), from + batchSize));
+            var reserved = new ArrayList<LocalRedirectCache.CachedLink>(batch.size());
+            var tokens = new ArrayList<Object>(batch.size());
+            for (var link : batch) {
+                var token = localCache.reserve(link.shortUrl());
+                if (token != null) {
+                    reserved.add(link);
+                    tokens.add(token);
+                }
+            }
+            if (reserved.isEmpty()) {
+                continue;
+            }
+            var keys = reserved.stream().map(link -> FlatKeyLayout.KEY_PREFIX + link.shortUrl()).toArray(String[]::new);
+            try {
+                var values = connection.sync().mget(keys);
+                for (int i = 0; i < reserved.size(); i++) {
+                    var link = reserved.get(i);
+                    var value = values.get(i);
+                    RedirectInfo current;
+                    try {
+                        current = value.hasValue() ? parser.apply(value.getValue()) : null;
+                    } catch (RuntimeException e) {
+                        current = null;
+                    }
+                    if (current == null) {
+                        localCache.release(link.shortUrl(), tokens.get(i));
+                    } else if (localCache.complete(link.shortUrl(), tokens.get(i),
+                            link.info() == null ? current : LatestStateCollector.resolve(current, link.info()))) {
+                        loaded++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                for (int i = 0; i < reserved.size(); i++) {
+                    localCache.release(reserved.get(i).shortUrl(), tokens.get(i));
+                }
+                throw e;
+            }
+        }
+        return loaded;
+    }
+
+    private void onPush(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) {
+            return;
+        }
+        var content = message.getContent(StringCodec.UTF8::decodeKey);
+        var keys = content.size() > 1 ? content.get(1) : null;
+        if (!(keys instanceof List<?> invalidatedKeys)) {
+            //  A null key list means Redis dropped every tracked key (FLUSHALL, tracking table overflow)
+            flush("flushed by Redis");
+            return;
+        }
+        for (var key : invalidatedKeys) {
+            var redisKey = String.valueOf(key);
+            if (redisKey.startsWith(FlatKeyLayout.KEY_PREFIX)) {
+                var shortUrl = redisKey.substring(FlatKeyLayout.KEY_PREFIX.length());
+                var dropped = localCache.invalidate(shortUrl);
+                keyInvalidations.increment();
+                if (dropped != null) {
+                    invalidations.accept(shortUrl, dropped.hits());
+                }
+            }
+        }
+    }
+
+    private double servedLocallyRatio() {
+        var total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private void reEnableTracking() {
+        if (connection == null) {
+            return;
+        }
+        flush("reconnected");
+        connection.async().clientTracking(TrackingArgs.Builder.enabled()).whenComplete((result, error) -> {
+            if (error != null) {
+                log.error("Could not re-enable Redis client tracking, local redirect cache stays bypassed", error);
+                return;
+            }
+            log.info("Redis client tracking re-enabled after reconnect");
+            tracking = true;
+        });
+    }
+
+    private void flush(String reason) {
+        var dropped = localCache.size();
+        localCache.invalidateAll();
+        flushes.increment(dropped);
+        log.info("Local redirect cache flushed ({}), {} entries dropped", reason, dropped);
+    }
+
+    @Override
+    public void close() {
+        if (client == null) {
+            return;
+        }
+        flushSignals.close();
+        connection.close();
+        client.shutdown();
+    }
+}
@@ -0,0 +1,34 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//  link.cache.local.mode=tracking turns on the client-tracking local cache; anything else keeps every
+//  read going to Redis. Tracking follows one connection, so it needs the flat layout on a single node.
+@Configuration
+class TrackingRedirectCacheConfig {
+
+    @Bean(destroyMethod = "close")
+    TrackingRedirectCache trackingRedirectCache(RedisProperties redisProperties,
+                                                LinkKeyLayout keyLayout,
+                                                RedisShardRouter shardRouter,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${link.cache.local.mode:none}") String mode,
+                                                @Value("${link.cache.local.max-entries:100000}") int maxEntries) {
+        if (!"tracking".equals(mode)) {
+            return TrackingRedirectCache.disabled();
+        }
+        if (!(keyLayout instanceof FlatKeyLayout) || shardRouter.isSharded()) {
+            throw new IllegalStateException("link.cache.local.mode=tracking requires the flat layout on a single Redis node");
+        }
+
+        var client = RedisClient.create(DerivedRedisConnections.redisUri(redisProperties).build());
+        client.setOptions(DerivedRedisConnections.clientOptions(redisProperties).protocolVersion(ProtocolVersion.RESP3).build());
+        return new TrackingRedirectCache(client, maxEntries, meterRegistry);
+    }
+}
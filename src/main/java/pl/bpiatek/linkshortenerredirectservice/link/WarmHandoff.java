@@ -0,0 +1,171 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//  Fills the local cache of a starting pod from a running peer instead of from a burst of Redis reads
+//  under live traffic. It runs on the startup thread from ApplicationReadyEvent: Spring Boot publishes
+//  ReadinessState.ACCEPTING_TRAFFIC only once those listeners return, so the pod reports ready after
+//  the handoff has loaded, or given up on every peer or the deadline, and then starts cold.
+public class WarmHandoff {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmHandoff.class);
+    private static final WarmHandoff DISABLED = new WarmHandoff();
+
+    private final TrackingRedirectCache trackingCache;
+    private final Peers peers;
+    private final RestClient restClient;
+    private final ObjectMapper objectMapper;
+    private final int entries;
+    private final int batchSize;
+    private final Duration timeout;
+    private final Counter warmed;
+
+    private WarmHandoff() {
+        this.trackingCache = null;
+        this.peers = null;
+        this.restClient = null;
+        this.objectMapper = null;
+        this.entries = 0;
+        this.batchSize = 0;
+        this.timeout = Duration.ZERO;
+        this.warmed = null;
+    }
+
+    WarmHandoff(TrackingRedirectCache trackingCache, Peers peers, RestClient restClient, ObjectMapper objectMapper,
+                int entries, int batchSize, Duration timeout, MeterRegistry meterRegistry) {
+        this.trackingCache = trackingCache;
+        this.peers = peers;
+        this.restClient = restClient;
+        this.objectMapper = objectMapper;
+        this.entries = entries;
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        this.warmed = Counter.builder("redirect.local.cache.warmed")
+                .description("Links loaded into the local cache from a peer at startup")
+                .register(meterRegistry);
+    }
+
+    public static WarmHandoff disabled() {
+        return DISABLED;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onReady() {
+        if (trackingCache != null) {
+            handOff();
+        }
+    }
+
+    //  Returns the number of links loaded, 0 when no peer could hand over
+    int handOff() {
+        var start = System.nanoTime();
+        var deadline = start + timeout.toNanos();
+        List<URI> candidates;
+        try {
+            candidates = new ArrayList<>(peers.discover());
+        } catch (RuntimeException e) {
+            log.warn("Warm handoff peer discovery failed, starting with a cold local cache: {}", e.getMessage());
+            return 0;
+        }
+        //  Spread the handoffs of a scale-out over the running pods
+        Collections.shuffle(candidates);
+
+        for (var peer : candidates) {
+            if (System.nanoTime() > deadline) {
+                log.warn("Warm handoff gave up after {}, starting with a cold local cache", timeout);
+                return 0;
+            }
+            if (!isReady(peer)) {
+                continue;
+            }
+            try {
+                var payload = restClient.get()
+                        .uri(peer.resolve("/actuator/warmhandoff?limit=" + entries))
+                        .retrieve()
+                        .body(byte[].class);
+                var links = WarmHandoffCodec.decode(payload == null ? new byte[0] : payload);
+                var loaded = trackingCache.warm(links, this::parse, batchSize);
+                warmed.increment(loaded);
+                log.info("Warm handoff from {}: {} of {} links loaded in {} ms", peer, loaded, links.size(),
+                        Duration.ofNanos(System.nanoTime() - start).toMillis());
+                return loaded;
+            } catch (RuntimeException e) {
+                log.warn("Warm handoff from {} failed: {}", peer, e.getMessage());
+            }
+        }
+        log.info("No peer available for warm handoff (candidates: {}), starting with a cold local cache", candidates);
+        return 0;
+    }
+
+    private boolean isReady(URI peer) {
+        try {
+            return restClient.get()
+                    .uri(peer.resolve("/actuator/health/readiness"))
+                    .retrieve()
+                    .toBodilessEntity()
+                    .getStatusCode()
+                    .is2xxSuccessful();
+        } catch (RestClientException e) {
+            log.debug("Skipping peer {} for warm handoff: {}", peer, e.getMessage());
+            return false;
+        }
+    }
+
+    private RedirectInfo parse(String json) {
+        try {
+            return objectMapper.readValue(json, RedirectInfo.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot parse cached redirect", e);
+        }
+    }
+
+    @FunctionalInterface
+    interface Peers {
+
+        List<URI> discover();
+
+        static Peers of(List<URI> peers) {
+            return () -> peers;
+        }
+
+        //  A headless service resolves to one address per ready pod; this pod's own addresses are skipped
+        static Peers dns(String serviceName, int port) {
+            return () -> {
+                try {
+                    var peers = new ArrayList<URI>();
+                    for (var address : InetAddress.getAllByName(serviceName)) {
+                        if (address.isLoopbackAddress() || NetworkInterface.getByInetAddress(address) != null) {
+                            continue;
+                        }
+                        peers.add(new URI("http", null, address.getHostAddress(), port, null, null, null));
+                    }
+                    return peers;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (URISyntaxException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    }
+}
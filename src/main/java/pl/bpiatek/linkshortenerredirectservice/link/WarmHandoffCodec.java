@@ -0,0 +1,116 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Wire format of a warm handoff, a few bytes of framing per link instead of the JSON kept in Redis:
+//
+//    "RWH" version(1) count(varint)
+//    per link: shortUrl(varint length + UTF-8) flags(1) updatedAtMicros(8) [longUrl(varint length + UTF-8)]
+//
+//  flags: 1 = has long URL, 2 = active, 4 = deleted
+final class WarmHandoffCodec {
+
+    static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final byte[] MAGIC = {'R', 'W', 'H'};
+    private static final byte VERSION = 1;
+    private static final int HAS_LONG_URL = 1;
+    private static final int ACTIVE = 2;
+    private static final int DELETED = 4;
+
+    private WarmHandoffCodec() {
+    }
+
+    static byte[] encode(List<LocalRedirectCache.CachedLink> links) {
+        var out = new ByteArrayOutputStream(64 + links.size() * 64);
+        out.writeBytes(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, links.size());
+        for (var link : links) {
+            var info = link.info();
+            writeString(out, link.shortUrl());
+            out.write((info.longUrl() != null ? HAS_LONG_URL : 0) | (info.isActive() ? ACTIVE : 0) | (info.isDeleted() ? DELETED : 0));
+            var micros = info.updatedAtMicros();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (micros >>> shift));
+            }
+            if (info.longUrl() != null) {
+                writeString(out, info.longUrl());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static List<LocalRedirectCache.CachedLink> decode(byte[] payload) {
+        var in = ByteBuffer.wrap(payload);
+        try {
+            for (var expected : MAGIC) {
+                if (in.get() != expected) {
+                    throw new IllegalArgumentException("Not a warm handoff payload");
+                }
+            }
+            var version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported warm handoff version " + version);
+            }
+            var count = readVarint(in);
+            var links = new ArrayList<LocalRedirectCache.CachedLink>(Math.min(count, in.remaining() / 10));
+            for (int i = 0; i < count; i++) {
+                var shortUrl = readString(in);
+                var flags = in.get();
+                var micros = in.getLong();
+                var longUrl = (flags & HAS_LONG_URL) != 0 ? readString(in) : null;
+                links.add(new LocalRedirectCache.CachedLink(shortUrl,
+                        new RedirectInfo(longUrl, (flags & ACTIVE) != 0, micros, (flags & DELETED) != 0)));
+            }
+            return links;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated warm handoff payload", e);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        var bytes = value.getBytes(UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        var length = readVarint(in);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        var value = new String(in.array(), in.position(), length, UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            var b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in warm handoff payload");
+    }
+}
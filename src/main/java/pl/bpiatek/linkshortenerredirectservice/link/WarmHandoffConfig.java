@@ -0,0 +1,74 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+
+//  link.cache.warm-handoff.service-name is the headless service listing the pods of this deployment;
+//  link.cache.warm-handoff.peers (base URLs) takes precedence and exists for tests and local runs.
+//  Peers are called on their actuator port with the monitoring user.
+@Configuration
+@EnableConfigurationProperties(WarmHandoffConfig.WarmHandoffProperties.class)
+class WarmHandoffConfig {
+
+    @Bean
+    WarmHandoff warmHandoff(WarmHandoffProperties properties,
+                            TrackingRedirectCache trackingCache,
+                            RestClient.Builder restClientBuilder,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${monitoring.user.name}") String monitoringUser,
+                            @Value("${monitoring.user.password}") String monitoringPassword) {
+        if (!properties.enabled()) {
+            return WarmHandoff.disabled();
+        }
+        if (!trackingCache.enabled()) {
+            throw new IllegalStateException("link.cache.warm-handoff requires link.cache.local.mode=tracking");
+        }
+
+        WarmHandoff.Peers peers;
+        if (!properties.peers().isEmpty()) {
+            peers = WarmHandoff.Peers.of(properties.peers());
+        } else if (properties.serviceName() != null) {
+            peers = WarmHandoff.Peers.dns(properties.serviceName(), properties.port());
+        } else {
+            throw new IllegalStateException("link.cache.warm-handoff needs a service-name or a list of peers");
+        }
+
+        var httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+        var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(properties.timeout());
+        var restClient = restClientBuilder.clone()
+                .requestFactory(requestFactory)
+                .defaultHeaders(headers -> headers.setBasicAuth(monitoringUser, monitoringPassword))
+                .build();
+        return new WarmHandoff(trackingCache, peers, restClient, objectMapper, properties.entries(),
+                properties.batchSize(), properties.timeout(), meterRegistry);
+    }
+
+    @ConfigurationProperties(prefix = "link.cache.warm-handoff")
+    record WarmHandoffProperties(@DefaultValue("false") boolean enabled,
+                                 @Nullable String serviceName,
+                                 @DefaultValue("8080") int port,
+                                 @DefaultValue List<URI> peers,
+                                 @DefaultValue("20000") int entries,
+                                 @DefaultValue("500") int batchSize,
+                                 @DefaultValue("20s") Duration timeout) {
+    }
+}
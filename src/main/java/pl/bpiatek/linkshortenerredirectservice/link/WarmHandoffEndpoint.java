@@ -0,0 +1,27 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+//  GET streams this pod's hottest local cache entries to a starting peer (see WarmHandoff)
+@Component
+@WebEndpoint(id = "warmhandoff")
+class WarmHandoffEndpoint {
+
+    private static final int DEFAULT_LIMIT = 10_000;
+
+    private final TrackingRedirectCache trackingCache;
+
+    WarmHandoffEndpoint(TrackingRedirectCache trackingCache) {
+        this.trackingCache = trackingCache;
+    }
+
+    @ReadOperation(produces = WarmHandoffCodec.CONTENT_TYPE)
+    public Resource hottest(@Nullable Integer limit) {
+        return new ByteArrayResource(WarmHandoffCodec.encode(trackingCache.hottest(limit == null ? DEFAULT_LIMIT : limit)));
+    }
+}
@@ -0,0 +1,57 @@
+package pl.bpiatek.linkshortenerredirectservice.net;
+
+//  Prefix over the 128-bit IpAddress space; IPv4 blocks are shifted into the IPv4-mapped range so
+//  "10.0.0.0/8" and "::ffff:10.0.0.0/104" are the same block
+public record CidrBlock(long high, long low, int prefixLength) {
+
+    public CidrBlock {
+        if (prefixLength < 0 || prefixLength > 128) {
+            throw new IllegalArgumentException("Prefix length out of range: " + prefixLength);
+        }
+        high &= maskHigh(prefixLength);
+        low &= maskLow(prefixLength);
+    }
+
+    public static CidrBlock parse(String text) {
+        var value = text.trim();
+        var slash = value.indexOf('/');
+        var address = new IpAddress();
+        if (!address.parse(value, 0, slash < 0 ? value.length() : slash)) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + text);
+        }
+        var ipv4Literal = value.indexOf(':') < 0;
+        var maxLength = ipv4Literal ? 32 : 128;
+        int length;
+        try {
+            length = slash < 0 ? maxLength : Integer.parseInt(value.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + text, e);
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + text);
+        }
+        return new CidrBlock(address.high(), address.low(), ipv4Literal ? 96 + length : length);
+    }
+
+    public boolean contains(IpAddress address) {
+        return (address.high() & maskHigh(prefixLength)) == high
+                && (address.low() & maskLow(prefixLength)) == low;
+    }
+
+    private static long maskHigh(int length) {
+        return length >= 64 ? -1L : length == 0 ? 0L : -1L << (64 - length);
+    }
+
+    private static long maskLow(int length) {
+        return length <= 64 ? 0L : length == 128 ? -1L : -1L << (128 - length);
+    }
+
+    @Override
+    public String toString() {
+        var address = new IpAddress();
+        address.set(high, low);
+        return address.isIpv4() && prefixLength >= 96
+                ? address + "/" + (prefixLength - 96)
+                : address + "/" + prefixLength;
+    }
+}
@@ -0,0 +1,147 @@
+package pl.bpiatek.linkshortenerredirectservice.net;
+
+import java.util.Arrays;
+import java.util.Map;
+
+//  Path-compressed binary radix trie over CidrBlocks for longest-prefix lookups. Nodes live in
+//  parallel primitive arrays (two children, a prefix and a value index each), so a lookup is a few
+//  array reads and mask compares per branching point rather than one step per address bit, and the
+//  whole structure is immutable once built.
+public final class CidrTrie<V> {
+
+    private static final int NONE = -1;
+
+    private long[] prefixHigh = new long[8];
+    private long[] prefixLow = new long[8];
+    private int[] prefixLength = new int[8];
+    private int[] zero = new int[8];
+    private int[] one = new int[8];
+    private Object[] values = new Object[8];
+    private int nodes;
+
+    private CidrTrie() {
+        newNode(0, 0, 0);
+    }
+
+    public static <V> CidrTrie<V> of(Map<CidrBlock, V> blocks) {
+        var trie = new CidrTrie<V>();
+        blocks.forEach(trie::insert);
+        return trie;
+    }
+
+    public static CidrTrie<Boolean> of(Iterable<CidrBlock> blocks) {
+        var trie = new CidrTrie<Boolean>();
+        blocks.forEach(block -> trie.insert(block, Boolean.TRUE));
+        return trie;
+    }
+
+    public boolean isEmpty() {
+        return nodes == 1 && values[0] == null;
+    }
+
+    public boolean contains(IpAddress address) {
+        return longestMatch(address) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V longestMatch(IpAddress address) {
+        Object best = null;
+        var node = 0;
+        while (node != NONE) {
+            var length = prefixLength[node];
+            if (!matches(address.high(), address.low(), node, length)) {
+                break;
+            }
+            if (values[node] != null) {
+                best = values[node];
+            }
+            if (length == 128) {
+                break;
+            }
+            node = address.bit(length) == 0 ? zero[node] : one[node];
+        }
+        return (V) best;
+    }
+
+    private void insert(CidrBlock block, V value) {
+        var node = 0;
+        while (true) {
+            if (block.prefixLength() == prefixLength[node]) {
+                values[node] = value;
+                return;
+            }
+            var bit = bit(block.high(), block.low(), prefixLength[node]);
+            var child = bit == 0 ? zero[node] : one[node];
+            if (child == NONE) {
+                link(node, bit, newNode(block.high(), block.low(), block.prefixLength()));
+                values[nodes - 1] = value;
+                return;
+            }
+            var common = Math.min(commonPrefix(block.high(), block.low(), prefixHigh[child], prefixLow[child]),
+                    Math.min(block.prefixLength(), prefixLength[child]));
+            if (common == prefixLength[child]) {
+                node = child;
+                continue;
+            }
+            //  The block diverges inside the child's compressed path: split it at `common`
+            var split = newNode(block.high(), block.low(), common);
+            link(node, bit, split);
+            link(split, bit(prefixHigh[child], prefixLow[child], common), child);
+            if (common == block.prefixLength()) {
+                values[split] = value;
+            } else {
+                var leaf = newNode(block.high(), block.low(), block.prefixLength());
+                values[leaf] = value;
+                link(split, bit(block.high(), block.low(), common), leaf);
+            }
+            return;
+        }
+    }
+
+    private int newNode(long high, long low, int length) {
+        if (nodes == prefixLength.length) {
+            var capacity = nodes * 2;
+            prefixHigh = Arrays.copyOf(prefixHigh, capacity);
+            prefixLow = Arrays.copyOf(prefixLow, capacity);
+            prefixLength = Arrays.copyOf(prefixLength, capacity);
+            zero = Arrays.copyOf(zero, capacity);
+            one = Arrays.copyOf(one, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        var block = new CidrBlock(high, low, length);
+        prefixHigh[nodes] = block.high();
+        prefixLow[nodes] = block.low();
+        prefixLength[nodes] = length;
+        zero[nodes] = NONE;
+        one[nodes] = NONE;
+        return nodes++;
+    }
+
+    private void link(int parent, int bit, int child) {
+        if (bit == 0) {
+            zero[parent] = child;
+        } else {
+            one[parent] = child;
+        }
+    }
+
+    private boolean matches(long high, long low, int node, int length) {
+        if (length == 0) {
+            return true;
+        }
+        if (length <= 64) {
+            return (high & (-1L << (64 - length))) == prefixHigh[node];
+        }
+        return high == prefixHigh[node]
+                && (length == 128 ? low : low & (-1L << (128 - length))) == prefixLow[node];
+    }
+
+    private static int bit(long high, long low, int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    private static int commonPrefix(long highA, long lowA, long highB, long lowB) {
+        var high = highA ^ highB;
+        return high != 0 ? Long.numberOfLeadingZeros(high) : 64 + Long.numberOfLeadingZeros(lowA ^ lowB);
+    }
+}
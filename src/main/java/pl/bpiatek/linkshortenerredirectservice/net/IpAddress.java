@@ -0,0 +1,222 @@
+package pl.bpiatek.linkshortenerredirectservice.net;
+
+//  Mutable 128-bit address parsed straight from text, without InetAddress (which may fall back to a
+//  DNS lookup for anything that is not a literal). IPv4 is stored IPv4-mapped (::ffff:a.b.c.d) so
+//  both families share one representation and one set of CIDR rules.
+public final class IpAddress {
+
+    private static final long IPV4_MAPPED_LOW_PREFIX = 0x0000_ffff_0000_0000L;
+
+    private long high;
+    private long low;
+    private boolean valid;
+
+    public long high() {
+        return high;
+    }
+
+    public long low() {
+        return low;
+    }
+
+    //  False until parse() or set() succeeds, and again after a failed parse()
+    public boolean isValid() {
+        return valid;
+    }
+
+    public boolean isIpv4() {
+        return high == 0 && (low & 0xffff_ffff_0000_0000L) == IPV4_MAPPED_LOW_PREFIX;
+    }
+
+    //  Bit 0 is the most significant bit of the address
+    public int bit(int index) {
+        return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+    }
+
+    public boolean parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    //  Parses text[from, to); returns false (leaving this address invalid) for anything malformed
+    public boolean parse(CharSequence text, int from, int to) {
+        valid = parseAddress(text, from, to);
+        return valid;
+    }
+
+    public void set(long high, long low) {
+        this.high = high;
+        this.low = low;
+        this.valid = true;
+    }
+
+    public void clear() {
+        valid = false;
+    }
+
+    private boolean parseAddress(CharSequence text, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            var c = text.charAt(i);
+            if (c == ':') {
+                return parseIpv6(text, from, to);
+            }
+            if (c == '.') {
+                var ipv4 = parseIpv4(text, from, to);
+                if (ipv4 < 0) {
+                    return false;
+                }
+                high = 0;
+                low = IPV4_MAPPED_LOW_PREFIX | ipv4;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static long parseIpv4(CharSequence text, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int value = 0;
+            int digits = 0;
+            while (i < to && text.charAt(i) != '.') {
+                var digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || ++digits > 3) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+                i++;
+            }
+            if (digits == 0 || value > 255 || ++octets > 4) {
+                return -1;
+            }
+            address = (address << 8) | value;
+            if (i < to) {
+                i++;
+                if (i == to) {
+                    return -1;
+                }
+            }
+        }
+        return octets == 4 ? address : -1;
+    }
+
+    private boolean parseIpv6(CharSequence text, int from, int to) {
+        var end = to;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+
+        long headHigh = 0, headLow = 0, tailHigh = 0, tailLow = 0;
+        int headGroups = 0, tailGroups = 0;
+        var compressed = false;
+        var i = from;
+        if (text.charAt(i) == ':') {
+            if (i + 1 >= end || text.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+            int value = 0;
+            var j = i;
+            while (j < end && text.charAt(j) != ':' && text.charAt(j) != '.') {
+                var digit = Character.digit(text.charAt(j), 16);
+                if (digit < 0 || j - i >= 4) {
+                    return false;
+                }
+                value = (value << 4) | digit;
+                j++;
+            }
+            if (j < end && text.charAt(j) == '.') {
+                //  Trailing embedded IPv4, e.g. ::ffff:192.0.2.1, counts as two groups
+                var ipv4 = parseIpv4(text, i, end);
+                if (ipv4 < 0) {
+                    return false;
+                }
+                if (compressed) {
+                    tailHigh = (tailHigh << 32) | (tailLow >>> 32);
+                    tailLow = (tailLow << 32) | ipv4;
+                    tailGroups += 2;
+                } else {
+                    headHigh = (headHigh << 32) | (headLow >>> 32);
+                    headLow = (headLow << 32) | ipv4;
+                    headGroups += 2;
+                }
+                break;
+            }
+            if (j == i) {
+                return false;
+            }
+            if (compressed) {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | value;
+                tailGroups++;
+            } else {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow = (headLow << 16) | value;
+                headGroups++;
+            }
+            if (j == end) {
+                break;
+            }
+            if (j + 1 < end && text.charAt(j + 1) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i = j + 2;
+            } else {
+                i = j + 1;
+                if (i == end) {
+                    return false;
+                }
+            }
+        }
+
+        var groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) {
+            return false;
+        }
+        //  head << 16 * (8 - headGroups) | tail
+        var shift = 16 * (8 - headGroups);
+        if (shift == 0) {
+            high = headHigh;
+            low = headLow;
+        } else if (shift >= 128) {
+            high = tailHigh;
+            low = tailLow;
+        } else if (shift >= 64) {
+            high = (headLow << (shift - 64)) | tailHigh;
+            low = tailLow;
+        } else {
+            high = (headHigh << shift) | (headLow >>> (64 - shift)) | tailHigh;
+            low = (headLow << shift) | tailLow;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (isIpv4()) {
+            return ((low >>> 24) & 0xff) + "." + ((low >>> 16) & 0xff) + "." + ((low >>> 8) & 0xff) + "." + (low & 0xff);
+        }
+        var builder = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            var word = group < 4 ? high : low;
+            if (group > 0) {
+                builder.append(':');
+            }
+            builder.append(Long.toHexString((word >>> (48 - 16 * (group % 4))) & 0xffff));
+        }
+        return builder.toString();
+    }
+}
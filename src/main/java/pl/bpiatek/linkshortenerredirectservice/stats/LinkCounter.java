@@ -0,0 +1,195 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+//  Clicks and unique visitors of one link since the last flush. Clicks go to a striped LongAdder.
+//  Visitors start in a small open-addressing set and, past `sparseLimit`, move to full Redis-layout
+//  HLL registers (16 KiB) if the DenseBudget grants one; otherwise further new visitors are not counted.
+//
+//  A viral link must not serialize its redirects, so the common cases take no lock: registers are
+//  raised with a CAS, and a visitor already in the set is found with volatile reads. Only inserting a
+//  new visitor, promotion, drain and restore hold the monitor. A writer whose registers were drained
+//  under it records the visitor again; both sets end up in the same HLL union, so nothing is lost.
+final class LinkCounter {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle REGISTERS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    final LongAdder clicks = new LongAdder();
+
+    private volatile long[] sparse;
+    private int sparseSize;
+    private volatile byte[] registers;
+    private int idleFlushes;
+
+    LinkCounter(int sparseLimit) {
+        this.sparse = newSparse(sparseLimit);
+    }
+
+    //  Returns false when the visitor could not be recorded because the sparse set is full
+    boolean addVisitor(long visitor, int sparseLimit, DenseBudget budget) {
+        //  Zero marks an empty slot, so visitor hash 0 is folded onto 1
+        var value = visitor == 0 ? 1 : visitor;
+        var dense = registers;
+        if (dense != null) {
+            setRegister(dense, RedisHyperLogLog.hash(value));
+            if (registers == dense) {
+                return true;
+            }
+        }
+        var table = sparse;
+        if (table != null && contains(table, value)) {
+            return true;
+        }
+        return addVisitorLocked(value, sparseLimit, budget);
+    }
+
+    //  Takes the visitors recorded so far and starts over; returns a long[] of visitors or byte[] registers
+    synchronized Object drainVisitors(int sparseLimit, DenseBudget budget) {
+        var dense = registers;
+        if (dense != null) {
+            sparse = newSparse(sparseLimit);
+            registers = null;
+            budget.release();
+            //  Volatile reads, so every CAS that happened before the swap is in the copy
+            var drained = new byte[dense.length];
+            for (int i = 0; i < dense.length; i++) {
+                drained[i] = (byte) REGISTERS.getVolatile(dense, i);
+            }
+            return drained;
+        }
+        if (sparseSize == 0) {
+            return null;
+        }
+        var table = sparse;
+        var drained = new long[sparseSize];
+        var count = 0;
+        for (int i = 0; i < table.length; i++) {
+            var value = table[i];
+            if (value != 0) {
+                drained[count++] = value;
+                SLOTS.setVolatile(table, i, 0L);
+            }
+        }
+        sparseSize = 0;
+        return drained;
+    }
+
+    //  Puts visitors back after a failed flush
+    synchronized void restoreVisitors(Object drained, int sparseLimit, DenseBudget budget) {
+        if (drained instanceof byte[] dense) {
+            if (registers == null) {
+                if (!budget.tryAcquire()) {
+                    return;
+                }
+                for (var value : sparse) {
+                    if (value != 0) {
+                        setRegister(dense, RedisHyperLogLog.hash(value));
+                    }
+                }
+                registers = dense;
+                sparse = null;
+                sparseSize = 0;
+            } else {
+                var current = registers;
+                for (int i = 0; i < dense.length; i++) {
+                    raise(current, i, dense[i]);
+                }
+            }
+        } else if (drained instanceof long[] visitors) {
+            for (var visitor : visitors) {
+                addVisitor(visitor, sparseLimit, budget);
+            }
+        }
+    }
+
+    boolean isDense() {
+        return registers != null;
+    }
+
+    //  Counts consecutive flushes without clicks so idle links can be evicted
+    int markFlushed(boolean active) {
+        idleFlushes = active ? 0 : idleFlushes + 1;
+        return idleFlushes;
+    }
+
+    private synchronized boolean addVisitorLocked(long value, int sparseLimit, DenseBudget budget) {
+        if (registers != null) {
+            setRegister(registers, RedisHyperLogLog.hash(value));
+            return true;
+        }
+        var table = sparse;
+        if (contains(table, value)) {
+            return true;
+        }
+        if (sparseSize < sparseLimit) {
+            insert(table, value);
+            sparseSize++;
+            return true;
+        }
+        if (!budget.tryAcquire()) {
+            return false;
+        }
+        var dense = new byte[RedisHyperLogLog.REGISTERS];
+        for (var existing : table) {
+            if (existing != 0) {
+                setRegister(dense, RedisHyperLogLog.hash(existing));
+            }
+        }
+        setRegister(dense, RedisHyperLogLog.hash(value));
+        //  Published filled; a reader that still finds a visitor in the old set finds one copied here
+        registers = dense;
+        sparse = null;
+        sparseSize = 0;
+        return true;
+    }
+
+    private static long[] newSparse(int sparseLimit) {
+        return new long[Integer.highestOneBit(Math.max(4, sparseLimit * 2 - 1)) << 1];
+    }
+
+    private static void setRegister(byte[] registers, long hash) {
+        raise(registers, RedisHyperLogLog.registerIndex(hash), RedisHyperLogLog.runLength(hash));
+    }
+
+    private static void raise(byte[] registers, int index, byte runLength) {
+        var current = (byte) REGISTERS.getVolatile(registers, index);
+        while (current < runLength) {
+            var witness = (byte) REGISTERS.compareAndExchange(registers, index, current, runLength);
+            if (witness == current) {
+                return;
+            }
+            current = witness;
+        }
+    }
+
+    private static boolean contains(long[] table, long value) {
+        var mask = table.length - 1;
+        var slot = (int) (value ^ (value >>> 29)) & mask;
+        long current;
+        while ((current = (long) SLOTS.getVolatile(table, slot)) != 0) {
+            if (current == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static void insert(long[] table, long value) {
+        var mask = table.length - 1;
+        var slot = (int) (value ^ (value >>> 29)) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        SLOTS.setVolatile(table, slot, value);
+    }
+
+    interface DenseBudget {
+        boolean tryAcquire();
+
+        void release();
+    }
+}
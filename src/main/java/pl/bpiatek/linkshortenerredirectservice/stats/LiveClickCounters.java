@@ -0,0 +1,308 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.link.ShortCodeMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Live click totals and unique visitors per link, counted in memory on the redirect path and written
+//  to Redis in one pipelined batch per flush: HINCRBY into a single hash for clicks, PFADD for links
+//  with few visitors and PFMERGE of a locally built sketch for busy ones. Whatever was counted since
+//  the last successful flush is lost if the process dies, so the loss window is the flush interval
+//  (plus any time Redis was unreachable); both it and the unflushed click count are exported.
+//
+//  The counters live in a Redis database of their own: the link database is replaced wholesale by a
+//  cache rebuild (SWAPDB) and the rebuild's staging database is flushed, neither of which may touch them.
+public class LiveClickCounters implements AutoCloseable {
+
+    static final String CLICKS_KEY = "clicks:total";
+    static final String VISITORS_KEY_PREFIX = "clicks:visitors:";
+
+    private static final Logger log = LoggerFactory.getLogger(LiveClickCounters.class);
+    private static final LiveClickCounters DISABLED = new LiveClickCounters();
+    private static final String MERGE_KEY_PREFIX = "clicks:merge:";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int EVICT_AFTER_IDLE_FLUSHES = 2;
+
+    private final StringRedisTemplate redisTemplate;
+    private final LettuceConnectionFactory ownedConnection;
+    private final ShortCodeMap<LinkCounter> counters;
+    private final int maxLinks;
+    private final int sparseLimit;
+    private final DenseSketches denseSketches;
+    private final String instanceId;
+    private final LongSupplier millis;
+    private final LongAdder unflushedClicks = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+    private final Counter untrackedClicks;
+    private final Counter uncountedVisitors;
+    private final Counter flushFailures;
+    private final Timer flushes;
+    private volatile long lastFlushMillis;
+
+    private LiveClickCounters() {
+        this.redisTemplate = null;
+        this.ownedConnection = null;
+        this.counters = null;
+        this.maxLinks = 0;
+        this.sparseLimit = 0;
+        this.denseSketches = null;
+        this.instanceId = null;
+        this.millis = System::currentTimeMillis;
+        this.scheduler = null;
+        this.untrackedClicks = null;
+        this.uncountedVisitors = null;
+        this.flushFailures = null;
+        this.flushes = null;
+    }
+
+    LiveClickCounters(StringRedisTemplate redisTemplate, int maxLinks, int sparseLimit, int maxDenseSketches,
+                      Duration flushInterval, String instanceId, LongSupplier millis, MeterRegistry meterRegistry) {
+        this(redisTemplate, null, maxLinks, sparseLimit, maxDenseSketches, flushInterval, instanceId, millis, meterRegistry);
+    }
+
+    //  ownedConnection, when given, is the counters' own connection and is destroyed after the shutdown flush
+    LiveClickCounters(StringRedisTemplate redisTemplate, LettuceConnectionFactory ownedConnection, int maxLinks,
+                      int sparseLimit, int maxDenseSketches, Duration flushInterval, String instanceId,
+                      LongSupplier millis, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.ownedConnection = ownedConnection;
+        this.counters = new ShortCodeMap<>(Math.min(maxLinks, 1 << 16));
+        this.maxLinks = maxLinks;
+        this.sparseLimit = sparseLimit;
+        this.denseSketches = new DenseSketches(maxDenseSketches);
+        this.instanceId = instanceId;
+        this.millis = millis;
+        this.lastFlushMillis = millis.getAsLong();
+        this.untrackedClicks = Counter.builder("redirect.live.counters.untracked")
+                .description("Clicks not counted live because max-links links were already tracked")
+                .register(meterRegistry);
+        this.uncountedVisitors = Counter.builder("redirect.live.counters.visitors.uncounted")
+                .description("Visitors not added to a sketch because max-dense-sketches was reached")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("redirect.live.counters.flush.failures")
+                .description("Flushes to Redis that failed and were retained for the next attempt")
+                .register(meterRegistry);
+        this.flushes = Timer.builder("redirect.live.counters.flush")
+                .description("Time to drain counters and write one batch to Redis")
+                .register(meterRegistry);
+        Gauge.builder("redirect.live.counters.unflushed.clicks", unflushedClicks, LongAdder::sum)
+                .description("Clicks counted in memory and not yet in Redis; lost on a crash")
+                .register(meterRegistry);
+        Gauge.builder("redirect.live.counters.unflushed.age", this, live -> live.unflushedAge().toMillis() / 1000.0)
+                .description("Seconds since the last successful flush, i.e. the current loss window")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("redirect.live.counters.links", counters, ShortCodeMap::size).register(meterRegistry);
+        Gauge.builder("redirect.live.counters.dense.sketches", denseSketches, DenseSketches::inUse).register(meterRegistry);
+        if (flushInterval.isZero()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("live-counters").factory());
+            this.scheduler.scheduleWithFixedDelay(this::flushSafely, flushInterval.toMillis(), flushInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static LiveClickCounters disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return redisTemplate != null;
+    }
+
+    public void record(String shortUrl, String clientIp, String userAgent) {
+        if (redisTemplate == null) {
+            return;
+        }
+        var counter = counters.get(shortUrl);
+        if (counter == null) {
+            if (counters.size() >= maxLinks) {
+                untrackedClicks.increment();
+                return;
+            }
+            counter = counters.computeIfAbsent(shortUrl, key -> new LinkCounter(sparseLimit));
+        }
+        counter.clicks.increment();
+        unflushedClicks.increment();
+        if (!counter.addVisitor(visitor(clientIp, userAgent), sparseLimit, denseSketches)) {
+            uncountedVisitors.increment();
+        }
+    }
+
+    //  Clicks of this link counted here but not yet flushed
+    public long unflushedClicks(String shortUrl) {
+        if (counters == null) {
+            return 0;
+        }
+        var counter = counters.get(shortUrl);
+        return counter == null ? 0 : counter.clicks.sum();
+    }
+
+    public Duration unflushedAge() {
+        return Duration.ofMillis(Math.max(0, millis.getAsLong() - lastFlushMillis));
+    }
+
+    public LiveClicks read(String shortUrl) {
+        var template = redisTemplate;
+        if (template == null) {
+            return new LiveClicks(shortUrl, 0, 0, 0);
+        }
+        var stored = template.<String, String>opsForHash().get(CLICKS_KEY, shortUrl);
+        var uniqueVisitors = template.opsForHyperLogLog().size(VISITORS_KEY_PREFIX + shortUrl);
+        var unflushed = unflushedClicks(shortUrl);
+        var clicks = (stored == null ? 0 : Long.parseLong(stored)) + unflushed;
+        return new LiveClicks(shortUrl, clicks, uniqueVisitors, unflushed);
+    }
+
+    synchronized void flush() {
+        var sample = Timer.start();
+        var batch = new ArrayList<Drained>();
+        counters.forEach((shortUrl, counter) -> {
+            //  sum-then-subtract rather than sumThenReset, which can drop increments racing with the reset
+            var clicks = counter.clicks.sum();
+            counter.clicks.add(-clicks);
+            var visitors = counter.drainVisitors(sparseLimit, denseSketches);
+            //  A click racing with eviction of a link idle for two flushes can be lost; it is within the loss window
+            if (counter.markFlushed(clicks > 0) >= EVICT_AFTER_IDLE_FLUSHES) {
+                counters.remove(shortUrl, counter);
+            }
+            if (clicks > 0 || visitors != null) {
+                batch.add(new Drained(shortUrl, clicks, visitors));
+            }
+        });
+        var batchClicks = batch.stream().mapToLong(Drained::clicks).sum();
+
+        try {
+            if (!batch.isEmpty()) {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    var clicksKey = CLICKS_KEY.getBytes(UTF_8);
+                    for (var drained : batch) {
+                        var link = drained.shortUrl().getBytes(UTF_8);
+                        var visitorsKey = (VISITORS_KEY_PREFIX + drained.shortUrl()).getBytes(UTF_8);
+                        if (drained.clicks() > 0) {
+                            connection.hashCommands().hIncrBy(clicksKey, link, drained.clicks());
+                        }
+                        if (drained.visitors() instanceof long[] visitors) {
+                            var elements = new byte[visitors.length][];
+                            for (int i = 0; i < visitors.length; i++) {
+                                elements[i] = RedisHyperLogLog.element(visitors[i]);
+                            }
+                            connection.hyperLogLogCommands().pfAdd(visitorsKey, elements);
+                        } else if (drained.visitors() instanceof byte[] registers) {
+                            var mergeKey = (MERGE_KEY_PREFIX + instanceId + ":" + drained.shortUrl()).getBytes(UTF_8);
+                            connection.stringCommands().set(mergeKey, RedisHyperLogLog.toDense(registers));
+                            connection.hyperLogLogCommands().pfMerge(visitorsKey, visitorsKey, mergeKey);
+                            connection.keyCommands().del(mergeKey);
+                        }
+                    }
+                    return null;
+                });
+            }
+            unflushedClicks.add(-batchClicks);
+            lastFlushMillis = millis.getAsLong();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            log.warn("Failed to flush live counters for {} links, retaining them: {}", batch.size(), e.getMessage());
+            for (var drained : batch) {
+                var counter = counters.computeIfAbsent(drained.shortUrl(), key -> new LinkCounter(sparseLimit));
+                counter.clicks.add(drained.clicks());
+                counter.restoreVisitors(drained.visitors(), sparseLimit, denseSketches);
+            }
+        } finally {
+            sample.stop(flushes);
+        }
+    }
+
+    //  Shutdown flush: a graceful stop loses nothing
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flushSafely();
+        }
+        if (ownedConnection != null) {
+            ownedConnection.destroy();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Live counter flush failed: {}", e.getMessage());
+        }
+    }
+
+    static long visitor(String clientIp, String userAgent) {
+        var hash = FNV_OFFSET_BASIS;
+        if (clientIp != null) {
+            for (int i = 0; i < clientIp.length(); i++) {
+                hash = (hash ^ clientIp.charAt(i)) * FNV_PRIME;
+            }
+        }
+        hash = (hash ^ 0x1f) * FNV_PRIME;
+        if (userAgent != null) {
+            for (int i = 0; i < userAgent.length(); i++) {
+                hash = (hash ^ userAgent.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    public record LiveClicks(String shortUrl, long clicks, long uniqueVisitors, long unflushedClicks) {
+    }
+
+    private record Drained(String shortUrl, long clicks, Object visitors) {
+    }
+
+    private static final class DenseSketches implements LinkCounter.DenseBudget {
+        private final int max;
+        private final AtomicInteger inUse = new AtomicInteger();
+
+        private DenseSketches(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            while (true) {
+                var current = inUse.get();
+                if (current >= max) {
+                    return false;
+                }
+                if (inUse.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void release() {
+            inUse.decrementAndGet();
+        }
+
+        private int inUse() {
+            return inUse.get();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.link.DerivedRedisConnections;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Configuration
+@EnableConfigurationProperties(LiveClickCountersConfig.LiveClickProperties.class)
+class LiveClickCountersConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveClickCountersConfig.class);
+
+    @Bean(destroyMethod = "close")
+    LiveClickCounters liveClickCounters(LiveClickProperties properties, RedisProperties redisProperties,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${link.cache.rebuild.staging-database:1}") int rebuildStagingDatabase) {
+        if (!properties.enabled()) {
+            return LiveClickCounters.disabled();
+        }
+        if (properties.database() == redisProperties.getDatabase() || properties.database() == rebuildStagingDatabase) {
+            throw new IllegalStateException("link.clicks.live.database must differ from the link database "
+                    + redisProperties.getDatabase() + " and the rebuild staging database " + rebuildStagingDatabase);
+        }
+
+        //  Worst case memory: every link at the sparse limit plus every dense sketch in use
+        var maxBytes = (long) properties.maxLinks() * properties.sparseVisitors() * 2 * Long.BYTES
+                + (long) properties.maxDenseSketches() * RedisHyperLogLog.REGISTERS;
+        log.info("Live click counters enabled in database {}: flush every {}, up to {} links and {} dense sketches (~{} MiB)",
+                properties.database(), properties.flushInterval(), properties.maxLinks(), properties.maxDenseSketches(),
+                maxBytes >> 20);
+        var connectionFactory = DerivedRedisConnections.connectionFactory(redisProperties.getHost(),
+                redisProperties.getPort(), properties.database(), redisProperties,
+                DerivedRedisConnections.Workload.of(redisProperties));
+        return new LiveClickCounters(new StringRedisTemplate(connectionFactory), connectionFactory,
+                properties.maxLinks(), properties.sparseVisitors(), properties.maxDenseSketches(),
+                properties.flushInterval(), UUID.randomUUID().toString(), System::currentTimeMillis, meterRegistry);
+    }
+
+    //  flush-interval is also the loss window on a crash; a graceful shutdown flushes what is left.
+    //  database is on the spring.data.redis server and must be neither the link nor the rebuild staging one.
+    @ConfigurationProperties(prefix = "link.clicks.live")
+    record LiveClickProperties(@DefaultValue("false") boolean enabled,
+                               @DefaultValue("2") int database,
+                               @DefaultValue("5s") Duration flushInterval,
+                               @DefaultValue("20000") int maxLinks,
+                               @DefaultValue("64") int sparseVisitors,
+                               @DefaultValue("256") int maxDenseSketches) {
+    }
+}
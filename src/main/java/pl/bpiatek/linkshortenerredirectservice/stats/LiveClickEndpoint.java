@@ -0,0 +1,23 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+//  GET /actuator/clicks/{shortUrl}: flushed totals from Redis plus what this instance has not flushed yet
+@Component
+@Endpoint(id = "clicks")
+class LiveClickEndpoint {
+
+    private final LiveClickCounters liveClickCounters;
+
+    LiveClickEndpoint(LiveClickCounters liveClickCounters) {
+        this.liveClickCounters = liveClickCounters;
+    }
+
+    @ReadOperation
+    public LiveClickCounters.LiveClicks clicks(@Selector String shortUrl) {
+        return liveClickCounters.read(shortUrl);
+    }
+}
@@ -0,0 +1,71 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import java.nio.charset.StandardCharsets;
+
+//  Just enough of Redis' HyperLogLog (hyperloglog.c) to build sketches locally that PFMERGE accepts:
+//  14-bit register index, MurmurHash64A with Redis' seed, and the 16-byte "HYLL" header followed by
+//  6-bit packed dense registers. Visitors are fed to Redis as 8-byte elements, so PFADD of an element
+//  and a locally built register for the same element always agree.
+final class RedisHyperLogLog {
+
+    static final int REGISTERS = 1 << 14;
+    static final int DENSE_SIZE = 16 + (REGISTERS * 6 + 7) / 8;
+
+    private static final int P = 14;
+    private static final int Q = 64 - P;
+    private static final long SEED = 0xadc83b19L;
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final byte[] MAGIC = "HYLL".getBytes(StandardCharsets.US_ASCII);
+
+    private RedisHyperLogLog() {
+    }
+
+    static byte[] element(long visitor) {
+        var bytes = new byte[Long.BYTES];
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[i] = (byte) (visitor >>> (8 * i));
+        }
+        return bytes;
+    }
+
+    //  MurmurHash64A over element(visitor): one little-endian 8-byte block and no tail
+    static long hash(long visitor) {
+        var h = SEED ^ (Long.BYTES * M);
+        var k = visitor * M;
+        k ^= k >>> 47;
+        k *= M;
+        h ^= k;
+        h *= M;
+        h ^= h >>> 47;
+        h *= M;
+        h ^= h >>> 47;
+        return h;
+    }
+
+    static int registerIndex(long hash) {
+        return (int) (hash & (REGISTERS - 1));
+    }
+
+    //  Position of the first set bit after the index bits, as hllPatLen computes it
+    static byte runLength(long hash) {
+        return (byte) (Long.numberOfTrailingZeros((hash >>> P) | (1L << Q)) + 1);
+    }
+
+    //  Dense encoding with the cached cardinality marked stale, so Redis recomputes it on PFCOUNT
+    static byte[] toDense(byte[] registers) {
+        var dense = new byte[DENSE_SIZE];
+        System.arraycopy(MAGIC, 0, dense, 0, MAGIC.length);
+        dense[15] = (byte) 0x80;
+        for (int register = 0; register < REGISTERS; register++) {
+            var value = registers[register] & 0x3f;
+            var bit = register * 6;
+            var index = 16 + bit / 8;
+            var shift = bit & 7;
+            dense[index] |= (byte) (value << shift);
+            if (shift > 2) {
+                dense[index + 1] |= (byte) (value >>> (8 - shift));
+            }
+        }
+        return dense;
+    }
+}
@@ -0,0 +1,103 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import org.springframework.core.env.Environment;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//  Sends a burst of synthetic redirects through Tomcat, the security filters and the controller so
+//  the hot path is JIT-compiled before real traffic arrives. Targets are the hot links found by the
+//  preload phase; without any, an unknown code exercises the miss path.
+class RedirectJitPhase implements WarmUp.Phase {
+
+    private static final String UNKNOWN_LINK = "warm-up-unknown";
+
+    private final SyntheticRedirects syntheticRedirects;
+    private final Environment environment;
+    private final int requests;
+    private final int concurrency;
+    private final Duration timeout;
+
+    RedirectJitPhase(SyntheticRedirects syntheticRedirects, Environment environment, int requests, int concurrency,
+                     Duration timeout) {
+        this.syntheticRedirects = syntheticRedirects;
+        this.environment = environment;
+        this.requests = requests;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public String name() {
+        return "jit";
+    }
+
+    @Override
+    public Duration timeout() {
+        return timeout;
+    }
+
+    @Override
+    public void run(WarmUp.Progress progress) throws Exception {
+        try {
+            burst(progress);
+        } finally {
+            syntheticRedirects.close();
+        }
+    }
+
+    private void burst(WarmUp.Progress progress) throws Exception {
+        var port = environment.getProperty("local.server.port", Integer.class);
+        if (port == null) {
+            progress.report("skipped: no local server port");
+            return;
+        }
+        var targets = progress.hotLinks().isEmpty() ? List.of(UNKNOWN_LINK) : progress.hotLinks();
+        var token = syntheticRedirects.token();
+        var sent = new AtomicInteger();
+        var failed = new AtomicInteger();
+
+        try (var client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build()) {
+            var workers = new ArrayList<Thread>(concurrency);
+            for (int worker = 0; worker < concurrency; worker++) {
+                var offset = worker;
+                workers.add(Thread.ofVirtual().name("warm-up-jit-", worker).start(() -> {
+                    for (int i = offset; i < requests && !Thread.currentThread().isInterrupted(); i += concurrency) {
+                        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/" + targets.get(i % targets.size())))
+                                .header(SyntheticRedirects.HEADER, token)
+                                .header("User-Agent", "redirect-warm-up")
+                                .build();
+                        try {
+                            var status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            if (status >= 500) {
+                                failed.incrementAndGet();
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                        var done = sent.incrementAndGet();
+                        if (done % 1000 == 0) {
+                            progress.report(done + "/" + requests + " redirects, " + failed.get() + " failed");
+                        }
+                    }
+                }));
+            }
+            try {
+                for (var thread : workers) {
+                    thread.join();
+                }
+            } finally {
+                workers.forEach(Thread::interrupt);
+            }
+        }
+        progress.report(sent.get() + "/" + requests + " redirects, " + failed.get() + " failed");
+    }
+}
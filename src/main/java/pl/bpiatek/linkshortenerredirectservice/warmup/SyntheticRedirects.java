@@ -0,0 +1,53 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//  Marks the warm-up's own redirects so they take the full request path without side effects (no
+//  click, no live count, no rate limit, no capture). The header carries a random per-process token
+//  that is discarded once warm-up is over, after which nothing matches.
+public class SyntheticRedirects {
+
+    public static final String HEADER = "X-Redirect-Warm-Up";
+
+    private static final SyntheticRedirects DISABLED = new SyntheticRedirects(null);
+
+    private volatile byte[] token;
+
+    private SyntheticRedirects(byte[] token) {
+        this.token = token;
+    }
+
+    static SyntheticRedirects withRandomToken() {
+        var bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        return new SyntheticRedirects(HexFormat.of().formatHex(bytes).getBytes(UTF_8));
+    }
+
+    public static SyntheticRedirects disabled() {
+        return DISABLED;
+    }
+
+    public boolean matches(HttpServletRequest request) {
+        var expected = token;
+        if (expected == null) {
+            return false;
+        }
+        var value = request.getHeader(HEADER);
+        return value != null && MessageDigest.isEqual(expected, value.getBytes(UTF_8));
+    }
+
+    String token() {
+        var current = token;
+        return current == null ? null : new String(current, UTF_8);
+    }
+
+    void close() {
+        token = null;
+    }
+}
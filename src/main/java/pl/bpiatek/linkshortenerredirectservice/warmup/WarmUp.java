@@ -0,0 +1,183 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//  Work that has to finish before this pod takes traffic. Phases run one after another on a virtual
+//  thread started at ApplicationReadyEvent, each bounded by its own timeout (the phase is interrupted
+//  and the next one starts). WarmUpHealthIndicator keeps the readiness group OUT_OF_SERVICE until
+//  every phase has completed, failed or timed out.
+public class WarmUp {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+    private static final WarmUp DISABLED = new WarmUp(List.of());
+
+    private final List<Phase> phases;
+    private final List<PhaseStatus> statuses;
+    private final Session session = new Session();
+    private volatile boolean finished;
+
+    WarmUp(List<Phase> phases) {
+        this.phases = List.copyOf(phases);
+        this.statuses = new ArrayList<>();
+        for (var phase : phases) {
+            statuses.add(new PhaseStatus(phase.name()));
+        }
+        this.finished = phases.isEmpty();
+    }
+
+    public static WarmUp disabled() {
+        return DISABLED;
+    }
+
+    public boolean finished() {
+        return finished;
+    }
+
+    List<PhaseStatus> statuses() {
+        return statuses;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void onReady() {
+        if (!finished) {
+            Thread.ofVirtual().name("warm-up").start(this::run);
+        }
+    }
+
+    void run() {
+        //  Not try-with-resources: close() would wait for a timed-out phase that ignores interrupts
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (int i = 0; i < phases.size(); i++) {
+                var phase = phases.get(i);
+                var status = statuses.get(i);
+                status.start();
+                var future = executor.submit(() -> {
+                    phase.run(session.forPhase(status));
+                    return null;
+                });
+                try {
+                    future.get(phase.timeout().toMillis(), TimeUnit.MILLISECONDS);
+                    status.finish(State.COMPLETED);
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    status.finish(State.TIMED_OUT);
+                    log.warn("Warm-up phase {} timed out after {} ({})", phase.name(), phase.timeout(), status.detail());
+                } catch (ExecutionException e) {
+                    status.finish(State.FAILED);
+                    status.report(String.valueOf(e.getCause().getMessage()));
+                    log.warn("Warm-up phase {} failed", phase.name(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                log.info("Warm-up phase {} {} in {} ms: {}", phase.name(), status.state(), status.millis(), status.detail());
+            }
+        } finally {
+            executor.shutdownNow();
+            finished = true;
+        }
+    }
+
+    public interface Phase {
+
+        String name();
+
+        Duration timeout();
+
+        void run(Progress progress) throws Exception;
+    }
+
+    //  Handed to a running phase: progress shown on the readiness endpoint, plus the hot links found
+    //  by an earlier phase for later ones to use
+    public interface Progress {
+
+        void report(String detail);
+
+        List<String> hotLinks();
+
+        void hotLinks(List<String> shortUrls);
+    }
+
+    enum State {
+        PENDING, RUNNING, COMPLETED, TIMED_OUT, FAILED
+    }
+
+    static final class PhaseStatus {
+
+        private final String name;
+        private volatile State state = State.PENDING;
+        private volatile String detail = "";
+        private volatile long startedNanos;
+        private volatile long millis;
+
+        private PhaseStatus(String name) {
+            this.name = name;
+        }
+
+        String name() {
+            return name;
+        }
+
+        State state() {
+            return state;
+        }
+
+        String detail() {
+            return detail;
+        }
+
+        long millis() {
+            return state == State.RUNNING ? Duration.ofNanos(System.nanoTime() - startedNanos).toMillis() : millis;
+        }
+
+        private void start() {
+            startedNanos = System.nanoTime();
+            state = State.RUNNING;
+        }
+
+        private void finish(State finalState) {
+            millis = Duration.ofNanos(System.nanoTime() - startedNanos).toMillis();
+            state = finalState;
+        }
+
+        private void report(String detail) {
+            this.detail = detail;
+        }
+    }
+
+    private static final class Session {
+
+        private volatile List<String> hotLinks = List.of();
+
+        private Progress forPhase(PhaseStatus status) {
+            return new Progress() {
+                @Override
+                public void report(String detail) {
+                    status.report(detail);
+                }
+
+                @Override
+                public List<String> hotLinks() {
+                    return hotLinks;
+                }
+
+                @Override
+                public void hotLinks(List<String> shortUrls) {
+                    hotLinks = List.copyOf(shortUrls);
+                }
+            };
+        }
+    }
+}
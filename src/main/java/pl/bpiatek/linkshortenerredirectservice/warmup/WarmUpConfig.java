@@ -0,0 +1,51 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+//  Phases are WarmUp.Phase beans run in @Order: the link package contributes cache preload (1) and
+//  lifecycle consumer catch-up (2), the JIT burst here runs last
+@Configuration
+@EnableConfigurationProperties(WarmUpConfig.WarmUpProperties.class)
+class WarmUpConfig {
+
+    @Bean
+    SyntheticRedirects syntheticRedirects(WarmUpProperties properties) {
+        return properties.enabled() ? SyntheticRedirects.withRandomToken() : SyntheticRedirects.disabled();
+    }
+
+    @Bean
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    WarmUp.Phase redirectJitPhase(WarmUpProperties properties, SyntheticRedirects syntheticRedirects, Environment environment) {
+        var jit = properties.jit();
+        return new RedirectJitPhase(syntheticRedirects, environment, jit.requests(), jit.concurrency(), jit.timeout());
+    }
+
+    //  Not named warmUp: that name belongs to the health contributor the readiness group includes
+    @Bean
+    WarmUp warmUpRunner(WarmUpProperties properties, ObjectProvider<WarmUp.Phase> phases) {
+        if (!properties.enabled()) {
+            return WarmUp.disabled();
+        }
+        return new WarmUp(phases.orderedStream().toList());
+    }
+
+    @ConfigurationProperties(prefix = "redirect.warmup")
+    record WarmUpProperties(@DefaultValue("false") boolean enabled,
+                            @DefaultValue Jit jit) {
+
+        record Jit(@DefaultValue("20000") int requests,
+                   @DefaultValue("4") int concurrency,
+                   @DefaultValue("30s") Duration timeout) {
+        }
+    }
+}
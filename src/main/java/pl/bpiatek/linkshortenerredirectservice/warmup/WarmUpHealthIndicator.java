@@ -0,0 +1,33 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//  Part of the readiness group (management.endpoint.health.group.readiness.include): OUT_OF_SERVICE
+//  with per-phase progress while warming up, UP afterwards whatever the phases' outcome
+@Component("warmUp")
+class WarmUpHealthIndicator implements HealthIndicator {
+
+    private final WarmUp warmUp;
+
+    WarmUpHealthIndicator(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    public Health health() {
+        var builder = warmUp.finished() ? Health.up() : Health.outOfService();
+        for (var status : warmUp.statuses()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", status.state());
+            details.put("millis", status.millis());
+            details.put("progress", status.detail());
+            builder.withDetail(status.name(), details);
+        }
+        return builder.build();
+    }
+}
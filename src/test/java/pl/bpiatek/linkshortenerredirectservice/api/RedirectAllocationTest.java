@@ -0,0 +1,168 @@
+package pl.bpiatek.linkshortenerredirectservice.api;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
+import pl.bpiatek.linkshortenerredirectservice.bot.BotClickFilter;
+import pl.bpiatek.linkshortenerredirectservice.capture.TrafficCapture;
+import pl.bpiatek.linkshortenerredirectservice.limit.AdaptiveConcurrencyLimiter;
+import pl.bpiatek.linkshortenerredirectservice.limit.ClientRateLimiter;
+import pl.bpiatek.linkshortenerredirectservice.link.BudgetedCacheReader;
+import pl.bpiatek.linkshortenerredirectservice.link.ClickEventPublisher;
+import pl.bpiatek.linkshortenerredirectservice.link.ClientIpExtractor;
+import pl.bpiatek.linkshortenerredirectservice.link.HedgedCacheReader;
+import pl.bpiatek.linkshortenerredirectservice.link.LinkKeyLayout;
+import pl.bpiatek.linkshortenerredirectservice.link.RedirectCacheRepository;
+import pl.bpiatek.linkshortenerredirectservice.link.RedirectInfo;
+import pl.bpiatek.linkshortenerredirectservice.link.RedisShardRouter;
+import pl.bpiatek.linkshortenerredirectservice.link.TrackingRedirectCache;
+import pl.bpiatek.linkshortenerredirectservice.perf.FakeKafkaProducerFactory;
+import pl.bpiatek.linkshortenerredirectservice.perf.FakeStringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.perf.FaultInjector;
+import pl.bpiatek.linkshortenerredirectservice.stats.LiveClickCounters;
+import pl.bpiatek.linkshortenerredirectservice.warmup.SyntheticRedirects;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+//  Allocation on the request thread is what turns into SerialGC pauses on our single-CPU pods, so
+//  each redirect outcome has a byte budget (allocation-budgets.properties). The click itself is
+//  published on a virtual thread and is intentionally outside the measured region.
+//
+//  Baseline (JDK 21.0.1, default flags, three identical runs of this test):
+//  HIT 2816 B, MISS 1072 B, TOMBSTONE 1848 B, INACTIVE 1920 B per request.
+class RedirectAllocationTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final ch.qos.logback.classic.Logger serviceLogger =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("pl.bpiatek");
+
+    private static Level previousLevel;
+    private static FakeKafkaProducerFactory<String, LinkClickEvent> producerFactory;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new ParameterNamesModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    private FakeStringRedisTemplate redisTemplate;
+    private RedirectController controller;
+
+    @BeforeAll
+    static void quietLogging() {
+        //  Log formatting would dominate the figures; the budgets cover the redirect path itself
+        previousLevel = serviceLogger.getLevel();
+        serviceLogger.setLevel(Level.WARN);
+        producerFactory = new FakeKafkaProducerFactory<>(FaultInjector.none());
+    }
+
+    @AfterAll
+    static void restoreLogging() {
+        serviceLogger.setLevel(previousLevel);
+        producerFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeThat(threads.isThreadAllocatedMemorySupported()).isTrue();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        redisTemplate = new FakeStringRedisTemplate(FaultInjector.none());
+        var publisher = new ClickEventPublisher(new KafkaTemplate<>(producerFactory), "link-clicks", Clock.systemUTC());
+        controller = new RedirectController(
+                new RedirectCacheRepository(RedisShardRouter.single(redisTemplate), objectMapper, LinkKeyLayout.flat(),
+                        TrackingRedirectCache.disabled(), BudgetedCacheReader.disabled(), HedgedCacheReader.disabled()),
+                publisher, TrafficCapture.disabled(), AdaptiveConcurrencyLimiter.disabled(), ClientRateLimiter.disabled(),
+                ClientIpExtractor.defaults(), BotClickFilter.disabled(), LiveClickCounters.disabled(),
+                SyntheticRedirects.disabled());
+
+        put(RedirectCase.HIT, new RedirectInfo("https://example.com/campaign/spring?utm_source=newsletter&utm_medium=email", true, 1000L, false));
+        put(RedirectCase.TOMBSTONE, new RedirectInfo(null, false, 2000L, true));
+        put(RedirectCase.INACTIVE, new RedirectInfo("https://example.com/paused", false, 1000L, false));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RedirectCase.class)
+    void shouldStayWithinAllocationBudget(RedirectCase redirectCase) throws IOException {
+        // given
+        var request = new MockHttpServletRequest("GET", "/" + redirectCase.shortUrl);
+        request.addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) Firefox/128.0");
+        request.addHeader("X-Forwarded-For", "203.0.113.7, 10.0.0.1");
+        request.setRemoteAddr("10.0.0.1");
+        var budget = budgetFor(redirectCase);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            controller.redirect(redirectCase.shortUrl, request);
+        }
+
+        // when
+        var before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            var response = controller.redirect(redirectCase.shortUrl, request);
+            if (response.getStatusCode() != HttpStatus.FOUND) {
+                throw new AssertionError("Unexpected status " + response.getStatusCode());
+            }
+        }
+        var perRequest = (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED_ITERATIONS;
+
+        // then
+        System.out.printf("allocation %s: %d B/request (budget %d B)%n", redirectCase, perRequest, budget);
+        assertThat(perRequest)
+                .as("bytes allocated per %s redirect", redirectCase)
+                .isLessThanOrEqualTo(budget);
+    }
+
+    private void put(RedirectCase redirectCase, RedirectInfo info) throws IOException {
+        redisTemplate.store().put("link:" + redirectCase.shortUrl, objectMapper.writeValueAsString(info));
+    }
+
+    private static long budgetFor(RedirectCase redirectCase) throws IOException {
+        var key = "redirect." + redirectCase.name().toLowerCase();
+        var override = System.getProperty("allocation.budget." + redirectCase.name().toLowerCase());
+        if (override != null) {
+            return Long.parseLong(override);
+        }
+        var budgets = new Properties();
+        try (var in = RedirectAllocationTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+        var value = budgets.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("No allocation budget configured for " + key);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    enum RedirectCase {
+        HIT("aB5xZ1"),
+        MISS("missing1"),
+        TOMBSTONE("deleted1"),
+        INACTIVE("paused1");
+
+        private final String shortUrl;
+
+        RedirectCase(String shortUrl) {
+            this.shortUrl = shortUrl;
+        }
+    }
+}
@@ -1,22 +1,36 @@
 package pl.bpiatek.linkshortenerredirectservice.api;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import pl.bpiatek.linkshortenerredirectservice.bot.BotClickFilter;
+import pl.bpiatek.linkshortenerredirectservice.capture.TrafficCapture;
 import pl.bpiatek.linkshortenerredirectservice.config.TestSecurityConfiguration;
+import pl.bpiatek.linkshortenerredirectservice.limit.AdaptiveConcurrencyLimiter;
+import pl.bpiatek.linkshortenerredirectservice.limit.ClientRateLimiter;
+import pl.bpiatek.linkshortenerredirectservice.link.CacheUnavailableException;
 import pl.bpiatek.linkshortenerredirectservice.link.ClickEventPublisher;
+import pl.bpiatek.linkshortenerredirectservice.link.ClientIpExtractor;
 import pl.bpiatek.linkshortenerredirectservice.link.RedirectCacheRepository;
 import pl.bpiatek.linkshortenerredirectservice.link.RedirectInfo;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
+import pl.bpiatek.linkshortenerredirectservice.stats.LiveClickCounters;
+import pl.bpiatek.linkshortenerredirectservice.warmup.SyntheticRedirects;
 
 import java.util.Optional;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -24,9 +38,18 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(RedirectController.class)
-@Import(TestSecurityConfiguration.class)
+@Import({TestSecurityConfiguration.class, RedirectControllerTest.ClientIpConfiguration.class})
 class RedirectControllerTest {
 
+    @TestConfiguration
+    static class ClientIpConfiguration {
+
+        @Bean
+        ClientIpExtractor clientIpExtractor() {
+            return ClientIpExtractor.defaults();
+        }
+    }
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -36,6 +59,31 @@ class RedirectControllerTest {
     @MockitoBean
     private ClickEventPublisher clickEventPublisher;
 
+    @MockitoBean
+    private TrafficCapture trafficCapture;
+
+    @MockitoBean
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @MockitoBean
+    private ClientRateLimiter rateLimiter;
+
+    @MockitoBean
+    private BotClickFilter botClickFilter;
+
+    @MockitoBean
+    private LiveClickCounters liveClickCounters;
+
+    @MockitoBean
+    private SyntheticRedirects syntheticRedirects;
+
+    @BeforeEach
+    void admitRequests() {
+        given(concurrencyLimiter.tryAcquire()).willReturn(true);
+        given(rateLimiter.tryAcquire(any(), any())).willReturn(true);
+        given(botClickFilter.route(any())).willReturn(BotClickFilter.Route.PRIMARY);
+    }
+
     @Test
     void shouldRedirectToLongUrlWhenShortUrlExists() throws Exception {
         // given
@@ -59,6 +107,25 @@ class RedirectControllerTest {
                 .andExpect(header().string("Location", longUrl));
 
         verify(clickEventPublisher).publishSafe(eq(shortUrl), eq(defaultIp), eq(defaultAgent));
+        verify(liveClickCounters).record(shortUrl, defaultIp, defaultAgent);
+    }
+
+    @Test
+    void shouldRedirectWarmUpRequestsWithoutSideEffects() throws Exception {
+        // given
+        var shortUrl = "aB5xZ1";
+        var longUrl = "https://example.com/target";
+        given(syntheticRedirects.matches(any())).willReturn(true);
+        given(redirectRepository.findByShortUrl(shortUrl)).willReturn(Optional.of(new RedirectInfo(longUrl, true, 1000L, false)));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl).header(SyntheticRedirects.HEADER, "token"))
+                // then
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", longUrl));
+
+        verifyNoInteractions(clickEventPublisher, liveClickCounters, trafficCapture);
+        verify(rateLimiter, never()).tryAcquire(any(), any());
     }
 
     @Test
@@ -76,6 +143,17 @@ class RedirectControllerTest {
         verifyNoInteractions(clickEventPublisher);
     }
 
+    @Test
+    void shouldRejectInvalidShortCodeWithoutLookup() throws Exception {
+        // when
+        mockMvc.perform(get("/not_a-code"))
+                // then
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", containsString("/404")));
+
+        verifyNoInteractions(redirectRepository, clickEventPublisher);
+    }
+
     @Test
     void shouldRedirectToUi404WhenTombstoneExists() throws Exception {
         // given
@@ -132,6 +210,29 @@ class RedirectControllerTest {
         verify(clickEventPublisher).publishSafe(eq(shortUrl), eq(realIp), eq("test-agent"));
     }
 
+    @Test
+    void shouldIgnoreForwardedForFromUntrustedPeer() throws Exception {
+        // given
+        var shortUrl = "direct123";
+        var peerIp = "198.51.100.23";
+
+        var info = new RedirectInfo("https://example.com", true, 1000L, false);
+        given(redirectRepository.findByShortUrl(shortUrl)).willReturn(Optional.of(info));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl)
+                        .header("X-Forwarded-For", "1.2.3.4")
+                        .header("User-Agent", "spoofing-agent")
+                        .with(request -> {
+                            request.setRemoteAddr(peerIp);
+                            return request;
+                        }))
+                .andExpect(status().isFound());
+
+        // then
+        verify(clickEventPublisher).publishSafe(eq(shortUrl), eq(peerIp), eq("spoofing-agent"));
+    }
+
     @Test
     void shouldUseCFConnectingIPWhenXForwardedIsMissing() throws Exception {
         // given
@@ -169,4 +270,123 @@ class RedirectControllerTest {
 
         verifyNoInteractions(clickEventPublisher);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReturn503WhenCacheIsUnavailable() throws Exception {
+        // given
+        var shortUrl = "unknown";
+        given(redirectRepository.findByShortUrl(shortUrl))
+                .willThrow(new CacheUnavailableException("Redis unavailable"));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl))
+                // then
+                .andExpect(status().isServiceUnavailable());
+
+        verifyNoInteractions(clickEventPublisher);
+    }
+
+    @Test
+    void shouldShedRequestsNeedingRemoteIoWhenConcurrencyLimitIsReached() throws Exception {
+        // given
+        given(concurrencyLimiter.tryAcquire()).willReturn(false);
+        given(concurrencyLimiter.retryAfterSeconds()).willReturn("1");
+
+        // when
+        mockMvc.perform(get("/busy"))
+                // then
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+
+        verifyNoInteractions(clickEventPublisher);
+    }
+
+    @Test
+    void shouldServeLocalHitsRegardlessOfConcurrencyLimit() throws Exception {
+        // given
+        var shortUrl = "local";
+        given(concurrencyLimiter.tryAcquire()).willReturn(false);
+        given(redirectRepository.isCachedLocally(shortUrl)).willReturn(true);
+        given(redirectRepository.findByShortUrl(shortUrl))
+                .willReturn(Optional.of(new RedirectInfo("https://example.com/local", true, 1000L, false)));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl))
+                // then
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", "https://example.com/local"));
+    }
+
+    @Test
+    void shouldThrottleClientBeforeAnyLookup() throws Exception {
+        // given
+        var clientIp = "203.0.113.9";
+        given(rateLimiter.tryAcquire(eq(clientIp), any())).willReturn(false);
+        given(rateLimiter.retryAfterSeconds(any(IpAddress.class))).willReturn("1");
+
+        // when
+        mockMvc.perform(get("/aB5xZ1")
+                        .header("X-Forwarded-For", clientIp))
+                // then
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "1"));
+
+        verify(redirectRepository, never()).findByShortUrl(any());
+        verifyNoInteractions(clickEventPublisher);
+    }
+
+    @Test
+    void shouldNotPublishClicksTheBotFilterDrops() throws Exception {
+        // given
+        var shortUrl = "preview1";
+        var slackbot = "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)";
+        given(botClickFilter.route(slackbot)).willReturn(BotClickFilter.Route.DROP);
+        given(redirectRepository.findByShortUrl(shortUrl))
+                .willReturn(Optional.of(new RedirectInfo("https://example.com", true, 1000L, false)));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl).header("User-Agent", slackbot))
+                // then
+                .andExpect(status().isFound())
+                .andExpect(header().string("Location", "https://example.com"));
+
+        verifyNoInteractions(clickEventPublisher, liveClickCounters);
+    }
+
+    @Test
+    void shouldPublishRoutedBotClicksToBotTopic() throws Exception {
+        // given
+        var shortUrl = "crawled1";
+        var googlebot = "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)";
+        given(botClickFilter.route(googlebot)).willReturn(BotClickFilter.Route.BOT_STREAM);
+        given(botClickFilter.botTopic()).willReturn("link-bot-clicks");
+        given(redirectRepository.findByShortUrl(shortUrl))
+                .willReturn(Optional.of(new RedirectInfo("https://example.com", true, 1000L, false)));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl).header("User-Agent", googlebot))
+                // then
+                .andExpect(status().isFound());
+
+        verify(clickEventPublisher).publishSafe(eq("link-bot-clicks"), eq(shortUrl), eq("127.0.0.1"), eq(googlebot));
+        verifyNoInteractions(liveClickCounters);
+    }
+
+    @Test
+    void shouldPublishSampledBotClicksWithTheirSampleWeight() throws Exception {
+        // given
+        var shortUrl = "crawled2";
+        var googlebot = "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)";
+        given(botClickFilter.route(googlebot)).willReturn(BotClickFilter.Route.SAMPLED);
+        given(botClickFilter.sampleWeight()).willReturn(100.0);
+        given(redirectRepository.findByShortUrl(shortUrl))
+                .willReturn(Optional.of(new RedirectInfo("https://example.com", true, 1000L, false)));
+
+        // when
+        mockMvc.perform(get("/" + shortUrl).header("User-Agent", googlebot))
+                // then
+                .andExpect(status().isFound());
+
+        verify(clickEventPublisher).publishSafe(eq(shortUrl), eq("127.0.0.1"), eq(googlebot), eq(100.0));
+    }
+}
@@ -0,0 +1,68 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BotClickFilterTest {
+
+    private static final String SLACKBOT = "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)";
+    private static final String GOOGLEBOT = "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)";
+    private static final String UPTIME_ROBOT = "Mozilla/5.0+(compatible; UptimeRobot/2.0; http://www.uptimerobot.com/)";
+    private static final String BROWSER = "Mozilla/5.0 (X11; Linux x86_64) Firefox/128.0";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldRouteEachClassByItsAction() {
+        // given
+        var filter = filter(Map.of(
+                UserAgentClass.PREVIEW, BotClickFilter.Action.DROP,
+                UserAgentClass.MONITOR, BotClickFilter.Action.REROUTE), 0.0);
+
+        // when / then
+        assertThat(filter.route(SLACKBOT)).isEqualTo(BotClickFilter.Route.DROP);
+        assertThat(filter.route(UPTIME_ROBOT)).isEqualTo(BotClickFilter.Route.BOT_STREAM);
+        assertThat(filter.route(BROWSER)).isEqualTo(BotClickFilter.Route.PRIMARY);
+        assertThat(filter.route(null)).isEqualTo(BotClickFilter.Route.PRIMARY);
+        assertThat(filter.botTopic()).isEqualTo("link-bot-clicks");
+        assertThat(meterRegistry.get("redirect.clicks.classified")
+                .tags("class", "preview", "route", "drop").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.clicks.classified")
+                .tags("class", "human", "route", "primary").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepOnlySampledShareOfCrawlerClicks() {
+        // given
+        var filter = filter(Map.of(UserAgentClass.CRAWLER, BotClickFilter.Action.SAMPLE), 0.1);
+
+        // when
+        var kept = 0;
+        for (int i = 0; i < 1000; i++) {
+            kept += filter.route(GOOGLEBOT) == BotClickFilter.Route.SAMPLED ? 1 : 0;
+        }
+
+        // then
+        assertThat(kept).isEqualTo(100);
+        assertThat(filter.sampleWeight()).isEqualTo(10.0);
+    }
+
+    @Test
+    void shouldPublishEverythingWhenDisabled() {
+        // when / then
+        assertThat(BotClickFilter.disabled().route(SLACKBOT)).isEqualTo(BotClickFilter.Route.PRIMARY);
+    }
+
+    private BotClickFilter filter(Map<UserAgentClass, BotClickFilter.Action> actions, double sampleRate) {
+        //  Deterministic stand-in for the random source: 0.00, 0.01, ... 0.99, repeating
+        var sequence = new AtomicInteger();
+        var classifier = new UserAgentClassifier(UserAgentClassifier.DEFAULT_SIGNATURES, 64, meterRegistry);
+        return new BotClickFilter(classifier, actions, sampleRate, "link-bot-clicks",
+                () -> (sequence.getAndIncrement() % 100) / 100.0, meterRegistry);
+    }
+}
@@ -0,0 +1,70 @@
+package pl.bpiatek.linkshortenerredirectservice.bot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserAgentClassifierTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserAgentClassifier classifier =
+            new UserAgentClassifier(UserAgentClassifier.DEFAULT_SIGNATURES, 64, meterRegistry);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "Slackbot-LinkExpanding 1.0 (+https://api.slack.com/robots)                        | PREVIEW",
+            "Twitterbot/1.0                                                                    | PREVIEW",
+            "facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php)         | PREVIEW",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)          | CRAWLER",
+            "Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)           | CRAWLER",
+            "Mozilla/5.0+(compatible; UptimeRobot/2.0; http://www.uptimerobot.com/)            | MONITOR",
+            "kube-probe/1.30                                                                   | MONITOR",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 Chrome/126.0 Safari  | HUMAN",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_5 like Mac OS X) Mobile/15E148 Zażółć       | HUMAN"
+    })
+    void shouldClassifyKnownUserAgents(String userAgent, UserAgentClass expected) {
+        // when
+        var uaClass = classifier.classify(userAgent);
+
+        // then
+        assertThat(uaClass).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldTreatAbsentUserAgentAsMissing() {
+        // when / then
+        assertThat(classifier.classify(null)).isEqualTo(UserAgentClass.MISSING);
+        assertThat(classifier.classify(" ")).isEqualTo(UserAgentClass.MISSING);
+    }
+
+    @Test
+    void shouldServeRepeatedUserAgentsFromCache() {
+        // given
+        var userAgent = "Twitterbot/1.0";
+        classifier.classify(userAgent);
+
+        // when
+        var uaClass = classifier.classify(new String(userAgent.toCharArray()));
+
+        // then
+        assertThat(uaClass).isEqualTo(UserAgentClass.PREVIEW);
+        assertThat(meterRegistry.get("redirect.useragent.cache").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.useragent.cache").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldUseConfiguredSignatures() {
+        // given
+        var custom = new UserAgentClassifier(Map.of(UserAgentClass.MONITOR, List.of("Acme-HealthCheck")), 16, meterRegistry);
+
+        // when / then
+        assertThat(custom.classify("acme-healthcheck/3")).isEqualTo(UserAgentClass.MONITOR);
+        assertThat(custom.classify("Slackbot-LinkExpanding 1.0")).isEqualTo(UserAgentClass.HUMAN);
+    }
+}
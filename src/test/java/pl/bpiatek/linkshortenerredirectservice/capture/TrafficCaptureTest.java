@@ -0,0 +1,130 @@
+package pl.bpiatek.linkshortenerredirectservice.capture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+import static org.awaitility.Awaitility.await;
+
+class TrafficCaptureTest {
+
+    private final Clock clock = Clock.fixed(Instant.parse("2025-08-22T10:00:00.123456Z"), ZoneOffset.UTC);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldRoundTripAnonymisedRequestShape() throws Exception {
+        // given
+        var request = new MockHttpServletRequest("GET", "/aB5xZ1");
+        request.addHeader("X-Forwarded-For", "2001:db8::1, 10.0.0.1, 10.0.0.2");
+        request.addHeader("User-Agent", "Mozilla/5.0");
+
+        // when
+        try (var capture = new TrafficCapture(new RollingCaptureLog(directory, 4096, 2), 1.0, clock)) {
+            capture.record("aB5xZ1", "2001:db8::1", request);
+        }
+
+        // then
+        var records = new ArrayList<CaptureRecord>();
+        CaptureReader.forEach(directory, records::add);
+
+        assertThat(records).hasSize(1);
+        var record = records.getFirst();
+        assertSoftly(s -> {
+            s.assertThat(record.shortUrl()).isEqualTo("aB5xZ1");
+            s.assertThat(record.epochMicros()).isEqualTo(1755856800123456L);
+            s.assertThat(record.has(CaptureRecord.FORWARDED_FOR)).isTrue();
+            s.assertThat(record.has(CaptureRecord.CF_CONNECTING_IP)).isFalse();
+            s.assertThat(record.has(CaptureRecord.IPV6)).isTrue();
+            s.assertThat(record.has(CaptureRecord.USER_AGENT)).isTrue();
+            s.assertThat(record.forwardedHops()).isEqualTo(3);
+            s.assertThat(record.userAgentHash()).isNotZero();
+        });
+    }
+
+    @Test
+    void shouldHashClientsConsistentlyWithinACaptureButNotAcrossCaptures() throws Exception {
+        // given
+        var request = new MockHttpServletRequest("GET", "/code");
+        request.addHeader("User-Agent", "Mozilla/5.0");
+        var first = directory.resolve("first");
+        var second = directory.resolve("second");
+
+        // when
+        try (var capture = new TrafficCapture(new RollingCaptureLog(first, 4096, 2), 1.0, clock)) {
+            capture.record("code", "203.0.113.9", request);
+            capture.record("code", "203.0.113.9", request);
+        }
+        try (var capture = new TrafficCapture(new RollingCaptureLog(second, 4096, 2), 1.0, clock)) {
+            capture.record("code", "203.0.113.9", request);
+        }
+
+        // then
+        var firstRecords = new ArrayList<CaptureRecord>();
+        CaptureReader.forEach(first, firstRecords::add);
+        var secondRecords = new ArrayList<CaptureRecord>();
+        CaptureReader.forEach(second, secondRecords::add);
+
+        assertThat(firstRecords).hasSize(2);
+        assertThat(firstRecords.get(0).clientIpHash()).isEqualTo(firstRecords.get(1).clientIpHash());
+        assertThat(firstRecords.get(0).userAgentHash()).isEqualTo(firstRecords.get(1).userAgentHash());
+        assertThat(secondRecords.getFirst().userAgentHash()).isNotEqualTo(firstRecords.getFirst().userAgentHash());
+    }
+
+    @Test
+    void shouldRollSegmentsAndKeepOnlyTheNewest() throws Exception {
+        // given
+        var request = new MockHttpServletRequest("GET", "/code");
+        request.setRemoteAddr("203.0.113.9");
+
+        // when
+        try (var capture = new TrafficCapture(new RollingCaptureLog(directory, 128, 2), 1.0, clock)) {
+            for (int i = 0; i < 100; i++) {
+                capture.record("code" + i, "203.0.113.9", request);
+            }
+        }
+
+        // then
+        var shortUrls = new ArrayList<String>();
+        CaptureReader.forEach(directory, record -> shortUrls.add(record.shortUrl()));
+
+        assertThat(CaptureReader.segments(directory)).hasSize(2);
+        assertThat(shortUrls).isNotEmpty().endsWith("code99");
+        assertThat(shortUrls).doesNotContain("code0");
+    }
+
+    @Test
+    void shouldPrepareTheNextSegmentBeforeARollNeedsIt() throws Exception {
+        // given
+        var captureLog = new RollingCaptureLog(directory, 4096, 2);
+
+        // when
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(CaptureReader.segments(directory)).hasSize(1));
+        var records = CaptureReader.forEach(directory, record -> { });
+        captureLog.close();
+
+        // then
+        assertThat(records).isZero();
+        assertThat(CaptureReader.segments(directory)).isEmpty();
+    }
+
+    @Test
+    void shouldNotWriteAnythingWhenDisabled() throws Exception {
+        // when
+        TrafficCapture.disabled().record("code", "127.0.0.1", new MockHttpServletRequest());
+
+        // then
+        assertThat(CaptureReader.segments(directory)).isEmpty();
+    }
+}
@@ -0,0 +1,78 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldRejectBeyondCurrentLimit() {
+        // given
+        var limiter = new AdaptiveConcurrencyLimiter(new Gradient2Limit(2, 1, 10, 0.2, 1.5), Duration.ofSeconds(1), meterRegistry);
+
+        // when
+        var first = limiter.tryAcquire();
+        var second = limiter.tryAcquire();
+        var third = limiter.tryAcquire();
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        assertThat(meterRegistry.get("redirect.concurrency.rejected").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.concurrency.in.flight").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldGrowLimitWhileLatencyIsSteady() {
+        // given
+        var limit = new Gradient2Limit(20, 10, 1000, 0.2, 1.5);
+
+        // when
+        var result = 0;
+        for (int i = 0; i < 500; i++) {
+            result = limit.onSample(Duration.ofMillis(5).toNanos(), result);
+        }
+
+        // then
+        assertThat(result).isGreaterThan(100);
+    }
+
+    @Test
+    void shouldShrinkLimitWhenLatencyRises() {
+        // given
+        var limit = new Gradient2Limit(200, 10, 1000, 0.2, 1.5);
+        for (int i = 0; i < 600; i++) {
+            limit.onSample(Duration.ofMillis(5).toNanos(), 200);
+        }
+        var before = limit.limit();
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(Duration.ofMillis(50).toNanos(), limit.limit());
+        }
+
+        // then
+        assertThat(limit.limit()).isLessThan(before / 2);
+    }
+
+    @Test
+    void shouldNotGrowWhileLimitIsUnused() {
+        // given
+        var limit = new Gradient2Limit(100, 10, 1000, 0.2, 1.5);
+
+        // when
+        for (int i = 0; i < 500; i++) {
+            limit.onSample(Duration.ofMillis(5).toNanos(), 10);
+        }
+
+        // then
+        assertThat(limit.limit()).isEqualTo(100);
+    }
+}
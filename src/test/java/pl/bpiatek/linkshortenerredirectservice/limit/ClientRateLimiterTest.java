@@ -0,0 +1,135 @@
+package pl.bpiatek.linkshortenerredirectservice.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong millis = new AtomicLong(1_000_000);
+
+    @Test
+    void shouldThrottleClientOnceBurstIsSpent() {
+        // given
+        var limiter = limiter(new ClientRateLimiter.Limit(1, 3), List.of());
+
+        // when
+        var admitted = 0;
+        for (int i = 0; i < 5; i++) {
+            admitted += limiter.tryAcquire("203.0.113.7") ? 1 : 0;
+        }
+
+        // then
+        assertThat(admitted).isEqualTo(3);
+        assertThat(limiter.tryAcquire("198.51.100.1")).isTrue();
+        assertThat(meterRegistry.get("redirect.ratelimit.throttled").tag("rule", "default").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRefillAtConfiguredRate() {
+        // given
+        var limiter = limiter(new ClientRateLimiter.Limit(2, 1), List.of());
+        limiter.tryAcquire("203.0.113.7");
+
+        // when
+        var beforeRefill = limiter.tryAcquire("203.0.113.7");
+        millis.addAndGet(500);
+        var afterRefill = limiter.tryAcquire("203.0.113.7");
+
+        // then
+        assertThat(beforeRefill).isFalse();
+        assertThat(afterRefill).isTrue();
+    }
+
+    @Test
+    void shouldApplyLongestMatchingCidrRule() {
+        // given
+        var limiter = limiter(new ClientRateLimiter.Limit(1, 1), List.of(
+                new ClientRateLimiter.Rule(CidrBlock.parse("10.0.0.0/8"), new ClientRateLimiter.Limit(1, 5)),
+                new ClientRateLimiter.Rule(CidrBlock.parse("10.1.0.0/16"), new ClientRateLimiter.Limit(0, 1)),
+                new ClientRateLimiter.Rule(CidrBlock.parse("2001:db8::/32"), new ClientRateLimiter.Limit(1, 2))));
+
+        // when
+        var wideBlock = admittedOutOf(limiter, "10.2.3.4", 10);
+        var exempt = admittedOutOf(limiter, "10.1.3.4", 10);
+        var ipv6 = admittedOutOf(limiter, "2001:db8::1", 10);
+        var unmatched = admittedOutOf(limiter, "192.0.2.1", 10);
+
+        // then
+        assertThat(wideBlock).isEqualTo(5);
+        assertThat(exempt).isEqualTo(10);
+        assertThat(ipv6).isEqualTo(2);
+        assertThat(unmatched).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDeriveRetryAfterFromTheRuleThatRejectedTheClient() {
+        // given
+        var limiter = limiter(new ClientRateLimiter.Limit(10, 1), List.of(
+                new ClientRateLimiter.Rule(CidrBlock.parse("198.51.100.0/24"), new ClientRateLimiter.Limit(0.02, 1)),
+                new ClientRateLimiter.Rule(CidrBlock.parse("10.0.0.0/8"), new ClientRateLimiter.Limit(0, 1))));
+        assertThat(admittedOutOf(limiter, "198.51.100.1", 2)).isEqualTo(1);
+
+        // when
+        var slowRule = limiter.retryAfterSeconds("198.51.100.1");
+        var defaultRule = limiter.retryAfterSeconds("203.0.113.7");
+        var exempt = limiter.retryAfterSeconds("10.1.2.3");
+        var unparsable = limiter.retryAfterSeconds("unknown");
+
+        // then
+        assertThat(slowRule).isEqualTo("50");
+        assertThat(defaultRule).isEqualTo("1");
+        assertThat(exempt).isEqualTo("1");
+        assertThat(unparsable).isEqualTo("1");
+    }
+
+    @Test
+    void shouldReportMostThrottledClients() {
+        // given
+        var limiter = limiter(new ClientRateLimiter.Limit(1, 1), List.of());
+
+        // when
+        admittedOutOf(limiter, "203.0.113.7", 50);
+        admittedOutOf(limiter, "198.51.100.1", 10);
+        for (int i = 0; i < 20; i++) {
+            admittedOutOf(limiter, "192.0.2." + i, 2);
+        }
+
+        // then
+        var top = limiter.topThrottled(2);
+        assertThat(top).extracting(ClientRateLimiter.ThrottledClient::clientIp)
+                .containsExactly("203.0.113.7", "198.51.100.1");
+        assertThat(top.getFirst().count()).isEqualTo(49);
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        // given
+        var limiter = ClientRateLimiter.disabled();
+
+        // when
+        var admitted = admittedOutOf(limiter, "203.0.113.7", 1000);
+
+        // then
+        assertThat(admitted).isEqualTo(1000);
+        assertThat(limiter.topThrottled(10)).isEmpty();
+    }
+
+    private ClientRateLimiter limiter(ClientRateLimiter.Limit defaultLimit, List<ClientRateLimiter.Rule> rules) {
+        return new ClientRateLimiter(defaultLimit, rules, 1024, 8, millis::get, meterRegistry);
+    }
+
+    private static int admittedOutOf(ClientRateLimiter limiter, String clientIp, int requests) {
+        var admitted = 0;
+        for (int i = 0; i < requests; i++) {
+            admitted += limiter.tryAcquire(clientIp) ? 1 : 0;
+        }
+        return admitted;
+    }
+}
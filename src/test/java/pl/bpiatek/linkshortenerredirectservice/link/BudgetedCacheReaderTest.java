@@ -0,0 +1,121 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class BudgetedCacheReaderTest {
+
+    private static final RedirectInfo V1 = new RedirectInfo("https://example.com/v1", true, 1_000L, false);
+    private static final RedirectInfo V2 = new RedirectInfo("https://example.com/v2", true, 2_000L, false);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 0.5, Duration.ofMillis(200), System::nanoTime);
+    private final BudgetedCacheReader reader = new BudgetedCacheReader(Duration.ofMillis(50), breaker, 100, meterRegistry);
+    private final CountDownLatch slowRedis = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        slowRedis.countDown();
+        reader.close();
+    }
+
+    @Test
+    void shouldServeLastKnownGoodCopyWhenBudgetIsExceeded() {
+        // given
+        reader.read("abc", shortUrl -> Optional.of(V1));
+
+        // when
+        var result = reader.read("abc", shortUrl -> slow(V2));
+
+        // then
+        assertThat(result).contains(V1);
+        assertThat(meterRegistry.get("redirect.cache.budget.overruns").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.cache.stale.served").counter().count()).isEqualTo(1);
+
+        // when
+        slowRedis.countDown();
+
+        // then
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() ->
+                assertThat(reader.read("abc", shortUrl -> slow(V2))).contains(V2));
+    }
+
+    @Test
+    void shouldFailUnknownLinksWhenRedisIsDown() {
+        // when / then
+        assertThatThrownBy(() -> reader.read("unknown", shortUrl -> {
+            throw new RedisConnectionFailureException("down");
+        })).isInstanceOf(CacheUnavailableException.class);
+        assertThat(meterRegistry.get("redirect.cache.unavailable").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSkipRedisWhileBreakerIsOpenAndRecoverAfterProbe() {
+        // given
+        reader.read("abc", shortUrl -> Optional.of(V1));
+        for (int i = 0; i < 4; i++) {
+            reader.read("abc", shortUrl -> {
+                throw new RedisConnectionFailureException("down");
+            });
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // when
+        var whileOpen = reader.read("abc", shortUrl -> {
+            throw new AssertionError("Redis must not be called while the breaker is open");
+        });
+
+        // then
+        assertThat(whileOpen).contains(V1);
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() -> {
+            reader.read("abc", shortUrl -> Optional.of(V2));
+            assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        });
+    }
+
+    @Test
+    void shouldRethrowCorruptedDataInsteadOfServingStale() {
+        // given
+        reader.read("abc", shortUrl -> Optional.of(V1));
+
+        // when / then
+        assertThatThrownBy(() -> reader.read("abc", shortUrl -> {
+            throw new IllegalStateException("Corrupted data in Redis for shortUrl: abc");
+        })).isNotInstanceOf(CacheUnavailableException.class).hasMessageContaining("Corrupted");
+    }
+
+    @Test
+    void shouldTreatUnavailableLoaderAsRedisFailureRatherThanCorruption() {
+        // given
+        reader.read("abc", shortUrl -> Optional.of(V1));
+
+        // when
+        var result = reader.read("abc", shortUrl -> {
+            throw new CacheUnavailableException("replica and primary both down");
+        });
+
+        // then
+        assertThat(result).contains(V1);
+        assertThat(meterRegistry.get("redirect.cache.stale.served").counter().count()).isEqualTo(1);
+    }
+
+    private Optional<RedirectInfo> slow(RedirectInfo info) {
+        try {
+            slowRedis.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.of(info);
+    }
+}
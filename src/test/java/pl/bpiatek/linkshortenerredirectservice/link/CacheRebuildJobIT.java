@@ -0,0 +1,148 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkCreated;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkDeleted;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkLifecycleEvent;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkUpdated;
+import pl.bpiatek.linkshortenerredirectservice.stats.LiveClickCounters;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "link.cache.rebuild.max-in-memory-keys=2",
+        "link.clicks.live.enabled=true",
+        "link.clicks.live.flush-interval=100ms"
+})
+@ActiveProfiles("test")
+class CacheRebuildJobIT implements WithFullInfrastructure {
+
+    private static final String REDIS_KEY_PREFIX = "link:";
+
+    @Autowired
+    private CacheRebuildJob rebuildJob;
+
+    @Autowired
+    private KafkaTemplate<String, LinkLifecycleEvent> kafkaTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private LiveClickCounters liveClickCounters;
+
+    @Value("${topic.link.lifecycle}")
+    private String topicName;
+
+    @DynamicPropertySource
+    static void kafkaProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.kafka.bootstrap-servers", redpanda::getBootstrapServers);
+    }
+
+    @AfterEach
+    void cleanup() {
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+
+    @Test
+    void shouldRebuildLostCacheFromLifecycleTopic() throws Exception {
+        // given
+        var now = Instant.now();
+        send("rebuild1", created("rebuild1", "https://example.com/old", now.minusSeconds(60)));
+        send("rebuild1", updated("rebuild1", "https://example.com/new", now.minusSeconds(30)));
+        send("rebuild2", created("rebuild2", "https://example.com/two", now.minusSeconds(60)));
+        send("rebuild3", created("rebuild3", "https://example.com/three", now.minusSeconds(60)));
+        send("rebuild3", deleted("rebuild3", now.minusSeconds(10)));
+
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> redisTemplate.hasKey(REDIS_KEY_PREFIX + "rebuild3")
+                        && readInfo("rebuild3").isDeleted());
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushDb();
+        redisTemplate.opsForList().rightPushAll(CachePreloadPhase.HOT_LINKS_KEY, "rebuild2", "rebuild1");
+        redisTemplate.expire(CachePreloadPhase.HOT_LINKS_KEY, Duration.ofHours(1));
+
+        // when
+        rebuildJob.start();
+
+        // then
+        await().atMost(Duration.ofSeconds(30))
+                .until(() -> rebuildJob.status().phase() == CacheRebuildStatus.Phase.COMPLETED);
+
+        assertThat(readInfo("rebuild1").longUrl()).isEqualTo("https://example.com/new");
+        assertThat(readInfo("rebuild2").longUrl()).isEqualTo("https://example.com/two");
+        assertThat(readInfo("rebuild3").isDeleted()).isTrue();
+        assertThat(redisTemplate.getExpire(REDIS_KEY_PREFIX + "rebuild3")).isPositive();
+        assertThat(rebuildJob.status().keysWritten()).isGreaterThanOrEqualTo(3);
+        assertThat(redisTemplate.opsForList().range(CachePreloadPhase.HOT_LINKS_KEY, 0, -1)).containsExactly("rebuild2", "rebuild1");
+        assertThat(redisTemplate.getExpire(CachePreloadPhase.HOT_LINKS_KEY)).isPositive();
+    }
+
+    @Test
+    void shouldKeepLiveClickCountersThroughARebuild() throws Exception {
+        // given
+        send("counted1", created("counted1", "https://example.com/counted", Instant.now().minusSeconds(60)));
+        for (int i = 0; i < 5; i++) {
+            liveClickCounters.record("counted1", "203.0.113." + i, "Mozilla/5.0");
+        }
+        await().atMost(Duration.ofSeconds(10))
+                .until(() -> liveClickCounters.unflushedClicks("counted1") == 0
+                        && liveClickCounters.read("counted1").clicks() == 5);
+
+        // when
+        rebuildJob.start();
+
+        // then
+        await().atMost(Duration.ofSeconds(30))
+                .until(() -> rebuildJob.status().phase() == CacheRebuildStatus.Phase.COMPLETED);
+
+        var live = liveClickCounters.read("counted1");
+        assertThat(live.clicks()).isEqualTo(5);
+        assertThat(live.uniqueVisitors()).isEqualTo(5);
+    }
+
+    private RedirectInfo readInfo(String shortUrl) throws Exception {
+        return objectMapper.readValue(redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + shortUrl), RedirectInfo.class);
+    }
+
+    private void send(String key, LinkLifecycleEvent event) throws Exception {
+        kafkaTemplate.send(topicName, key, event).get(10, TimeUnit.SECONDS);
+    }
+
+    private static LinkLifecycleEvent created(String shortUrl, String longUrl, Instant at) {
+        return LinkLifecycleEvent.newBuilder().setLinkCreated(LinkCreated.newBuilder()
+                .setShortUrl(shortUrl).setLongUrl(longUrl).setIsActive(true).setCreatedAt(toProto(at))).build();
+    }
+
+    private static LinkLifecycleEvent updated(String shortUrl, String longUrl, Instant at) {
+        return LinkLifecycleEvent.newBuilder().setLinkUpdated(LinkUpdated.newBuilder()
+                .setShortUrl(shortUrl).setLongUrl(longUrl).setIsActive(true).setUpdatedAt(toProto(at))).build();
+    }
+
+    private static LinkLifecycleEvent deleted(String shortUrl, Instant at) {
+        return LinkLifecycleEvent.newBuilder().setLinkDeleted(LinkDeleted.newBuilder()
+                .setShortUrl(shortUrl).setDeletedAt(toProto(at))).build();
+    }
+
+    private static Timestamp toProto(Instant instant) {
+        return Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
+    }
+}
@@ -0,0 +1,84 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 0.5, Duration.ofSeconds(5), now::get);
+
+    @Test
+    void shouldOpenOnceFailureRateReachesThreshold() {
+        // when
+        for (int i = 0; i < 5; i++) {
+            breaker.onSuccess();
+            breaker.onFailure();
+        }
+
+        // then
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void shouldStayClosedBelowThreshold() {
+        // when
+        for (int i = 0; i < 100; i++) {
+            breaker.onSuccess();
+            breaker.onSuccess();
+            breaker.onFailure();
+        }
+
+        // then
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void shouldLetSingleProbeThroughAfterOpenDuration() {
+        // given
+        open();
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+
+        // when
+        var probe = breaker.tryAcquire();
+        var concurrent = breaker.tryAcquire();
+
+        // then
+        assertThat(probe).isTrue();
+        assertThat(concurrent).isFalse();
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    void shouldCloseOnSuccessfulProbeAndReopenOnFailedOne() {
+        // given
+        open();
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        breaker.tryAcquire();
+
+        // when
+        breaker.onFailure();
+
+        // then
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // when
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        breaker.tryAcquire();
+        breaker.onSuccess();
+
+        // then
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private void open() {
+        for (int i = 0; i < 10; i++) {
+            breaker.onFailure();
+        }
+    }
+}
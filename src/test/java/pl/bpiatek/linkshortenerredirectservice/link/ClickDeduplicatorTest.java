@@ -0,0 +1,128 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClickDeduplicatorTest {
+
+    private static final String AGENT = "Mozilla/5.0 (X11; Linux x86_64) Firefox/128.0";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void shouldSuppressRepeatsOfTheSameClick() {
+        // given
+        var filter = RotatingBloomFilter.sized(3, 10_000, 0.001);
+        var deduplicator = deduplicator(filter, ClickDeduplicator.Mode.SUPPRESS);
+
+        // when
+        var first = deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+        var repeat = deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+        var otherClient = deduplicator.admit("aB5xZ1", "203.0.113.8", AGENT);
+        var otherLink = deduplicator.admit("aB5xZ2", "203.0.113.7", AGENT);
+
+        // then
+        assertThat(first).isZero();
+        assertThat(repeat).isEqualTo(ClickDeduplicator.DUPLICATE);
+        assertThat(otherClient).isZero();
+        assertThat(otherLink).isZero();
+        assertThat(meterRegistry.get("redirect.clicks.duplicates").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldForgetClicksOnceTheWindowHasPassed() {
+        // given
+        var filter = RotatingBloomFilter.sized(3, 10_000, 0.001);
+        var deduplicator = deduplicator(filter, ClickDeduplicator.Mode.SUPPRESS);
+        deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+
+        // when
+        filter.rotate();
+        var withinWindow = deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+        filter.rotate();
+        filter.rotate();
+        var afterWindow = deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+
+        // then
+        assertThat(withinWindow).isEqualTo(ClickDeduplicator.DUPLICATE);
+        assertThat(afterWindow).isZero();
+    }
+
+    @Test
+    void shouldReportCollapsedRepeatsWithNextPublishedClick() {
+        // given
+        var filter = RotatingBloomFilter.sized(2, 10_000, 0.001);
+        var deduplicator = deduplicator(filter, ClickDeduplicator.Mode.COLLAPSE);
+        deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+        for (int i = 0; i < 4; i++) {
+            deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+        }
+
+        // when
+        filter.rotate();
+        filter.rotate();
+        var repeats = deduplicator.admit("aB5xZ1", "203.0.113.7", AGENT);
+
+        // then
+        assertThat(repeats).isEqualTo(4);
+    }
+
+    @Test
+    void shouldFlushCollapsedRepeatsOfKeysThatLeftTheWindowWithoutRecurring() {
+        // given
+        var filter = RotatingBloomFilter.sized(2, 10_000, 0.001);
+        var deduplicator = deduplicator(filter, ClickDeduplicator.Mode.COLLAPSE);
+        var flushed = new ArrayList<String>();
+        deduplicator.onExpiredRepeats((topic, shortUrl, ipAddress, userAgent, repeats) ->
+                flushed.add(topic + " " + shortUrl + " " + ipAddress + " x" + repeats));
+        deduplicator.admit("link-clicks", "aB5xZ1", "203.0.113.7", AGENT);
+        for (int i = 0; i < 3; i++) {
+            deduplicator.admit("link-clicks", "aB5xZ1", "203.0.113.7", AGENT);
+        }
+
+        // when
+        deduplicator.rotate();
+        var stillInWindow = List.copyOf(flushed);
+        deduplicator.rotate();
+
+        // then
+        assertThat(stillInWindow).isEmpty();
+        assertThat(flushed).containsExactly("link-clicks aB5xZ1 203.0.113.7 x3");
+        assertThat(deduplicator.admit("link-clicks", "aB5xZ1", "203.0.113.7", AGENT)).isZero();
+    }
+
+    @Test
+    void shouldKeepFalsePositivesNearConfiguredRate() {
+        // given
+        var filter = RotatingBloomFilter.sized(3, 50_000, 0.01);
+        var deduplicator = deduplicator(filter, ClickDeduplicator.Mode.SUPPRESS);
+
+        // when
+        var suppressed = 0;
+        for (int i = 0; i < 50_000; i++) {
+            suppressed += deduplicator.admit("link" + i, "198.51.100." + (i % 256), AGENT) == ClickDeduplicator.DUPLICATE ? 1 : 0;
+        }
+
+        // then
+        assertThat(suppressed).isLessThan(500);
+        assertThat(filter.memoryBytes()).isLessThanOrEqualTo(3 * 128 * 1024);
+    }
+
+    @Test
+    void shouldAdmitEverythingWhenDisabled() {
+        // when / then
+        assertThat(ClickDeduplicator.disabled().admit("aB5xZ1", "203.0.113.7", AGENT)).isZero();
+        assertThat(ClickDeduplicator.disabled().admit("aB5xZ1", "203.0.113.7", AGENT)).isZero();
+    }
+
+    private ClickDeduplicator deduplicator(RotatingBloomFilter filter, ClickDeduplicator.Mode mode) {
+        //  A zero window disables the rotation schedule; tests rotate by hand
+        return new ClickDeduplicator(filter, 3, Duration.ZERO, mode, 1024, meterRegistry);
+    }
+}
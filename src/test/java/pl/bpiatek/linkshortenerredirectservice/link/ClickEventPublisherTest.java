@@ -2,6 +2,7 @@ package pl.bpiatek.linkshortenerredirectservice.link;
 
 import com.google.protobuf.Timestamp;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,11 +14,14 @@ import org.springframework.kafka.core.KafkaTemplate;
 import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import static java.nio.charset.StandardCharsets.*;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.SoftAssertions.assertSoftly;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
@@ -82,4 +86,39 @@ class ClickEventPublisherTest {
                     .isEqualTo("redirect-service");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldAttachSamplingWeightWhenSamplingIsEnabled() {
+        // given
+        var sampler = new ClickSampler(0.25, () -> 1.0, 0.5, Duration.ofMillis(250), 1000,
+                List.of("always"), List.of(), Duration.ZERO, new SimpleMeterRegistry());
+        var publisher = new ClickEventPublisher(kafkaTemplate, TEST_TOPIC, Clock.systemUTC(), sampler,
+                ClickDeduplicator.disabled());
+        given(kafkaTemplate.send(any(ProducerRecord.class)))
+                .willReturn(CompletableFuture.completedFuture(null));
+
+        // when
+        publisher.publishSafe("always", "123.123.123.123", "agent");
+
+        // then
+        verify(kafkaTemplate, timeout(1000)).send(producerRecordCaptor.capture());
+        var weight = producerRecordCaptor.getValue().headers().lastHeader(ClickEventPublisher.SAMPLE_WEIGHT_HEADER);
+        assertThat(new String(weight.value(), UTF_8)).isEqualTo("1.0");
+    }
+
+    @Test
+    void shouldAttachCallerSampleWeightWhenSamplerIsDisabled() {
+        // given
+        given(kafkaTemplate.send(any(ProducerRecord.class)))
+                .willReturn(CompletableFuture.completedFuture(null));
+
+        // when
+        clickEventPublisher.publishSafe("crawled1", "123.123.123.123", "Googlebot/2.1", 100.0);
+
+        // then
+        verify(kafkaTemplate, timeout(1000)).send(producerRecordCaptor.capture());
+        assertThat(producerRecordCaptor.getValue().topic()).isEqualTo(TEST_TOPIC);
+        var weight = producerRecordCaptor.getValue().headers().lastHeader(ClickEventPublisher.SAMPLE_WEIGHT_HEADER);
+        assertThat(new String(weight.value(), UTF_8)).isEqualTo("100.0");
+    }
+}
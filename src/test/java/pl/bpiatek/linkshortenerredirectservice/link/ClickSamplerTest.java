@@ -0,0 +1,106 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ClickSamplerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicReference<Double> bufferUsage = new AtomicReference<>(0.0);
+
+    @Test
+    void shouldLowerRateUnderBackpressureAndRecoverAfterwards() {
+        // given
+        var sampler = sampler(List.of(), List.of());
+
+        // when
+        bufferUsage.set(0.9);
+        for (int i = 0; i < 5; i++) {
+            sampler.adjust();
+        }
+        var underPressure = sampler.rate();
+        bufferUsage.set(0.1);
+        for (int i = 0; i < 20; i++) {
+            sampler.adjust();
+        }
+
+        // then
+        assertThat(underPressure).isCloseTo(Math.pow(0.7, 5), within(1e-9));
+        assertThat(sampler.rate()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("redirect.clicks.sampling.rate").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldReactToSlowSendsAndInFlightBuildUp() {
+        // given
+        var sampler = sampler(List.of(), List.of());
+
+        // when
+        sampler.onSendStarted();
+        sampler.onSendCompleted(Duration.ofSeconds(5).toNanos());
+        sampler.adjust();
+        var afterSlowSend = sampler.rate();
+
+        // then
+        assertThat(afterSlowSend).isLessThan(1.0);
+        assertThat(meterRegistry.get("redirect.clicks.in.flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldKeepWeightedSumUnbiased() {
+        // given
+        var sampler = sampler(List.of(), List.of("aB5xZ1"));
+        bufferUsage.set(1.0);
+        for (int i = 0; i < 4; i++) {
+            sampler.adjust();
+        }
+
+        // when
+        var clicks = 200_000;
+        var estimate = 0.0;
+        var published = 0;
+        for (int i = 0; i < clicks; i++) {
+            var weight = sampler.sample("aB5xZ1");
+            estimate += weight;
+            published += weight > 0 ? 1 : 0;
+        }
+
+        // then
+        assertThat(published).isLessThan(clicks / 3);
+        assertThat(estimate).isCloseTo(clicks, within(clicks * 0.02));
+        assertThat(meterRegistry.get("redirect.clicks.sampling.effective.weight").tag("link", "aB5xZ1").gauge().value())
+                .isCloseTo(1 / sampler.rate(), within(1e-6));
+    }
+
+    @Test
+    void shouldAlwaysKeepOptedInLinks() {
+        // given
+        var sampler = sampler(List.of("campaign"), List.of());
+        bufferUsage.set(1.0);
+        for (int i = 0; i < 20; i++) {
+            sampler.adjust();
+        }
+
+        // when
+        var weights = new double[1000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = sampler.sample("campaign");
+        }
+
+        // then
+        assertThat(sampler.rate()).isEqualTo(0.01);
+        assertThat(weights).containsOnly(1.0);
+    }
+
+    private ClickSampler sampler(List<String> alwaysSampled, List<String> trackedLinks) {
+        return new ClickSampler(0.01, bufferUsage::get, 0.5, Duration.ofMillis(250), 1000,
+                alwaysSampled, trackedLinks, Duration.ZERO, meterRegistry);
+    }
+}
@@ -0,0 +1,112 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrBlock;
+import pl.bpiatek.linkshortenerredirectservice.net.CidrTrie;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientIpExtractorTest {
+
+    private final ClientIpExtractor extractor = new ClientIpExtractor(CidrTrie.of(List.of(
+            CidrBlock.parse("10.0.0.0/8"),
+            CidrBlock.parse("2001:db8:ffff::/48"),
+            CidrBlock.parse("173.245.48.0/20"))));
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "10.0.0.1     | 203.0.113.7                          | 203.0.113.7",
+            "10.0.0.1     | 1.1.1.1, 203.0.113.7, 10.0.0.2       | 203.0.113.7",
+            "10.0.0.1     | 203.0.113.7,173.245.48.5             | 203.0.113.7",
+            "10.0.0.1     | 2001:db8::7, 2001:db8:ffff::1        | 2001:db8::7",
+            "10.0.0.1     | '[2001:db8::7]:443, 10.0.0.3'        | 2001:db8::7",
+            "10.0.0.1     | 203.0.113.7:51234                    | 203.0.113.7",
+            "10.0.0.1     | unknown, 10.0.0.3                    | unknown",
+            "10.0.0.1     | ' , 10.0.0.3 ,'                      | 10.0.0.3",
+            "198.51.100.1 | 203.0.113.7                          | 198.51.100.1"
+    })
+    void shouldReturnFirstUntrustedHopFromTheRight(String remoteAddr, String forwardedFor, String expected) {
+        // given
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+
+        // when
+        var clientIp = extractor.extract(request);
+
+        // then
+        assertThat(clientIp).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldUseCfConnectingIpOnlyWhenEveryHopIsTrusted() {
+        // given
+        var viaTrustedEdge = new MockHttpServletRequest();
+        viaTrustedEdge.setRemoteAddr("173.245.48.5");
+        viaTrustedEdge.addHeader("CF-Connecting-IP", "203.0.113.7");
+        var direct = new MockHttpServletRequest();
+        direct.setRemoteAddr("198.51.100.1");
+        direct.addHeader("CF-Connecting-IP", "203.0.113.7");
+
+        // when
+        var fromEdge = extractor.extract(viaTrustedEdge);
+        var fromDirectPeer = extractor.extract(direct);
+
+        // then
+        assertThat(fromEdge).isEqualTo("203.0.113.7");
+        assertThat(fromDirectPeer).isEqualTo("198.51.100.1");
+    }
+
+    @Test
+    void shouldFallBackToLeftmostHopWhenWholeChainIsTrusted() {
+        // given
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "10.0.0.3, 10.0.0.2");
+
+        // when
+        var clientIp = extractor.extract(request);
+
+        // then
+        assertThat(clientIp).isEqualTo("10.0.0.3");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "198.51.100.1 | ''                                   | ''          | 198.51.100.1",
+            "10.0.0.1     | '[2001:db8::7]:443, 10.0.0.3'        | ''          | 2001:db8::7",
+            "10.0.0.1     | 10.0.0.3, 10.0.0.2                   | ''          | 10.0.0.3",
+            "10.0.0.1     | ''                                   | ''          | 10.0.0.1",
+            "173.245.48.5 | ''                                   | 203.0.113.7 | 203.0.113.7",
+            "10.0.0.1     | unknown, 10.0.0.3                    | ''          | ''"
+    })
+    void shouldLeaveTheClientParsed(String remoteAddr, String forwardedFor, String cfConnectingIp, String expected) {
+        // given
+        var request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (!forwardedFor.isEmpty()) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        if (!cfConnectingIp.isEmpty()) {
+            request.addHeader("CF-Connecting-IP", cfConnectingIp);
+        }
+        var client = new IpAddress();
+        client.parse("192.0.2.99");
+
+        // when
+        extractor.extract(request, client);
+
+        // then
+        var parsed = new IpAddress();
+        assertThat(client.isValid()).isEqualTo(parsed.parse(expected));
+        if (client.isValid()) {
+            assertThat(client.toString()).isEqualTo(parsed.toString());
+        }
+    }
+}
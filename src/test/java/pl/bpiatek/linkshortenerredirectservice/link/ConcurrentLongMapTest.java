@@ -0,0 +1,108 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentLongMapTest {
+
+    @Test
+    void shouldBehaveLikeAHashMapThroughGrowthAndRemoval() {
+        // given
+        var map = new ConcurrentLongMap<String>(16);
+        var expected = new HashMap<Long, String>();
+        var random = new Random(7);
+
+        // when
+        for (int i = 0; i < 100_000; i++) {
+            var key = (long) random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                var value = "v" + i;
+                assertThat(map.put(key, value)).isEqualTo(expected.put(key, value));
+            }
+        }
+
+        // then
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        var visited = new HashMap<Long, String>();
+        map.forEach(visited::put);
+        assertThat(visited).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldCompareValuesByIdentityInConditionalOperations() {
+        // given
+        var map = new ConcurrentLongMap<Object>(16);
+        var token = new Object();
+        map.put(42L, token);
+
+        // when & then
+        assertThat(map.putIfAbsent(42L, "other")).isSameAs(token);
+        assertThat(map.replace(42L, new Object(), "lost")).isFalse();
+        assertThat(map.replace(42L, token, "value")).isTrue();
+        assertThat(map.remove(42L, token)).isFalse();
+        assertThat(map.computeIfAbsent(7L, key -> "computed")).isEqualTo("computed");
+        assertThat(map.get(42L)).isEqualTo("value");
+    }
+
+    @Test
+    void shouldNeverLoseKeysReadDuringConcurrentChurn() throws Exception {
+        // given
+        var map = new ConcurrentLongMap<Long>(64);
+        for (long key = 0; key < 1_000; key++) {
+            map.put(key, key);
+        }
+        var start = new CountDownLatch(1);
+        var misses = new AtomicInteger();
+        var writers = new Thread[2];
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = Thread.ofPlatform().start(() -> {
+                awaitQuietly(start);
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < 200_000; i++) {
+                    var key = 1_000 + random.nextLong(5_000);
+                    if (map.remove(key) == null) {
+                        map.put(key, key);
+                    }
+                }
+            });
+        }
+
+        // when
+        var reader = Thread.ofPlatform().start(() -> {
+            awaitQuietly(start);
+            for (int round = 0; round < 200; round++) {
+                for (long key = 0; key < 1_000; key++) {
+                    if (!Long.valueOf(key).equals(map.get(key))) {
+                        misses.incrementAndGet();
+                    }
+                }
+            }
+        });
+        start.countDown();
+        reader.join();
+        for (var writer : writers) {
+            writer.join();
+        }
+
+        // then
+        assertThat(misses).hasValue(0);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
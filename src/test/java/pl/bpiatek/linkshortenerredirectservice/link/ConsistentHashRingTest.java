@@ -0,0 +1,65 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    void shouldSpreadKeysEvenlyAcrossNodes() {
+        // given
+        var ring = new ConsistentHashRing<>(List.of("redis-a:6379", "redis-b:6379", "redis-c:6379", "redis-d:6379"), Function.identity(), 160);
+
+        // when
+        var counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.nodeFor("link:" + Integer.toString(i, 36)), 1, Integer::sum);
+        }
+
+        // then
+        assertThat(counts).hasSize(4);
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 4 * 80 / 100, KEYS / 4 * 120 / 100));
+    }
+
+    @Test
+    void shouldOnlyMoveKeysToTheAddedNode() {
+        // given
+        var before = new ConsistentHashRing<>(List.of("redis-a:6379", "redis-b:6379", "redis-c:6379"), Function.identity(), 160);
+        var after = new ConsistentHashRing<>(List.of("redis-a:6379", "redis-b:6379", "redis-c:6379", "redis-d:6379"), Function.identity(), 160);
+
+        // when
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            var key = "link:" + Integer.toString(i, 36);
+            var oldOwner = before.nodeFor(key);
+            var newOwner = after.nodeFor(key);
+            if (!oldOwner.equals(newOwner)) {
+                moved++;
+                assertThat(newOwner).isEqualTo("redis-d:6379");
+            }
+        }
+
+        // then
+        assertThat(moved).isBetween(KEYS / 4 * 80 / 100, KEYS / 4 * 120 / 100);
+    }
+
+    @Test
+    void shouldRouteIndependentlyOfNodeOrder() {
+        // given
+        var ring = new ConsistentHashRing<>(List.of("redis-a:6379", "redis-b:6379"), Function.identity(), 160);
+        var reordered = new ConsistentHashRing<>(List.of("redis-b:6379", "redis-a:6379"), Function.identity(), 160);
+
+        // then
+        for (int i = 0; i < 1_000; i++) {
+            var key = "link:" + i;
+            assertThat(reordered.nodeFor(key)).isEqualTo(ring.nodeFor(key));
+        }
+    }
+}
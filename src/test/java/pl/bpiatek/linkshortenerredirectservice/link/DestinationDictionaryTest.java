@@ -0,0 +1,79 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DestinationDictionaryTest {
+
+    private final DestinationDictionary dictionary = new DestinationDictionary();
+
+    @Test
+    void shouldStoreIdenticalUrlsOnce() {
+        // given
+        var url = "https://example.com/products/item-42";
+
+        // when
+        var first = dictionary.acquire(url);
+        var second = dictionary.acquire(new String(url.toCharArray()));
+
+        // then
+        assertThat(second).isSameAs(first);
+        assertThat(dictionary.size()).isEqualTo(1);
+        assertThat(dictionary.storedBytes()).isEqualTo(url.length());
+    }
+
+    @Test
+    void shouldShareFrontOfUrlsDifferingInQuery() {
+        // given
+        var front = "https://example.com/landing/spring?";
+        var email = "utm_source=newsletter&utm_medium=email";
+        var social = "utm_source=linkedin&utm_medium=social";
+
+        // when
+        var first = dictionary.acquire(front + email);
+        var second = dictionary.acquire(front + social);
+
+        // then
+        assertThat(first.url()).isEqualTo(front + email);
+        assertThat(second.url()).isEqualTo(front + social);
+        assertThat(dictionary.size()).isEqualTo(2);
+        assertThat(dictionary.storedBytes()).isEqualTo(front.length() + email.length() + social.length());
+    }
+
+    @Test
+    void shouldFreeDestinationWithItsLastReference() {
+        // given
+        var shared = dictionary.acquire("https://example.com/a?x=1");
+        dictionary.acquire("https://example.com/a?x=1");
+        var other = dictionary.acquire("https://example.com/a?x=2");
+
+        // when
+        dictionary.release(shared);
+
+        // then
+        assertThat(dictionary.size()).isEqualTo(2);
+
+        // when
+        dictionary.release(shared);
+        dictionary.release(other);
+
+        // then
+        assertThat(dictionary.size()).isZero();
+        assertThat(dictionary.storedBytes()).isZero();
+    }
+
+    @Test
+    void shouldRoundTripNonAsciiUrls() {
+        // given
+        var url = "https://przykład.pl/zażółć/gęślą?jaźń=ü#sekcja";
+
+        // when
+        var destination = dictionary.acquire(url);
+
+        // then
+        assertThat(destination.url()).isEqualTo(url);
+        assertThat(dictionary.storedBytes()).isEqualTo(url.getBytes(UTF_8).length);
+    }
+}
@@ -0,0 +1,98 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.bpiatek.linkshortenerredirectservice.perf.FakeStringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.perf.FaultInjector;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgedCacheReaderTest {
+
+    private static final String JSON = "{\"longUrl\":\"https://example.com\",\"isActive\":true,\"updatedAtMicros\":1,\"isDeleted\":false}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FakeStringRedisTemplate primary = new FakeStringRedisTemplate(FaultInjector.none());
+    private final FakeStringRedisTemplate replica = new FakeStringRedisTemplate(FaultInjector.none());
+    private final LatencyTracker primaryLatency = new LatencyTracker(1024, 0.95, Duration.ofMillis(1).toNanos());
+    private HedgedCacheReader reader;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    void shouldLetReplicaWinWhenPrimaryStalls() {
+        // given
+        reader = reader(1.0);
+        seed("abc");
+        warmUp(Duration.ofMillis(1));
+        primary.faults().configure(Duration.ofMillis(500), Duration.ZERO, 0.0);
+
+        // when
+        var start = System.nanoTime();
+        var result = reader.read("abc");
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // then
+        assertThat(result).isEqualTo(JSON);
+        assertThat(elapsed).isLessThan(Duration.ofMillis(250));
+        assertThat(meterRegistry.get("redirect.cache.hedge.sent").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.cache.hedge.wins").tag("winner", "replica").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeFastPrimaryReads() {
+        // given
+        reader = reader(1.0);
+        seed("abc");
+        warmUp(Duration.ofMillis(20));
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            reader.read("abc");
+        }
+
+        // then
+        assertThat(meterRegistry.get("redirect.cache.hedge.sent").counter().count()).isZero();
+    }
+
+    @Test
+    void shouldCapHedgesAtExtraLoadBudget() {
+        // given
+        reader = reader(0.05);
+        seed("abc");
+        warmUp(Duration.ofMillis(1));
+        primary.faults().configure(Duration.ofMillis(20), Duration.ZERO, 0.0);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            assertThat(reader.read("abc")).isEqualTo(JSON);
+        }
+
+        // then
+        assertThat(meterRegistry.get("redirect.cache.hedge.sent").counter().count()).isLessThanOrEqualTo(5);
+        assertThat(meterRegistry.get("redirect.cache.hedge.budget.exhausted").counter().count()).isGreaterThanOrEqualTo(90);
+        assertThat(replica.faults().calls()).isLessThanOrEqualTo(5);
+    }
+
+    private HedgedCacheReader reader(double maxExtraLoad) {
+        return new HedgedCacheReader(primary, replica, LinkKeyLayout.flat(), primaryLatency,
+                new HedgeBudget(maxExtraLoad, 10), null, meterRegistry);
+    }
+
+    private void seed(String shortUrl) {
+        primary.store().put("link:" + shortUrl, JSON);
+        replica.store().put("link:" + shortUrl, JSON);
+    }
+
+    private void warmUp(Duration typicalLatency) {
+        for (int i = 0; i < 128; i++) {
+            primaryLatency.record(typicalLatency.toNanos());
+        }
+    }
+}
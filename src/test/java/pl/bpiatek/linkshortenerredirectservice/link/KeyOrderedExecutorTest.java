@@ -0,0 +1,78 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyOrderedExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final KeyOrderedExecutor executor = new KeyOrderedExecutor("test", 4, 64, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void shouldPreserveSubmissionOrderPerKey() throws Exception {
+        // given
+        Map<String, List<Integer>> applied = new ConcurrentHashMap<>();
+        var keys = List.of("a", "b", "c", "d", "e", "f", "g", "h");
+
+        // when
+        for (int sequence = 0; sequence < 200; sequence++) {
+            for (var key : keys) {
+                var value = sequence;
+                executor.submit(key, () -> {
+                    if (ThreadLocalRandom.current().nextInt(10) == 0) {
+                        Thread.yield();
+                    }
+                    applied.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(value);
+                });
+            }
+        }
+        executor.close();
+
+        // then
+        assertThat(executor.awaitTermination(Duration.ofSeconds(10))).isTrue();
+        assertThat(applied).hasSize(keys.size());
+        applied.values().forEach(values -> assertThat(values).isSorted().hasSize(200));
+    }
+
+    @Test
+    void shouldReportInFlightTasks() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+
+        // when
+        executor.submit("blocked", () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // then
+        assertThat(executor.inFlight()).isEqualTo(1);
+        assertThat(meterRegistry.get("test.in.flight").gauge().value()).isEqualTo(1.0);
+
+        release.countDown();
+        executor.close();
+        assertThat(executor.awaitTermination(Duration.ofSeconds(5))).isTrue();
+        assertThat(executor.inFlight()).isZero();
+    }
+}
@@ -0,0 +1,106 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.Timestamp;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkCreated;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkLifecycleEvent;
+import pl.bpiatek.contracts.link.LinkLifecycleEventProto.LinkUpdated;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@SpringBootTest(properties = {
+        "link.lifecycle.parallel.enabled=true",
+        "link.lifecycle.parallel.lanes=4"
+})
+@ActiveProfiles("test")
+class KeyOrderedLifecycleListenerIT implements WithFullInfrastructure {
+
+    private static final String REDIS_KEY_PREFIX = "link:";
+
+    @Autowired
+    private KafkaTemplate<String, LinkLifecycleEvent> kafkaTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${topic.link.lifecycle}")
+    private String topicName;
+
+    @DynamicPropertySource
+    static void kafkaProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.kafka.bootstrap-servers", redpanda::getBootstrapServers);
+    }
+
+    @AfterEach
+    void cleanup() {
+        redisTemplate.getConnectionFactory().getConnection().serverCommands().flushAll();
+    }
+
+    @Test
+    void shouldApplyEventsForManyLinksConcurrently() {
+        // when
+        for (int i = 0; i < 50; i++) {
+            var shortUrl = "parallel" + i;
+            kafkaTemplate.send(topicName, shortUrl, created(shortUrl, "https://example.com/" + i, 1_000 + i));
+        }
+
+        // then
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            for (int i = 0; i < 50; i++) {
+                assertThat(redisTemplate.hasKey(REDIS_KEY_PREFIX + "parallel" + i)).isTrue();
+            }
+        });
+    }
+
+    @Test
+    void shouldApplyEventsForOneLinkInOrder() {
+        // given
+        var shortUrl = "ordered1";
+
+        // when
+        kafkaTemplate.send(topicName, shortUrl, created(shortUrl, "https://example.com/v0", 1_000));
+        for (int version = 1; version <= 20; version++) {
+            var payload = LinkUpdated.newBuilder()
+                    .setShortUrl(shortUrl)
+                    .setLongUrl("https://example.com/v" + version)
+                    .setIsActive(true)
+                    .setUpdatedAt(Timestamp.newBuilder().setSeconds(1_000 + version).build())
+                    .build();
+            kafkaTemplate.send(topicName, shortUrl, LinkLifecycleEvent.newBuilder().setLinkUpdated(payload).build());
+        }
+
+        // then
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            var cachedValue = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + shortUrl);
+            assertThat(cachedValue).isNotNull();
+            assertThat(objectMapper.readValue(cachedValue, RedirectInfo.class).longUrl())
+                    .isEqualTo("https://example.com/v20");
+        });
+    }
+
+    private LinkLifecycleEvent created(String shortUrl, String longUrl, long seconds) {
+        var payload = LinkCreated.newBuilder()
+                .setShortUrl(shortUrl)
+                .setLongUrl(longUrl)
+                .setIsActive(true)
+                .setCreatedAt(Timestamp.newBuilder().setSeconds(seconds).build())
+                .build();
+        return LinkLifecycleEvent.newBuilder().setLinkCreated(payload).build();
+    }
+}
@@ -0,0 +1,89 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatestStateCollectorTest {
+
+    @TempDir
+    private Path spillDirectory;
+
+    @Test
+    void shouldKeepNewestUpsertPerShortUrl() {
+        // given
+        try (var collector = new LatestStateCollector(1_000, spillDirectory)) {
+            collector.accept("a", upsert("https://example.com/1", 100));
+            collector.accept("a", upsert("https://example.com/3", 300));
+            collector.accept("a", upsert("https://example.com/2", 200));
+
+            // when
+            var result = collect(collector);
+
+            // then
+            assertThat(result).containsOnlyKeys("a");
+            assertThat(result.get("a").longUrl()).isEqualTo("https://example.com/3");
+        }
+    }
+
+    @Test
+    void shouldLetTombstonesWinLikeTheLiveConsumer() {
+        // given
+        try (var collector = new LatestStateCollector(1_000, spillDirectory)) {
+            collector.accept("a", upsert("https://example.com/1", 500));
+            collector.accept("a", tombstone(100));
+
+            // when
+            var result = collect(collector);
+
+            // then
+            assertThat(result.get("a").isDeleted()).isTrue();
+        }
+    }
+
+    @Test
+    void shouldMergeSpilledRunsInLogOrder() throws Exception {
+        // given
+        try (var collector = new LatestStateCollector(2, spillDirectory)) {
+            collector.accept("a", upsert("https://example.com/a1", 100));
+            collector.accept("b", upsert("https://example.com/b1", 100));
+            collector.accept("a", upsert("https://example.com/a2", 200));
+            collector.accept("c", upsert("https://example.com/c1", 100));
+            collector.accept("b", tombstone(50));
+            collector.accept("c", upsert("https://example.com/c0", 50));
+
+            // when
+            var result = collect(collector);
+
+            // then
+            assertThat(collector.spilledRuns()).isGreaterThan(1);
+            assertThat(result).containsOnlyKeys("a", "b", "c");
+            assertThat(result.get("a").longUrl()).isEqualTo("https://example.com/a2");
+            assertThat(result.get("b").isDeleted()).isTrue();
+            assertThat(result.get("c").longUrl()).isEqualTo("https://example.com/c1");
+        }
+        try (var leftovers = Files.list(spillDirectory)) {
+            assertThat(leftovers).isEmpty();
+        }
+    }
+
+    private Map<String, RedirectInfo> collect(LatestStateCollector collector) {
+        var result = new HashMap<String, RedirectInfo>();
+        collector.forEachLatest(result::put);
+        return result;
+    }
+
+    private static RedirectInfo upsert(String longUrl, long micros) {
+        return new RedirectInfo(longUrl, true, micros, false);
+    }
+
+    private static RedirectInfo tombstone(long micros) {
+        return new RedirectInfo(null, false, micros, true);
+    }
+}
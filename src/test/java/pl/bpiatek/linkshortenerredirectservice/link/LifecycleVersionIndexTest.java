@@ -0,0 +1,149 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import io.lettuce.core.event.connection.ReconnectAttemptEvent;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class LifecycleVersionIndexTest {
+
+    private static final Duration MAX_AGE = Duration.ofHours(24);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Clock clock = mock(Clock.class);
+    private final LifecycleVersionIndex index = new LifecycleVersionIndex(1024, MAX_AGE, clock, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        index.close();
+    }
+
+    @Test
+    void shouldSkipUpsertsRedisWouldRejectAsStale() {
+        // given
+        index.applied("aB5xZ1", 2_000L, false);
+
+        // when & then
+        assertThat(index.skipUpsert("aB5xZ1", 1_000L)).isTrue();
+        assertThat(index.skipUpsert("aB5xZ1", 2_000L)).isTrue();
+        assertThat(index.skipUpsert("aB5xZ1", 3_000L)).isFalse();
+        assertThat(index.skipUpsert("unknown1", 1_000L)).isFalse();
+    }
+
+    @Test
+    void shouldSkipOnlyRepeatedDeletions() {
+        // given
+        index.applied("updated1", 2_000L, false);
+        index.applied("deleted1", 2_000L, true);
+
+        // when & then
+        assertThat(index.skipDelete("updated1", 1_000L)).isFalse();
+        assertThat(index.skipDelete("deleted1", 2_000L)).isTrue();
+        assertThat(index.skipUpsert("deleted1", 1_500L)).isTrue();
+    }
+
+    @Test
+    void shouldNeverLowerAnObservedVersion() {
+        // given
+        index.applied("aB5xZ1", 5_000L, false);
+
+        // when
+        index.observed("aB5xZ1", 1_000L, false);
+
+        // then
+        assertThat(index.skipUpsert("aB5xZ1", 4_000L)).isTrue();
+    }
+
+    @Test
+    void shouldSendEverythingItCannotIndex() {
+        // given
+        var longCode = "aB5xZ1aB5xZ1";
+        index.applied(longCode, 2_000L, false);
+
+        // when & then
+        assertThat(index.knows(longCode)).isFalse();
+        assertThat(index.skipUpsert(longCode, 1_000L)).isFalse();
+        assertThat(LifecycleVersionIndex.disabled().skipUpsert("aB5xZ1", 0L)).isFalse();
+    }
+
+    @Test
+    void shouldForgetEverythingWhenCleared() {
+        // given
+        index.applied("aB5xZ1", 2_000L, false);
+
+        // when
+        index.clear();
+
+        // then
+        assertThat(index.skipUpsert("aB5xZ1", 1_000L)).isFalse();
+    }
+
+    @Test
+    void shouldSendAReplayedEventOnceTheKeyMayHaveExpiredFromRedis() {
+        // given
+        given(clock.millis()).willReturn(0L);
+        index.applied("deleted1", 2_000L, true);
+        index.observed("stored1", 2_000L, false);
+
+        // when
+        given(clock.millis()).willReturn(MAX_AGE.toMillis() + 1);
+
+        // then
+        assertThat(index.skipDelete("deleted1", 2_000L)).isFalse();
+        assertThat(index.skipUpsert("deleted1", 1_000L)).isFalse();
+        assertThat(index.skipUpsert("stored1", 1_000L)).isFalse();
+
+        // when
+        index.observed("stored1", 1_000L, false);
+
+        // then
+        assertThat(index.skipUpsert("stored1", 1_000L)).isTrue();
+        assertThat(index.skipUpsert("stored1", 1_500L)).isFalse();
+    }
+
+    @Test
+    void shouldForgetEverythingWhenRedisStartsReconnecting() {
+        // given
+        var resources = DefaultClientResources.create();
+        index.forgetOnReconnect(resources);
+        index.applied("aB5xZ1", 2_000L, false);
+
+        try {
+            // when
+            resources.eventBus().publish(new ReconnectAttemptEvent(
+                    new InetSocketAddress(0), InetSocketAddress.createUnresolved("redis", 6379), 1));
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                    assertThat(index.knows("aB5xZ1")).isFalse());
+        } finally {
+            resources.shutdown();
+        }
+    }
+
+    @Test
+    void shouldReportSkipRatio() {
+        // given
+        index.applied("aB5xZ1", 2_000L, false);
+
+        // when
+        index.skipUpsert("aB5xZ1", 1_000L);
+        index.skipUpsert("aB5xZ1", 1_500L);
+        index.skipUpsert("aB5xZ1", 3_000L);
+        index.skipUpsert("other1", 3_000L);
+
+        // then
+        assertThat(meterRegistry.get("redirect.lifecycle.version.index").tag("result", "skipped").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("redirect.lifecycle.version.index.skip.ratio").gauge().value()).isEqualTo(0.5);
+    }
+}
@@ -0,0 +1,126 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LinkKeyLayoutIT implements WithRedis {
+
+    private static final int LINKS = 50_000;
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().setConfig("hash-max-listpack-entries", "256");
+            connection.serverCommands().setConfig("hash-max-listpack-value", "1024");
+            return null;
+        });
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    void shouldSkipStaleUpsertInBucketedLayout() throws Exception {
+        // given
+        var layout = LinkKeyLayout.hashBuckets(16);
+        layout.upsert(redisTemplate, "abc", json(new RedirectInfo("https://new.example.com", true, 2_000L, false)), 2_000L);
+
+        // when
+        var applied = layout.upsert(redisTemplate, "abc", json(new RedirectInfo("https://old.example.com", true, 1_000L, false)), 1_000L);
+
+        // then
+        assertThat(applied).isFalse();
+        assertThat(objectMapper.readValue(layout.read(redisTemplate, "abc"), RedirectInfo.class).longUrl())
+                .isEqualTo("https://new.example.com");
+    }
+
+    @Test
+    void shouldExpireOnlyTheTombstonedFieldInBucketedLayout() throws Exception {
+        // given
+        var layout = LinkKeyLayout.hashBuckets(1);
+        layout.upsert(redisTemplate, "live", json(new RedirectInfo("https://example.com", true, 1_000L, false)), 1_000L);
+
+        // when
+        layout.writeTombstone(redisTemplate, "gone", json(new RedirectInfo(null, false, 2_000L, true)), Duration.ofHours(24));
+
+        // then
+        var key = layout.redisKey("gone").getBytes(UTF_8);
+        var ttls = redisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("HTTL", key,
+                "FIELDS".getBytes(UTF_8), "2".getBytes(UTF_8), "gone".getBytes(UTF_8), "live".getBytes(UTF_8)));
+        assertThat(ttls).asInstanceOf(InstanceOfAssertFactories.LIST).satisfiesExactly(
+                gone -> assertThat((Long) gone).isPositive(),
+                live -> assertThat((Long) live).isEqualTo(-1L));
+        assertThat(layout.read(redisTemplate, "live")).isNotNull();
+    }
+
+    @Test
+    void shouldUseLessMemoryWithHashBuckets() throws Exception {
+        // given
+        long flatBytes = usedMemoryAfterLoading(LinkKeyLayout.flat());
+        long bucketedBytes = usedMemoryAfterLoading(LinkKeyLayout.hashBuckets(LINKS / 100));
+
+        // then
+        System.out.printf("%d links: flat %d bytes (%.1f/link), hash-buckets %d bytes (%.1f/link)%n",
+                LINKS, flatBytes, (double) flatBytes / LINKS, bucketedBytes, (double) bucketedBytes / LINKS);
+        assertThat(bucketedBytes).isLessThan(flatBytes * 3 / 4);
+    }
+
+    private long usedMemoryAfterLoading(LinkKeyLayout layout) throws Exception {
+        tearDown();
+        long baseline = usedMemory();
+        var payloads = new byte[LINKS][];
+        for (int i = 0; i < LINKS; i++) {
+            payloads[i] = objectMapper.writeValueAsBytes(
+                    new RedirectInfo("https://example.com/articles/" + i + "?utm_source=newsletter", true, 1_700_000_000_000_000L + i, false));
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < LINKS; i++) {
+                layout.stage(connection, Integer.toString(i, 36) + "xYz", payloads[i], 0);
+            }
+            return null;
+        });
+        return usedMemory() - baseline;
+    }
+
+    private long usedMemory() {
+        var info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    private String json(RedirectInfo info) throws Exception {
+        return objectMapper.writeValueAsString(info);
+    }
+}
@@ -0,0 +1,221 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//  Retained heap of a full LocalRedirectCache, with destinations in the DestinationDictionary, against the
+//  layout the cache had before it (one entry per link holding its RedirectInfo and so its own URL String),
+//  and the cost of the decoded copies kept by entries with at least DECODED_MIN_HITS hits. The dataset is
+//  generated from a fixed seed: 40% of links point at 2,000 product pages, 45% are utm-tagged links to 300
+//  landing pages and 15% are unique blog URLs. Every fill gets fresh key and URL Strings, as a Redis read
+//  would, and each figure is the heap used after a full GC with the cache alive minus the same without it.
+//  Excluded from the default build; run with: mvn test -Pload-test -Dtest=LocalRedirectCacheFootprintLoadTest
+//  -DargLine=-XX:+UseSerialGC [-Dload.links=200000] (G1 works too, but its figures drift by a few MB between runs)
+@Tag("load")
+class LocalRedirectCacheFootprintLoadTest {
+
+    private static final double[] HOT_SHARES = {0, 0.01, 0.05, 0.2, 0.5, 1};
+    private static final int RUNS = 3;
+
+    @Test
+    void retainedHeapWithAndWithoutTheDestinationDictionary() {
+        // given
+        var links = Integer.getInteger("load.links", 200_000);
+        var codes = codes(links);
+        var urls = urls(links, new Random(46));
+
+        // when
+        var structure = retained(() -> fill(codes, null));
+        var plainStructure = retained(() -> fillPreDictionary(codes, null));
+        var plain = retained(() -> fillPreDictionary(codes, urls));
+        var hot = new long[HOT_SHARES.length];
+        for (int i = 0; i < HOT_SHARES.length; i++) {
+            var share = HOT_SHARES[i];
+            hot[i] = retained(() -> heat(fill(codes, urls), codes, share));
+        }
+
+        // then
+        var dictionary = fill(codes, urls);
+        var out = System.out;
+        out.printf(Locale.ROOT, "%n=== local cache footprint, %,d links, %,d distinct destinations, %,d distinct URL bytes ===%n",
+                links, dictionary.destinations(), Arrays.stream(urls).distinct().mapToLong(String::length).sum());
+        out.printf(Locale.ROOT, "  entries without destinations  %s before, %s now%n",
+                megabytes(plainStructure), megabytes(structure));
+        out.printf(Locale.ROOT, "  before the dictionary         %s  (destinations %s)%n",
+                megabytes(plain), megabytes(plain - plainStructure));
+        for (int i = 0; i < HOT_SHARES.length; i++) {
+            out.printf(Locale.ROOT, "  dictionary, %5.1f%% hot         %s  (destinations %s, %+.1f%% vs before)%n",
+                    HOT_SHARES[i] * 100, megabytes(hot[i]), megabytes(hot[i] - structure),
+                    100.0 * (hot[i] - plain) / plain);
+        }
+        //  HOT_SHARES ends with every entry hot, so the last run prices one decoded copy
+        var perHotEntry = (double) (hot[hot.length - 1] - hot[0]) / links;
+        out.printf(Locale.ROOT, "  decoded copy per hot entry    %.0f B; the dictionary stops saving past %.1f%% hot%n",
+                perHotEntry, 100.0 * (plain - hot[0]) / perHotEntry / links);
+        assertThat(hot[0]).isLessThan(plain);
+    }
+
+    //  Median over RUNS of the heap the built object keeps reachable
+    private static long retained(Supplier<Object> build) {
+        var runs = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            var before = usedAfterGc();
+            var built = build.get();
+            runs[i] = usedAfterGc() - before;
+            Reference.reachabilityFence(built);
+        }
+        Arrays.sort(runs);
+        return runs[RUNS / 2];
+    }
+
+    private static long usedAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        var used = Long.MAX_VALUE;
+        //  Repeat until a collection frees nothing more, so finalisation and reference processing settle
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            var now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    //  With null urls every link is cached with a null destination: the entries, keys and map alone
+    private static LocalRedirectCache fill(String[] codes, String[] urls) {
+        var cache = new LocalRedirectCache(codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            var url = urls == null ? null : copy(urls[i]);
+            cache.put(copy(codes[i]), new RedirectInfo(url, true, i, false));
+        }
+        return cache;
+    }
+
+    //  Every share-th link is read DECODED_MIN_HITS times, as a hot link would be, and then decoded
+    private static LocalRedirectCache heat(LocalRedirectCache cache, String[] codes, double share) {
+        if (share == 0) {
+            return cache;
+        }
+        var step = 1 / share;
+        for (double i = 0; i < codes.length; i += step) {
+            LocalRedirectCache.Entry entry = null;
+            for (int hit = 0; hit < LocalRedirectCache.DECODED_MIN_HITS; hit++) {
+                entry = cache.get(codes[(int) i]);
+            }
+            entry.info();
+        }
+        return cache;
+    }
+
+    //  With null urls the old entries hold a RedirectInfo without a destination String
+    private static PreDictionaryCache fillPreDictionary(String[] codes, String[] urls) {
+        var cache = new PreDictionaryCache(codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            var url = urls == null ? null : copy(urls[i]);
+            cache.put(copy(codes[i]), new RedirectInfo(url, true, i, false));
+        }
+        return cache;
+    }
+
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%6.1f MB", bytes / 1e6);
+    }
+
+    //  Spread over 6-character codes, as the link service issues them
+    private static String[] codes(int links) {
+        var codes = new String[links];
+        var stride = Math.max(1, ShortCode.pack("zzzzzz") / links - 1);
+        for (int i = 0; i < links; i++) {
+            codes[i] = ShortCode.unpack(ShortCode.pack("100000") + i * stride);
+        }
+        return codes;
+    }
+
+    private static String[] urls(int links, Random random) {
+        var products = new ArrayList<String>();
+        for (int i = 0; i < 2_000; i++) {
+            products.add("https://shop.example.com/products/" + word(random) + "/" + word(random) + "-" + word(random)
+                    + "-" + (100_000 + random.nextInt(900_000)));
+        }
+        var landings = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            landings.add("https://www.example.com/campaigns/" + word(random) + "-" + (2024 + i % 3) + "/" + word(random));
+        }
+        var sources = List.of("newsletter", "facebook", "instagram", "google", "linkedin", "partner", "tiktok", "x");
+        var mediums = List.of("email", "social", "cpc", "display", "referral");
+        var urls = new String[links];
+        for (int i = 0; i < links; i++) {
+            var kind = random.nextInt(100);
+            if (kind < 40) {
+                urls[i] = products.get(random.nextInt(products.size()));
+            } else if (kind < 85) {
+                urls[i] = landings.get(random.nextInt(landings.size()))
+                        + "?utm_source=" + sources.get(random.nextInt(sources.size()))
+                        + "&utm_medium=" + mediums.get(random.nextInt(mediums.size()))
+                        + "&utm_campaign=" + word(random) + "_" + random.nextInt(1_000)
+                        + "&utm_content=variant-" + random.nextInt(50);
+            } else {
+                urls[i] = "https://blog.example.org/" + (2015 + random.nextInt(12)) + "/" + (1 + random.nextInt(12))
+                        + "/" + word(random) + "-" + word(random) + "-" + word(random) + "-" + i;
+            }
+        }
+        return urls;
+    }
+
+    private static String word(Random random) {
+        var letters = new char[4 + random.nextInt(7)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    //  The cache's layout before the dictionary: entries in the same ShortCodeMap and clock queue, each
+    //  holding the RedirectInfo, and with it the destination String, as read from Redis
+    private static final class PreDictionaryCache {
+
+        private final ShortCodeMap<Object> entries;
+        private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+
+        private PreDictionaryCache(int maxEntries) {
+            this.entries = new ShortCodeMap<>(Math.min(maxEntries, 1 << 16));
+        }
+
+        private void put(String shortUrl, RedirectInfo info) {
+            var entry = new Entry(shortUrl, info);
+            entries.put(shortUrl, entry);
+            clock.add(entry);
+        }
+
+        private static final class Entry {
+
+            private final String shortUrl;
+            private final RedirectInfo info;
+            private volatile boolean referenced;
+            private int hits;
+
+            private Entry(String shortUrl, RedirectInfo info) {
+                this.shortUrl = shortUrl;
+                this.info = info;
+            }
+        }
+    }
+}
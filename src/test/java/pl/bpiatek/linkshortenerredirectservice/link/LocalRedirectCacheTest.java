@@ -0,0 +1,159 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalRedirectCacheTest {
+
+    @Test
+    void shouldNotCacheValueWhenInvalidatedDuringFill() {
+        // given
+        var cache = new LocalRedirectCache(10);
+        var token = cache.reserve("abc");
+
+        // when
+        cache.invalidate("abc");
+        var stored = cache.complete("abc", token, info("https://example.com/stale"));
+
+        // then
+        assertThat(stored).isFalse();
+        assertThat(cache.get("abc")).isNull();
+    }
+
+    @Test
+    void shouldRememberKnownMisses() {
+        // given
+        var cache = new LocalRedirectCache(10);
+
+        // when
+        cache.complete("missing", cache.reserve("missing"), null);
+
+        // then
+        assertThat(cache.get("missing")).isNotNull();
+        assertThat(cache.get("missing").info()).isNull();
+    }
+
+    @Test
+    void shouldAllowOnlyOneFillPerLink() {
+        // given
+        var cache = new LocalRedirectCache(10);
+
+        // when
+        var first = cache.reserve("abc");
+        var second = cache.reserve("abc");
+
+        // then
+        assertThat(first).isNotNull();
+        assertThat(second).isNull();
+    }
+
+    @Test
+    void shouldStayBoundedAndKeepRecentlyReadEntries() {
+        // given
+        var cache = new LocalRedirectCache(100);
+        cache.complete("hot", cache.reserve("hot"), info("https://example.com/hot"));
+
+        // when
+        for (int i = 0; i < 1_000; i++) {
+            cache.get("hot");
+            cache.complete("cold" + i, cache.reserve("cold" + i), info("https://example.com/" + i));
+        }
+
+        // then
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.get("hot")).isNotNull();
+    }
+
+    @Test
+    void shouldListHottestLinksFirstWithoutKnownMisses() {
+        // given
+        var cache = new LocalRedirectCache(10);
+        cache.put("warm", info("https://example.com/warm"));
+        cache.put("hot", info("https://example.com/hot"));
+        cache.put("cold", info("https://example.com/cold"));
+        cache.put("missing", null);
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+            cache.get("missing");
+        }
+        cache.get("warm");
+
+        // when
+        var hottest = cache.hottest(2);
+
+        // then
+        assertThat(hottest).extracting(LocalRedirectCache.CachedLink::shortUrl).containsExactly("hot", "warm");
+    }
+
+    @Test
+    void shouldNotCountContainsAsAHit() {
+        // given
+        var cache = new LocalRedirectCache(10);
+        cache.put("abc", info("https://example.com/abc"));
+
+        // when
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.contains("abc")).isTrue();
+        }
+        var entry = cache.get("abc");
+
+        // then
+        assertThat(entry.hits()).isEqualTo(1);
+        assertThat(cache.contains("unknown")).isFalse();
+    }
+
+    @Test
+    void shouldKeepDecodedInfoOnlyWhileTheEntryIsHot() {
+        // given
+        var cache = new LocalRedirectCache(1);
+        cache.put("hot", info("https://example.com/hot"));
+        for (int i = 1; i < LocalRedirectCache.DECODED_MIN_HITS; i++) {
+            cache.get("hot");
+        }
+
+        // when
+        var first = cache.get("hot").info();
+        var second = cache.get("hot").info();
+
+        // then
+        assertThat(second).isSameAs(first);
+
+        // when
+        cache.put("cold", info("https://example.com/cold"));
+        var cooled = cache.get("hot").info();
+
+        // then
+        assertThat(cooled).isEqualTo(first).isNotSameAs(first);
+        assertThat(cache.get("hot").info()).isNotSameAs(cooled);
+    }
+
+    @Test
+    void shouldReleaseDestinationsOfReplacedAndDroppedEntries() {
+        // given
+        var cache = new LocalRedirectCache(10);
+        cache.put("abc", info("https://example.com/old"));
+        cache.put("def", info("https://example.com/shared"));
+        cache.put("ghi", info("https://example.com/shared"));
+
+        // when
+        cache.put("abc", info("https://example.com/new"));
+        cache.invalidate("def");
+
+        // then
+        assertThat(cache.destinations()).isEqualTo(2);
+        assertThat(cache.get("abc").info()).isEqualTo(info("https://example.com/new"));
+        assertThat(cache.get("ghi").info()).isEqualTo(info("https://example.com/shared"));
+
+        // when
+        cache.invalidateAll();
+
+        // then
+        assertThat(cache.destinations()).isZero();
+        assertThat(cache.destinationBytes()).isZero();
+    }
+
+    private static RedirectInfo info(String longUrl) {
+        return new RedirectInfo(longUrl, true, 1_000L, false);
+    }
+}
@@ -0,0 +1,73 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOffsetTrackerTest {
+
+    private final PartitionOffsetTracker tracker = new PartitionOffsetTracker();
+
+    @Test
+    void shouldOnlyCommitUpToTheFirstIncompleteOffset() {
+        // given
+        tracker.dispatched(10);
+        tracker.dispatched(11);
+        tracker.dispatched(12);
+
+        // when
+        tracker.completed(12);
+        tracker.completed(10);
+
+        // then
+        assertThat(tracker.committable()).isEqualTo(11);
+    }
+
+    @Test
+    void shouldCommitPastTheLastDispatchedOffsetWhenEverythingCompleted() {
+        // given
+        tracker.dispatched(10);
+        tracker.dispatched(14);
+
+        // when
+        tracker.completed(14);
+        tracker.completed(10);
+
+        // then
+        assertThat(tracker.committable()).isEqualTo(15);
+    }
+
+    @Test
+    void shouldNotOfferTheSameOffsetTwice() {
+        // given
+        tracker.dispatched(3);
+        tracker.completed(3);
+        tracker.committed(tracker.committable());
+
+        // when & then
+        assertThat(tracker.committable()).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldOfferTheOffsetAgainWhenTheCommitDidNotHappen() {
+        // given
+        tracker.dispatched(3);
+        tracker.completed(3);
+
+        // when
+        tracker.committable();
+
+        // then
+        assertThat(tracker.committable()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldHaveNothingToCommitBeforeTheFirstCompletion() {
+        // given
+        tracker.dispatched(0);
+
+        // when & then
+        assertThat(tracker.committable()).isEqualTo(-1);
+        assertThat(tracker.pending()).isEqualTo(1);
+    }
+}
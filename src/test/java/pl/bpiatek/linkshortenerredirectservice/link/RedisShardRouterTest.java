@@ -0,0 +1,136 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import pl.bpiatek.linkshortenerredirectservice.perf.FakeStringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.perf.FaultInjector;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RedisShardRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, FakeStringRedisTemplate> nodes = new LinkedHashMap<>();
+
+    @Test
+    void shouldReadEachLinkFromItsOwningShard() throws Exception {
+        // given
+        var router = router(List.of("redis-a:6379", "redis-b:6379", "redis-c:6379"), List.of());
+        var repository = repository(router);
+        for (int i = 0; i < 300; i++) {
+            var key = "link:code" + i;
+            nodes.get(router.ownerOf(key).name()).store().put(key, json("https://example.com/" + i));
+        }
+
+        // when / then
+        for (int i = 0; i < 300; i++) {
+            assertThat(repository.findByShortUrl("code" + i)).hasValueSatisfying(info ->
+                    assertThat(info.longUrl()).startsWith("https://example.com/"));
+        }
+        assertThat(nodes.values()).allSatisfy(node -> assertThat(node.store()).isNotEmpty());
+        assertThat(meterRegistry.get("redis.shard.latency").timers()).hasSize(3);
+    }
+
+    @Test
+    void shouldFallBackToPreviousOwnerWhileMigrating() throws Exception {
+        // given
+        var router = router(List.of("redis-a:6379", "redis-b:6379", "redis-c:6379"), List.of("redis-a:6379", "redis-b:6379"));
+        var repository = repository(router);
+        var shortUrl = movedShortUrl(router);
+        nodes.get(previousOwner(router, "link:" + shortUrl)).store().put("link:" + shortUrl, json("https://example.com/old-owner"));
+
+        // when
+        var result = repository.findByShortUrl(shortUrl);
+
+        // then
+        assertThat(result).hasValueSatisfying(info -> assertThat(info.longUrl()).isEqualTo("https://example.com/old-owner"));
+
+        // when
+        router.migrationCompleted();
+
+        // then
+        assertThat(repository.findByShortUrl(shortUrl)).isEmpty();
+    }
+
+    @Test
+    void shouldCountErrorsPerShard() {
+        // given
+        var router = router(List.of("redis-a:6379"), List.of());
+        nodes.get("redis-a:6379").faults().configure(Duration.ZERO, Duration.ZERO, 1.0);
+        var repository = repository(router);
+
+        // when
+        assertThatThrownBy(() -> repository.findByShortUrl("abc")).isInstanceOf(RuntimeException.class);
+
+        // then
+        assertThat(meterRegistry.get("redis.shard.errors").tag("shard", "redis-a:6379").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepReadsAndIngestWritesOnSeparateConnectionsWhenIsolated() {
+        // given
+        var readTemplate = new FakeStringRedisTemplate(FaultInjector.none());
+        var ingestTemplate = new FakeStringRedisTemplate(FaultInjector.none());
+        var shard = RedisShardRouter.Shard.isolated("default", readTemplate, ingestTemplate, meterRegistry);
+        var router = new RedisShardRouter(List.of(shard), List.of(), 1, List.of());
+
+        // when
+        var readWith = router.execute("link:abc", template -> template);
+        var ingestWith = router.executeIngest("link:abc", template -> template);
+
+        // then
+        assertThat(readWith).isSameAs(readTemplate);
+        assertThat(ingestWith).isSameAs(ingestTemplate);
+        assertThat(router.isSharded()).isFalse();
+        assertThat(meterRegistry.get("redis.workload.latency").tag("workload", "read").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redis.workload.latency").tag("workload", "ingest").timer().count()).isEqualTo(1);
+    }
+
+    private RedirectCacheRepository repository(RedisShardRouter router) {
+        return new RedirectCacheRepository(router, objectMapper, LinkKeyLayout.flat(), TrackingRedirectCache.disabled(),
+                BudgetedCacheReader.disabled(), HedgedCacheReader.disabled());
+    }
+
+    private RedisShardRouter router(List<String> current, List<String> previous) {
+        var shards = new LinkedHashMap<String, RedisShardRouter.Shard>();
+        for (var name : current) {
+            shards.put(name, shard(name));
+        }
+        for (var name : previous) {
+            shards.computeIfAbsent(name, this::shard);
+        }
+        return new RedisShardRouter(current.stream().map(shards::get).toList(),
+                previous.stream().map(shards::get).toList(), 160, List.of());
+    }
+
+    private RedisShardRouter.Shard shard(String name) {
+        var template = new FakeStringRedisTemplate(FaultInjector.none());
+        nodes.put(name, template);
+        return RedisShardRouter.Shard.metered(name, template, meterRegistry);
+    }
+
+    private String movedShortUrl(RedisShardRouter router) {
+        for (int i = 0; ; i++) {
+            var key = "link:moved" + i;
+            if (!router.ownerOf(key).name().equals(previousOwner(router, key))) {
+                return "moved" + i;
+            }
+        }
+    }
+
+    private String previousOwner(RedisShardRouter router, String key) {
+        return new ConsistentHashRing<>(router.previousShards(), RedisShardRouter.Shard::name, 160).nodeFor(key).name();
+    }
+
+    private String json(String longUrl) throws Exception {
+        return objectMapper.writeValueAsString(new RedirectInfo(longUrl, true, 1_000L, false));
+    }
+}
@@ -0,0 +1,162 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.HdrHistogram.Recorder;
+import pl.bpiatek.linkshortenerredirectservice.link.DerivedRedisConnections.Workload;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.perf.ConstantArrivalRateClient;
+import pl.bpiatek.linkshortenerredirectservice.perf.LoadReport;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//  Redirect read p99 against a real Redis while lifecycle writers issue back-to-back EVAL upserts, once
+//  with reads and writes multiplexed on one shared connection and once with isolated workload connections.
+//  (Pipelined batches take a dedicated connection either way, so the burst is plain EVALs, as the
+//  lifecycle consumer's lanes send them.) Connections are built as RedisShardConfig builds them, with
+//  the default read and ingest workload settings.
+//  Excluded from the default build; run with: mvn test -Pload-test -Dtest=RedisWorkloadIsolationLoadTest
+//  [-Dload.rate=2000 -Dload.duration.seconds=10 -Dload.ingest.writers=64]
+@Tag("load")
+class RedisWorkloadIsolationLoadTest implements WithRedis {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int KEYS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LinkKeyLayout keyLayout = LinkKeyLayout.flat();
+    private final RedisProperties redisProperties = new RedisProperties();
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    @Test
+    void redirectReadsDuringIngestBurst() throws Exception {
+        // given
+        var rate = Integer.getInteger("load.rate", 2000);
+        var duration = Duration.ofSeconds(Long.getLong("load.duration.seconds", 10));
+        var writers = Integer.getInteger("load.ingest.writers", 64);
+        var shared = new StringRedisTemplate(connectionFactory(Workload.of(redisProperties)));
+        seed(shared);
+        var sharedRouter = RedisShardRouter.single(shared);
+        var isolatedRouter = new RedisShardRouter(List.of(RedisShardRouter.Shard.isolated("default",
+                new StringRedisTemplate(connectionFactory(new Workload(Duration.ofMillis(250), 1))),
+                new StringRedisTemplate(connectionFactory(new Workload(Duration.ofSeconds(5), 64))), meterRegistry)),
+                List.of(), 1, List.of());
+
+        // when
+        var idle = readUnderIngest(sharedRouter, rate, duration, 0);
+        var sharedResult = readUnderIngest(sharedRouter, rate, duration, writers);
+        var isolatedResult = readUnderIngest(isolatedRouter, rate, duration, writers);
+
+        // then
+        LoadReport.writeLatencies("redirect reads, no ingest", idle, System.out);
+        LoadReport.writeLatencies("redirect reads, ingest burst on the shared connection", sharedResult, System.out);
+        LoadReport.writeLatencies("redirect reads, ingest burst on isolated connections", isolatedResult, System.out);
+        assertThat(isolatedResult.errors()).isZero();
+        assertThat(isolatedResult.latencies().getValueAtPercentile(99.0))
+                .isLessThan(sharedResult.latencies().getValueAtPercentile(99.0));
+    }
+
+    //  Open model as in ConstantArrivalRateClient: latency is taken from each read's intended start
+    private ConstantArrivalRateClient.Result readUnderIngest(RedisShardRouter router, int rate, Duration duration,
+                                                             int writers) throws Exception {
+        var recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        var errors = new LongAdder();
+        var hits = new LongAdder();
+        var version = new AtomicLong(System.currentTimeMillis() * 1000);
+        var total = rate * duration.toSeconds();
+        var intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        var behind = 0L;
+
+        try (var ingest = Executors.newVirtualThreadPerTaskExecutor()) {
+            var stop = new AtomicBoolean();
+            for (int i = 0; i < writers; i++) {
+                ingest.submit(() -> {
+                    while (!stop.get()) {
+                        upsert(router, version.incrementAndGet());
+                    }
+                    return null;
+                });
+            }
+            var start = System.nanoTime();
+            try (var readers = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (long i = 0; i < total; i++) {
+                    var intendedStart = start + i * intervalNanos;
+                    var wait = intendedStart - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else if (-wait > intervalNanos) {
+                        behind++;
+                    }
+                    readers.submit(() -> {
+                        var shortUrl = "code" + ThreadLocalRandom.current().nextInt(KEYS);
+                        try {
+                            if (router.execute(keyLayout.redisKey(shortUrl), template -> keyLayout.read(template, shortUrl)) != null) {
+                                hits.increment();
+                            }
+                        } catch (RuntimeException e) {
+                            errors.increment();
+                        } finally {
+                            recorder.recordValue(Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_NANOS));
+                        }
+                    });
+                }
+            }
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+            stop.set(true);
+            var statuses = Map.of(200, hits);
+            return new ConstantArrivalRateClient.Result(recorder.getIntervalHistogram(), statuses, errors.sum(), total,
+                    elapsed, behind);
+        }
+    }
+
+    private void upsert(RedisShardRouter router, long micros) {
+        var shortUrl = "ingest" + ThreadLocalRandom.current().nextInt(KEYS * 10);
+        var json = json("https://example.com/campaign/" + shortUrl
+                + "?utm_source=ingest&utm_medium=bulk&utm_campaign=" + micros, micros);
+        router.executeIngest(keyLayout.redisKey(shortUrl), template -> keyLayout.upsert(template, shortUrl, json, micros));
+    }
+
+    private void seed(StringRedisTemplate template) {
+        for (int i = 0; i < KEYS; i++) {
+            template.opsForValue().set(keyLayout.redisKey("code" + i), json("https://example.com/landing/" + i, 1_000L));
+        }
+    }
+
+    private String json(String longUrl, long version) {
+        try {
+            return objectMapper.writeValueAsString(new RedirectInfo(longUrl, true, version, false));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private LettuceConnectionFactory connectionFactory(Workload workload) {
+        var connectionFactory = DerivedRedisConnections.connectionFactory(redis.getHost(), redis.getMappedPort(6379),
+                0, redisProperties, workload);
+        connectionFactories.add(connectionFactory);
+        return connectionFactory;
+    }
+}
@@ -0,0 +1,113 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class RefreshAheadSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TrackingRedirectCache trackingCache = mock(TrackingRedirectCache.class);
+    private final Clock clock = mock(Clock.class);
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstRefreshReleased = new CountDownLatch(1);
+    private volatile boolean holdFirstRefresh;
+
+    @BeforeEach
+    void setUp() {
+        given(trackingCache.refresh(anyList(), any())).willAnswer(invocation -> {
+            List<String> batch = invocation.getArgument(0);
+            batches.add(List.copyOf(batch));
+            if (holdFirstRefresh && batches.size() == 1) {
+                firstRefreshReleased.await();
+            }
+            return batch.size();
+        });
+    }
+
+    @Test
+    void shouldRefreshOnlyLinksReadAtLeastMinHitsTimes() {
+        // given
+        try (var scheduler = scheduler(2, 10, 0)) {
+
+            // when
+            scheduler.invalidated("cold", 1);
+            scheduler.invalidated("hot", 2);
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(refreshes("loaded")).isEqualTo(1));
+            assertThat(batches).containsExactly(List.of("hot"));
+        }
+    }
+
+    @Test
+    void shouldBatchLinksInvalidatedWhileARefreshIsInFlight() {
+        // given
+        holdFirstRefresh = true;
+        try (var scheduler = scheduler(1, 3, 0)) {
+            scheduler.invalidated("first", 1);
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(batches).hasSize(1));
+
+            // when
+            for (var shortUrl : List.of("b", "c", "d", "e")) {
+                scheduler.invalidated(shortUrl, 1);
+            }
+            scheduler.invalidated("b", 1);
+            firstRefreshReleased.countDown();
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(refreshes("loaded")).isEqualTo(5));
+            assertThat(batches).containsExactly(List.of("first"), List.of("b", "c", "d"), List.of("e"));
+        }
+    }
+
+    @Test
+    void shouldSkipLinksOnceTheReadBudgetIsSpent() {
+        // given
+        given(clock.millis()).willReturn(0L);
+        try (var scheduler = scheduler(1, 1, 2)) {
+
+            // when
+            for (var shortUrl : List.of("a", "b", "c")) {
+                scheduler.invalidated(shortUrl, 1);
+            }
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                    assertThat(refreshes("loaded") + refreshes("throttled")).isEqualTo(3));
+            assertThat(refreshes("loaded")).isEqualTo(2);
+            assertThat(refreshes("throttled")).isEqualTo(1);
+
+            // when
+            given(clock.millis()).willReturn(1_000L);
+            scheduler.invalidated("c", 1);
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(refreshes("loaded")).isEqualTo(3));
+            assertThat(batches).extracting(List::getFirst).containsExactly("a", "b", "c");
+        }
+    }
+
+    private RefreshAheadScheduler scheduler(int minHits, int batchSize, double keysPerSecond) {
+        return new RefreshAheadScheduler(trackingCache, new ObjectMapper(), minHits, batchSize, keysPerSecond, 100,
+                clock, meterRegistry);
+    }
+
+    private double refreshes(String result) {
+        return meterRegistry.get("redirect.local.cache.refreshes").tag("result", result).counter().count();
+    }
+}
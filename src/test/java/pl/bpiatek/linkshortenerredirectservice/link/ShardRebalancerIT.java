@@ -0,0 +1,124 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Testcontainers
+class ShardRebalancerIT {
+
+    @Container
+    static GenericContainer<?> redisA = redis();
+    @Container
+    static GenericContainer<?> redisB = redis();
+    @Container
+    static GenericContainer<?> redisC = redis();
+
+    private static final List<LettuceConnectionFactory> connections = new ArrayList<>();
+    private static final Map<String, StringRedisTemplate> templates = new LinkedHashMap<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void connect() {
+        for (var container : List.of(redisA, redisB, redisC)) {
+            var connectionFactory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(container.getHost(), container.getMappedPort(6379)));
+            connectionFactory.afterPropertiesSet();
+            connections.add(connectionFactory);
+            templates.put(container.getHost() + ":" + container.getMappedPort(6379), new StringRedisTemplate(connectionFactory));
+        }
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connections.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    @Test
+    void shouldMoveOnlyRelocatedLinksAndKeepNewerValuesOnTheNewOwner() throws Exception {
+        // given
+        var names = new ArrayList<>(templates.keySet());
+        var oldTopology = router(names.subList(0, 2), List.of());
+        var layout = LinkKeyLayout.flat();
+        for (int i = 0; i < 2_000; i++) {
+            var shortUrl = "code" + i;
+            var json = json("https://example.com/" + i, 1_000L);
+            oldTopology.execute(layout.redisKey(shortUrl), template -> layout.upsert(template, shortUrl, json, 1_000L));
+        }
+        var tombstoneJson = json(null, 1_000L, true);
+        oldTopology.execute(layout.redisKey("gone"), template -> {
+            layout.writeTombstone(template, "gone", tombstoneJson, Duration.ofHours(1));
+            return null;
+        });
+
+        var newTopology = router(names, names.subList(0, 2));
+        var updatedShortUrl = relocated(newTopology, oldTopology, layout);
+        var newerJson = json("https://example.com/newer", 2_000L);
+        newTopology.execute(layout.redisKey(updatedShortUrl), template -> layout.upsert(template, updatedShortUrl, newerJson, 2_000L));
+
+        // when
+        new ShardRebalancer(newTopology, objectMapper, meterRegistry, true, 100).rebalance();
+
+        // then
+        for (int i = 0; i < 2_000; i++) {
+            var key = layout.redisKey("code" + i);
+            var owner = newTopology.ownerOf(key).name();
+            templates.forEach((name, template) -> assertThat(template.hasKey(key)).isEqualTo(name.equals(owner)));
+        }
+        var updated = newTopology.execute(layout.redisKey(updatedShortUrl), template -> layout.read(template, updatedShortUrl));
+        assertThat(objectMapper.readValue(updated, RedirectInfo.class).longUrl()).isEqualTo("https://example.com/newer");
+        var tombstoneOwner = templates.get(newTopology.ownerOf(layout.redisKey("gone")).name());
+        assertThat(tombstoneOwner.getExpire(layout.redisKey("gone"))).isPositive();
+        assertThat(newTopology.isMigrating()).isFalse();
+        assertThat(meterRegistry.get("redis.shard.rebalance.links").tag("outcome", "moved").counter().count())
+                .isBetween(400.0, 1_000.0);
+    }
+
+    private RedisShardRouter router(List<String> current, List<String> previous) {
+        var shards = new LinkedHashMap<String, RedisShardRouter.Shard>();
+        current.forEach(name -> shards.put(name, RedisShardRouter.Shard.metered(name, templates.get(name), meterRegistry)));
+        previous.forEach(name -> shards.computeIfAbsent(name, key -> RedisShardRouter.Shard.metered(key, templates.get(key), meterRegistry)));
+        return new RedisShardRouter(current.stream().map(shards::get).toList(),
+                previous.stream().map(shards::get).toList(), 160, List.of());
+    }
+
+    private static String relocated(RedisShardRouter newTopology, RedisShardRouter oldTopology, LinkKeyLayout layout) {
+        for (int i = 0; ; i++) {
+            var key = layout.redisKey("code" + i);
+            if (!newTopology.ownerOf(key).name().equals(oldTopology.ownerOf(key).name())) {
+                return "code" + i;
+            }
+        }
+    }
+
+    private String json(String longUrl, long version) throws Exception {
+        return json(longUrl, version, false);
+    }
+
+    private String json(String longUrl, long version, boolean deleted) throws Exception {
+        return objectMapper.writeValueAsString(new RedirectInfo(longUrl, !deleted, version, deleted));
+    }
+
+    private static GenericContainer<?> redis() {
+        return new GenericContainer<>(DockerImageName.parse("redis:8.2.1-alpine")).withExposedPorts(6379);
+    }
+}
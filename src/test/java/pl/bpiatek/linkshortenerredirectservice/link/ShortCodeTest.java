@@ -0,0 +1,60 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShortCodeTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "z", "00", "aB5xZ1", "zzzzzzzzzz", "0000000000", "ZZZZZZZZZZ"})
+    void shouldRoundTripPackableCodes(String code) {
+        // when
+        var packed = ShortCode.pack(code);
+
+        // then
+        assertThat(packed).isPositive();
+        assertThat(ShortCode.unpack(packed)).isEqualTo(code);
+    }
+
+    @Test
+    void shouldKeepCodesDifferingOnlyInLeadingZerosApart() {
+        // given
+        var packed = new HashSet<Long>();
+
+        // when
+        for (var code : new String[]{"1", "01", "001", "0001"}) {
+            packed.add(ShortCode.pack(code));
+        }
+
+        // then
+        assertThat(packed).hasSize(4);
+    }
+
+    @Test
+    void shouldLeaveLongValidCodesUnpacked() {
+        // when & then
+        assertThat(ShortCode.pack("aB5xZ1aB5xZ")).isEqualTo(ShortCode.UNPACKED);
+        assertThat(ShortCode.pack("a".repeat(ShortCode.MAX_LENGTH))).isEqualTo(ShortCode.UNPACKED);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "not_a-code", "aB5 xZ1", "zażółć", "favicon.ico"})
+    void shouldRejectInvalidCodes(String code) {
+        // when & then
+        assertThat(ShortCode.pack(code)).isEqualTo(ShortCode.INVALID);
+        assertThat(ShortCode.isValid(code)).isFalse();
+    }
+
+    @Test
+    void shouldRejectCodesLongerThanTheLimit() {
+        // when & then
+        assertThat(ShortCode.isValid("a".repeat(ShortCode.MAX_LENGTH + 1))).isFalse();
+        assertThatThrownBy(() -> ShortCode.unpack(ShortCode.UNPACKED)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,140 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.sun.management.ThreadMXBean;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+
+//  The tracking-mode counterpart of RedirectAllocationTest: bytes allocated per lookup answered from the
+//  local cache (isCachedLocally() followed by findByShortUrl(), as the controller calls them). The rest
+//  of the redirect path does not depend on the cache mode and is covered there.
+//
+//  Baseline (JDK 21.0.1, default flags, three identical runs of this test):
+//  HIT 96 B, MISS 80 B per lookup; HIT was 344 B before entries kept their decoded RedirectInfo.
+class TrackingRedirectAllocationIT implements WithRedis {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 10_000;
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new ParameterNamesModule())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    private LettuceConnectionFactory connectionFactory;
+    private TrackingRedirectCache trackingCache;
+    private RedirectCacheRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        assumeThat(threads.isThreadAllocatedMemorySupported()).isTrue();
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        var template = new StringRedisTemplate(connectionFactory);
+        template.opsForValue().set("link:aB5xZ1", objectMapper.writeValueAsString(new RedirectInfo(
+                "https://example.com/campaign/spring?utm_source=newsletter&utm_medium=email", true, 1000L, false)));
+
+        var trackingClient = RedisClient.create(RedisURI.create(redis.getHost(), redis.getMappedPort(6379)));
+        trackingClient.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+        trackingCache = new TrackingRedirectCache(trackingClient, 1_000, new SimpleMeterRegistry());
+        repository = new RedirectCacheRepository(RedisShardRouter.single(template), objectMapper, LinkKeyLayout.flat(),
+                trackingCache, BudgetedCacheReader.disabled(), HedgedCacheReader.disabled());
+    }
+
+    @AfterEach
+    void tearDown() {
+        trackingCache.close();
+        new StringRedisTemplate(connectionFactory).execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        connectionFactory.destroy();
+    }
+
+    @ParameterizedTest
+    @EnumSource(LookupCase.class)
+    void shouldStayWithinAllocationBudget(LookupCase lookupCase) throws IOException {
+        // given
+        var budget = budgetFor(lookupCase);
+        repository.findByShortUrl(lookupCase.shortUrl);
+        assertThat(repository.isCachedLocally(lookupCase.shortUrl)).isTrue();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookup(lookupCase);
+        }
+
+        // when
+        var before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            if (lookup(lookupCase) != lookupCase.found) {
+                throw new AssertionError("Unexpected lookup result for " + lookupCase);
+            }
+        }
+        var perLookup = (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED_ITERATIONS;
+
+        // then
+        System.out.printf("allocation tracking %s: %d B/lookup (budget %d B)%n", lookupCase, perLookup, budget);
+        assertThat(perLookup)
+                .as("bytes allocated per tracking %s lookup", lookupCase)
+                .isLessThanOrEqualTo(budget);
+    }
+
+    private boolean lookup(LookupCase lookupCase) {
+        return repository.isCachedLocally(lookupCase.shortUrl)
+                && repository.findByShortUrl(lookupCase.shortUrl).isPresent();
+    }
+
+    private static long budgetFor(LookupCase lookupCase) throws IOException {
+        var key = "tracking." + lookupCase.name().toLowerCase();
+        var override = System.getProperty("allocation.budget.tracking." + lookupCase.name().toLowerCase());
+        if (override != null) {
+            return Long.parseLong(override);
+        }
+        var budgets = new Properties();
+        try (var in = TrackingRedirectAllocationIT.class.getResourceAsStream("/allocation-budgets.properties")) {
+            budgets.load(in);
+        }
+        var value = budgets.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("No allocation budget configured for " + key);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    enum LookupCase {
+        HIT("aB5xZ1", true),
+        MISS("missing1", false);
+
+        private final String shortUrl;
+        private final boolean found;
+
+        LookupCase(String shortUrl, boolean found) {
+            this.shortUrl = shortUrl;
+            this.found = found;
+        }
+    }
+}
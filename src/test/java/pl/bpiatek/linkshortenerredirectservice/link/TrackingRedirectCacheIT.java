@@ -0,0 +1,192 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.KillArgs;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class TrackingRedirectCacheIT implements WithRedis {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RedisClient writerClient;
+    private StatefulRedisConnection<String, String> writer;
+    private TrackingRedirectCache cache;
+
+    @BeforeEach
+    void setUp() {
+        var uri = RedisURI.create(redis.getHost(), redis.getMappedPort(6379));
+        writerClient = RedisClient.create(uri);
+        writer = writerClient.connect();
+        var trackingClient = RedisClient.create(uri);
+        trackingClient.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+        cache = new TrackingRedirectCache(trackingClient, 1_000, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+        writer.sync().flushall();
+        writer.close();
+        writerClient.shutdown();
+    }
+
+    @Test
+    void shouldServeRepeatedReadsLocallyUntilAnotherClientRewritesTheKey() throws Exception {
+        // given
+        writer.sync().set("link:abc", json("https://example.com/v1", 1_000L));
+        assertThat(find("abc")).isEqualTo("https://example.com/v1");
+        assertThat(find("abc")).isEqualTo("https://example.com/v1");
+
+        // when
+        writer.sync().set("link:abc", json("https://example.com/v2", 2_000L));
+
+        // then
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(find("abc")).isEqualTo("https://example.com/v2"));
+        assertThat(meterRegistry.get("redirect.local.cache.requests").tag("result", "hit").counter().count()).isPositive();
+        assertThat(meterRegistry.get("redirect.local.cache.invalidations").tag("reason", "key").counter().count()).isPositive();
+    }
+
+    @Test
+    void shouldInvalidateCachedMissWhenLinkIsCreated() throws Exception {
+        // given
+        assertThat(find("new")).isNull();
+
+        // when
+        writer.sync().set("link:new", json("https://example.com/new", 1_000L));
+
+        // then
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(find("new")).isEqualTo("https://example.com/new"));
+    }
+
+    @Test
+    void shouldFlushAndResumeTrackingAfterReconnect() throws Exception {
+        // given
+        writer.sync().set("link:abc", json("https://example.com/v1", 1_000L));
+        find("abc");
+
+        // when
+        writer.sync().clientKill(KillArgs.Builder.typeNormal().skipme());
+        writer.sync().set("link:abc", json("https://example.com/v2", 2_000L));
+
+        // then
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() ->
+                assertThat(find("abc")).isEqualTo("https://example.com/v2"));
+
+        // when
+        writer.sync().set("link:abc", json("https://example.com/v3", 3_000L));
+
+        // then
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(find("abc")).isEqualTo("https://example.com/v3"));
+    }
+
+    @Test
+    void shouldFlushWhenARebuildAnnouncesASwappedDatabase() throws Exception {
+        // given
+        writer.sync().set("link:abc", json("https://example.com/v1", 1_000L));
+        writer.sync().select(1);
+        writer.sync().set("link:abc", json("https://example.com/v2", 2_000L));
+        assertThat(find("abc")).isEqualTo("https://example.com/v1");
+
+        // when
+        writer.sync().swapdb(0, 1);
+        writer.sync().publish(TrackingRedirectCache.FLUSH_CHANNEL, "0<-1");
+
+        // then
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(find("abc")).isEqualTo("https://example.com/v2"));
+        assertThat(meterRegistry.get("redirect.local.cache.invalidations").tag("reason", "flush").counter().count()).isPositive();
+    }
+
+    @Test
+    void shouldWarmFromPeerSnapshotAndKeepWarmedLinksCoherent() throws Exception {
+        // given
+        writer.sync().set("link:fresh", json("https://example.com/fresh-v2", 2_000L));
+        writer.sync().set("link:stale", json("https://example.com/stale-v1", 1_000L));
+        var snapshot = WarmHandoffCodec.decode(WarmHandoffCodec.encode(List.of(
+                new LocalRedirectCache.CachedLink("fresh", new RedirectInfo("https://example.com/fresh-v1", true, 1_000L, false)),
+                new LocalRedirectCache.CachedLink("stale", new RedirectInfo("https://example.com/stale-v2", true, 2_000L, false)),
+                new LocalRedirectCache.CachedLink("gone", new RedirectInfo("https://example.com/gone", true, 1_000L, false)))));
+
+        // when
+        var loaded = cache.warm(snapshot, this::parse, 2);
+
+        // then
+        assertThat(loaded).isEqualTo(2);
+        assertThat(cache.isCached("gone")).isFalse();
+        assertThat(find("fresh")).isEqualTo("https://example.com/fresh-v2");
+        assertThat(find("stale")).isEqualTo("https://example.com/stale-v2");
+        assertThat(meterRegistry.get("redirect.local.cache.requests").tag("result", "miss").counter().count()).isZero();
+
+        // when
+        writer.sync().set("link:fresh", json("https://example.com/fresh-v3", 3_000L));
+
+        // then
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                assertThat(find("fresh")).isEqualTo("https://example.com/fresh-v3"));
+    }
+
+    @Test
+    void shouldRefreshHotLinksAheadOfTheNextRequestAfterAnInvalidation() throws Exception {
+        // given
+        writer.sync().set("link:hot", json("https://example.com/hot-v1", 1_000L));
+        writer.sync().set("link:cold", json("https://example.com/cold-v1", 1_000L));
+        find("cold");
+        for (int i = 0; i < 3; i++) {
+            find("hot");
+        }
+        try (var scheduler = new RefreshAheadScheduler(cache, objectMapper, 2, 10, 0, 100, Clock.systemUTC(), meterRegistry)) {
+
+            // when
+            writer.sync().set("link:hot", json("https://example.com/hot-v2", 2_000L));
+            writer.sync().set("link:cold", json("https://example.com/cold-v2", 2_000L));
+
+            // then
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+                    assertThat(meterRegistry.get("redirect.local.cache.refreshes").tag("result", "loaded").counter().count())
+                            .isEqualTo(1));
+            var misses = meterRegistry.get("redirect.local.cache.requests").tag("result", "miss").counter().count();
+            assertThat(find("hot")).isEqualTo("https://example.com/hot-v2");
+            assertThat(meterRegistry.get("redirect.local.cache.requests").tag("result", "miss").counter().count())
+                    .isEqualTo(misses);
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertThat(cache.isCached("cold")).isFalse());
+            assertThat(meterRegistry.get("redirect.local.cache.refresh.latency").timer().count()).isPositive();
+        }
+    }
+
+    private String find(String shortUrl) {
+        return cache.find(shortUrl, "link:" + shortUrl, this::parse)
+                .map(RedirectInfo::longUrl)
+                .orElse(null);
+    }
+
+    private RedirectInfo parse(String json) {
+        try {
+            return objectMapper.readValue(json, RedirectInfo.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String json(String longUrl, long version) throws Exception {
+        return objectMapper.writeValueAsString(new RedirectInfo(longUrl, true, version, false));
+    }
+}
@@ -0,0 +1,38 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WarmHandoffCodecTest {
+
+    @Test
+    void shouldRoundTripLinksAndTombstones() {
+        // given
+        var links = List.of(
+                new LocalRedirectCache.CachedLink("aB5xZ1", new RedirectInfo("https://example.com/zażółć?q=1", true, 1_755_856_800_123_456L, false)),
+                new LocalRedirectCache.CachedLink("paused1", new RedirectInfo("https://example.com/paused", false, 1_000L, false)),
+                new LocalRedirectCache.CachedLink("deleted1", new RedirectInfo(null, false, 2_000L, true)));
+
+        // when
+        var decoded = WarmHandoffCodec.decode(WarmHandoffCodec.encode(links));
+
+        // then
+        assertThat(decoded).isEqualTo(links);
+    }
+
+    @Test
+    void shouldRejectTruncatedPayload() {
+        // given
+        var payload = WarmHandoffCodec.encode(List.of(
+                new LocalRedirectCache.CachedLink("aB5xZ1", new RedirectInfo("https://example.com", true, 1_000L, false))));
+
+        // when & then
+        assertThatThrownBy(() -> WarmHandoffCodec.decode(Arrays.copyOf(payload, payload.length - 3)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
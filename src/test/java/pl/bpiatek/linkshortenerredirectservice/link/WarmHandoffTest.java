@@ -0,0 +1,204 @@
+package pl.bpiatek.linkshortenerredirectservice.link;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class WarmHandoffTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(500);
+    private static final List<LocalRedirectCache.CachedLink> LINKS = List.of(
+            new LocalRedirectCache.CachedLink("aB5xZ1", new RedirectInfo("https://example.com/one", true, 1_000L, false)),
+            new LocalRedirectCache.CachedLink("cD7yW2", new RedirectInfo("https://example.com/two", true, 2_000L, false)));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TrackingRedirectCache trackingCache = mock(TrackingRedirectCache.class);
+    private final List<Peer> peers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        given(trackingCache.warm(anyList(), any(), anyInt()))
+                .willAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+    }
+
+    @AfterEach
+    void tearDown() {
+        peers.forEach(peer -> peer.server.stop(0));
+    }
+
+    @Test
+    void shouldLoadLinksFromAReadyPeer() throws IOException {
+        // given
+        var peer = peer(200, exchange -> respond(exchange, 200, WarmHandoffCodec.encode(LINKS)));
+
+        // when
+        var loaded = handOff(WarmHandoff.Peers.of(List.of(peer.uri())));
+
+        // then
+        assertThat(loaded).isEqualTo(2);
+        verify(trackingCache).warm(eq(LINKS), any(), eq(100));
+        assertThat(peer.handoffQuery).isEqualTo("limit=20");
+        assertThat(meterRegistry.get("redirect.local.cache.warmed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSkipPeersThatAreNotReady() throws IOException {
+        // given
+        var starting = peer(503, exchange -> respond(exchange, 200, WarmHandoffCodec.encode(LINKS)));
+        var ready = peer(200, exchange -> respond(exchange, 200, WarmHandoffCodec.encode(LINKS)));
+
+        // when
+        var loaded = handOff(WarmHandoff.Peers.of(List.of(starting.uri(), ready.uri())));
+
+        // then
+        assertThat(loaded).isEqualTo(2);
+        assertThat(starting.handoffs).hasValue(0);
+        assertThat(ready.handoffs).hasValue(1);
+    }
+
+    @Test
+    void shouldMoveOnWhenAPeerFailsToHandOver() throws IOException {
+        // given
+        var failing = peer(200, exchange -> respond(exchange, 500, new byte[0]));
+        var corrupt = peer(200, exchange -> respond(exchange, 200, new byte[]{'R', 'W'}));
+        var healthy = peer(200, exchange -> respond(exchange, 200, WarmHandoffCodec.encode(LINKS)));
+
+        // when
+        var loaded = handOff(WarmHandoff.Peers.of(List.of(failing.uri(), corrupt.uri(), healthy.uri())));
+
+        // then
+        assertThat(loaded).isEqualTo(2);
+        assertThat(healthy.handoffs).hasValue(1);
+        verify(trackingCache).warm(eq(LINKS), any(), anyInt());
+    }
+
+    @Test
+    void shouldStartColdWhenNoPeerCanHandOver() throws IOException {
+        // given
+        var starting = peer(503, exchange -> respond(exchange, 200, WarmHandoffCodec.encode(LINKS)));
+        var failing = peer(200, exchange -> respond(exchange, 500, new byte[0]));
+        var unreachable = URI.create("http://127.0.0.1:1");
+
+        // when
+        var loaded = handOff(WarmHandoff.Peers.of(List.of(starting.uri(), failing.uri(), unreachable)));
+
+        // then
+        assertThat(loaded).isZero();
+        assertThat(failing.handoffs).hasValue(1);
+        verify(trackingCache, never()).warm(anyList(), any(), anyInt());
+    }
+
+    @Test
+    void shouldGiveUpOnceTheDeadlineHasPassed() throws IOException {
+        // given
+        var slow = peer(200, exchange -> {
+            sleep(TIMEOUT.multipliedBy(3));
+            respond(exchange, 200, WarmHandoffCodec.encode(LINKS));
+        });
+        var alsoSlow = peer(200, exchange -> {
+            sleep(TIMEOUT.multipliedBy(3));
+            respond(exchange, 200, WarmHandoffCodec.encode(LINKS));
+        });
+
+        // when
+        var loaded = handOff(WarmHandoff.Peers.of(List.of(slow.uri(), alsoSlow.uri())));
+
+        // then
+        assertThat(loaded).isZero();
+        assertThat(slow.handoffs.get() + alsoSlow.handoffs.get()).isEqualTo(1);
+        verify(trackingCache, never()).warm(anyList(), any(), anyInt());
+    }
+
+    @Test
+    void shouldStartColdWhenPeerDiscoveryFails() {
+        // when
+        var loaded = handOff(() -> {
+            throw new IllegalStateException("no such service");
+        });
+
+        // then
+        assertThat(loaded).isZero();
+        verify(trackingCache, never()).warm(anyList(), any(), anyInt());
+    }
+
+    //  Built like WarmHandoffConfig builds it: the read timeout is the handoff timeout
+    private int handOff(WarmHandoff.Peers discovered) {
+        var requestFactory = new JdkClientHttpRequestFactory();
+        requestFactory.setReadTimeout(TIMEOUT);
+        var restClient = RestClient.builder().requestFactory(requestFactory).build();
+        return new WarmHandoff(trackingCache, discovered, restClient, new ObjectMapper(), 20, 100, TIMEOUT, meterRegistry)
+                .handOff();
+    }
+
+    private Peer peer(int readinessStatus, Handler handoff) throws IOException {
+        var server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        var peer = new Peer(server);
+        server.createContext("/actuator/health/readiness", exchange -> respond(exchange, readinessStatus, new byte[0]));
+        server.createContext("/actuator/warmhandoff", exchange -> {
+            peer.handoffs.incrementAndGet();
+            peer.handoffQuery = exchange.getRequestURI().getQuery();
+            handoff.handle(exchange);
+        });
+        server.start();
+        peers.add(peer);
+        return peer;
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private static final class Peer {
+        private final HttpServer server;
+        private final AtomicInteger handoffs = new AtomicInteger();
+        private volatile String handoffQuery;
+
+        private Peer(HttpServer server) {
+            this.server = server;
+        }
+
+        private URI uri() {
+            return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+        }
+    }
+}
@@ -7,7 +7,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
 @Testcontainers
-interface WithRedis {
+public interface WithRedis {
 
     @Container
     @ServiceConnection
@@ -0,0 +1,72 @@
+package pl.bpiatek.linkshortenerredirectservice.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CidrTrieTest {
+
+    @Test
+    void shouldReturnLongestMatchingPrefix() {
+        // given
+        var blocks = new LinkedHashMap<CidrBlock, String>();
+        blocks.put(CidrBlock.parse("10.1.2.0/24"), "narrow");
+        blocks.put(CidrBlock.parse("10.0.0.0/8"), "wide");
+        blocks.put(CidrBlock.parse("10.1.0.0/16"), "middle");
+        blocks.put(CidrBlock.parse("2001:db8::/32"), "ipv6");
+        var trie = CidrTrie.of(blocks);
+
+        // when / then
+        assertThat(trie.longestMatch(address("10.1.2.3"))).isEqualTo("narrow");
+        assertThat(trie.longestMatch(address("10.1.3.3"))).isEqualTo("middle");
+        assertThat(trie.longestMatch(address("10.200.3.3"))).isEqualTo("wide");
+        assertThat(trie.longestMatch(address("2001:db8:1::1"))).isEqualTo("ipv6");
+        assertThat(trie.longestMatch(address("11.0.0.1"))).isNull();
+        assertThat(trie.longestMatch(address("2001:db9::1"))).isNull();
+    }
+
+    @Test
+    void shouldAgreeWithLinearScanOnRandomBlocks() {
+        // given
+        var random = new Random(42);
+        var blocks = new LinkedHashMap<CidrBlock, Integer>();
+        for (int i = 0; i < 500; i++) {
+            var length = 96 + random.nextInt(33);
+            blocks.put(new CidrBlock(0, 0x0000_ffff_0000_0000L | (random.nextInt() & 0xffff_ffffL), length), length);
+        }
+        var trie = CidrTrie.of(blocks);
+
+        // when / then
+        for (int i = 0; i < 10_000; i++) {
+            var address = new IpAddress();
+            address.set(0, 0x0000_ffff_0000_0000L | (random.nextInt() & 0xffff_ffffL));
+            var expected = blocks.keySet().stream()
+                    .filter(block -> block.contains(address))
+                    .map(CidrBlock::prefixLength)
+                    .max(Integer::compare)
+                    .orElse(null);
+            assertThat(trie.longestMatch(address)).as(address.toString()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void shouldMatchEverythingWithDefaultRoute() {
+        // given
+        var trie = CidrTrie.of(List.of(CidrBlock.parse("::/0")));
+
+        // when / then
+        assertThat(trie.contains(address("203.0.113.7"))).isTrue();
+        assertThat(trie.contains(address("2001:db8::1"))).isTrue();
+        assertThat(CidrTrie.of(List.<CidrBlock>of()).isEmpty()).isTrue();
+    }
+
+    private static IpAddress address(String text) {
+        var address = new IpAddress();
+        address.parse(text);
+        return address;
+    }
+}
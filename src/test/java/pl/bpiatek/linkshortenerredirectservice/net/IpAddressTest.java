@@ -0,0 +1,74 @@
+package pl.bpiatek.linkshortenerredirectservice.net;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IpAddressTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"203.0.113.7", "0.0.0.0", "255.255.255.255", "2001:db8::1", "::", "::1", "1::",
+            "2001:db8:0:0:1:0:0:1", "fe80::1:2:3:4", "::ffff:192.0.2.1", "64:ff9b::192.0.2.33",
+            "1:2:3:4:5:6:7:8", "1:2:3:4:5:6:7::"})
+    void shouldParseLikeInetAddress(String text) throws Exception {
+        // given
+        var expected = InetAddress.getByName(text).getAddress();
+        var address = new IpAddress();
+
+        // when
+        var parsed = address.parse(text);
+
+        // then
+        assertThat(parsed).isTrue();
+        assertThat(toBytes(address, expected.length)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "unknown", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.4.", "1:2", ":1",
+            "1:::2", "1::2::3", "12345::", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7:8::", "g::1", "::1.2.3"})
+    void shouldRejectMalformedAddresses(String text) {
+        // when
+        var parsed = new IpAddress().parse(text);
+
+        // then
+        assertThat(parsed).isFalse();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "10.0.0.0/8, 10.255.1.2, true",
+            "10.0.0.0/8, 11.0.0.1, false",
+            "0.0.0.0/0, 198.51.100.1, true",
+            "0.0.0.0/0, 2001:db8::1, false",
+            "2001:db8::/32, 2001:db8:ffff::1, true",
+            "2001:db8::/33, 2001:db8:ffff::1, false",
+            "::ffff:10.0.0.0/104, 10.1.2.3, true",
+            "192.0.2.1, 192.0.2.1, true"
+    })
+    void shouldMatchCidrBlocks(String cidr, String ip, boolean expected) {
+        // given
+        var block = CidrBlock.parse(cidr);
+        var address = new IpAddress();
+        address.parse(ip);
+
+        // when
+        var contains = block.contains(address);
+
+        // then
+        assertThat(contains).isEqualTo(expected);
+    }
+
+    private static byte[] toBytes(IpAddress address, int length) {
+        var bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            var bit = (16 - length + i) * 8;
+            var word = bit < 64 ? address.high() : address.low();
+            bytes[i] = (byte) (word >>> (56 - bit % 64));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.mock.web.MockHttpServletRequest;
+import pl.bpiatek.linkshortenerredirectservice.limit.ClientRateLimiter;
+import pl.bpiatek.linkshortenerredirectservice.link.ClientIpExtractor;
+import pl.bpiatek.linkshortenerredirectservice.net.IpAddress;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//  Run with -prof gc to see the allocation difference; `firstEntry` is the previous split-based
+//  behaviour, kept as the baseline. `extractThenLimit` is the controller's path, sharing one parsed
+//  address; `extractThenLimitReparsed` is how it parsed the client again for the rate limit.
+//  `requestHeaders` is what MockHttpServletRequest itself allocates for the header reads (it lower-cases
+//  the name on every lookup), which the servlet container's request does not. With one address family
+//  per fork C2 prunes the other parser, so MixedTraffic alternates IPv4 and IPv6 clients as production does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientIpExtractorBenchmark {
+
+    @Param({"203.0.113.7, 10.0.0.1",
+            "203.0.113.7, 198.51.100.1, 10.2.0.8, 10.0.0.1",
+            "2001:db8:85a3::8a2e:370:7334, fd00::1"})
+    private String forwardedFor;
+
+    private final ClientIpExtractor extractor = ClientIpExtractor.defaults();
+    //  Never throttles, so every call takes the full admit path
+    private final ClientRateLimiter rateLimiter = new ClientRateLimiter(new ClientRateLimiter.Limit(1e9, 1_000_000),
+            List.of(), 1024, 10, System::currentTimeMillis, new SimpleMeterRegistry());
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        request = request(forwardedFor);
+    }
+
+    @Benchmark
+    public String trustedProxyWalk() {
+        return extractor.extract(request);
+    }
+
+    @Benchmark
+    public boolean extractThenLimit() {
+        var client = new IpAddress();
+        return rateLimiter.tryAcquire(extractor.extract(request, client), client);
+    }
+
+    @Benchmark
+    public boolean extractThenLimitReparsed() {
+        return rateLimiter.tryAcquire(extractor.extract(request));
+    }
+
+    @Benchmark
+    public String requestHeaders() {
+        request.getRemoteAddr();
+        return request.getHeader("X-Forwarded-For");
+    }
+
+    @Benchmark
+    public String firstEntry() {
+        return request.getHeader("X-Forwarded-For").split(",")[0].trim();
+    }
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class MixedTraffic {
+
+        private final ClientIpExtractor extractor = ClientIpExtractor.defaults();
+        private final ClientRateLimiter rateLimiter = new ClientRateLimiter(new ClientRateLimiter.Limit(1e9, 1_000_000),
+                List.of(), 1024, 10, System::currentTimeMillis, new SimpleMeterRegistry());
+        private final MockHttpServletRequest[] requests = new MockHttpServletRequest[2];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            requests[0] = request("203.0.113.7, 10.0.0.1");
+            requests[1] = request("2001:db8:85a3::8a2e:370:7334, fd00::1");
+        }
+
+        @Benchmark
+        public boolean extractThenLimit() {
+            var client = new IpAddress();
+            return rateLimiter.tryAcquire(extractor.extract(nextRequest(), client), client);
+        }
+
+        @Benchmark
+        public boolean extractThenLimitReparsed() {
+            return rateLimiter.tryAcquire(extractor.extract(nextRequest()));
+        }
+
+        private MockHttpServletRequest nextRequest() {
+            next ^= 1;
+            return requests[next];
+        }
+    }
+
+    private static MockHttpServletRequest request(String forwardedFor) {
+        var request = new MockHttpServletRequest("GET", "/aB5xZ1");
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        return request;
+    }
+}
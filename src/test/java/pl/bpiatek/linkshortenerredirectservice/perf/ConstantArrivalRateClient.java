@@ -0,0 +1,115 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+//  Open-model load generator: request i is scheduled at start + i / rate regardless of how many
+//  requests are still outstanding, and latency is measured from that intended start time so a
+//  stalled server is not hidden by coordinated omission.
+public final class ConstantArrivalRateClient {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    public ConstantArrivalRateClient(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(requestTimeout)
+                .build();
+    }
+
+    public Result run(URI baseUri, int requestsPerSecond, Duration duration, IntFunction<RequestSpec> requests) {
+        var total = Math.multiplyExact(requestsPerSecond, duration.toSeconds());
+        var intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        var schedule = new Iterator<ScheduledRequest>() {
+            private long next;
+
+            @Override
+            public boolean hasNext() {
+                return next < total;
+            }
+
+            @Override
+            public ScheduledRequest next() {
+                var index = next++;
+                return new ScheduledRequest(index * intervalNanos, requests.apply((int) index));
+            }
+        };
+        return run(baseUri, schedule, intervalNanos);
+    }
+
+    //  Plays an arbitrary schedule (offsets relative to the start of the run, non-decreasing), e.g. a
+    //  recorded capture; slipToleranceNanos decides when a late dispatch is counted as a schedule slip
+    public Result run(URI baseUri, Iterator<ScheduledRequest> schedule, long slipToleranceNanos) {
+        var recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        var statuses = new ConcurrentHashMap<Integer, LongAdder>();
+        var errors = new LongAdder();
+        var total = 0L;
+        var behind = 0L;
+
+        var start = System.nanoTime();
+        try (var workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (schedule.hasNext()) {
+                var scheduled = schedule.next();
+                var intendedStart = start + scheduled.offsetNanos();
+                var wait = intendedStart - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (-wait > slipToleranceNanos) {
+                    behind++;
+                }
+
+                total++;
+                workers.submit(() -> send(baseUri, scheduled.spec(), intendedStart, recorder, statuses, errors));
+            }
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        return new Result(recorder.getIntervalHistogram(), Map.copyOf(statuses), errors.sum(), total, elapsed, behind);
+    }
+
+    private void send(URI baseUri, RequestSpec spec, long intendedStart, Recorder recorder,
+                      Map<Integer, LongAdder> statuses, LongAdder errors) {
+        var builder = HttpRequest.newBuilder(baseUri.resolve("/" + spec.shortUrl()))
+                .timeout(requestTimeout)
+                .GET();
+        spec.headers().forEach(builder::header);
+
+        try {
+            var response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.discarding());
+            statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+        } catch (Exception e) {
+            errors.increment();
+        } finally {
+            recorder.recordValue(Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_NANOS));
+        }
+    }
+
+    public record RequestSpec(String shortUrl, Map<String, String> headers) {
+    }
+
+    public record ScheduledRequest(long offsetNanos, RequestSpec spec) {
+    }
+
+    public record Result(Histogram latencies, Map<Integer, LongAdder> statuses, long errors,
+                         long scheduled, Duration elapsed, long scheduleSlips) {
+    }
+}
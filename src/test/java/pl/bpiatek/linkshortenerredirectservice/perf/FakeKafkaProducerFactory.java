@@ -0,0 +1,46 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  Keeps DefaultKafkaProducerFactory's producer lifecycle (CloseSafeProducer, caching) and swaps
+//  only the raw client for an in-memory one.
+public class FakeKafkaProducerFactory<K, V> extends DefaultKafkaProducerFactory<K, V> {
+
+    public static final String BOOTSTRAP_SERVERS = "localhost:9";
+
+    private final FaultInjector faults;
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("fake-kafka-acks").factory());
+
+    public FakeKafkaProducerFactory(FaultInjector faults) {
+        super(Map.of(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, BOOTSTRAP_SERVERS));
+        this.faults = faults;
+    }
+
+    @Override
+    protected Producer<K, V> createRawProducer(Map<String, Object> rawConfigs) {
+        return new FaultInjectingProducer<>(faults, scheduler, acknowledged);
+    }
+
+    public FaultInjector faults() {
+        return faults;
+    }
+
+    public long acknowledged() {
+        return acknowledged.get();
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        scheduler.shutdownNow();
+    }
+}
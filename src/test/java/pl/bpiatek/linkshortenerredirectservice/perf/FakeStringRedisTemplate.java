@@ -0,0 +1,84 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//  In-JVM stand-in for the auto-configured StringRedisTemplate. Only the operations the service
+//  actually issues are supported; anything else fails loudly so the fake never silently diverges.
+//  TTLs are accepted but not enforced.
+public class FakeStringRedisTemplate extends StringRedisTemplate {
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final FaultInjector faults;
+    private final ValueOperations<String, String> valueOperations;
+
+    public FakeStringRedisTemplate(FaultInjector faults) {
+        this.faults = faults;
+        this.valueOperations = proxy(ValueOperations.class, this::invokeValueOperation);
+    }
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOperations;
+    }
+
+    public Map<String, String> store() {
+        return values;
+    }
+
+    public FaultInjector faults() {
+        return faults;
+    }
+
+    private Object invokeValueOperation(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "get" -> {
+                faults.apply("GET", RedisConnectionFailureException::new);
+                yield values.get((String) args[0]);
+            }
+            case "set" -> {
+                faults.apply("SET", RedisConnectionFailureException::new);
+                values.put((String) args[0], (String) args[1]);
+                yield null;
+            }
+            case "multiGet" -> {
+                faults.apply("MGET", RedisConnectionFailureException::new);
+                var keys = (Collection<?>) args[0];
+                var result = new ArrayList<String>(keys.size());
+                for (var key : keys) {
+                    result.add(values.get((String) key));
+                }
+                yield result;
+            }
+            case "getOperations" -> this;
+            default -> throw new UnsupportedOperationException("ValueOperations." + method.getName() + " is not faked");
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, FakeOperation operation) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> "Fake" + type.getSimpleName();
+                };
+            }
+            return operation.invoke(method, args == null ? new Object[0] : args);
+        });
+    }
+
+    @FunctionalInterface
+    interface FakeOperation {
+        Object invoke(Method method, Object[] args);
+    }
+}
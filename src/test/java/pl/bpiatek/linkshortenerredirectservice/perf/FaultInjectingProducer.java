@@ -0,0 +1,60 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//  MockProducer keeps every record in memory; under sustained load we only need acks, so send() is
+//  replaced with a scheduled completion that honours the injected latency and failure rate.
+class FaultInjectingProducer<K, V> extends MockProducer<K, V> {
+
+    private final FaultInjector faults;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong offsets;
+
+    FaultInjectingProducer(FaultInjector faults, ScheduledExecutorService scheduler, AtomicLong offsets) {
+        this.faults = faults;
+        this.scheduler = scheduler;
+        this.offsets = offsets;
+    }
+
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<K, V> record, Callback callback) {
+        var future = new CompletableFuture<RecordMetadata>();
+        var fails = faults.nextFails();
+        Runnable completion = () -> {
+            if (fails) {
+                var exception = new TimeoutException("Injected producer failure for topic " + record.topic());
+                future.completeExceptionally(exception);
+                if (callback != null) {
+                    callback.onCompletion(null, exception);
+                }
+                return;
+            }
+            var partition = record.partition() != null ? record.partition() : 0;
+            var metadata = new RecordMetadata(new TopicPartition(record.topic(), partition),
+                    offsets.getAndIncrement(), 0, System.currentTimeMillis(), -1, -1);
+            future.complete(metadata);
+            if (callback != null) {
+                callback.onCompletion(metadata, null);
+            }
+        };
+
+        var delay = faults.nextDelayNanos();
+        if (delay > 0) {
+            scheduler.schedule(completion, delay, TimeUnit.NANOSECONDS);
+        } else {
+            completion.run();
+        }
+        return future;
+    }
+}
@@ -0,0 +1,68 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+public final class FaultInjector {
+
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double failureRate;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public FaultInjector(Duration latency, Duration jitter, double failureRate) {
+        configure(latency, jitter, failureRate);
+    }
+
+    public static FaultInjector none() {
+        return new FaultInjector(Duration.ZERO, Duration.ZERO, 0.0);
+    }
+
+    public void configure(Duration latency, Duration jitter, double failureRate) {
+        if (failureRate < 0.0 || failureRate > 1.0) {
+            throw new IllegalArgumentException("failureRate must be within [0, 1], got " + failureRate);
+        }
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        this.failureRate = failureRate;
+    }
+
+    public long nextDelayNanos() {
+        var jitter = jitterNanos;
+        return latencyNanos + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+    }
+
+    public boolean nextFails() {
+        calls.increment();
+        var rate = failureRate;
+        if (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            failures.increment();
+            return true;
+        }
+        return false;
+    }
+
+    //  Blocking variant for synchronous stand-ins (Redis): park the calling thread, then maybe fail
+    public void apply(String operation, Function<String, RuntimeException> failure) {
+        var delay = nextDelayNanos();
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        if (nextFails()) {
+            throw failure.apply("Injected failure for " + operation);
+        }
+    }
+
+    public long calls() {
+        return calls.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+}
@@ -0,0 +1,80 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import com.sun.management.OperatingSystemMXBean;
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.TreeMap;
+
+//  Snapshot of process-wide resource counters, taken before and after a run. Allocation and CPU
+//  cover the whole JVM, so the in-process load generator is included in the figures.
+public record LoadReport(long cpuNanos, long allocatedBytes, long gcCount, long gcMillis) {
+
+    public static LoadReport snapshot() {
+        var os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+            gcMillis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return new LoadReport(os.getProcessCpuTime(), threads.getTotalThreadAllocatedBytes(), gcCount, gcMillis);
+    }
+
+    public static void write(String title, ConstantArrivalRateClient.Result result,
+                             LoadReport before, LoadReport after, PrintStream out) {
+        writeLatencies(title, result, out);
+        writeResources(result, before, after, out);
+    }
+
+    public static void writeLatencies(String title, ConstantArrivalRateClient.Result result, PrintStream out) {
+        var latencies = result.latencies();
+        var completed = latencies.getTotalCount();
+        var seconds = result.elapsed().toNanos() / 1e9;
+
+        out.printf(Locale.ROOT, "=== %s ===%n", title);
+        out.printf(Locale.ROOT, "requests: scheduled=%d completed=%d errors=%d achieved=%.1f req/s schedule-slips=%d%n",
+                result.scheduled(), completed, result.errors(), completed / seconds, result.scheduleSlips());
+        out.printf(Locale.ROOT, "statuses: %s%n", new TreeMap<>(result.statuses()));
+        out.printf(Locale.ROOT, "latency ms: p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f mean=%.3f%n",
+                millis(latencies.getValueAtPercentile(50.0)),
+                millis(latencies.getValueAtPercentile(90.0)),
+                millis(latencies.getValueAtPercentile(99.0)),
+                millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()),
+                latencies.getMean() / 1e6);
+    }
+
+    public static void writeResources(ConstantArrivalRateClient.Result result,
+                                      LoadReport before, LoadReport after, PrintStream out) {
+        var completed = result.latencies().getTotalCount();
+        var cpuNanos = after.cpuNanos - before.cpuNanos;
+        var allocated = after.allocatedBytes - before.allocatedBytes;
+        var perRequest = Math.max(completed, 1);
+        out.printf(Locale.ROOT, "cpu: total=%.1f ms per-request=%.1f us utilisation=%.1f%% of one core%n",
+                cpuNanos / 1e6, cpuNanos / 1e3 / perRequest, 100.0 * cpuNanos / result.elapsed().toNanos());
+        out.printf(Locale.ROOT, "allocation: total=%.1f MiB per-request=%d B%n",
+                allocated / (1024.0 * 1024.0), allocated / perRequest);
+        out.printf(Locale.ROOT, "gc: collections=%d pause-time=%d ms%n",
+                after.gcCount - before.gcCount, after.gcMillis - before.gcMillis);
+    }
+
+    public static void writeDistribution(ConstantArrivalRateClient.Result result, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (var out = new PrintStream(Files.newOutputStream(file))) {
+            //  .hgrm output in milliseconds, readable by the standard HdrHistogram plotter
+            result.latencies().outputPercentileDistribution(out, 1_000_000.0);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,146 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.test.context.bean.override.convention.TestBean;
+import pl.bpiatek.contracts.link.LinkClickEventProto.LinkClickEvent;
+import pl.bpiatek.linkshortenerredirectservice.link.RedirectInfo;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//  Drives the full application over HTTP against in-JVM Redis and Kafka stand-ins.
+//  Excluded from the default build; run with: mvn test -Pload-test -Dload.rate=2000 -Dload.duration=60s
+@Tag("load")
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.kafka.bootstrap-servers=" + FakeKafkaProducerFactory.BOOTSTRAP_SERVERS,
+                "spring.kafka.listener.auto-startup=false",
+                "management.health.redis.enabled=false",
+                "logging.level.pl.bpiatek=WARN",
+                "logging.level.org.apache.kafka=WARN"
+        })
+class RedirectLoadTest {
+
+    private static final FaultInjector redisFaults = new FaultInjector(
+            duration("load.redis.latency", "0ms"),
+            duration("load.redis.jitter", "0ms"),
+            Double.parseDouble(System.getProperty("load.redis.failure-rate", "0.0")));
+    private static final FaultInjector kafkaFaults = new FaultInjector(
+            duration("load.kafka.latency", "2ms"),
+            duration("load.kafka.jitter", "0ms"),
+            Double.parseDouble(System.getProperty("load.kafka.failure-rate", "0.0")));
+
+    @TestBean(name = "stringRedisTemplate")
+    private StringRedisTemplate redisTemplate;
+
+    @TestBean(name = "linkClickEventProducerFactory")
+    private ProducerFactory<String, LinkClickEvent> producerFactory;
+
+    @TestBean(name = "kafkaAdmin")
+    private KafkaAdmin kafkaAdmin;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @LocalServerPort
+    private int port;
+
+    static StringRedisTemplate redisTemplate() {
+        return new FakeStringRedisTemplate(redisFaults);
+    }
+
+    static ProducerFactory<String, LinkClickEvent> producerFactory() {
+        return new FakeKafkaProducerFactory<>(kafkaFaults);
+    }
+
+    static KafkaAdmin kafkaAdmin() {
+        //  KafkaTemplate observations ask the admin for the cluster id on every send until one is known
+        return new KafkaAdmin(Map.of("bootstrap.servers", FakeKafkaProducerFactory.BOOTSTRAP_SERVERS)) {
+            @Override
+            public String clusterId() {
+                return "in-memory";
+            }
+        };
+    }
+
+    @Test
+    void redirectUnderConstantArrivalRate() throws Exception {
+        // given
+        var rate = Integer.getInteger("load.rate", 1000);
+        var duration = duration("load.duration", "30s");
+        var warmup = duration("load.warmup", "10s");
+        var keys = Integer.getInteger("load.keys", 100_000);
+        var missRatio = Double.parseDouble(System.getProperty("load.miss-ratio", "0.05"));
+        var popularity = new ZipfianGenerator(keys, Double.parseDouble(System.getProperty("load.zipf.exponent", "0.99")));
+
+        seed(keys);
+        var client = new ConstantArrivalRateClient(Duration.ofSeconds(10));
+        var baseUri = URI.create("http://localhost:" + port);
+
+        // when
+        client.run(baseUri, rate, warmup, i -> request(popularity, missRatio));
+        var before = LoadReport.snapshot();
+        var result = client.run(baseUri, rate, duration, i -> request(popularity, missRatio));
+        var after = LoadReport.snapshot();
+
+        // then
+        var title = "redirect rate=%d/s duration=%s keys=%d redis-latency=%s kafka-latency=%s"
+                .formatted(rate, duration, keys, System.getProperty("load.redis.latency", "0ms"),
+                        System.getProperty("load.kafka.latency", "2ms"));
+        LoadReport.write(title, result, before, after, System.out);
+        System.out.printf("fakes: redis calls=%d failures=%d, kafka acks=%d failures=%d%n",
+                redisFaults.calls(), redisFaults.failures(),
+                ((FakeKafkaProducerFactory<?, ?>) producerFactory).acknowledged(), kafkaFaults.failures());
+        LoadReport.writeDistribution(result, Path.of("target", "load-test", "redirect-latency.hgrm"));
+
+        assertThat(result.latencies().getTotalCount()).isEqualTo(result.scheduled());
+    }
+
+    private void seed(int keys) throws Exception {
+        var store = ((FakeStringRedisTemplate) redisTemplate).store();
+        for (int rank = 0; rank < keys; rank++) {
+            var info = new RedirectInfo("https://example.com/landing/" + rank + "?utm_source=load", true, 1000L, false);
+            store.put("link:" + shortUrl(rank), objectMapper.writeValueAsString(info));
+        }
+    }
+
+    private static ConstantArrivalRateClient.RequestSpec request(ZipfianGenerator popularity, double missRatio) {
+        var random = ThreadLocalRandom.current();
+        var shortUrl = random.nextDouble() < missRatio
+                ? "miss" + random.nextInt(1_000_000)
+                : shortUrl(popularity.next());
+        var clientIp = "203.0." + random.nextInt(256) + "." + random.nextInt(256);
+        return new ConstantArrivalRateClient.RequestSpec(shortUrl, Map.of(
+                "User-Agent", "load-test/1.0",
+                "X-Forwarded-For", clientIp + ", 10.0.0.1"));
+    }
+
+    private static String shortUrl(int rank) {
+        return "z" + Integer.toString(rank, 36);
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        var value = System.getProperty(property, defaultValue).trim().toLowerCase();
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.parse(value);
+    }
+}
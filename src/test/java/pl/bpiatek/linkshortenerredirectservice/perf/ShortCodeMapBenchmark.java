@@ -0,0 +1,98 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.bpiatek.linkshortenerredirectservice.link.ShortCode;
+import pl.bpiatek.linkshortenerredirectservice.link.ShortCodeMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+//  Lookups as the request path does them: each one copies the code into a fresh String, like the path
+//  variable Spring MVC hands the controller. `fill*` builds a presized map from Strings made in setup,
+//  so with -prof gc its gc.alloc.rate.norm is the map's own footprint. The ConcurrentHashMap also
+//  keeps its key Strings alive (48 B each for 6-character codes), which the ShortCodeMap does not.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseSerialGC")
+public class ShortCodeMapBenchmark {
+
+    private static final Object VALUE = new Object();
+
+    @Param("100000")
+    private int keys;
+
+    private char[][] codes;
+    private String[] strings;
+    private ShortCodeMap<Object> shortCodeMap;
+    private ConcurrentHashMap<String, Object> concurrentHashMap;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        codes = new char[keys][];
+        strings = new String[keys];
+        shortCodeMap = new ShortCodeMap<>(keys);
+        concurrentHashMap = new ConcurrentHashMap<>(keys);
+        //  Spread over 6-character codes, as the link service issues them
+        var stride = Math.max(1, ShortCode.pack("zzzzzz") / keys - 1);
+        for (int i = 0; i < keys; i++) {
+            var code = ShortCode.unpack(ShortCode.pack("100000") + i * stride);
+            codes[i] = code.toCharArray();
+            strings[i] = code;
+            shortCodeMap.put(code, VALUE);
+            concurrentHashMap.put(code, VALUE);
+        }
+    }
+
+    @Benchmark
+    public Object shortCodeMapGet() {
+        return shortCodeMap.get(nextCode());
+    }
+
+    @Benchmark
+    public Object concurrentHashMapGet() {
+        return concurrentHashMap.get(nextCode());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public ShortCodeMap<Object> fillShortCodeMap() {
+        var map = new ShortCodeMap<>(keys);
+        for (var code : strings) {
+            map.put(code, VALUE);
+        }
+        return map;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public ConcurrentHashMap<String, Object> fillConcurrentHashMap() {
+        var map = new ConcurrentHashMap<String, Object>(keys);
+        for (var code : strings) {
+            map.put(code, VALUE);
+        }
+        return map;
+    }
+
+    private String nextCode() {
+        next = next + 1 == codes.length ? 0 : next + 1;
+        return new String(codes[next]);
+    }
+}
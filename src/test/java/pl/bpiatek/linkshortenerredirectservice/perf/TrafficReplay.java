@@ -0,0 +1,101 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import pl.bpiatek.linkshortenerredirectservice.capture.CaptureReader;
+import pl.bpiatek.linkshortenerredirectservice.capture.CaptureRecord;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+//  Replays a traffic capture against a running instance, preserving inter-arrival times (divided by
+//  the speed factor) and re-synthesising anonymised clients deterministically from their hashes.
+//
+//  mvn test-compile exec:java -Dexec.classpathScope=test \
+//      -Dexec.mainClass=pl.bpiatek.linkshortenerredirectservice.perf.TrafficReplay \
+//      -Dexec.args="/tmp/redirect-capture http://localhost:8080 2.0"
+public final class TrafficReplay {
+
+    private TrafficReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: TrafficReplay <capture-directory> <base-url> [speed-factor]");
+            System.exit(2);
+        }
+        var captureDirectory = Path.of(args[0]);
+        var baseUri = URI.create(args[1]);
+        var speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+
+        var result = replay(captureDirectory, baseUri, speed);
+        LoadReport.writeLatencies("replay of %s at %.2fx".formatted(captureDirectory, speed), result, System.out);
+        LoadReport.writeDistribution(result, Path.of("target", "load-test", "replay-latency.hgrm"));
+    }
+
+    public static ConstantArrivalRateClient.Result replay(Path captureDirectory, URI baseUri, double speed) throws Exception {
+        if (speed <= 0.0) {
+            throw new IllegalArgumentException("speed must be positive, got " + speed);
+        }
+        var records = CaptureReader.iterator(captureDirectory);
+        var schedule = new Iterator<ConstantArrivalRateClient.ScheduledRequest>() {
+            private long firstMicros = Long.MIN_VALUE;
+            private long lastOffset;
+
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public ConstantArrivalRateClient.ScheduledRequest next() {
+                var record = records.next();
+                if (firstMicros == Long.MIN_VALUE) {
+                    firstMicros = record.epochMicros();
+                }
+                //  Writers race for the log lock, so timestamps are only nearly ordered
+                var offset = (long) (TimeUnit.MICROSECONDS.toNanos(record.epochMicros() - firstMicros) / speed);
+                lastOffset = Math.max(lastOffset, offset);
+                return new ConstantArrivalRateClient.ScheduledRequest(lastOffset, toRequest(record));
+            }
+        };
+        return new ConstantArrivalRateClient(Duration.ofSeconds(10))
+                .run(baseUri, schedule, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    static ConstantArrivalRateClient.RequestSpec toRequest(CaptureRecord record) {
+        var headers = new HashMap<String, String>();
+        var clientIp = syntheticAddress(record.clientIpHash(), record.has(CaptureRecord.IPV6));
+
+        if (record.has(CaptureRecord.FORWARDED_FOR)) {
+            var forwardedFor = new StringBuilder(clientIp);
+            for (int hop = 1; hop < record.forwardedHops(); hop++) {
+                forwardedFor.append(", 10.0.0.").append(hop);
+            }
+            headers.put("X-Forwarded-For", forwardedFor.toString());
+        }
+        if (record.has(CaptureRecord.CF_CONNECTING_IP)) {
+            headers.put("CF-Connecting-IP", clientIp);
+        }
+        if (record.has(CaptureRecord.USER_AGENT)) {
+            headers.put("User-Agent", "replay-agent/" + Long.toHexString(record.userAgentHash()));
+        }
+        return new ConstantArrivalRateClient.RequestSpec(record.shortUrl(), headers);
+    }
+
+    //  Documentation ranges (RFC 5737 / RFC 3849): stable per captured client, never routable
+    private static String syntheticAddress(int hash, boolean ipv6) {
+        if (ipv6) {
+            return "2001:db8::%x:%x".formatted((hash >>> 16) & 0xffff, hash & 0xffff);
+        }
+        var host = Integer.remainderUnsigned(hash, 3 * 254);
+        var network = switch (host / 254) {
+            case 0 -> "192.0.2.";
+            case 1 -> "198.51.100.";
+            default -> "203.0.113.";
+        };
+        return network + (host % 254 + 1);
+    }
+}
@@ -0,0 +1,71 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.bpiatek.linkshortenerredirectservice.bot.UserAgentClass;
+import pl.bpiatek.linkshortenerredirectservice.bot.UserAgentClassifier;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//  `cached` repeats one header (the common case), `uncached` defeats the cache with a fresh suffix
+//  per call so every classification scans. `indexOfLoop` is the naive alternative for comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserAgentClassifierBenchmark {
+
+    @Param({"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"})
+    private String userAgent;
+
+    private UserAgentClassifier classifier;
+    private List<String> signatures;
+    private String[] variants;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        classifier = UserAgentClassifier.defaults(4096, new SimpleMeterRegistry());
+        signatures = UserAgentClassifier.DEFAULT_SIGNATURES.values().stream().flatMap(List::stream).toList();
+        variants = new String[8192];
+        for (int i = 0; i < variants.length; i++) {
+            variants[i] = userAgent + " build/" + i;
+        }
+    }
+
+    @Benchmark
+    public UserAgentClass cached() {
+        return classifier.classify(userAgent);
+    }
+
+    @Benchmark
+    public UserAgentClass uncached() {
+        next = (next + 1) & (variants.length - 1);
+        return classifier.classify(variants[next]);
+    }
+
+    @Benchmark
+    public boolean indexOfLoop() {
+        var lower = userAgent.toLowerCase();
+        for (var signature : signatures) {
+            if (lower.contains(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
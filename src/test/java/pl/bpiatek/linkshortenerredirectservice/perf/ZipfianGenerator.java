@@ -0,0 +1,44 @@
+package pl.bpiatek.linkshortenerredirectservice.perf;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+//  Rank 0 is the most popular item. Sampling is an inverse-CDF lookup over a precomputed table,
+//  which keeps the hot path allocation-free and thread-safe.
+public final class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    public ZipfianGenerator(int items, double exponent) {
+        if (items <= 0) {
+            throw new IllegalArgumentException("items must be positive, got " + items);
+        }
+        if (exponent < 0.0) {
+            throw new IllegalArgumentException("exponent must not be negative, got " + exponent);
+        }
+        cumulative = new double[items];
+        var sum = 0.0;
+        for (int rank = 0; rank < items; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < items; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int next() {
+        var u = ThreadLocalRandom.current().nextDouble();
+        var index = Arrays.binarySearch(cumulative, u);
+        var rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    public int items() {
+        return cumulative.length;
+    }
+
+    public double probabilityOf(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+}
@@ -0,0 +1,99 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.bpiatek.linkshortenerredirectservice.link.WithRedis;
+
+import java.time.Duration;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Percentage.withPercentage;
+
+class LiveClickCountersIT implements WithRedis {
+
+    private static final String AGENT = "Mozilla/5.0 (X11; Linux x86_64) Firefox/128.0";
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Test
+    void shouldFlushTotalsAndUniqueVisitorsInOneBatch() {
+        // given
+        var counters = counters(64);
+        for (int i = 0; i < 30; i++) {
+            counters.record("aB5xZ1", "203.0.113." + (i % 10), AGENT);
+        }
+        counters.record("aB5xZ2", "203.0.113.1", AGENT);
+
+        // when
+        counters.flush();
+        counters.record("aB5xZ1", "203.0.113.1", AGENT);
+        counters.flush();
+
+        // then
+        var live = counters.read("aB5xZ1");
+        assertThat(live.clicks()).isEqualTo(31);
+        assertThat(live.uniqueVisitors()).isEqualTo(10);
+        assertThat(live.unflushedClicks()).isZero();
+        assertThat(counters.read("aB5xZ2").clicks()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldMergeLocalSketchAsIfEveryVisitorWasAddedToRedis() {
+        // given
+        var counters = counters(16);
+        var visitors = 20_000;
+        var reference = new byte[visitors][];
+        for (int i = 0; i < visitors; i++) {
+            var clientIp = "10.0." + (i >> 8) + "." + (i & 0xff);
+            counters.record("aB5xZ1", clientIp, AGENT);
+            reference[i] = RedisHyperLogLog.element(LiveClickCounters.visitor(clientIp, AGENT));
+        }
+        redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.hyperLogLogCommands().pfAdd("reference".getBytes(UTF_8), reference));
+
+        // when
+        counters.flush();
+
+        // then
+        var live = counters.read("aB5xZ1");
+        assertThat(live.clicks()).isEqualTo(visitors);
+        assertThat(live.uniqueVisitors()).isEqualTo(redisTemplate.opsForHyperLogLog().size("reference"));
+        assertThat(live.uniqueVisitors()).isCloseTo((long) visitors, withPercentage(2));
+        assertThat(redisTemplate.keys("clicks:merge:*")).isEmpty();
+    }
+
+    private LiveClickCounters counters(int sparseVisitors) {
+        return new LiveClickCounters(redisTemplate, 1000, sparseVisitors, 4, Duration.ZERO, "test",
+                System::currentTimeMillis, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,197 @@
+package pl.bpiatek.linkshortenerredirectservice.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveClickCountersTest {
+
+    private static final String AGENT = "Mozilla/5.0 (X11; Linux x86_64) Firefox/128.0";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private long now = 1_000_000L;
+
+    @Test
+    void shouldKeepVisitorsExactUntilSparseLimitThenPromoteToSketch() {
+        // given
+        var budget = new Budget(1);
+        var counter = new LinkCounter(4);
+
+        // when
+        for (int i = 0; i < 4; i++) {
+            counter.addVisitor(i + 1, 4, budget);
+            counter.addVisitor(i + 1, 4, budget);
+        }
+        var sparse = counter.drainVisitors(4, budget);
+        for (int i = 0; i < 5; i++) {
+            counter.addVisitor(i + 1, 4, budget);
+        }
+
+        // then
+        assertThat(sparse).isInstanceOf(long[].class);
+        assertThat((long[]) sparse).containsExactlyInAnyOrder(1, 2, 3, 4);
+        assertThat(counter.isDense()).isTrue();
+        assertThat(budget.inUse).isEqualTo(1);
+        assertThat(counter.drainVisitors(4, budget)).isInstanceOf(byte[].class);
+        assertThat(budget.inUse).isZero();
+    }
+
+    @Test
+    void shouldStopCountingNewVisitorsWhenNoSketchIsAvailable() {
+        // given
+        var budget = new Budget(0);
+        var counter = new LinkCounter(2);
+        counter.addVisitor(1, 2, budget);
+        counter.addVisitor(2, 2, budget);
+
+        // when
+        var known = counter.addVisitor(2, 2, budget);
+        var unknown = counter.addVisitor(3, 2, budget);
+
+        // then
+        assertThat(known).isTrue();
+        assertThat(unknown).isFalse();
+        assertThat(counter.isDense()).isFalse();
+    }
+
+    @Test
+    void shouldNotLoseVisitorsRecordedWhileTheFlusherDrains() throws Exception {
+        // given
+        var budget = new Budget(1);
+        var counter = new LinkCounter(4);
+        var writers = 4;
+        var visitorsPerWriter = 20_000;
+        var flushed = new byte[RedisHyperLogLog.REGISTERS];
+
+        // when
+        try (var executor = Executors.newFixedThreadPool(writers)) {
+            var done = new ArrayList<Future<?>>();
+            for (int writer = 0; writer < writers; writer++) {
+                var first = writer * visitorsPerWriter + 1L;
+                done.add(executor.submit(() -> {
+                    for (long visitor = first; visitor < first + visitorsPerWriter; visitor++) {
+                        counter.addVisitor(visitor, 4, budget);
+                    }
+                }));
+            }
+            while (!done.stream().allMatch(Future::isDone)) {
+                merge(flushed, counter.drainVisitors(4, budget));
+            }
+            for (var writer : done) {
+                writer.get();
+            }
+        }
+        merge(flushed, counter.drainVisitors(4, budget));
+
+        // then
+        var expected = new byte[RedisHyperLogLog.REGISTERS];
+        for (long visitor = 1; visitor <= (long) writers * visitorsPerWriter; visitor++) {
+            merge(expected, new long[]{visitor});
+        }
+        assertThat(flushed).isEqualTo(expected);
+        assertThat(budget.inUse).isZero();
+    }
+
+    @Test
+    void shouldRetainClicksWhenFlushFails() {
+        // given
+        var counters = counters(new FailingRedisTemplate(), 10);
+        counters.record("aB5xZ1", "203.0.113.7", AGENT);
+        counters.record("aB5xZ1", "203.0.113.8", AGENT);
+
+        // when
+        now += 15_000;
+        counters.flush();
+
+        // then
+        assertThat(counters.unflushedClicks("aB5xZ1")).isEqualTo(2);
+        assertThat(counters.unflushedAge()).isEqualTo(Duration.ofSeconds(15));
+        assertThat(meterRegistry.get("redirect.live.counters.flush.failures").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("redirect.live.counters.unflushed.clicks").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotTrackMoreThanMaxLinks() {
+        // given
+        var counters = counters(new FailingRedisTemplate(), 2);
+
+        // when
+        for (var shortUrl : List.of("a", "b", "c", "a")) {
+            counters.record(shortUrl, "203.0.113.7", AGENT);
+        }
+
+        // then
+        assertThat(counters.unflushedClicks("a")).isEqualTo(2);
+        assertThat(counters.unflushedClicks("c")).isZero();
+        assertThat(meterRegistry.get("redirect.live.counters.untracked").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldIgnoreClicksWhenDisabled() {
+        // when
+        LiveClickCounters.disabled().record("aB5xZ1", "203.0.113.7", AGENT);
+
+        // then
+        assertThat(LiveClickCounters.disabled().unflushedClicks("aB5xZ1")).isZero();
+    }
+
+    //  What PFADD and PFMERGE leave in Redis for the drained visitors
+    private static void merge(byte[] registers, Object drained) {
+        if (drained instanceof long[] visitors) {
+            for (var visitor : visitors) {
+                var hash = RedisHyperLogLog.hash(visitor);
+                var index = RedisHyperLogLog.registerIndex(hash);
+                registers[index] = (byte) Math.max(registers[index], RedisHyperLogLog.runLength(hash));
+            }
+        } else if (drained instanceof byte[] dense) {
+            for (int i = 0; i < dense.length; i++) {
+                registers[i] = (byte) Math.max(registers[i], dense[i]);
+            }
+        }
+    }
+
+    private LiveClickCounters counters(StringRedisTemplate redisTemplate, int maxLinks) {
+        return new LiveClickCounters(redisTemplate, maxLinks, 64, 4, Duration.ZERO, "test", () -> now, meterRegistry);
+    }
+
+    private static final class FailingRedisTemplate extends StringRedisTemplate {
+
+        @Override
+        public List<Object> executePipelined(RedisCallback<?> action) {
+            throw new RedisConnectionFailureException("Redis is down");
+        }
+    }
+
+    private static final class Budget implements LinkCounter.DenseBudget {
+        private final int max;
+        private int inUse;
+
+        private Budget(int max) {
+            this.max = max;
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            if (inUse == max) {
+                return false;
+            }
+            inUse++;
+            return true;
+        }
+
+        @Override
+        public void release() {
+            inUse--;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package pl.bpiatek.linkshortenerredirectservice.warmup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WarmUpTest {
+
+    @Test
+    void shouldRunPhasesInOrderAndHandHotLinksOn() {
+        // given
+        var ran = new CopyOnWriteArrayList<String>();
+        var seen = new ArrayList<String>();
+        var warmUp = new WarmUp(List.of(
+                phase("preload", Duration.ofSeconds(5), progress -> {
+                    ran.add("preload");
+                    progress.hotLinks(List.of("aB5xZ1", "code2"));
+                }),
+                phase("jit", Duration.ofSeconds(5), progress -> {
+                    ran.add("jit");
+                    seen.addAll(progress.hotLinks());
+                })));
+
+        // when
+        warmUp.run();
+
+        // then
+        assertThat(warmUp.finished()).isTrue();
+        assertThat(ran).containsExactly("preload", "jit");
+        assertThat(seen).containsExactly("aB5xZ1", "code2");
+        assertThat(warmUp.statuses()).extracting(WarmUp.PhaseStatus::state)
+                .containsExactly(WarmUp.State.COMPLETED, WarmUp.State.COMPLETED);
+    }
+
+    @Test
+    void shouldMoveOnWhenPhaseTimesOutOrFails() {
+        // given
+        var warmUp = new WarmUp(List.of(
+                phase("catch-up", Duration.ofMillis(100), progress -> {
+                    progress.report("lag 5000");
+                    Thread.sleep(10_000);
+                }),
+                phase("preload", Duration.ofSeconds(5), progress -> {
+                    throw new IllegalStateException("Redis unavailable");
+                }),
+                phase("jit", Duration.ofSeconds(5), progress -> progress.report("done"))));
+
+        // when
+        warmUp.run();
+
+        // then
+        assertThat(warmUp.finished()).isTrue();
+        assertThat(warmUp.statuses()).extracting(WarmUp.PhaseStatus::state)
+                .containsExactly(WarmUp.State.TIMED_OUT, WarmUp.State.FAILED, WarmUp.State.COMPLETED);
+        assertThat(warmUp.statuses()).extracting(WarmUp.PhaseStatus::detail)
+                .containsExactly("lag 5000", "Redis unavailable", "done");
+    }
+
+    @Test
+    void shouldReportOutOfServiceUntilFinished() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+        var warmUp = new WarmUp(List.of(phase("preload", Duration.ofSeconds(5), progress -> {
+            progress.report("100 of 5000 hot links loaded");
+            release.await();
+        })));
+        var indicator = new WarmUpHealthIndicator(warmUp);
+        var thread = Thread.ofVirtual().start(warmUp::run);
+
+        // when & then
+        while (warmUp.statuses().getFirst().detail().isEmpty()) {
+            Thread.onSpinWait();
+        }
+        var warming = indicator.health();
+        assertThat(warming.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(warming.getDetails()).containsKey("preload");
+
+        release.countDown();
+        assertThat(thread.join(Duration.ofSeconds(5))).isTrue();
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    void shouldBeReadyImmediatelyWhenDisabled() {
+        // when & then
+        assertThat(WarmUp.disabled().finished()).isTrue();
+        assertThat(new WarmUpHealthIndicator(WarmUp.disabled()).health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    private static WarmUp.Phase phase(String name, Duration timeout, Body body) {
+        return new WarmUp.Phase() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Duration timeout() {
+                return timeout;
+            }
+
+            @Override
+            public void run(WarmUp.Progress progress) throws Exception {
+                body.run(progress);
+            }
+        };
+    }
+
+    private interface Body {
+        void run(WarmUp.Progress progress) throws Exception;
+    }
+}